@@ -97,6 +97,18 @@ public interface CIFSContext {
     SmbTransportPool getTransportPool ();
 
 
+    /**
+     * @return the metrics receiver
+     */
+    SmbMetrics getMetrics ();
+
+
+    /**
+     * @return the tracing receiver
+     */
+    SmbTracer getTracer ();
+
+
     /**
      * @return the DFS instance for this context
      */
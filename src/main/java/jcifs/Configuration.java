@@ -531,6 +531,11 @@ public interface Configuration {
 
 
     /**
+     * 
+     * Property <tt>jcifs.smb.maxBufferSize</tt> (int, default 65535)
+     * 
+     * To make use of SMB 2.1 large MTU support, this as well as the transaction, send and receive buffer sizes need to
+     * be raised (e.g. to 1MB).
      * 
      * @return the maximum size of IO buffers, limits the maximum message size
      */
@@ -654,4 +659,232 @@ public interface Configuration {
      */
     boolean isAllowCompound ( String command );
 
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.readAheadCount</tt> (int, default 0)
+     * 
+     * If enabled, file input streams will keep up to this number of read requests in flight to hide network latency.
+     * The number of outstanding requests is additionally limited by the credits granted by the server. This is only
+     * supported with SMB2.
+     * 
+     * @return the maximum number of outstanding read requests per input stream, 0 to disable read-ahead
+     */
+    int getReadAheadCount ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.writeBehindCount</tt> (int, default 0)
+     * 
+     * If enabled, file output streams will not wait for the completion of a write before sending the next one, keeping
+     * up to this number of write requests in flight. Errors are reported by the next write, flush or close call. The
+     * number of outstanding requests is additionally limited by the credits granted by the server. This is only
+     * supported with SMB2.
+     * 
+     * @return the maximum number of outstanding write requests per output stream, 0 to disable write-behind
+     */
+    int getWriteBehindCount ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.selectorThreads</tt> (int, default 0)
+     * 
+     * If set, responses for all connections of a context are received by this number of selector threads using
+     * non-blocking channels, instead of a dedicated reader thread per connection. This reduces the number of threads
+     * when talking to many servers.
+     * 
+     * @return number of selector threads, 0 to use one reader thread per connection
+     */
+    int getSelectorThreads ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.leaseCacheEntries</tt> (int, default 0)
+     * 
+     * If set, SMB2.1+ file opens for attribute queries and reads request a read/handle lease and up to this number
+     * of files per session are kept open. As long as the lease is held, attributes and (small) file contents are served
+     * locally. The lease is broken by the server once another client modifies the file.
+     * 
+     * @return maximum number of leased files to cache per session, 0 to disable leasing
+     */
+    int getLeaseCacheEntries ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.leaseCacheMaxFileSize</tt> (int, default 65536)
+     * 
+     * @return maximum size of files for which the contents are cached while holding a lease
+     */
+    int getLeaseCacheMaxFileSize ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.metadataCacheSize</tt> (int, default 0)
+     * 
+     * If set, file attributes, sizes and missing files are cached for the attribute cache timeout in a cache shared by
+     * all SmbFile instances of the context, bounded to this number of entries. Entries are filled from path queries
+     * and directory listings and invalidated by modifications made through the context.
+     * 
+     * @return maximum number of entries in the shared metadata cache, 0 to disable
+     */
+    int getMetadataCacheSize ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.copyThreads</tt> (int, default 1)
+     * 
+     * Number of worker threads used to copy directory trees, directories are enumerated and files copied
+     * concurrently. With 1 directories are copied sequentially on the calling thread.
+     * 
+     * @return number of threads used for recursive copies
+     */
+    int getCopyThreads ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.serverSideCopyConcurrency</tt> (int, default 4)
+     * 
+     * Number of copychunk requests kept in flight during a server side copy of a single file.
+     * 
+     * @return maximum number of concurrent copychunk requests per file
+     */
+    int getServerSideCopyConcurrency ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.deleteBatchSize</tt> (int, default 0)
+     * 
+     * Maximum number of files deleted by a single compound request when recursively deleting a directory with SMB2,
+     * limited further by the available credits. 0 deletes entries one by one.
+     * 
+     * @return maximum number of entries deleted per request
+     */
+    int getDeleteBatchSize ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.deleteThreads</tt> (int, default 1)
+     * 
+     * Number of worker threads processing sibling directories concurrently when recursively deleting a directory in
+     * batches.
+     * 
+     * @return number of threads used for recursive deletes
+     */
+    int getDeleteThreads ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.listBufferSize</tt> (int, default 0)
+     * 
+     * Output buffer size requested by SMB2 directory queries, independent of {@link #getListSize()}. The value is
+     * limited by the transaction size negotiated with the server, 0 uses the full negotiated size.
+     * 
+     * @return output buffer size for SMB2 directory queries, 0 to use the negotiated maximum
+     */
+    int getListBufferSize ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.listPrefetch</tt> (boolean, default true)
+     * 
+     * @return whether to request the next batch of directory entries while the current one is being consumed (SMB2 only)
+     */
+    boolean isListPrefetch ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.walkThreads</tt> (int, default 4)
+     * 
+     * Number of worker threads enumerating directories concurrently when walking a directory tree. This also bounds
+     * the number of directory queries a walk keeps in flight on the connection.
+     * 
+     * @return number of threads used for tree walks
+     */
+    int getWalkThreads ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.transportsPerServer</tt> (int, default 1)
+     * 
+     * Number of pooled connections to open to the same server before existing ones are reused. When more than one
+     * exists, the connection with the fewest outstanding requests is chosen. The number of sessions on each
+     * connection remains limited by {@link #getSessionLimit()}.
+     * 
+     * @return number of connections per server
+     */
+    int getTransportsPerServer ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.enableSMB3</tt> (boolean, default false)
+     * 
+     * This enables announcement of the SMB 3.0, 3.0.2 and 3.1.1 dialects when negotiating SMB2.
+     * 
+     * @return whether to enable experimental SMB3 support
+     */
+    boolean isEnableSMB3 ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.maxChannels</tt> (int, default 1)
+     * 
+     * Maximum number of connections (channels) used by a single session. Additional channels are only established
+     * with SMB3 multichannel support on both sides, they are bound to the interfaces reported by the server and reads
+     * and writes are spread across them according to the interface link speed. 1 disables multichannel.
+     * 
+     * @return maximum number of channels per session
+     */
+    int getMaxChannels ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.enableCompression</tt> (boolean, default false)
+     * 
+     * Negotiate SMB 3.1.1 compression (requires SMB3 to be enabled). If the server supports it, write payloads are sent
+     * compressed and the server is asked to compress read responses.
+     * 
+     * @return whether to negotiate compression
+     */
+    boolean isEnableCompression ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.compressionThreshold</tt> (int, default 4096)
+     * 
+     * Minimum payload size for reads and writes to be compressed.
+     * 
+     * @return minimum payload size for compression
+     */
+    int getCompressionThreshold ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.encryptData</tt> (boolean, default false)
+     * 
+     * Encrypt all messages of a SMB3 session, even if the server does not require it. Sessions fail to be established
+     * if the server does not support encryption. Without this, messages are only encrypted where the server requires
+     * it for a session or share.
+     * 
+     * @return whether to always encrypt SMB3 sessions
+     */
+    boolean isEncryptData ();
+
 }
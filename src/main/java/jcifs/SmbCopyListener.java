@@ -0,0 +1,57 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Receives progress and error notifications from a copy operation
+ * 
+ * Notifications may be delivered concurrently from multiple copy worker threads.
+ * 
+ * @author mbechler
+ *
+ */
+public interface SmbCopyListener {
+
+    /**
+     * Called after a file has been copied
+     * 
+     * @param src
+     *            source file
+     * @param dest
+     *            target file
+     * @param size
+     *            number of bytes copied
+     */
+    void fileCopied ( SmbResource src, SmbResource dest, long size );
+
+
+    /**
+     * Called when copying a file or directory failed
+     * 
+     * @param src
+     *            source resource
+     * @param dest
+     *            target resource
+     * @param e
+     *            the error
+     * @return whether to continue copying the remaining resources, otherwise the copy is aborted with this error
+     */
+    boolean copyFailed ( SmbResource src, SmbResource dest, CIFSException e );
+
+}
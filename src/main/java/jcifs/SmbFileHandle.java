@@ -18,6 +18,9 @@
 package jcifs;
 
 
+import java.util.concurrent.CompletableFuture;
+
+
 /**
  * Handle to an open file
  * 
@@ -66,4 +69,42 @@ public interface SmbFileHandle extends AutoCloseable {
      */
     long getInitialSize ();
 
+
+    /**
+     * Read from the file without blocking the caller
+     * 
+     * The returned future is completed by the transport's receiving thread, blocking follow-up actions need to
+     * be run on an executor. It fails if the request does not complete within the response timeout.
+     * 
+     * @param offset
+     *            file offset to read from
+     * @param b
+     *            target buffer, must not be modified until the future completes
+     * @param off
+     *            offset into the target buffer
+     * @param len
+     *            maximum number of bytes to read, limited to the negotiated receive buffer size
+     * @return future for the number of bytes read, -1 at end of file
+     */
+    CompletableFuture<Integer> readAsync ( long offset, byte[] b, int off, int len );
+
+
+    /**
+     * Write to the file without blocking the caller
+     * 
+     * The returned future is completed by the transport's receiving thread, blocking follow-up actions need to
+     * be run on an executor. It fails if the request does not complete within the response timeout.
+     * 
+     * @param offset
+     *            file offset to write to
+     * @param b
+     *            source buffer, must not be modified until the future completes
+     * @param off
+     *            offset into the source buffer
+     * @param len
+     *            maximum number of bytes to write, limited to the negotiated send buffer size
+     * @return future for the number of bytes written
+     */
+    CompletableFuture<Integer> writeAsync ( long offset, byte[] b, int off, int len );
+
 }
\ No newline at end of file
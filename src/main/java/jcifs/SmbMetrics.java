@@ -0,0 +1,178 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+import java.util.function.LongSupplier;
+
+
+/**
+ * Receiver for client metrics
+ * 
+ * Instruments are identified by name, the server they relate to and, for per request metrics, the SMB2 command name
+ * (e.g. <tt>SMB2_READ</tt>). Components look up the instruments they feed once, usually when a connection is
+ * established, and update them for every request. Lookups may therefore be expensive, updates must be cheap and
+ * thread safe.
+ * 
+ * Gauges are sampled by the implementation. Multiple gauges may be registered with the same name and server, e.g. one
+ * per connection to a server, implementations will usually want to report their sum.
+ * 
+ * The default implementation, {@link jcifs.context.NoopMetrics}, discards everything. A different implementation
+ * can be passed to {@link jcifs.context.BaseContext#BaseContext(Configuration, SmbMetrics)}.
+ * 
+ * @author mbechler
+ *
+ */
+public interface SmbMetrics {
+
+    /**
+     * Histogram: time from sending a SMB2 request to receiving the final response, per command
+     */
+    String REQUEST_LATENCY = "jcifs.smb.request.latency";
+
+    /**
+     * Counter: SMB2 responses with an error status, per command
+     */
+    String REQUEST_ERRORS = "jcifs.smb.request.errors";
+
+    /**
+     * Gauge: requests waiting for a response
+     */
+    String REQUESTS_INFLIGHT = "jcifs.smb.requests.inflight";
+
+    /**
+     * Counter: bytes written to connections, including framing
+     */
+    String BYTES_SENT = "jcifs.smb.bytes.sent";
+
+    /**
+     * Counter: bytes read from connections, including framing
+     */
+    String BYTES_RECEIVED = "jcifs.smb.bytes.received";
+
+    /**
+     * Gauge: credits available for sending requests
+     */
+    String CREDITS_AVAILABLE = "jcifs.smb.credits.available";
+
+    /**
+     * Histogram: time spent blocking for credits, only recorded if a request could not be sent immediately
+     */
+    String CREDIT_WAIT = "jcifs.smb.credits.wait";
+
+    /**
+     * Counter: requests failing because no credits became available in time
+     */
+    String CREDIT_TIMEOUTS = "jcifs.smb.credits.timeouts";
+
+    /**
+     * Counter: requests retried after a connection failure
+     */
+    String RETRIES = "jcifs.smb.retries";
+
+    /**
+     * Counter: tree connections re-established for retrying a request
+     */
+    String RECONNECTS = "jcifs.smb.reconnects";
+
+    /**
+     * Counter: connections established
+     */
+    String CONNECTS = "jcifs.smb.connects";
+
+    /**
+     * Counter: connections closed
+     */
+    String DISCONNECTS = "jcifs.smb.disconnects";
+
+    /**
+     * Counter: failed connection attempts
+     */
+    String CONNECT_FAILURES = "jcifs.smb.connect.failures";
+
+    /**
+     * Counter: connections added to the pool, because none could be reused
+     */
+    String POOL_CONNECTIONS_CREATED = "jcifs.smb.pool.created";
+
+
+    /**
+     * A monotonic counter
+     */
+    interface Counter {
+
+        /**
+         * @param delta
+         */
+        void increment ( long delta );
+    }
+
+
+    /**
+     * Distribution of durations
+     */
+    interface Histogram {
+
+        /**
+         * @param nanos
+         *            duration in nanoseconds
+         */
+        void record ( long nanos );
+    }
+
+
+    /**
+     * @param name
+     * @param server
+     *            server name, null for metrics not related to a server
+     * @param command
+     *            command name, null for metrics not related to a command
+     * @return the counter
+     */
+    Counter getCounter ( String name, String server, String command );
+
+
+    /**
+     * @param name
+     * @param server
+     *            server name, null for metrics not related to a server
+     * @param command
+     *            command name, null for metrics not related to a command
+     * @return the histogram
+     */
+    Histogram getHistogram ( String name, String server, String command );
+
+
+    /**
+     * @param name
+     * @param server
+     *            server name, null for metrics not related to a server
+     * @param gauge
+     *            supplier of the current value
+     */
+    void registerGauge ( String name, String server, LongSupplier gauge );
+
+
+    /**
+     * @param name
+     * @param server
+     * @param gauge
+     *            a gauge previously registered using {@link #registerGauge(String, String, LongSupplier)}
+     */
+    void unregisterGauge ( String name, String server, LongSupplier gauge );
+}
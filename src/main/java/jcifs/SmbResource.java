@@ -383,7 +383,8 @@ public interface SmbResource extends AutoCloseable {
      * file attibutes such as ACLs but it does copy regular attributes as
      * well as create and last write times. This method is almost twice as
      * efficient as manually copying as it employs an additional write
-     * thread to read and write data concurrently.
+     * thread to read and write data concurrently. Directory trees can be copied
+     * by multiple worker threads, see {@link Configuration#getCopyThreads()}.
      * <br>
      * It is not possible (nor meaningful) to copy entire workgroups or
      * servers.
@@ -395,6 +396,25 @@ public interface SmbResource extends AutoCloseable {
     void copyTo ( SmbResource dest ) throws CIFSException;
 
 
+    /**
+     * This method will copy the file or directory represented by this
+     * <tt>SmbResource</tt> and it's sub-contents to the location specified by the
+     * <tt>dest</tt> parameter, using multiple worker threads.
+     * <br>
+     * Directories are enumerated and files copied concurrently by the number of workers configured through
+     * {@link Configuration#getCopyThreads()}. Files on the same share are copied server side. Regular attributes as
+     * well as create and last write times are preserved.
+     *
+     * @param dest
+     *            the destination file or directory
+     * @param listener
+     *            receives progress and per file errors, if null the copy is aborted on the first error unless
+     *            {@link Configuration#isIgnoreCopyToException()} is set
+     * @throws CIFSException
+     */
+    void copyTo ( SmbResource dest, SmbCopyListener listener ) throws CIFSException;
+
+
     /**
      * Changes the name of the file this <code>SmbResource</code> represents to the name
      * designated by the <code>SmbResource</code> argument.
@@ -637,6 +657,92 @@ public interface SmbResource extends AutoCloseable {
     InputStream openInputStream () throws CIFSException;
 
 
+    /**
+     * Opens a handle to the file for use with the asynchronous read/write operations
+     * 
+     * @param flags
+     *            open flags
+     * @param access
+     *            desired access flags
+     * @param sharing
+     *            flags indicating for which operations others may open the file (FILE_SHARING_*)
+     * @return file handle, needs to be closed when finished
+     * @throws CIFSException
+     * @see SmbFileHandle#readAsync(long, byte[], int, int)
+     * @see SmbFileHandle#writeAsync(long, byte[], int, int)
+     */
+    SmbFileHandle openFileHandle ( int flags, int access, int sharing ) throws CIFSException;
+
+
+    /**
+     * Reads the complete contents of the file
+     * 
+     * With SMB2 the open, the first read and the close are sent as a single compound request, so files fitting into
+     * one read are fetched in one round trip.
+     * 
+     * @return the file contents
+     * @throws CIFSException
+     */
+    byte[] readAll () throws CIFSException;
+
+
+    /**
+     * Reads at most the first <tt>maxLength</tt> bytes of the file
+     * 
+     * @param maxLength
+     *            maximum number of bytes to read
+     * @return the file contents, up to <tt>maxLength</tt> bytes
+     * @throws CIFSException
+     * @see #readAll()
+     */
+    byte[] readAll ( int maxLength ) throws CIFSException;
+
+
+    /**
+     * Opens an input stream reading at most the first <tt>maxLength</tt> bytes of the file
+     * 
+     * The first chunk is fetched using a single compound request, the file is only opened again if the stream is read
+     * beyond that.
+     * 
+     * @param maxLength
+     *            maximum number of bytes to read
+     * @return input stream, needs to be closed when finished
+     * @throws CIFSException
+     * @see #readAll()
+     */
+    InputStream openHeadInputStream ( long maxLength ) throws CIFSException;
+
+
+    /**
+     * Replaces the contents of the file, creating it if it does not exist
+     * 
+     * With SMB2 the open, the write and the close are sent as a single compound request if the data fits into one
+     * write. Afterwards the file attributes reported by the close are available without further requests.
+     * 
+     * @param data
+     * @throws CIFSException
+     */
+    void writeAll ( byte[] data ) throws CIFSException;
+
+
+    /**
+     * Replaces the contents of the file, creating it if it does not exist, and optionally sets its timestamps
+     * 
+     * @param data
+     * @param off
+     *            offset in data
+     * @param len
+     *            number of bytes to write
+     * @param createTime
+     *            creation time to set, in milliseconds since 1970, 0 to leave it unchanged
+     * @param lastModified
+     *            last modification time to set, in milliseconds since 1970, 0 to leave it unchanged
+     * @throws CIFSException
+     * @see #writeAll(byte[])
+     */
+    void writeAll ( byte[] data, int off, int len, long createTime, long lastModified ) throws CIFSException;
+
+
     /**
      * Close/release the file
      * 
@@ -698,4 +804,48 @@ public interface SmbResource extends AutoCloseable {
      */
     CloseableIterator<SmbResource> children ( ResourceFilter filter ) throws CIFSException;
 
+
+    /**
+     * Walk the tree below this directory
+     * 
+     * @param visitor
+     * @throws CIFSException
+     * @see #walk(SmbResourceVisitor, int, ResourceFilter)
+     */
+    void walk ( SmbResourceVisitor visitor ) throws CIFSException;
+
+
+    /**
+     * Walk the tree below this directory
+     * 
+     * Directories are enumerated concurrently, the number of directories processed at the same time is limited by
+     * {@link Configuration#getWalkThreads()}. Resources are passed to the visitor as they are enumerated, so there
+     * is no particular order. Returns once the walk is complete.
+     * 
+     * @param visitor
+     *            receives the resources
+     * @param maxDepth
+     *            maximum depth to descend to, 1 only visits the direct children, negative for unlimited
+     * @param filter
+     *            filter acting on SmbResource instances, resources not accepted are neither visited nor descended
+     *            into
+     * @throws CIFSException
+     */
+    void walk ( SmbResourceVisitor visitor, int maxDepth, ResourceFilter filter ) throws CIFSException;
+
+
+    /**
+     * Walk the tree below this directory
+     * 
+     * @param visitor
+     *            receives the resources
+     * @param maxDepth
+     *            maximum depth to descend to, 1 only visits the direct children, negative for unlimited
+     * @param filter
+     *            filter acting on file names, resources not accepted are neither visited nor descended into
+     * @throws CIFSException
+     * @see #walk(SmbResourceVisitor, int, ResourceFilter)
+     */
+    void walk ( SmbResourceVisitor visitor, int maxDepth, ResourceNameFilter filter ) throws CIFSException;
+
 }
\ No newline at end of file
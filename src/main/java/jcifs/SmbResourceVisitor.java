@@ -0,0 +1,58 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Receives the resources found while walking a directory tree
+ * 
+ * When walking concurrently, methods are invoked from multiple worker threads and implementations need to be thread
+ * safe. Resources passed to the visitor must not be closed by it.
+ * 
+ * @author mbechler
+ *
+ * @see SmbResource#walk(SmbResourceVisitor, int, ResourceFilter)
+ */
+public interface SmbResourceVisitor {
+
+    /**
+     * Called for every resource found, as soon as it has been enumerated
+     * 
+     * @param resource
+     *            the resource
+     * @param depth
+     *            nesting level below the starting directory, its direct children have depth 1
+     * @return for directories, whether to descend into it
+     * @throws CIFSException
+     *             aborts the walk
+     */
+    boolean visit ( SmbResource resource, int depth ) throws CIFSException;
+
+
+    /**
+     * Called when a directory could not be enumerated
+     * 
+     * @param resource
+     *            the directory
+     * @param e
+     *            the error
+     * @return whether to continue with the remaining directories, otherwise the walk is aborted with this error
+     */
+    boolean visitFailed ( SmbResource resource, CIFSException e );
+
+}
@@ -0,0 +1,177 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Receiver for tracing spans
+ * 
+ * Spans are started and ended by the same thread and are strictly nested: a span started while another span of the
+ * same thread has not yet ended is a child of that span. Implementations bridging to e.g. OpenTelemetry will make a
+ * span current when it is started and restore its parent when it ends.
+ * 
+ * Reported spans are
+ * <ul>
+ * <li><tt>SmbFile.&lt;method&gt;</tt> for file operations, e.g. <tt>SmbFile.exists</tt></li>
+ * <li><tt>smb.connect</tt> for establishing a tree connection, including DFS resolution</li>
+ * <li><tt>nameservice.resolve</tt> for resolving a host name</li>
+ * <li><tt>dfs.resolve</tt> and <tt>dfs.referral</tt> for DFS resolution and referral requests</li>
+ * <li><tt>smb.transport.connect</tt> for establishing a connection and negotiating the protocol</li>
+ * <li><tt>smb.session.setup</tt> and <tt>smb.tree.connect</tt> for authentication and connecting a share</li>
+ * <li><tt>smb.credits.wait</tt> while blocking because there are not enough credits available</li>
+ * <li>the command name, e.g. <tt>SMB2_CREATE</tt>, for a request including its (compound) response</li>
+ * </ul>
+ * 
+ * The default implementation, {@link jcifs.context.NoopTracer}, discards everything. A different implementation
+ * can be passed to {@link jcifs.context.BaseContext#BaseContext(Configuration, SmbMetrics, SmbTracer)}.
+ * 
+ * @author mbechler
+ *
+ */
+public interface SmbTracer {
+
+    /**
+     * Server name
+     */
+    String ATTR_SERVER = "server.address";
+
+    /**
+     * Server port
+     */
+    String ATTR_PORT = "server.port";
+
+    /**
+     * Share name
+     */
+    String ATTR_SHARE = "smb.share";
+
+    /**
+     * Resource URL or path
+     */
+    String ATTR_PATH = "smb.path";
+
+    /**
+     * NT status code of the response or the failure
+     */
+    String ATTR_STATUS = "smb.nt_status";
+
+    /**
+     * Message id of the (first) request
+     */
+    String ATTR_MESSAGE_ID = "smb.message_id";
+
+    /**
+     * Number of requests sent in a compound
+     */
+    String ATTR_COMPOUND = "smb.compound";
+
+    /**
+     * Credits charged for the request
+     */
+    String ATTR_CREDIT_CHARGE = "smb.credits.charge";
+
+    /**
+     * Credits requested from the server
+     */
+    String ATTR_CREDITS_REQUESTED = "smb.credits.requested";
+
+    /**
+     * Credits granted by the server
+     */
+    String ATTR_CREDITS_GRANTED = "smb.credits.granted";
+
+    /**
+     * Message bytes sent
+     */
+    String ATTR_BYTES_SENT = "smb.bytes.sent";
+
+    /**
+     * Message bytes received
+     */
+    String ATTR_BYTES_RECEIVED = "smb.bytes.received";
+
+    /**
+     * Time in nanoseconds from sending the request until the response was received, the remaining time of the span
+     * was spent locally, e.g. decoding the response
+     */
+    String ATTR_SERVER_TIME = "smb.server_time_ns";
+
+    /**
+     * Negotiated SMB2 dialect
+     */
+    String ATTR_DIALECT = "smb.dialect";
+
+    /**
+     * Number of resolved addresses
+     */
+    String ATTR_ADDRESSES = "smb.addresses";
+
+    /**
+     * Server of the DFS target
+     */
+    String ATTR_DFS_TARGET = "smb.dfs.target";
+
+
+    /**
+     * A timed operation
+     */
+    interface Span {
+
+        /**
+         * @return whether attributes set on this span are recorded, callers can skip computing them otherwise
+         */
+        boolean isRecording ();
+
+
+        /**
+         * @param key
+         * @param value
+         * @return this span
+         */
+        Span setAttribute ( String key, String value );
+
+
+        /**
+         * @param key
+         * @param value
+         * @return this span
+         */
+        Span setAttribute ( String key, long value );
+
+
+        /**
+         * Mark the span as failed
+         * 
+         * @param t
+         */
+        void recordException ( Throwable t );
+
+
+        /**
+         * End the span, must be called exactly once by the thread that started it
+         */
+        void end ();
+    }
+
+
+    /**
+     * @param name
+     * @return a new span, child of the current span of the calling thread
+     */
+    Span startSpan ( String name );
+}
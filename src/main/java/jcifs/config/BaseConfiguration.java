@@ -128,6 +128,25 @@ public class BaseConfiguration implements Configuration {
     protected boolean traceResourceUsage;
     protected boolean strictResourceLifecycle;
     protected Set<String> disallowCompound;
+    protected int readAheadCount = 0;
+    protected int writeBehindCount = 0;
+    protected int selectorThreads = 0;
+    protected int leaseCacheEntries = 0;
+    protected int leaseCacheMaxFileSize = 65536;
+    protected int metadataCacheSize = 0;
+    protected int copyThreads = 1;
+    protected int serverSideCopyConcurrency = 4;
+    protected int deleteBatchSize = 0;
+    protected int deleteThreads = 1;
+    protected int listBufferSize = 0;
+    protected boolean listPrefetch = true;
+    protected int walkThreads = 4;
+    protected int transportsPerServer = 1;
+    protected boolean enableSMB3 = false;
+    protected int maxChannels = 1;
+    protected boolean enableCompression = false;
+    protected int compressionThreshold = 4096;
+    protected boolean encryptData = false;
 
 
     /**
@@ -596,6 +615,215 @@ public class BaseConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getReadAheadCount()
+     */
+    @Override
+    public int getReadAheadCount () {
+        return this.readAheadCount;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getWriteBehindCount()
+     */
+    @Override
+    public int getWriteBehindCount () {
+        return this.writeBehindCount;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getSelectorThreads()
+     */
+    @Override
+    public int getSelectorThreads () {
+        return this.selectorThreads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getLeaseCacheEntries()
+     */
+    @Override
+    public int getLeaseCacheEntries () {
+        return this.leaseCacheEntries;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getLeaseCacheMaxFileSize()
+     */
+    @Override
+    public int getLeaseCacheMaxFileSize () {
+        return this.leaseCacheMaxFileSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getMetadataCacheSize()
+     */
+    @Override
+    public int getMetadataCacheSize () {
+        return this.metadataCacheSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getCopyThreads()
+     */
+    @Override
+    public int getCopyThreads () {
+        return this.copyThreads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getServerSideCopyConcurrency()
+     */
+    @Override
+    public int getServerSideCopyConcurrency () {
+        return this.serverSideCopyConcurrency;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getDeleteBatchSize()
+     */
+    @Override
+    public int getDeleteBatchSize () {
+        return this.deleteBatchSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getDeleteThreads()
+     */
+    @Override
+    public int getDeleteThreads () {
+        return this.deleteThreads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getListBufferSize()
+     */
+    @Override
+    public int getListBufferSize () {
+        return this.listBufferSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isListPrefetch()
+     */
+    @Override
+    public boolean isListPrefetch () {
+        return this.listPrefetch;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getWalkThreads()
+     */
+    @Override
+    public int getWalkThreads () {
+        return this.walkThreads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getTransportsPerServer()
+     */
+    @Override
+    public int getTransportsPerServer () {
+        return this.transportsPerServer;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isEnableSMB3()
+     */
+    @Override
+    public boolean isEnableSMB3 () {
+        return this.enableSMB3;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getMaxChannels()
+     */
+    @Override
+    public int getMaxChannels () {
+        return this.maxChannels;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isEnableCompression()
+     */
+    @Override
+    public boolean isEnableCompression () {
+        return this.enableCompression;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getCompressionThreshold()
+     */
+    @Override
+    public int getCompressionThreshold () {
+        return this.compressionThreshold;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isEncryptData()
+     */
+    @Override
+    public boolean isEncryptData () {
+        return this.encryptData;
+    }
+
+
     /**
      * @param cmd
      * @return
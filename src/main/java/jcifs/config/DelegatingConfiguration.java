@@ -770,4 +770,213 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getMaxRequestRetries();
     }
 
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getReadAheadCount()
+     */
+    @Override
+    public int getReadAheadCount () {
+        return this.delegate.getReadAheadCount();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getWriteBehindCount()
+     */
+    @Override
+    public int getWriteBehindCount () {
+        return this.delegate.getWriteBehindCount();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getSelectorThreads()
+     */
+    @Override
+    public int getSelectorThreads () {
+        return this.delegate.getSelectorThreads();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getLeaseCacheEntries()
+     */
+    @Override
+    public int getLeaseCacheEntries () {
+        return this.delegate.getLeaseCacheEntries();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getLeaseCacheMaxFileSize()
+     */
+    @Override
+    public int getLeaseCacheMaxFileSize () {
+        return this.delegate.getLeaseCacheMaxFileSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getMetadataCacheSize()
+     */
+    @Override
+    public int getMetadataCacheSize () {
+        return this.delegate.getMetadataCacheSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getCopyThreads()
+     */
+    @Override
+    public int getCopyThreads () {
+        return this.delegate.getCopyThreads();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getServerSideCopyConcurrency()
+     */
+    @Override
+    public int getServerSideCopyConcurrency () {
+        return this.delegate.getServerSideCopyConcurrency();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getDeleteBatchSize()
+     */
+    @Override
+    public int getDeleteBatchSize () {
+        return this.delegate.getDeleteBatchSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getDeleteThreads()
+     */
+    @Override
+    public int getDeleteThreads () {
+        return this.delegate.getDeleteThreads();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getListBufferSize()
+     */
+    @Override
+    public int getListBufferSize () {
+        return this.delegate.getListBufferSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isListPrefetch()
+     */
+    @Override
+    public boolean isListPrefetch () {
+        return this.delegate.isListPrefetch();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getWalkThreads()
+     */
+    @Override
+    public int getWalkThreads () {
+        return this.delegate.getWalkThreads();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getTransportsPerServer()
+     */
+    @Override
+    public int getTransportsPerServer () {
+        return this.delegate.getTransportsPerServer();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isEnableSMB3()
+     */
+    @Override
+    public boolean isEnableSMB3 () {
+        return this.delegate.isEnableSMB3();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getMaxChannels()
+     */
+    @Override
+    public int getMaxChannels () {
+        return this.delegate.getMaxChannels();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isEnableCompression()
+     */
+    @Override
+    public boolean isEnableCompression () {
+        return this.delegate.isEnableCompression();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getCompressionThreshold()
+     */
+    @Override
+    public int getCompressionThreshold () {
+        return this.delegate.getCompressionThreshold();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isEncryptData()
+     */
+    @Override
+    public boolean isEncryptData () {
+        return this.delegate.isEncryptData();
+    }
+
 }
@@ -120,6 +120,7 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
 
         this.transactionBufferSize = Config.getInt(p, "jcifs.smb.client.transaction_buf_size", 0xFFFF) - 512;
         this.bufferCacheSize = Config.getInt(p, "jcifs.smb.maxBuffers", 16);
+        this.maximumBufferSize = Config.getInt(p, "jcifs.smb.maxBufferSize", 0xFFFF);
 
         this.smbListSize = Config.getInt(p, "jcifs.smb.client.listSize", 65535);
         this.smbListCount = Config.getInt(p, "jcifs.smb.client.listCount", 200);
@@ -130,6 +131,25 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
 
         this.traceResourceUsage = Config.getBoolean(p, "jcifs.traceResources", false);
         this.strictResourceLifecycle = Config.getBoolean(p, "jcifs.smb.client.strictResourceLifecycle", false);
+        this.readAheadCount = Config.getInt(p, "jcifs.smb.client.readAheadCount", 0);
+        this.writeBehindCount = Config.getInt(p, "jcifs.smb.client.writeBehindCount", 0);
+        this.selectorThreads = Config.getInt(p, "jcifs.smb.client.selectorThreads", 0);
+        this.leaseCacheEntries = Config.getInt(p, "jcifs.smb.client.leaseCacheEntries", 0);
+        this.leaseCacheMaxFileSize = Config.getInt(p, "jcifs.smb.client.leaseCacheMaxFileSize", 65536);
+        this.metadataCacheSize = Config.getInt(p, "jcifs.smb.client.metadataCacheSize", 0);
+        this.copyThreads = Config.getInt(p, "jcifs.smb.client.copyThreads", 1);
+        this.serverSideCopyConcurrency = Config.getInt(p, "jcifs.smb.client.serverSideCopyConcurrency", 4);
+        this.deleteBatchSize = Config.getInt(p, "jcifs.smb.client.deleteBatchSize", 0);
+        this.deleteThreads = Config.getInt(p, "jcifs.smb.client.deleteThreads", 1);
+        this.listBufferSize = Config.getInt(p, "jcifs.smb.client.listBufferSize", 0);
+        this.listPrefetch = Config.getBoolean(p, "jcifs.smb.client.listPrefetch", true);
+        this.walkThreads = Config.getInt(p, "jcifs.smb.client.walkThreads", 4);
+        this.transportsPerServer = Config.getInt(p, "jcifs.smb.client.transportsPerServer", 1);
+        this.enableSMB3 = Config.getBoolean(p, "jcifs.smb.client.enableSMB3", false);
+        this.maxChannels = Config.getInt(p, "jcifs.smb.client.maxChannels", 1);
+        this.enableCompression = Config.getBoolean(p, "jcifs.smb.client.enableCompression", false);
+        this.compressionThreshold = Config.getInt(p, "jcifs.smb.client.compressionThreshold", 4096);
+        this.encryptData = Config.getBoolean(p, "jcifs.smb.client.encryptData", false);
 
         initResolverOrder(p.getProperty("jcifs.resolveOrder"));
         initDisallowCompound(p.getProperty("jcifs.smb.client.disallowCompound"));
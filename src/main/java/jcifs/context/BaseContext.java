@@ -28,8 +28,10 @@ import jcifs.Credentials;
 import jcifs.DfsResolver;
 import jcifs.NameServiceClient;
 import jcifs.SidResolver;
+import jcifs.SmbMetrics;
 import jcifs.SmbPipeResource;
 import jcifs.SmbResource;
+import jcifs.SmbTracer;
 import jcifs.SmbTransportPool;
 import jcifs.netbios.NameServiceClientImpl;
 import jcifs.smb.BufferCacheImpl;
@@ -56,6 +58,8 @@ public class BaseContext extends AbstractCIFSContext {
     private final NameServiceClient nameServiceClient;
     private final BufferCache bufferCache;
     private final SmbTransportPool transportPool;
+    private final SmbMetrics metrics;
+    private final SmbTracer tracer;
     private final CredentialsInternal defaultCredentials;
 
 
@@ -67,7 +71,37 @@ public class BaseContext extends AbstractCIFSContext {
      * 
      */
     public BaseContext ( Configuration config ) {
+        this(config, NoopMetrics.INSTANCE);
+    }
+
+
+    /**
+     * Construct a context reporting metrics
+     * 
+     * @param config
+     *            configuration for the context
+     * @param metrics
+     *            receiver for metrics of this context
+     */
+    public BaseContext ( Configuration config, SmbMetrics metrics ) {
+        this(config, metrics, NoopTracer.INSTANCE);
+    }
+
+
+    /**
+     * Construct a context reporting metrics and tracing spans
+     * 
+     * @param config
+     *            configuration for the context
+     * @param metrics
+     *            receiver for metrics of this context
+     * @param tracer
+     *            receiver for tracing spans of this context
+     */
+    public BaseContext ( Configuration config, SmbMetrics metrics, SmbTracer tracer ) {
         this.config = config;
+        this.metrics = metrics;
+        this.tracer = tracer;
         this.dfs = new DfsImpl(this);
         this.sidResolver = new SIDCacheImpl(this);
         this.urlHandler = new Handler(this);
@@ -119,6 +153,28 @@ public class BaseContext extends AbstractCIFSContext {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.CIFSContext#getMetrics()
+     */
+    @Override
+    public SmbMetrics getMetrics () {
+        return this.metrics;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.CIFSContext#getTracer()
+     */
+    @Override
+    public SmbTracer getTracer () {
+        return this.tracer;
+    }
+
+
     /**
      * {@inheritDoc}
      *
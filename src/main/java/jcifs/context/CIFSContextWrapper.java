@@ -29,8 +29,10 @@ import jcifs.Credentials;
 import jcifs.DfsResolver;
 import jcifs.NameServiceClient;
 import jcifs.SidResolver;
+import jcifs.SmbMetrics;
 import jcifs.SmbPipeResource;
 import jcifs.SmbResource;
+import jcifs.SmbTracer;
 import jcifs.SmbTransportPool;
 import jcifs.smb.Handler;
 import jcifs.smb.SmbFile;
@@ -184,6 +186,18 @@ public class CIFSContextWrapper implements CIFSContext {
     }
 
 
+    @Override
+    public SmbMetrics getMetrics () {
+        return this.delegate.getMetrics();
+    }
+
+
+    @Override
+    public SmbTracer getTracer () {
+        return this.delegate.getTracer();
+    }
+
+
     @Override
     public boolean close () throws CIFSException {
         return this.delegate.close();
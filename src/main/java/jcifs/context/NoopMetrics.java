@@ -0,0 +1,71 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.context;
+
+
+import java.util.function.LongSupplier;
+
+import jcifs.SmbMetrics;
+
+
+/**
+ * Metrics implementation discarding all values
+ * 
+ * @author mbechler
+ *
+ */
+public class NoopMetrics implements SmbMetrics {
+
+    /**
+     * Shared instance
+     */
+    public static final NoopMetrics INSTANCE = new NoopMetrics();
+
+    private static final Counter NOOP_COUNTER = new Counter() {
+
+        @Override
+        public void increment ( long delta ) {}
+    };
+
+    private static final Histogram NOOP_HISTOGRAM = new Histogram() {
+
+        @Override
+        public void record ( long nanos ) {}
+    };
+
+
+    @Override
+    public Counter getCounter ( String name, String server, String command ) {
+        return NOOP_COUNTER;
+    }
+
+
+    @Override
+    public Histogram getHistogram ( String name, String server, String command ) {
+        return NOOP_HISTOGRAM;
+    }
+
+
+    @Override
+    public void registerGauge ( String name, String server, LongSupplier gauge ) {}
+
+
+    @Override
+    public void unregisterGauge ( String name, String server, LongSupplier gauge ) {}
+
+}
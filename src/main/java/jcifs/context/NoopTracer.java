@@ -0,0 +1,71 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.context;
+
+
+import jcifs.SmbTracer;
+
+
+/**
+ * Tracer implementation discarding all spans
+ * 
+ * @author mbechler
+ *
+ */
+public class NoopTracer implements SmbTracer {
+
+    /**
+     * Shared instance
+     */
+    public static final NoopTracer INSTANCE = new NoopTracer();
+
+    private static final Span NOOP_SPAN = new Span() {
+
+        @Override
+        public boolean isRecording () {
+            return false;
+        }
+
+
+        @Override
+        public Span setAttribute ( String key, String value ) {
+            return this;
+        }
+
+
+        @Override
+        public Span setAttribute ( String key, long value ) {
+            return this;
+        }
+
+
+        @Override
+        public void recordException ( Throwable t ) {}
+
+
+        @Override
+        public void end () {}
+    };
+
+
+    @Override
+    public Span startSpan ( String name ) {
+        return NOOP_SPAN;
+    }
+
+}
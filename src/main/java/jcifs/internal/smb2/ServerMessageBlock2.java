@@ -241,6 +241,15 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
     }
 
 
+    /**
+     * @param creditCharge
+     *            the creditCharge to set
+     */
+    public final void setCreditCharge ( int creditCharge ) {
+        this.creditCharge = creditCharge;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -377,6 +386,22 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
     }
 
 
+    /**
+     * Append a request that does not operate on the result of the previous one
+     * 
+     * @param n
+     * @return whether chaining was successful
+     */
+    public boolean chainUnrelated ( ServerMessageBlock2 n ) {
+        if ( this.next != null ) {
+            return this.next.chainUnrelated(n);
+        }
+
+        this.next = n;
+        return true;
+    }
+
+
     protected ServerMessageBlock2 getNext () {
         return this.next;
     }
@@ -678,71 +703,60 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
     }
 
 
-    @Override
-    public String toString () {
-        String c;
-        switch ( this.command ) {
+    /**
+     * @param command
+     * @return name of the command, e.g. <tt>SMB2_READ</tt>
+     */
+    public static String getCommandName ( int command ) {
+        switch ( command ) {
 
         case SMB2_NEGOTIATE:
-            c = "SMB2_NEGOTIATE";
-            break;
+            return "SMB2_NEGOTIATE";
         case SMB2_SESSION_SETUP:
-            c = "SMB2_SESSION_SETUP";
-            break;
+            return "SMB2_SESSION_SETUP";
         case SMB2_LOGOFF:
-            c = "SMB2_LOGOFF";
-            break;
+            return "SMB2_LOGOFF";
         case SMB2_TREE_CONNECT:
-            c = "SMB2_TREE_CONNECT";
-            break;
+            return "SMB2_TREE_CONNECT";
         case SMB2_TREE_DISCONNECT:
-            c = "SMB2_TREE_DISCONNECT";
-            break;
+            return "SMB2_TREE_DISCONNECT";
         case SMB2_CREATE:
-            c = "SMB2_CREATE";
-            break;
+            return "SMB2_CREATE";
         case SMB2_CLOSE:
-            c = "SMB2_CLOSE";
-            break;
+            return "SMB2_CLOSE";
         case SMB2_FLUSH:
-            c = "SMB2_FLUSH";
-            break;
+            return "SMB2_FLUSH";
         case SMB2_READ:
-            c = "SMB2_READ";
-            break;
+            return "SMB2_READ";
         case SMB2_WRITE:
-            c = "SMB2_WRITE";
-            break;
+            return "SMB2_WRITE";
         case SMB2_LOCK:
-            c = "SMB2_LOCK";
-            break;
+            return "SMB2_LOCK";
         case SMB2_IOCTL:
-            c = "SMB2_IOCTL";
-            break;
+            return "SMB2_IOCTL";
         case SMB2_CANCEL:
-            c = "SMB2_CANCEL";
-            break;
+            return "SMB2_CANCEL";
         case SMB2_ECHO:
-            c = "SMB2_ECHO";
-            break;
+            return "SMB2_ECHO";
         case SMB2_QUERY_DIRECTORY:
-            c = "SMB2_QUERY_DIRECTORY";
-            break;
+            return "SMB2_QUERY_DIRECTORY";
         case SMB2_CHANGE_NOTIFY:
-            c = "SMB2_CHANGE_NOTIFY";
-            break;
+            return "SMB2_CHANGE_NOTIFY";
         case SMB2_QUERY_INFO:
-            c = "SMB2_QUERY_INFO";
-            break;
+            return "SMB2_QUERY_INFO";
         case SMB2_SET_INFO:
-            c = "SMB2_SET_INFO";
-            break;
+            return "SMB2_SET_INFO";
         case SMB2_OPLOCK_BREAK:
-            c = "SMB2_OPLOCK_BREAK";
-            break;
+            return "SMB2_OPLOCK_BREAK";
         default:
-            c = "UNKNOWN";
+            return "UNKNOWN";
         }
+    }
+
+
+    @Override
+    public String toString () {
+        String c = getCommandName(this.command);
         String str = this.status == 0 ? "0" : SmbException.getMessageByCode(this.status);
         return new String(
             "command=" + c + ",status=" + str + ",flags=0x" + Hexdump.toHexString(this.flags, 4) + ",mid=" + this.mid + ",wordCount=" + this.wordCount
@@ -35,6 +35,9 @@ public abstract class ServerMessageBlock2Request <T extends ServerMessageBlock2R
         implements CommonServerMessageBlockRequest, Request<T> {
 
     private T response;
+    private boolean retainPayload;
+    private byte[] rawPayload;
+    private Smb2EncryptionContext encryptionContext;
 
 
     /**
@@ -146,6 +149,17 @@ public abstract class ServerMessageBlock2Request <T extends ServerMessageBlock2R
     }
 
 
+    /**
+     * 
+     * @param payloadSize
+     *            the larger of the request and expected response payload sizes
+     * @return the number of credits required for a multi-credit request of the given payload size
+     */
+    protected static int creditCost ( int payloadSize ) {
+        return 1 + Math.max(0, payloadSize - 1) / 65536;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -168,6 +182,7 @@ public abstract class ServerMessageBlock2Request <T extends ServerMessageBlock2R
             return null;
         }
         resp.setDigest(getDigest());
+        resp.setEncryptionRequired(this.encryptionContext != null);
         setResponse(resp);
 
         ServerMessageBlock2 n = getNext();
@@ -202,10 +217,48 @@ public abstract class ServerMessageBlock2Request <T extends ServerMessageBlock2R
         if ( exp != actual ) {
             throw new IllegalStateException(String.format("Wrong size calculation have %d expect %d", exp, actual));
         }
+        if ( this.retainPayload ) {
+            byte[] payload = new byte[actual];
+            System.arraycopy(dst, getHeaderStart(), payload, 0, actual);
+            this.rawPayload = payload;
+        }
         return len;
     }
 
 
+    /**
+     * Keep a copy of the encoded (and signed) message
+     */
+    public void retainPayload () {
+        this.retainPayload = true;
+    }
+
+
+    /**
+     * @return the encoded message, if retained
+     */
+    public byte[] getRawPayload () {
+        return this.rawPayload;
+    }
+
+
+    /**
+     * @return the context to encrypt this message (including any compounded ones) with, null if sent unencrypted
+     */
+    public Smb2EncryptionContext getEncryptionContext () {
+        return this.encryptionContext;
+    }
+
+
+    /**
+     * @param encryptionContext
+     *            the context to encrypt this message (including any compounded ones) with, null to send unencrypted
+     */
+    public void setEncryptionContext ( Smb2EncryptionContext encryptionContext ) {
+        this.encryptionContext = encryptionContext;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -18,6 +18,8 @@
 package jcifs.internal.smb2;
 
 
+import java.util.concurrent.Future;
+
 import jcifs.Configuration;
 import jcifs.internal.CommonServerMessageBlockRequest;
 import jcifs.internal.CommonServerMessageBlockResponse;
@@ -37,7 +39,12 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
     private boolean retainPayload;
     private byte[] rawPayload;
     private boolean verifyFailed;
+    private boolean encryptionRequired;
+    private volatile long sendTime;
+    private volatile long receiveTime;
     private Exception exception;
+    private Runnable completionHandler;
+    private Future<?> expirationTask;
 
 
     /**
@@ -111,6 +118,7 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
         synchronized ( this ) {
             notifyAll();
         }
+        complete();
     }
 
 
@@ -127,6 +135,60 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
         synchronized ( this ) {
             notifyAll();
         }
+        complete();
+    }
+
+
+    /**
+     * Set a handler to run once the response has been received or failed
+     * 
+     * The handler is run exactly once, by the thread receiving the response or immediately if the response already is
+     * complete. It must not block, in particular it must not wait for other responses on the same connection.
+     * 
+     * @param handler
+     */
+    public final void setCompletionHandler ( Runnable handler ) {
+        synchronized ( this ) {
+            if ( !this.received ) {
+                this.completionHandler = handler;
+                return;
+            }
+        }
+        handler.run();
+    }
+
+
+    /**
+     * Set the task failing this response if it is not received in time, it is cancelled once the response is complete
+     * 
+     * @param task
+     */
+    public final void setExpirationTask ( Future<?> task ) {
+        synchronized ( this ) {
+            if ( !this.received ) {
+                this.expirationTask = task;
+                return;
+            }
+        }
+        task.cancel(false);
+    }
+
+
+    private void complete () {
+        Runnable handler;
+        Future<?> task;
+        synchronized ( this ) {
+            handler = this.completionHandler;
+            this.completionHandler = null;
+            task = this.expirationTask;
+            this.expirationTask = null;
+        }
+        if ( task != null ) {
+            task.cancel(false);
+        }
+        if ( handler != null ) {
+            handler.run();
+        }
     }
 
 
@@ -221,6 +283,58 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
     }
 
 
+    /**
+     * @return whether the response must be received encrypted, as the request was
+     */
+    public boolean isEncryptionRequired () {
+        return this.encryptionRequired;
+    }
+
+
+    /**
+     * @param encryptionRequired
+     *            whether the response must be received encrypted
+     */
+    public void setEncryptionRequired ( boolean encryptionRequired ) {
+        this.encryptionRequired = encryptionRequired;
+    }
+
+
+    /**
+     * @return time the request was sent, as returned by {@link System#nanoTime()}, 0 if not sent
+     */
+    public long getSendTime () {
+        return this.sendTime;
+    }
+
+
+    /**
+     * @param sendTime
+     *            time the request was sent, as returned by {@link System#nanoTime()}
+     */
+    public void setSendTime ( long sendTime ) {
+        this.sendTime = sendTime;
+    }
+
+
+    /**
+     * @return time the response was received, before decoding, as returned by {@link System#nanoTime()}, 0 if not
+     *         received
+     */
+    public long getReceiveTime () {
+        return this.receiveTime;
+    }
+
+
+    /**
+     * @param receiveTime
+     *            time the response was received, as returned by {@link System#nanoTime()}
+     */
+    public void setReceiveTime ( long receiveTime ) {
+        this.receiveTime = receiveTime;
+    }
+
+
     /**
      * {@inheritDoc}
      *
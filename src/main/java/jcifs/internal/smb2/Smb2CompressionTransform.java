@@ -0,0 +1,184 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2;
+
+
+import java.util.zip.DataFormatException;
+
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.nego.CompressionNegotiateContext;
+import jcifs.internal.util.SMBUtil;
+import jcifs.util.LZ77;
+
+
+/**
+ * SMB 3.1.1 compression transform (unchained)
+ * 
+ * A compressed message consists of the transform header, a number of bytes that are sent uncompressed and the
+ * compressed remainder of the message.
+ * 
+ * @author mbechler
+ *
+ */
+public final class Smb2CompressionTransform {
+
+    /**
+     * 0xFC 'S' 'M' 'B'
+     */
+    public static final int PROTOCOL_ID = 0x424D53FC;
+
+    /**
+     * Length of the transform header
+     */
+    public static final int HEADER_LENGTH = 16;
+
+    /**
+     * Size of the sample that is compressed first to detect incompressible data
+     */
+    private static final int PROBE_SIZE = 4096;
+
+
+    /**
+     * 
+     */
+    private Smb2CompressionTransform () {}
+
+
+    /**
+     * @param buffer
+     * @param off
+     * @return whether the message at the given offset is compressed
+     */
+    public static boolean isCompressed ( byte[] buffer, int off ) {
+        return SMBUtil.readInt4(buffer, off) == PROTOCOL_ID;
+    }
+
+
+    /**
+     * Compress a message, the uncompressed prefix usually covers the headers
+     * 
+     * Data that does not compress to at most 7/8 of it's original size is not compressed.
+     * 
+     * @param algorithm
+     * @param msg
+     * @param off
+     * @param len
+     * @param uncompressed
+     *            number of bytes at the beginning of the message that are not compressed
+     * @param dst
+     *            needs to be able to hold at least <tt>len</tt> bytes
+     * @param dstOff
+     * @return length of the compressed message, -1 if the message should be sent uncompressed
+     */
+    public static int compress ( int algorithm, byte[] msg, int off, int len, int uncompressed, byte[] dst, int dstOff ) {
+        if ( algorithm != CompressionNegotiateContext.COMPRESSION_LZ77 || uncompressed >= len ) {
+            return -1;
+        }
+
+        int dataOff = off + uncompressed;
+        int dataLen = len - uncompressed;
+        int compOff = dstOff + HEADER_LENGTH + uncompressed;
+
+        if ( dataLen > PROBE_SIZE ) {
+            // cheap check on a sample to avoid running over the whole buffer for incompressible data
+            if ( LZ77.compress(msg, dataOff, PROBE_SIZE, dst, compOff, PROBE_SIZE - PROBE_SIZE / 8) < 0 ) {
+                return -1;
+            }
+        }
+
+        // the transform header needs to fit as well, for small messages it outweighs the 1/8 saving
+        int maxLen = Math.min(dataLen - dataLen / 8, dataLen - HEADER_LENGTH);
+        if ( maxLen <= 0 ) {
+            return -1;
+        }
+
+        int clen = LZ77.compress(msg, dataOff, dataLen, dst, compOff, maxLen);
+        if ( clen < 0 ) {
+            return -1;
+        }
+
+        SMBUtil.writeInt4(PROTOCOL_ID, dst, dstOff);
+        SMBUtil.writeInt4(dataLen, dst, dstOff + 4);
+        SMBUtil.writeInt2(algorithm, dst, dstOff + 8);
+        SMBUtil.writeInt2(0, dst, dstOff + 10); // Flags
+        SMBUtil.writeInt4(uncompressed, dst, dstOff + 12);
+        System.arraycopy(msg, off, dst, dstOff + HEADER_LENGTH, uncompressed);
+        return HEADER_LENGTH + uncompressed + clen;
+    }
+
+
+    /**
+     * @param frame
+     * @param off
+     * @param len
+     * @return the size of the original message
+     * @throws SMBProtocolDecodingException
+     */
+    public static int getOriginalSize ( byte[] frame, int off, int len ) throws SMBProtocolDecodingException {
+        if ( len < HEADER_LENGTH || !isCompressed(frame, off) ) {
+            throw new SMBProtocolDecodingException("Not a compressed message");
+        }
+        long size = ( SMBUtil.readInt4(frame, off + 4) & 0xFFFFFFFFL ) + ( SMBUtil.readInt4(frame, off + 12) & 0xFFFFFFFFL );
+        if ( size > Integer.MAX_VALUE ) {
+            throw new SMBProtocolDecodingException("Invalid compressed message size");
+        }
+        return (int) size;
+    }
+
+
+    /**
+     * @param frame
+     * @param off
+     * @param len
+     * @param dst
+     *            needs to be able to hold {@link #getOriginalSize(byte[], int, int)} bytes
+     * @param dstOff
+     * @return the length of the decompressed message
+     * @throws SMBProtocolDecodingException
+     */
+    public static int decompress ( byte[] frame, int off, int len, byte[] dst, int dstOff ) throws SMBProtocolDecodingException {
+        int size = getOriginalSize(frame, off, len);
+        int segmentSize = SMBUtil.readInt4(frame, off + 4);
+        int algorithm = SMBUtil.readInt2(frame, off + 8);
+        int flags = SMBUtil.readInt2(frame, off + 10);
+        int uncompressed = SMBUtil.readInt4(frame, off + 12);
+
+        if ( flags != 0 ) {
+            throw new SMBProtocolDecodingException("Chained compression was not negotiated");
+        }
+        if ( uncompressed < 0 || uncompressed > len - HEADER_LENGTH ) {
+            throw new SMBProtocolDecodingException("Invalid uncompressed data size");
+        }
+        if ( algorithm != CompressionNegotiateContext.COMPRESSION_LZ77 ) {
+            throw new SMBProtocolDecodingException("Unsupported compression algorithm " + algorithm);
+        }
+
+        System.arraycopy(frame, off + HEADER_LENGTH, dst, dstOff, uncompressed);
+        int dataOff = off + HEADER_LENGTH + uncompressed;
+        try {
+            int dlen = LZ77.decompress(frame, dataOff, len - HEADER_LENGTH - uncompressed, dst, dstOff + uncompressed, segmentSize);
+            if ( dlen != segmentSize ) {
+                throw new SMBProtocolDecodingException("Decompressed size does not match");
+            }
+        }
+        catch ( DataFormatException e ) {
+            throw new SMBProtocolDecodingException("Failed to decompress message", e);
+        }
+        return size;
+    }
+}
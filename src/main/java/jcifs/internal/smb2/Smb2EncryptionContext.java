@@ -0,0 +1,282 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2;
+
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import jcifs.CIFSUnsupportedCryptoException;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.nego.EncryptionNegotiateContext;
+import jcifs.internal.util.SMBUtil;
+import jcifs.util.Crypto;
+
+
+/**
+ * SMB3 message encryption (transform header)
+ * 
+ * Messages are encrypted and decrypted in place, the transform header directly precedes the message in the buffer.
+ * Cipher instances are kept per thread and initialized for each message, so that any number of threads can encrypt
+ * or decrypt concurrently.
+ * 
+ * @author mbechler
+ *
+ */
+public class Smb2EncryptionContext {
+
+    /**
+     * Transform header protocol id
+     */
+    public static final int PROTOCOL_ID = 0x424D53FD;
+
+    /**
+     * Transform header length
+     */
+    public static final int HEADER_LENGTH = 52;
+
+    /**
+     * Authentication tag length
+     */
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * Additional space required in a buffer holding a message to encrypt
+     */
+    public static final int OVERHEAD = HEADER_LENGTH + TAG_LENGTH;
+
+    private static final int SIGNATURE_OFFSET = 4;
+    private static final int NONCE_OFFSET = 20;
+    private static final int ORIGINAL_SIZE_OFFSET = 36;
+    private static final int FLAGS_OFFSET = 42;
+    private static final int SESSION_ID_OFFSET = 44;
+
+    // nonce, original message size, flags and session id are authenticated
+    private static final int AAD_LENGTH = HEADER_LENGTH - NONCE_OFFSET;
+
+    private static final int FLAGS_ENCRYPTED = 0x1;
+
+    private static final ThreadLocal<Cipher> CCM = new ThreadLocal<Cipher>() {
+
+        @Override
+        protected Cipher initialValue () {
+            return Crypto.getAESCCM();
+        }
+    };
+
+    private static final ThreadLocal<Cipher> GCM = new ThreadLocal<Cipher>() {
+
+        @Override
+        protected Cipher initialValue () {
+            return Crypto.getAESGCM();
+        }
+    };
+
+    private final int cipher;
+    private final long sessionId;
+    private final SecretKeySpec encryptionKey;
+    private final SecretKeySpec decryptionKey;
+    private final AtomicLong nonceCounter = new AtomicLong();
+
+
+    /**
+     * @param cipher
+     *            negotiated cipher, one of the {@link EncryptionNegotiateContext} constants
+     * @param dialect
+     * @param sessionId
+     * @param sessionKey
+     *            session key, the full session key for the 256 bit ciphers
+     * @param preauthIntegrityHash
+     *            preauthentication integrity hash of the session, required for SMB 3.1.1
+     * @throws GeneralSecurityException
+     */
+    public Smb2EncryptionContext ( int cipher, int dialect, long sessionId, byte[] sessionKey, byte[] preauthIntegrityHash )
+            throws GeneralSecurityException {
+        int keyLength;
+        switch ( cipher ) {
+        case EncryptionNegotiateContext.CIPHER_AES128_CCM:
+        case EncryptionNegotiateContext.CIPHER_AES128_GCM:
+            keyLength = 16;
+            break;
+        case EncryptionNegotiateContext.CIPHER_AES256_CCM:
+        case EncryptionNegotiateContext.CIPHER_AES256_GCM:
+            keyLength = 32;
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported cipher " + cipher);
+        }
+        this.cipher = cipher;
+        this.sessionId = sessionId;
+        this.encryptionKey = new SecretKeySpec(
+            Smb3KeyDerivation.deriveEncryptionKey(dialect, sessionKey, preauthIntegrityHash, keyLength),
+            "AES");
+        this.decryptionKey = new SecretKeySpec(
+            Smb3KeyDerivation.deriveDecryptionKey(dialect, sessionKey, preauthIntegrityHash, keyLength),
+            "AES");
+    }
+
+
+    /**
+     * @return the cipher in use
+     */
+    public int getCipher () {
+        return this.cipher;
+    }
+
+
+    /**
+     * @return the session id
+     */
+    public long getSessionId () {
+        return this.sessionId;
+    }
+
+
+    /**
+     * @param buffer
+     * @param bufferIndex
+     * @return whether the data at the given position starts with a transform header
+     */
+    public static boolean isEncrypted ( byte[] buffer, int bufferIndex ) {
+        return SMBUtil.readInt4(buffer, bufferIndex) == PROTOCOL_ID;
+    }
+
+
+    /**
+     * 
+     * @param buffer
+     * @param bufferIndex
+     *            start of the transform header
+     * @return the session id the message is encrypted for
+     */
+    public static long getSessionId ( byte[] buffer, int bufferIndex ) {
+        return SMBUtil.readInt8(buffer, bufferIndex + SESSION_ID_OFFSET);
+    }
+
+
+    private boolean isCCM () {
+        return this.cipher == EncryptionNegotiateContext.CIPHER_AES128_CCM || this.cipher == EncryptionNegotiateContext.CIPHER_AES256_CCM;
+    }
+
+
+    private Cipher getCipherInstance () {
+        return isCCM() ? CCM.get() : GCM.get();
+    }
+
+
+    private int getNonceLength () {
+        return isCCM() ? 11 : 12;
+    }
+
+
+    /**
+     * Encrypts a message in place
+     * 
+     * @param buffer
+     *            buffer holding the message at <tt>bufferIndex + HEADER_LENGTH</tt>, needs to provide
+     *            {@link #TAG_LENGTH} bytes of additional space after the message
+     * @param bufferIndex
+     *            start of the transform header
+     * @param length
+     *            message length
+     * @return length of the encrypted message, including the transform header
+     */
+    public int encrypt ( byte[] buffer, int bufferIndex, int length ) {
+        SMBUtil.writeInt4(PROTOCOL_ID, buffer, bufferIndex);
+        for ( int i = SIGNATURE_OFFSET; i < NONCE_OFFSET + 16; i++ ) {
+            buffer[ bufferIndex + i ] = 0;
+        }
+        // a counter never repeats a nonce for this key
+        SMBUtil.writeInt8(this.nonceCounter.incrementAndGet(), buffer, bufferIndex + NONCE_OFFSET);
+        SMBUtil.writeInt4(length, buffer, bufferIndex + ORIGINAL_SIZE_OFFSET);
+        SMBUtil.writeInt2(0, buffer, bufferIndex + ORIGINAL_SIZE_OFFSET + 4);
+        SMBUtil.writeInt2(FLAGS_ENCRYPTED, buffer, bufferIndex + FLAGS_OFFSET);
+        SMBUtil.writeInt8(this.sessionId, buffer, bufferIndex + SESSION_ID_OFFSET);
+
+        int msgStart = bufferIndex + HEADER_LENGTH;
+        try {
+            Cipher c = getCipherInstance();
+            c.init(
+                Cipher.ENCRYPT_MODE,
+                this.encryptionKey,
+                new GCMParameterSpec(TAG_LENGTH * 8, buffer, bufferIndex + NONCE_OFFSET, getNonceLength()));
+            c.updateAAD(buffer, bufferIndex + NONCE_OFFSET, AAD_LENGTH);
+            // output is the encrypted message followed by the tag
+            c.doFinal(buffer, msgStart, length, buffer, msgStart);
+        }
+        catch ( GeneralSecurityException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+        System.arraycopy(buffer, msgStart + length, buffer, bufferIndex + SIGNATURE_OFFSET, TAG_LENGTH);
+        return HEADER_LENGTH + length;
+    }
+
+
+    /**
+     * Decrypts a message in place
+     * 
+     * @param buffer
+     * @param bufferIndex
+     *            start of the transform header
+     * @param length
+     *            length including the transform header
+     * @return length of the decrypted message, which starts at <tt>bufferIndex + HEADER_LENGTH</tt>
+     * @throws SMBProtocolDecodingException
+     *             if the message is malformed or fails authentication
+     */
+    public int decrypt ( byte[] buffer, int bufferIndex, int length ) throws SMBProtocolDecodingException {
+        if ( length < HEADER_LENGTH || !isEncrypted(buffer, bufferIndex) ) {
+            throw new SMBProtocolDecodingException("Not an encrypted message");
+        }
+        int msgLength = SMBUtil.readInt4(buffer, bufferIndex + ORIGINAL_SIZE_OFFSET);
+        if ( msgLength != length - HEADER_LENGTH || SMBUtil.readInt2(buffer, bufferIndex + FLAGS_OFFSET) != FLAGS_ENCRYPTED ) {
+            throw new SMBProtocolDecodingException("Invalid transform header");
+        }
+        if ( getSessionId(buffer, bufferIndex) != this.sessionId ) {
+            throw new SMBProtocolDecodingException("Message encrypted for another session");
+        }
+
+        int msgStart = bufferIndex + HEADER_LENGTH;
+        try {
+            Cipher c = getCipherInstance();
+            c.init(
+                Cipher.DECRYPT_MODE,
+                this.decryptionKey,
+                new GCMParameterSpec(TAG_LENGTH * 8, buffer, bufferIndex + NONCE_OFFSET, getNonceLength()));
+            c.updateAAD(buffer, bufferIndex + NONCE_OFFSET, AAD_LENGTH);
+            // the tag is taken from the header, so that the plaintext replaces the ciphertext
+            int n = c.update(buffer, msgStart, msgLength, buffer, msgStart);
+            n += c.doFinal(buffer, bufferIndex + SIGNATURE_OFFSET, TAG_LENGTH, buffer, msgStart + n);
+            if ( n != msgLength ) {
+                throw new SMBProtocolDecodingException("Decrypted size mismatch");
+            }
+        }
+        catch ( AEADBadTagException e ) {
+            throw new SMBProtocolDecodingException("Message authentication failed", e);
+        }
+        catch ( GeneralSecurityException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+        return msgLength;
+    }
+}
@@ -19,17 +19,27 @@ package jcifs.internal.smb2;
 
 
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import jcifs.CIFSUnsupportedCryptoException;
 import jcifs.internal.CommonServerMessageBlock;
 import jcifs.internal.SMBSigningDigest;
+import jcifs.internal.smb2.nego.SigningNegotiateContext;
 import jcifs.internal.util.SMBUtil;
+import jcifs.util.Crypto;
 
 
 /**
+ * SMB2/SMB3 message signing
+ * 
+ * Signing and verification may be called concurrently, each call uses a MAC instance taken from a pool that grows
+ * to the number of threads signing in parallel.
+ * 
  * @author mbechler
  *
  */
@@ -40,32 +50,182 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      */
     private static final int SIGNATURE_OFFSET = 48;
     private static final int SIGNATURE_LENGTH = 16;
-    private final Mac digest;
+
+    private final int algorithm;
+    private final SecretKeySpec key;
+    private final Queue<SigningContext> pool = new ConcurrentLinkedQueue<>();
+
+
+    /**
+     * @param sessionKey
+     *            session key, the signing key is derived from it for SMB3 dialects
+     * @param dialect
+     * @throws GeneralSecurityException
+     * 
+     */
+    public Smb2SigningDigest ( byte[] sessionKey, int dialect ) throws GeneralSecurityException {
+        this(sessionKey, dialect, null);
+    }
+
+
+    /**
+     * @param sessionKey
+     *            session key, the signing key is derived from it for SMB3 dialects
+     * @param dialect
+     * @param preauthIntegrityHash
+     *            preauthentication integrity hash, required for SMB 3.1.1
+     * @throws GeneralSecurityException
+     * 
+     */
+    public Smb2SigningDigest ( byte[] sessionKey, int dialect, byte[] preauthIntegrityHash ) throws GeneralSecurityException {
+        this(sessionKey, dialect, preauthIntegrityHash, -1);
+    }
 
 
     /**
-     * @param macSigningKey
+     * @param sessionKey
+     *            session key, the signing key is derived from it for SMB3 dialects
      * @param dialect
+     * @param preauthIntegrityHash
+     *            preauthentication integrity hash, required for SMB 3.1.1
+     * @param signingAlgorithm
+     *            signing algorithm negotiated for SMB 3.1.1, -1 to use the dialect's default
      * @throws GeneralSecurityException
      * 
      */
-    public Smb2SigningDigest ( byte[] macSigningKey, int dialect ) throws GeneralSecurityException {
-        Mac m;
+    public Smb2SigningDigest ( byte[] sessionKey, int dialect, byte[] preauthIntegrityHash, int signingAlgorithm )
+            throws GeneralSecurityException {
         switch ( dialect ) {
         case Smb2Constants.SMB2_DIALECT_0202:
         case Smb2Constants.SMB2_DIALECT_0210:
-            m = Mac.getInstance("HmacSHA256");
+            this.algorithm = SigningNegotiateContext.SIGNING_HMAC_SHA256;
+            this.key = new SecretKeySpec(sessionKey, "HmacSHA256");
             break;
         case Smb2Constants.SMB2_DIALECT_0300:
         case Smb2Constants.SMB2_DIALECT_0302:
+            this.algorithm = SigningNegotiateContext.SIGNING_AES_CMAC;
+            this.key = new SecretKeySpec(Smb3KeyDerivation.deriveSigningKey(dialect, sessionKey), "AES");
+            break;
         case Smb2Constants.SMB2_DIALECT_0311:
-            throw new UnsupportedOperationException("SMB3 not yet supported");
-
+            if ( signingAlgorithm == SigningNegotiateContext.SIGNING_AES_GMAC ) {
+                this.algorithm = SigningNegotiateContext.SIGNING_AES_GMAC;
+            }
+            else if ( signingAlgorithm == -1 || signingAlgorithm == SigningNegotiateContext.SIGNING_AES_CMAC ) {
+                this.algorithm = SigningNegotiateContext.SIGNING_AES_CMAC;
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported signing algorithm " + signingAlgorithm);
+            }
+            this.key = new SecretKeySpec(Smb3KeyDerivation.deriveSigningKey(dialect, sessionKey, preauthIntegrityHash), "AES");
+            break;
         default:
             throw new IllegalArgumentException("Unknown dialect");
         }
-        m.init(new SecretKeySpec(macSigningKey, "HMAC"));
-        this.digest = m;
+
+        // fail early if the algorithm is not available
+        this.pool.offer(new SigningContext(createMac()));
+    }
+
+
+    /**
+     * @return the signing algorithm in use
+     */
+    public int getAlgorithm () {
+        return this.algorithm;
+    }
+
+
+    private Mac createMac () throws GeneralSecurityException {
+        switch ( this.algorithm ) {
+        case SigningNegotiateContext.SIGNING_HMAC_SHA256:
+            Mac hmac = Mac.getInstance("HmacSHA256");
+            hmac.init(this.key);
+            return hmac;
+        case SigningNegotiateContext.SIGNING_AES_CMAC:
+            return Crypto.getAESCMAC(this.key.getEncoded());
+        default:
+            // initialized with a per-message nonce
+            return Crypto.getAESGMAC();
+        }
+    }
+
+
+    private SigningContext acquire () {
+        SigningContext ctx = this.pool.poll();
+        if ( ctx != null ) {
+            return ctx;
+        }
+        try {
+            return new SigningContext(createMac());
+        }
+        catch ( GeneralSecurityException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+    }
+
+
+    /**
+     * Computes the signature over the message, the signature field needs to be zeroed
+     * 
+     * @return the context's output buffer holding the signature in the first 16 bytes
+     */
+    private byte[] compute ( SigningContext ctx, byte[] data, int offset, int length ) {
+        Mac m = ctx.mac;
+        try {
+            if ( this.algorithm == SigningNegotiateContext.SIGNING_AES_GMAC ) {
+                initNonce(ctx, data, offset);
+            }
+            else {
+                m.reset();
+            }
+            m.update(data, offset, length);
+            m.doFinal(ctx.out, 0);
+        }
+        catch (
+            GeneralSecurityException |
+            IllegalStateException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+        return ctx.out;
+    }
+
+
+    /**
+     * Initializes the context's GMAC with the nonce for the message
+     * 
+     * The 12 byte nonce is the message id followed by a little endian 32 bit value of which only the role (bit 0) and
+     * cancel (bit 1) flags are used, its last byte is always zero.
+     * 
+     * The GCM implementation rejects being initialized twice in a row with the same key and nonce, as that would be
+     * fatal for encryption. For a MAC it is fine and happens whenever the same message is signed or verified again,
+     * e.g. when a request is resent. In that case the MAC is first initialized with a nonce that never occurs in
+     * messages, having the last byte set.
+     */
+    private void initNonce ( SigningContext ctx, byte[] data, int offset ) throws GeneralSecurityException {
+        int flags = SMBUtil.readInt4(data, offset + 16);
+        int cmd = SMBUtil.readInt2(data, offset + 12);
+        byte bits = (byte) ( ( ( flags & ServerMessageBlock2.SMB2_FLAGS_SERVER_TO_REDIR ) != 0 ? 0x1 : 0 )
+                | ( cmd == ServerMessageBlock2.SMB2_CANCEL ? 0x2 : 0 ) );
+        byte[] nonce = ctx.nonce;
+        if ( ctx.used && nonce[ 8 ] == bits && equals(data, offset + 24, nonce, 8) ) {
+            nonce[ 11 ] = 1;
+            ctx.mac.init(this.key, new IvParameterSpec(nonce));
+            nonce[ 11 ] = 0;
+        }
+        System.arraycopy(data, offset + 24, nonce, 0, 8);
+        nonce[ 8 ] = bits;
+        ctx.mac.init(this.key, new IvParameterSpec(nonce));
+        ctx.used = true;
+    }
+
+
+    private static boolean equals ( byte[] a, int off, byte[] b, int len ) {
+        for ( int i = 0; i < len; i++ ) {
+            if ( a[ off + i ] != b[ i ] ) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -76,9 +236,7 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      *      jcifs.internal.CommonServerMessageBlock)
      */
     @Override
-    public synchronized void sign ( byte[] data, int offset, int length, CommonServerMessageBlock request, CommonServerMessageBlock response ) {
-        this.digest.reset();
-
+    public void sign ( byte[] data, int offset, int length, CommonServerMessageBlock request, CommonServerMessageBlock response ) {
         // zero out signature field
         int index = offset + SIGNATURE_OFFSET;
         for ( int i = 0; i < SIGNATURE_LENGTH; i++ )
@@ -89,10 +247,14 @@ public class Smb2SigningDigest implements SMBSigningDigest {
         int flags = oldFlags | ServerMessageBlock2.SMB2_FLAGS_SIGNED;
         SMBUtil.writeInt4(flags, data, offset + 16);
 
-        this.digest.update(data, offset, length);
-
-        byte[] sig = this.digest.doFinal();
-        System.arraycopy(sig, 0, data, offset + SIGNATURE_OFFSET, SIGNATURE_LENGTH);
+        SigningContext ctx = acquire();
+        try {
+            byte[] sig = compute(ctx, data, offset, length);
+            System.arraycopy(sig, 0, data, index, SIGNATURE_LENGTH);
+        }
+        finally {
+            this.pool.offer(ctx);
+        }
     }
 
 
@@ -103,23 +265,41 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      * @see jcifs.internal.SMBSigningDigest#verify(byte[], int, int, jcifs.internal.CommonServerMessageBlock)
      */
     @Override
-    public synchronized boolean verify ( byte[] data, int offset, int length, CommonServerMessageBlock msg ) {
-        this.digest.reset();
-        byte[] sig = new byte[SIGNATURE_LENGTH];
-        System.arraycopy(data, offset + SIGNATURE_OFFSET, sig, 0, SIGNATURE_LENGTH);
-
-        int index = offset + SIGNATURE_OFFSET;
-        for ( int i = 0; i < SIGNATURE_LENGTH; i++ )
-            data[ index + i ] = 0;
+    public boolean verify ( byte[] data, int offset, int length, CommonServerMessageBlock msg ) {
+        SigningContext ctx = acquire();
+        try {
+            int index = offset + SIGNATURE_OFFSET;
+            System.arraycopy(data, index, ctx.sig, 0, SIGNATURE_LENGTH);
+            for ( int i = 0; i < SIGNATURE_LENGTH; i++ )
+                data[ index + i ] = 0;
 
-        this.digest.update(data, offset, length);
+            byte[] cmp = compute(ctx, data, offset, length);
 
-        byte[] cmp = new byte[SIGNATURE_LENGTH];
-        System.arraycopy(this.digest.doFinal(), 0, cmp, 0, SIGNATURE_LENGTH);
-        if ( !MessageDigest.isEqual(sig, cmp) ) {
-            return true;
+            // constant time comparison
+            int diff = 0;
+            for ( int i = 0; i < SIGNATURE_LENGTH; i++ ) {
+                diff |= ctx.sig[ i ] ^ cmp[ i ];
+            }
+            return diff != 0;
+        }
+        finally {
+            this.pool.offer(ctx);
         }
-        return false;
     }
 
+
+    private static final class SigningContext {
+
+        final Mac mac;
+        final byte[] out;
+        final byte[] sig = new byte[SIGNATURE_LENGTH];
+        final byte[] nonce = new byte[12];
+        boolean used;
+
+
+        SigningContext ( Mac mac ) {
+            this.mac = mac;
+            this.out = new byte[Math.max(SIGNATURE_LENGTH, mac.getMacLength())];
+        }
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * SMB3 key derivation (SP800-108 counter mode, HMAC-SHA256)
+ * 
+ * @author mbechler
+ *
+ */
+public final class Smb3KeyDerivation {
+
+    private static final byte[] SIGNING_LABEL_300 = cstr("SMB2AESCMAC");
+    private static final byte[] SIGNING_CONTEXT_300 = cstr("SmbSign");
+    private static final byte[] SIGNING_LABEL_311 = cstr("SMBSigningKey");
+    private static final byte[] ENCRYPTION_LABEL_300 = cstr("SMB2AESCCM");
+    private static final byte[] ENCRYPTION_CONTEXT_300 = cstr("ServerIn ");
+    private static final byte[] DECRYPTION_CONTEXT_300 = cstr("ServerOut");
+    private static final byte[] ENCRYPTION_LABEL_311 = cstr("SMBC2SCipherKey");
+    private static final byte[] DECRYPTION_LABEL_311 = cstr("SMBS2CCipherKey");
+
+
+    /**
+     * 
+     */
+    private Smb3KeyDerivation () {}
+
+
+    /**
+     * @param dialect
+     * @param sessionKey
+     * @return the derived signing key
+     * @throws GeneralSecurityException
+     */
+    public static byte[] deriveSigningKey ( int dialect, byte[] sessionKey ) throws GeneralSecurityException {
+        return deriveSigningKey(dialect, sessionKey, null);
+    }
+
+
+    /**
+     * @param dialect
+     * @param sessionKey
+     * @param preauthIntegrityHash
+     *            preauthentication integrity hash of the session (or channel), required for SMB 3.1.1
+     * @return the derived signing key
+     * @throws GeneralSecurityException
+     */
+    public static byte[] deriveSigningKey ( int dialect, byte[] sessionKey, byte[] preauthIntegrityHash ) throws GeneralSecurityException {
+        switch ( dialect ) {
+        case Smb2Constants.SMB2_DIALECT_0300:
+        case Smb2Constants.SMB2_DIALECT_0302:
+            return derive(sessionKey, SIGNING_LABEL_300, SIGNING_CONTEXT_300);
+        case Smb2Constants.SMB2_DIALECT_0311:
+            if ( preauthIntegrityHash == null ) {
+                throw new IllegalArgumentException("SMB 3.1.1 key derivation requires the preauth integrity hash");
+            }
+            return derive(sessionKey, SIGNING_LABEL_311, preauthIntegrityHash);
+        default:
+            throw new IllegalArgumentException("No SMB3 key derivation for dialect " + dialect);
+        }
+    }
+
+
+    /**
+     * @param dialect
+     * @param sessionKey
+     * @param preauthIntegrityHash
+     *            preauthentication integrity hash of the session, required for SMB 3.1.1
+     * @param keyLength
+     *            key length in bytes, 16 or 32
+     * @return the derived key for encrypting messages sent to the server
+     * @throws GeneralSecurityException
+     */
+    public static byte[] deriveEncryptionKey ( int dialect, byte[] sessionKey, byte[] preauthIntegrityHash, int keyLength )
+            throws GeneralSecurityException {
+        return deriveCipherKey(dialect, sessionKey, preauthIntegrityHash, keyLength, ENCRYPTION_CONTEXT_300, ENCRYPTION_LABEL_311);
+    }
+
+
+    /**
+     * @param dialect
+     * @param sessionKey
+     * @param preauthIntegrityHash
+     *            preauthentication integrity hash of the session, required for SMB 3.1.1
+     * @param keyLength
+     *            key length in bytes, 16 or 32
+     * @return the derived key for decrypting messages received from the server
+     * @throws GeneralSecurityException
+     */
+    public static byte[] deriveDecryptionKey ( int dialect, byte[] sessionKey, byte[] preauthIntegrityHash, int keyLength )
+            throws GeneralSecurityException {
+        return deriveCipherKey(dialect, sessionKey, preauthIntegrityHash, keyLength, DECRYPTION_CONTEXT_300, DECRYPTION_LABEL_311);
+    }
+
+
+    private static byte[] deriveCipherKey ( int dialect, byte[] sessionKey, byte[] preauthIntegrityHash, int keyLength, byte[] context300,
+            byte[] label311 ) throws GeneralSecurityException {
+        switch ( dialect ) {
+        case Smb2Constants.SMB2_DIALECT_0300:
+        case Smb2Constants.SMB2_DIALECT_0302:
+            return derive(sessionKey, ENCRYPTION_LABEL_300, context300, keyLength);
+        case Smb2Constants.SMB2_DIALECT_0311:
+            if ( preauthIntegrityHash == null ) {
+                throw new IllegalArgumentException("SMB 3.1.1 key derivation requires the preauth integrity hash");
+            }
+            return derive(sessionKey, label311, preauthIntegrityHash, keyLength);
+        default:
+            throw new IllegalArgumentException("No SMB3 key derivation for dialect " + dialect);
+        }
+    }
+
+
+    /**
+     * @param sessionKey
+     * @param label
+     *            including the terminating null byte
+     * @param context
+     * @return 128 bit derived key
+     * @throws GeneralSecurityException
+     */
+    static byte[] derive ( byte[] sessionKey, byte[] label, byte[] context ) throws GeneralSecurityException {
+        return derive(sessionKey, label, context, 16);
+    }
+
+
+    /**
+     * @param sessionKey
+     * @param label
+     *            including the terminating null byte
+     * @param context
+     * @param keyLength
+     *            key length in bytes, at most 32
+     * @return derived key
+     * @throws GeneralSecurityException
+     */
+    static byte[] derive ( byte[] sessionKey, byte[] label, byte[] context, int keyLength ) throws GeneralSecurityException {
+        Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(sessionKey, "HmacSHA256"));
+        // i = 1
+        hmac.update(new byte[] {
+            0, 0, 0, 1
+        });
+        hmac.update(label);
+        hmac.update((byte) 0);
+        hmac.update(context);
+        // L = key length in bits
+        int l = keyLength * 8;
+        hmac.update(new byte[] {
+            0, 0, (byte) ( l >> 8 ), (byte) l
+        });
+        byte[] key = new byte[keyLength];
+        System.arraycopy(hmac.doFinal(), 0, key, 0, keyLength);
+        return key;
+    }
+
+
+    private static byte[] cstr ( String s ) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        byte[] r = new byte[b.length + 1];
+        System.arraycopy(b, 0, r, 0, b.length);
+        return r;
+    }
+
+}
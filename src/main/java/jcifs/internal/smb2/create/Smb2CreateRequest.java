@@ -424,6 +424,15 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
     }
 
 
+    /**
+     * @param createContexts
+     *            the create contexts to send
+     */
+    public void setCreateContexts ( CreateContextRequest... createContexts ) {
+        this.createContexts = createContexts;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -440,7 +449,7 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
         size += size8(nameLen);
         if ( this.createContexts != null ) {
             for ( CreateContextRequest ccr : this.createContexts ) {
-                size += size8(ccr.size());
+                size += size8(16 + ccr.getName().length) + size8(ccr.size());
             }
         }
         return size8(size);
@@ -511,7 +520,7 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
         else {
             SMBUtil.writeInt4(dstIndex - getHeaderStart(), dst, createContextOffsetOffset);
         }
-        int totalCreateContextLength = 0;
+        int createContextsStart = dstIndex;
         if ( this.createContexts != null ) {
             int lastStart = -1;
             for ( CreateContextRequest createContext : this.createContexts ) {
@@ -520,7 +529,7 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
                 SMBUtil.writeInt4(0, dst, structStart); // Next
                 if ( lastStart > 0 ) {
                     // set next pointer of previous CREATE_CONTEXT
-                    SMBUtil.writeInt4(structStart - dstIndex, dst, lastStart);
+                    SMBUtil.writeInt4(structStart - lastStart, dst, lastStart);
                 }
 
                 dstIndex += 4;
@@ -544,13 +553,11 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
                 SMBUtil.writeInt4(len, dst, dataLengthOffset);
                 dstIndex += len;
 
-                int pad = pad8(dstIndex);
-                totalCreateContextLength += len + pad;
-                dstIndex += pad;
+                dstIndex += pad8(dstIndex);
                 lastStart = structStart;
             }
         }
-        SMBUtil.writeInt4(totalCreateContextLength, dst, createContextLengthOffset);
+        SMBUtil.writeInt4(dstIndex - createContextsStart, dst, createContextLengthOffset);
         return dstIndex - start;
     }
 
@@ -18,6 +18,8 @@
 package jcifs.internal.smb2.create;
 
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -30,6 +32,8 @@ import jcifs.internal.SMBProtocolDecodingException;
 import jcifs.internal.SmbBasicFileInfo;
 import jcifs.internal.smb2.RequestWithFileId;
 import jcifs.internal.smb2.ServerMessageBlock2Response;
+import jcifs.internal.smb2.lease.Smb2LeaseCreateContextRequest;
+import jcifs.internal.smb2.lease.Smb2LeaseCreateContextResponse;
 import jcifs.internal.util.SMBUtil;
 import jcifs.util.Hexdump;
 
@@ -42,6 +46,8 @@ public class Smb2CreateResponse extends ServerMessageBlock2Response implements S
 
     private static final Logger log = LoggerFactory.getLogger(Smb2CreateResponse.class);
 
+    private static final byte[] LEASE_CONTEXT_NAME = Smb2LeaseCreateContextRequest.CONTEXT_NAME.getBytes(StandardCharsets.US_ASCII);
+
     private byte oplockLevel;
     private byte openFlags;
     private int createAction;
@@ -332,6 +338,9 @@ public class Smb2CreateResponse extends ServerMessageBlock2Response implements S
      * @return
      */
     private static CreateContextResponse createContext ( byte[] nameBytes ) {
+        if ( Arrays.equals(nameBytes, LEASE_CONTEXT_NAME) ) {
+            return new Smb2LeaseCreateContextResponse();
+        }
         return null;
     }
 
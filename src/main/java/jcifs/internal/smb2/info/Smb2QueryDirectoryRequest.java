@@ -150,6 +150,15 @@ public class Smb2QueryDirectoryRequest extends ServerMessageBlock2Request<Smb2Qu
     }
 
 
+    /**
+     * @param outputBufferLength
+     *            the maximum size of the returned directory entries
+     */
+    public void setOutputBufferLength ( int outputBufferLength ) {
+        this.outputBufferLength = outputBufferLength;
+    }
+
+
     /**
      * @param fileName
      *            the fileName to set
@@ -171,6 +180,17 @@ public class Smb2QueryDirectoryRequest extends ServerMessageBlock2Request<Smb2Qu
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#getCreditCost()
+     */
+    @Override
+    public int getCreditCost () {
+        return creditCost(this.outputBufferLength);
+    }
+
+
     /**
      * {@inheritDoc}
      *
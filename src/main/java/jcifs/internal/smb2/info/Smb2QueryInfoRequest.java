@@ -131,6 +131,17 @@ public class Smb2QueryInfoRequest extends ServerMessageBlock2Request<Smb2QueryIn
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#getCreditCost()
+     */
+    @Override
+    public int getCreditCost () {
+        return creditCost(this.outputBufferLength);
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -36,6 +36,10 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
      * 
      */
     public static byte SMB2_READFLAG_READ_UNBUFFERED = 0x1;
+    /**
+     * 
+     */
+    public static byte SMB2_READFLAG_REQUEST_COMPRESSED = 0x4;
     /**
      * 
      */
@@ -101,6 +105,14 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
     }
 
 
+    /**
+     * @return the readFlags
+     */
+    public byte getReadFlags () {
+        return this.readFlags;
+    }
+
+
     /**
      * @param readFlags
      *            the readFlags to set
@@ -110,6 +122,14 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
     }
 
 
+    /**
+     * @return the readLength
+     */
+    public int getReadLength () {
+        return this.readLength;
+    }
+
+
     /**
      * @param readLength
      *            the readLength to set
@@ -146,6 +166,17 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#getCreditCost()
+     */
+    @Override
+    public int getCreditCost () {
+        return creditCost(this.readLength);
+    }
+
+
     /**
      * {@inheritDoc}
      *
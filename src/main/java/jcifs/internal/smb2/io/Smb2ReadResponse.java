@@ -40,6 +40,7 @@ public class Smb2ReadResponse extends ServerMessageBlock2Response {
     private int dataLength;
     private byte[] outputBuffer;
     private int outputBufferOffset;
+    private boolean directRead;
 
 
     /**
@@ -70,6 +71,32 @@ public class Smb2ReadResponse extends ServerMessageBlock2Response {
     }
 
 
+    /**
+     * @return the buffer the read data is placed into
+     */
+    public byte[] getOutputBuffer () {
+        return this.outputBuffer;
+    }
+
+
+    /**
+     * @return the offset in the output buffer at which the read data starts
+     */
+    public int getOutputBufferOffset () {
+        return this.outputBufferOffset;
+    }
+
+
+    /**
+     * @param directRead
+     *            whether the data has already been read into the output buffer by the transport, decoding will then
+     *            skip copying the data
+     */
+    public void setDirectRead ( boolean directRead ) {
+        this.directRead = directRead;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -110,7 +137,9 @@ public class Smb2ReadResponse extends ServerMessageBlock2Response {
         if ( this.dataLength + this.outputBufferOffset > this.outputBuffer.length ) {
             throw new SMBProtocolDecodingException("Buffer to small for read response");
         }
-        System.arraycopy(buffer, dataStart, this.outputBuffer, this.outputBufferOffset, this.dataLength);
+        if ( !this.directRead ) {
+            System.arraycopy(buffer, dataStart, this.outputBuffer, this.outputBufferOffset, this.dataLength);
+        }
         bufferIndex = Math.max(bufferIndex, dataStart + this.dataLength);
         return bufferIndex - start;
     }
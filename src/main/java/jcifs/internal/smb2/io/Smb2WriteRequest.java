@@ -46,6 +46,7 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
     private int channel;
     private int remainingBytes;
     private int writeFlags;
+    private boolean sendDataDirect;
 
 
     /**
@@ -88,6 +89,40 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
     }
 
 
+    /**
+     * @return the data buffer
+     */
+    public byte[] getData () {
+        return this.data;
+    }
+
+
+    /**
+     * @return the offset of the data in the data buffer
+     */
+    public int getDataOffset () {
+        return this.dataOffset;
+    }
+
+
+    /**
+     * @return the data length
+     */
+    public int getDataLength () {
+        return this.dataLength;
+    }
+
+
+    /**
+     * @param sendDataDirect
+     *            whether to leave out the data when encoding, the transport then needs to write it directly after the
+     *            encoded message head
+     */
+    public void setSendDataDirect ( boolean sendDataDirect ) {
+        this.sendDataDirect = sendDataDirect;
+    }
+
+
     /**
      * @param remainingBytes
      *            the remainingBytes to set
@@ -115,6 +150,17 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#getCreditCost()
+     */
+    @Override
+    public int getCreditCost () {
+        return creditCost(this.dataLength);
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -157,6 +203,11 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
 
         SMBUtil.writeInt2(dstIndex - getHeaderStart(), dst, dataOffsetOffset);
 
+        if ( this.sendDataDirect ) {
+            dstIndex += this.dataLength;
+            return dstIndex - start;
+        }
+
         if ( dstIndex + this.dataLength > dst.length ) {
             throw new IllegalArgumentException(
                 String.format("Data exceeds buffer size ( remain buffer: %d data length: %d)", dst.length - dstIndex, this.dataLength));
@@ -0,0 +1,133 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.ioctl;
+
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * Network interface reported by FSCTL_QUERY_NETWORK_INTERFACE_INFO
+ * 
+ * @author mbechler
+ *
+ */
+public class NetworkInterfaceInfo {
+
+    /**
+     * Interface supports receive side scaling
+     */
+    public static final int RSS_CAPABLE = 0x1;
+
+    /**
+     * Interface supports RDMA
+     */
+    public static final int RDMA_CAPABLE = 0x2;
+
+    private static final int AF_INET = 0x2;
+    private static final int AF_INET6 = 0x17;
+
+    private int ifIndex;
+    private int capability;
+    private long linkSpeed;
+    private InetAddress address;
+
+
+    /**
+     * @return the interface index
+     */
+    public int getIfIndex () {
+        return this.ifIndex;
+    }
+
+
+    /**
+     * @return the interface capabilities
+     */
+    public int getCapability () {
+        return this.capability;
+    }
+
+
+    /**
+     * @return the link speed in bits per second
+     */
+    public long getLinkSpeed () {
+        return this.linkSpeed;
+    }
+
+
+    /**
+     * @return the interface address, null if of an unsupported family
+     */
+    public InetAddress getAddress () {
+        return this.address;
+    }
+
+
+    /**
+     * @param buffer
+     * @param bufferIndex
+     * @param len
+     * @return offset of the next entry, 0 if this is the last
+     * @throws SMBProtocolDecodingException
+     */
+    int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        if ( len < 152 ) {
+            throw new SMBProtocolDecodingException("Invalid network interface info");
+        }
+        int next = SMBUtil.readInt4(buffer, bufferIndex);
+        this.ifIndex = SMBUtil.readInt4(buffer, bufferIndex + 4);
+        this.capability = SMBUtil.readInt4(buffer, bufferIndex + 8);
+        // 4 bytes reserved
+        this.linkSpeed = SMBUtil.readInt8(buffer, bufferIndex + 16);
+
+        // SOCKADDR_STORAGE, port and addresses in network byte order
+        int addrIndex = bufferIndex + 24;
+        int family = SMBUtil.readInt2(buffer, addrIndex);
+        try {
+            if ( family == AF_INET ) {
+                byte[] addr = new byte[4];
+                System.arraycopy(buffer, addrIndex + 4, addr, 0, 4);
+                this.address = InetAddress.getByAddress(addr);
+            }
+            else if ( family == AF_INET6 ) {
+                byte[] addr = new byte[16];
+                System.arraycopy(buffer, addrIndex + 8, addr, 0, 16);
+                int scopeId = SMBUtil.readInt4(buffer, addrIndex + 24);
+                this.address = scopeId != 0 ? Inet6Address.getByAddress(null, addr, scopeId) : InetAddress.getByAddress(addr);
+            }
+        }
+        catch ( UnknownHostException e ) {
+            throw new SMBProtocolDecodingException("Invalid interface address", e);
+        }
+        return next;
+    }
+
+
+    @Override
+    public String toString () {
+        return "NetworkInterfaceInfo[ifIndex=" + this.ifIndex + ",capability=" + this.capability + ",linkSpeed=" + this.linkSpeed + ",address="
+                + this.address + "]";
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.ioctl;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jcifs.Decodable;
+import jcifs.internal.SMBProtocolDecodingException;
+
+
+/**
+ * @author mbechler
+ *
+ */
+public class QueryNetworkInterfaceInfoResponse implements Decodable {
+
+    private List<NetworkInterfaceInfo> interfaces = new ArrayList<>();
+
+
+    /**
+     * @return the interfaces reported by the server
+     */
+    public List<NetworkInterfaceInfo> getInterfaces () {
+        return this.interfaces;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        int end = bufferIndex + len;
+        while ( bufferIndex < end ) {
+            NetworkInterfaceInfo info = new NetworkInterfaceInfo();
+            int next = info.decode(buffer, bufferIndex, end - bufferIndex);
+            this.interfaces.add(info);
+            if ( next <= 0 ) {
+                break;
+            }
+            bufferIndex += next;
+        }
+        return len;
+    }
+
+}
@@ -211,6 +211,17 @@ public class Smb2IoctlRequest extends ServerMessageBlock2Request<Smb2IoctlRespon
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#getCreditCost()
+     */
+    @Override
+    public int getCreditCost () {
+        return creditCost(Math.max(this.inputData != null ? this.inputData.size() : 0, this.maxOutputResponse));
+    }
+
+
     /**
      * {@inheritDoc}
      *
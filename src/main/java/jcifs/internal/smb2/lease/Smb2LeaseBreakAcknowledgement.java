@@ -0,0 +1,108 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.lease;
+
+
+import jcifs.CIFSContext;
+import jcifs.Configuration;
+import jcifs.internal.smb2.ServerMessageBlock2Request;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * @author mbechler
+ *
+ */
+public class Smb2LeaseBreakAcknowledgement extends ServerMessageBlock2Request<Smb2LeaseBreakAcknowledgementResponse> {
+
+    private final Smb2LeaseKey leaseKey;
+    private final int leaseState;
+
+
+    /**
+     * @param config
+     * @param leaseKey
+     * @param leaseState
+     *            the lease state the client keeps
+     */
+    public Smb2LeaseBreakAcknowledgement ( Configuration config, Smb2LeaseKey leaseKey, int leaseState ) {
+        super(config, SMB2_OPLOCK_BREAK);
+        this.leaseKey = leaseKey;
+        this.leaseState = leaseState;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#createResponse(jcifs.CIFSContext,
+     *      jcifs.internal.smb2.ServerMessageBlock2Request)
+     */
+    @Override
+    protected Smb2LeaseBreakAcknowledgementResponse createResponse ( CIFSContext tc,
+            ServerMessageBlock2Request<Smb2LeaseBreakAcknowledgementResponse> req ) {
+        return new Smb2LeaseBreakAcknowledgementResponse(tc.getConfig());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.CommonServerMessageBlockRequest#size()
+     */
+    @Override
+    public int size () {
+        return size8(Smb2Constants.SMB2_HEADER_LENGTH + 36);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2#writeBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int writeBytesWireFormat ( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+        SMBUtil.writeInt2(36, dst, dstIndex);
+        SMBUtil.writeInt2(0, dst, dstIndex + 2); // Reserved
+        dstIndex += 4;
+        SMBUtil.writeInt4(0, dst, dstIndex); // Flags
+        dstIndex += 4;
+        System.arraycopy(this.leaseKey.getKey(), 0, dst, dstIndex, 16);
+        dstIndex += 16;
+        SMBUtil.writeInt4(this.leaseState, dst, dstIndex);
+        dstIndex += 4;
+        SMBUtil.writeInt8(0, dst, dstIndex); // LeaseDuration
+        dstIndex += 8;
+        return dstIndex - start;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2#readBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int readBytesWireFormat ( byte[] buffer, int bufferIndex ) {
+        return 0;
+    }
+
+}
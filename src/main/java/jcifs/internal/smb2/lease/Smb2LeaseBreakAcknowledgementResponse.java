@@ -0,0 +1,78 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.lease;
+
+
+import jcifs.Configuration;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.ServerMessageBlock2Response;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * @author mbechler
+ *
+ */
+public class Smb2LeaseBreakAcknowledgementResponse extends ServerMessageBlock2Response {
+
+    private int leaseState;
+
+
+    /**
+     * @param config
+     */
+    public Smb2LeaseBreakAcknowledgementResponse ( Configuration config ) {
+        super(config);
+    }
+
+
+    /**
+     * @return the lease state
+     */
+    public int getLeaseState () {
+        return this.leaseState;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2#writeBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int writeBytesWireFormat ( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2#readBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int readBytesWireFormat ( byte[] buffer, int bufferIndex ) throws SMBProtocolDecodingException {
+        int structureSize = SMBUtil.readInt2(buffer, bufferIndex);
+        if ( structureSize != 36 ) {
+            throw new SMBProtocolDecodingException("Expected structureSize = 36");
+        }
+        this.leaseState = SMBUtil.readInt4(buffer, bufferIndex + 24);
+        return 36;
+    }
+
+}
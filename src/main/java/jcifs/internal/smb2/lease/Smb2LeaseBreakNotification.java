@@ -0,0 +1,142 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.lease;
+
+
+import jcifs.Configuration;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.ServerMessageBlock2Response;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * Unsolicited break notification sent by the server
+ * 
+ * Oplock break notifications use the same command but are not expected as oplocks are never requested,
+ * {@link #getLeaseKey()} is <tt>null</tt> for those.
+ * 
+ * @author mbechler
+ *
+ */
+public class Smb2LeaseBreakNotification extends ServerMessageBlock2Response {
+
+    /**
+     * 
+     */
+    public static final int SMB2_NOTIFY_BREAK_LEASE_FLAG_ACK_REQUIRED = 0x1;
+
+    /**
+     * Command code used by break notifications
+     */
+    public static final int BREAK_COMMAND = SMB2_OPLOCK_BREAK;
+
+    private int breakFlags;
+    private Smb2LeaseKey leaseKey;
+    private int currentLeaseState;
+    private int newLeaseState;
+
+
+    /**
+     * @param config
+     */
+    public Smb2LeaseBreakNotification ( Configuration config ) {
+        super(config);
+    }
+
+
+    /**
+     * @return the lease key, <tt>null</tt> if this is an oplock break
+     */
+    public Smb2LeaseKey getLeaseKey () {
+        return this.leaseKey;
+    }
+
+
+    /**
+     * @return whether the break needs to be acknowledged
+     */
+    public boolean isAckRequired () {
+        return ( this.breakFlags & SMB2_NOTIFY_BREAK_LEASE_FLAG_ACK_REQUIRED ) != 0;
+    }
+
+
+    /**
+     * @return the lease state before the break
+     */
+    public int getCurrentLeaseState () {
+        return this.currentLeaseState;
+    }
+
+
+    /**
+     * @return the lease state after the break
+     */
+    public int getNewLeaseState () {
+        return this.newLeaseState;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2#writeBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int writeBytesWireFormat ( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2#readBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int readBytesWireFormat ( byte[] buffer, int bufferIndex ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        int structureSize = SMBUtil.readInt2(buffer, bufferIndex);
+        if ( structureSize == 24 ) {
+            // oplock break
+            return 24;
+        }
+        else if ( structureSize != 44 ) {
+            throw new SMBProtocolDecodingException("Expected structureSize = 44");
+        }
+        bufferIndex += 4; // StructureSize, NewEpoch
+        this.breakFlags = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        byte[] key = new byte[16];
+        System.arraycopy(buffer, bufferIndex, key, 0, 16);
+        this.leaseKey = new Smb2LeaseKey(key);
+        bufferIndex += 16;
+        this.currentLeaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.newLeaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        bufferIndex += 12; // BreakReason, AccessMaskHint, ShareMaskHint
+        return bufferIndex - start;
+    }
+
+
+    @Override
+    public String toString () {
+        return "[" + super.toString() + ",leaseKey=" + this.leaseKey + ",currentState=" + this.currentLeaseState + ",newState="
+                + this.newLeaseState + "]";
+    }
+}
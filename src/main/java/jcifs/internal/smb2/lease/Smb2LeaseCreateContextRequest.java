@@ -0,0 +1,97 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.lease;
+
+
+import java.nio.charset.StandardCharsets;
+
+import jcifs.internal.smb2.create.CreateContextRequest;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * SMB2_CREATE_REQUEST_LEASE create context (SMB 2.1 format)
+ * 
+ * @author mbechler
+ *
+ */
+public class Smb2LeaseCreateContextRequest implements CreateContextRequest {
+
+    /**
+     * 
+     */
+    public static final String CONTEXT_NAME = "RqLs";
+
+    private static final byte[] NAME_BYTES = CONTEXT_NAME.getBytes(StandardCharsets.US_ASCII);
+
+    private final Smb2LeaseKey leaseKey;
+    private final int leaseState;
+
+
+    /**
+     * @param leaseKey
+     * @param leaseState
+     *            requested lease state
+     */
+    public Smb2LeaseCreateContextRequest ( Smb2LeaseKey leaseKey, int leaseState ) {
+        this.leaseKey = leaseKey;
+        this.leaseState = leaseState;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.create.CreateContextRequest#getName()
+     */
+    @Override
+    public byte[] getName () {
+        return NAME_BYTES;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#size()
+     */
+    @Override
+    public int size () {
+        return 32;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode ( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+        System.arraycopy(this.leaseKey.getKey(), 0, dst, dstIndex, 16);
+        dstIndex += 16;
+        SMBUtil.writeInt4(this.leaseState, dst, dstIndex);
+        dstIndex += 4;
+        SMBUtil.writeInt4(0, dst, dstIndex); // LeaseFlags
+        dstIndex += 4;
+        SMBUtil.writeInt8(0, dst, dstIndex); // LeaseDuration
+        dstIndex += 8;
+        return dstIndex - start;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.lease;
+
+
+import java.nio.charset.StandardCharsets;
+
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.create.CreateContextResponse;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * SMB2_CREATE_RESPONSE_LEASE create context
+ * 
+ * @author mbechler
+ *
+ */
+public class Smb2LeaseCreateContextResponse implements CreateContextResponse {
+
+    private Smb2LeaseKey leaseKey;
+    private int leaseState;
+    private int leaseFlags;
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.create.CreateContextResponse#getName()
+     */
+    @Override
+    public byte[] getName () {
+        return Smb2LeaseCreateContextRequest.CONTEXT_NAME.getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    /**
+     * @return the lease key
+     */
+    public Smb2LeaseKey getLeaseKey () {
+        return this.leaseKey;
+    }
+
+
+    /**
+     * @return the granted lease state
+     */
+    public int getLeaseState () {
+        return this.leaseState;
+    }
+
+
+    /**
+     * @return the lease flags
+     */
+    public int getLeaseFlags () {
+        return this.leaseFlags;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        if ( len < 32 ) {
+            throw new SMBProtocolDecodingException("Lease context too short");
+        }
+        int start = bufferIndex;
+        byte[] key = new byte[16];
+        System.arraycopy(buffer, bufferIndex, key, 0, 16);
+        this.leaseKey = new Smb2LeaseKey(key);
+        bufferIndex += 16;
+        this.leaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.leaseFlags = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        bufferIndex += 8; // LeaseDuration
+        return bufferIndex - start;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.lease;
+
+
+import java.util.Arrays;
+
+import jcifs.util.Hexdump;
+
+
+/**
+ * Client chosen key identifying a lease
+ * 
+ * @author mbechler
+ *
+ */
+public final class Smb2LeaseKey {
+
+    private final byte[] key;
+
+
+    /**
+     * @param key
+     *            16 byte lease key
+     */
+    public Smb2LeaseKey ( byte[] key ) {
+        if ( key == null || key.length != 16 ) {
+            throw new IllegalArgumentException("Lease key must be 16 bytes");
+        }
+        this.key = key;
+    }
+
+
+    /**
+     * @return the key bytes
+     */
+    public byte[] getKey () {
+        return this.key;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode () {
+        return Arrays.hashCode(this.key);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals ( Object obj ) {
+        if ( ! ( obj instanceof Smb2LeaseKey ) ) {
+            return false;
+        }
+        return Arrays.equals(this.key, ( (Smb2LeaseKey) obj ).key);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString () {
+        return Hexdump.toHexString(this.key);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.nego;
+
+
+import jcifs.Configuration;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * SMB 3.1.1 compression capabilities negotiate context
+ * 
+ * @author mbechler
+ *
+ */
+public class CompressionNegotiateContext implements NegotiateContextRequest, NegotiateContextResponse {
+
+    /**
+     * Context type
+     */
+    public static final int NEGO_CTX_COMPRESSION_TYPE = 0x3;
+
+    /**
+     * No compression
+     */
+    public static final int COMPRESSION_NONE = 0x0;
+
+    /**
+     * LZNT1
+     */
+    public static final int COMPRESSION_LZNT1 = 0x1;
+
+    /**
+     * Plain LZ77
+     */
+    public static final int COMPRESSION_LZ77 = 0x2;
+
+    /**
+     * LZ77+Huffman
+     */
+    public static final int COMPRESSION_LZ77_HUFFMAN = 0x3;
+
+    /**
+     * Pattern scanning (only valid for chained compression)
+     */
+    public static final int COMPRESSION_PATTERN_V1 = 0x4;
+
+    private int[] compressionAlgos;
+    private int flags;
+
+
+    /**
+     * 
+     * @param config
+     * @param compressionAlgos
+     */
+    public CompressionNegotiateContext ( Configuration config, int[] compressionAlgos ) {
+        this.compressionAlgos = compressionAlgos;
+    }
+
+
+    /**
+     * 
+     */
+    public CompressionNegotiateContext () {}
+
+
+    /**
+     * @return the compressionAlgos
+     */
+    public int[] getCompressionAlgos () {
+        return this.compressionAlgos;
+    }
+
+
+    /**
+     * @return the flags
+     */
+    public int getFlags () {
+        return this.flags;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.nego.NegotiateContextRequest#getContextType()
+     */
+    @Override
+    public int getContextType () {
+        return NEGO_CTX_COMPRESSION_TYPE;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode ( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        SMBUtil.writeInt2(this.compressionAlgos != null ? this.compressionAlgos.length : 0, dst, dstIndex);
+        SMBUtil.writeInt2(0, dst, dstIndex + 2); // Padding
+        SMBUtil.writeInt4(this.flags, dst, dstIndex + 4);
+        dstIndex += 8;
+
+        if ( this.compressionAlgos != null ) {
+            for ( int algo : this.compressionAlgos ) {
+                SMBUtil.writeInt2(algo, dst, dstIndex);
+                dstIndex += 2;
+            }
+        }
+        return dstIndex - start;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        int nalgos = SMBUtil.readInt2(buffer, bufferIndex);
+        this.flags = SMBUtil.readInt4(buffer, bufferIndex + 4);
+        bufferIndex += 8;
+
+        if ( 8 + 2 * nalgos > len ) {
+            throw new SMBProtocolDecodingException("Invalid compression context");
+        }
+
+        this.compressionAlgos = new int[nalgos];
+        for ( int i = 0; i < nalgos; i++ ) {
+            this.compressionAlgos[ i ] = SMBUtil.readInt2(buffer, bufferIndex);
+            bufferIndex += 2;
+        }
+        return bufferIndex - start;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#size()
+     */
+    @Override
+    public int size () {
+        return 8 + ( this.compressionAlgos != null ? 2 * this.compressionAlgos.length : 0 );
+    }
+
+}
@@ -27,4 +27,9 @@ import jcifs.Decodable;
  */
 public interface NegotiateContextResponse extends Decodable {
 
+    /**
+     * 
+     * @return context type
+     */
+    int getContextType ();
 }
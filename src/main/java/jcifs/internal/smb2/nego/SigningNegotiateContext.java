@@ -0,0 +1,148 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.nego;
+
+
+import jcifs.Configuration;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * SMB 3.1.1 signing capabilities negotiate context
+ * 
+ * @author mbechler
+ *
+ */
+public class SigningNegotiateContext implements NegotiateContextRequest, NegotiateContextResponse {
+
+    /**
+     * Context type
+     */
+    public static final int NEGO_CTX_SIGNING_TYPE = 0x8;
+
+    /**
+     * HMAC-SHA256
+     */
+    public static final int SIGNING_HMAC_SHA256 = 0x0;
+
+    /**
+     * AES-CMAC
+     */
+    public static final int SIGNING_AES_CMAC = 0x1;
+
+    /**
+     * AES-GMAC
+     */
+    public static final int SIGNING_AES_GMAC = 0x2;
+
+    private int[] signingAlgos;
+
+
+    /**
+     * 
+     * @param config
+     * @param signingAlgos
+     *            in order of preference
+     */
+    public SigningNegotiateContext ( Configuration config, int[] signingAlgos ) {
+        this.signingAlgos = signingAlgos;
+    }
+
+
+    /**
+     * 
+     */
+    public SigningNegotiateContext () {}
+
+
+    /**
+     * @return the signingAlgos
+     */
+    public int[] getSigningAlgos () {
+        return this.signingAlgos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.smb2.nego.NegotiateContextRequest#getContextType()
+     */
+    @Override
+    public int getContextType () {
+        return NEGO_CTX_SIGNING_TYPE;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode ( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+        SMBUtil.writeInt2(this.signingAlgos != null ? this.signingAlgos.length : 0, dst, dstIndex);
+        dstIndex += 2;
+
+        if ( this.signingAlgos != null ) {
+            for ( int algo : this.signingAlgos ) {
+                SMBUtil.writeInt2(algo, dst, dstIndex);
+                dstIndex += 2;
+            }
+        }
+        return dstIndex - start;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        int nalgos = SMBUtil.readInt2(buffer, bufferIndex);
+        bufferIndex += 2;
+
+        if ( 2 + 2 * nalgos > len ) {
+            throw new SMBProtocolDecodingException("Invalid signing context");
+        }
+
+        this.signingAlgos = new int[nalgos];
+        for ( int i = 0; i < nalgos; i++ ) {
+            this.signingAlgos[ i ] = SMBUtil.readInt2(buffer, bufferIndex);
+            bufferIndex += 2;
+        }
+        return bufferIndex - start;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#size()
+     */
+    @Override
+    public int size () {
+        return 2 + ( this.signingAlgos != null ? 2 * this.signingAlgos.length : 0 );
+    }
+
+}
@@ -18,6 +18,9 @@
 package jcifs.internal.smb2.nego;
 
 
+import java.util.ArrayList;
+import java.util.List;
+
 import jcifs.CIFSContext;
 import jcifs.Configuration;
 import jcifs.internal.smb2.ServerMessageBlock2Request;
@@ -48,9 +51,55 @@ public class Smb2NegotiateRequest extends ServerMessageBlock2Request<Smb2Negotia
         if ( !config.isDfsDisabled() ) {
             this.capabilities = Smb2Constants.SMB2_GLOBAL_CAP_DFS;
         }
-        this.dialects = new int[] {
-            Smb2Constants.SMB2_DIALECT_0202 // , Smb2Constants.SMB2_DIALECT_0210
-        };
+        if ( config.getLeaseCacheEntries() > 0 ) {
+            this.capabilities |= Smb2Constants.SMB2_GLOBAL_CAP_LEASING;
+        }
+        if ( config.isEnableSMB3() ) {
+            this.dialects = new int[] {
+                Smb2Constants.SMB2_DIALECT_0202, Smb2Constants.SMB2_DIALECT_0210, Smb2Constants.SMB2_DIALECT_0300, Smb2Constants.SMB2_DIALECT_0302,
+                Smb2Constants.SMB2_DIALECT_0311
+            };
+            this.capabilities |= Smb2Constants.SMB2_GLOBAL_CAP_ENCRYPTION;
+            if ( config.getMaxChannels() > 1 ) {
+                this.capabilities |= Smb2Constants.SMB2_GLOBAL_CAP_MULTI_CHANNEL;
+            }
+
+            byte[] salt = new byte[32];
+            config.getRandom().nextBytes(salt);
+            PreauthIntegrityNegotiateContext preauth = new PreauthIntegrityNegotiateContext(config, new int[] {
+                PreauthIntegrityNegotiateContext.HASH_ALGO_SHA512
+            }, salt);
+
+            List<NegotiateContextRequest> contexts = new ArrayList<>();
+            contexts.add(preauth);
+            contexts.add(new SigningNegotiateContext(config, new int[] {
+                SigningNegotiateContext.SIGNING_AES_GMAC, SigningNegotiateContext.SIGNING_AES_CMAC
+            }));
+            contexts.add(new EncryptionNegotiateContext(config, new int[] {
+                EncryptionNegotiateContext.CIPHER_AES128_GCM, EncryptionNegotiateContext.CIPHER_AES128_CCM,
+                EncryptionNegotiateContext.CIPHER_AES256_GCM
+            }));
+            if ( config.isEnableCompression() ) {
+                contexts.add(new CompressionNegotiateContext(config, new int[] {
+                    CompressionNegotiateContext.COMPRESSION_LZ77
+                }));
+            }
+            this.negotiateContexts = contexts.toArray(new NegotiateContextRequest[contexts.size()]);
+        }
+        else {
+            this.dialects = new int[] {
+                Smb2Constants.SMB2_DIALECT_0202, Smb2Constants.SMB2_DIALECT_0210
+            };
+        }
+    }
+
+
+    /**
+     * @param clientGuid
+     *            the client identifier, needs to be the same for all connections of a multichannel session
+     */
+    public void setClientGuid ( byte[] clientGuid ) {
+        this.clientGuid = clientGuid;
     }
 
 
@@ -76,7 +125,7 @@ public class Smb2NegotiateRequest extends ServerMessageBlock2Request<Smb2Negotia
         int size = Smb2Constants.SMB2_HEADER_LENGTH + 36 + size8(2 * this.dialects.length, 4);
         if ( this.negotiateContexts != null ) {
             for ( NegotiateContextRequest ncr : this.negotiateContexts ) {
-                size += size8(ncr.size());
+                size += size8(8 + ncr.size());
             }
         }
         return size8(size);
@@ -112,7 +161,8 @@ public class Smb2NegotiateRequest extends ServerMessageBlock2Request<Smb2Negotia
         }
         else {
             negotitateContextOffsetOffset = dstIndex;
-            SMBUtil.writeInt2(this.negotiateContexts.length, dst, dstIndex);
+            SMBUtil.writeInt2(this.negotiateContexts.length, dst, dstIndex + 4);
+            SMBUtil.writeInt2(0, dst, dstIndex + 6); // Reserved2
         }
         dstIndex += 8;
 
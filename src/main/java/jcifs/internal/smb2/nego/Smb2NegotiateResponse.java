@@ -28,8 +28,10 @@ import jcifs.Configuration;
 import jcifs.internal.CommonServerMessageBlock;
 import jcifs.internal.SMBProtocolDecodingException;
 import jcifs.internal.SmbNegotiationResponse;
+import jcifs.internal.smb2.ServerMessageBlock2Request;
 import jcifs.internal.smb2.ServerMessageBlock2Response;
 import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.Smb2EncryptionContext;
 import jcifs.internal.smb2.io.Smb2ReadResponse;
 import jcifs.internal.smb2.io.Smb2WriteRequest;
 import jcifs.internal.util.SMBUtil;
@@ -200,7 +202,44 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
             return false;
         }
 
-        int maxBufferSize = tc.getConfig().getTransactionBufferSize();
+        if ( getDialectRevision() == Smb2Constants.SMB2_DIALECT_0311 ) {
+            PreauthIntegrityNegotiateContext preauth = getPreauthIntegrityContext();
+            if ( preauth == null || preauth.getHashAlgos().length != 1
+                    || preauth.getHashAlgos()[ 0 ] != PreauthIntegrityNegotiateContext.HASH_ALGO_SHA512 ) {
+                log.error("Server did not select a supported preauth integrity hash");
+                return false;
+            }
+
+            int compression = getCompressionAlgorithm();
+            if ( compression != CompressionNegotiateContext.COMPRESSION_NONE
+                    && ( !tc.getConfig().isEnableCompression() || compression != CompressionNegotiateContext.COMPRESSION_LZ77 ) ) {
+                log.error("Server selected a compression algorithm that was not offered");
+                return false;
+            }
+
+            int cipher = getCipher();
+            if ( cipher != 0 && cipher != EncryptionNegotiateContext.CIPHER_AES128_CCM && cipher != EncryptionNegotiateContext.CIPHER_AES128_GCM
+                    && cipher != EncryptionNegotiateContext.CIPHER_AES256_GCM ) {
+                log.error("Server selected a cipher that was not offered");
+                return false;
+            }
+
+            int signing = getSigningAlgorithm();
+            if ( signing != -1 && signing != SigningNegotiateContext.SIGNING_AES_CMAC && signing != SigningNegotiateContext.SIGNING_AES_GMAC ) {
+                log.error("Server selected a signing algorithm that was not offered");
+                return false;
+            }
+        }
+
+        int maxBufferSize = Math.min(tc.getConfig().getTransactionBufferSize(), tc.getConfig().getMaximumBufferSize());
+        if ( !isMultiCredit() ) {
+            // without multi-credit support a single message may not carry more than 64k of payload
+            maxBufferSize = Math.min(maxBufferSize, 65536);
+        }
+        if ( getCipher() != 0 ) {
+            // leave room for the transform header
+            maxBufferSize -= Smb2EncryptionContext.OVERHEAD;
+        }
         this.maxReadSize = Math.min(maxBufferSize - Smb2ReadResponse.OVERHEAD, Math.min(tc.getConfig().getRecieveBufferSize(), this.maxReadSize));
         this.maxWriteSize = Math.min(maxBufferSize - Smb2WriteRequest.OVERHEAD, Math.min(tc.getConfig().getSendBufferSize(), this.maxWriteSize));
         this.maxTransactSize = Math.min(maxBufferSize - 512, this.maxTransactSize);
@@ -270,7 +309,26 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
      * @see jcifs.internal.SmbNegotiationResponse#setupRequest(jcifs.internal.CommonServerMessageBlock)
      */
     @Override
-    public void setupRequest ( CommonServerMessageBlock request ) {}
+    public void setupRequest ( CommonServerMessageBlock request ) {
+        if ( getDialectRevision() == Smb2Constants.SMB2_DIALECT_0202 || ! ( request instanceof ServerMessageBlock2Request ) ) {
+            // credit charge is reserved in SMB 2.0.2
+            return;
+        }
+
+        ServerMessageBlock2Request<?> req = (ServerMessageBlock2Request<?>) request;
+        while ( req != null ) {
+            req.setCreditCharge(req.getCreditCost());
+            req = req.getNext();
+        }
+    }
+
+
+    /**
+     * @return whether requests may consume multiple credits, allowing messages larger than 64k
+     */
+    public boolean isMultiCredit () {
+        return getDialectRevision() != Smb2Constants.SMB2_DIALECT_0202 && haveCapabilitiy(Smb2Constants.SMB2_GLOBAL_CAP_LARGE_MTU);
+    }
 
 
     /**
@@ -331,10 +389,8 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
             bufferIndex += securityBufferLength;
         }
 
-        int pad = ( bufferIndex - hdrStart ) % 8;
-        bufferIndex += pad;
-
-        if ( negotiateContextOffset != 0 && negotiateContextCount != 0 ) {
+        if ( this.dialectRevision == Smb2Constants.SMB2_DIALECT_0311 && negotiateContextOffset != 0 && negotiateContextCount != 0 ) {
+            bufferIndex = hdrStart + negotiateContextOffset;
             NegotiateContextResponse[] contexts = new NegotiateContextResponse[negotiateContextCount];
             for ( int i = 0; i < negotiateContextCount; i++ ) {
                 int type = SMBUtil.readInt2(buffer, bufferIndex);
@@ -351,7 +407,7 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
                     bufferIndex += pad8(bufferIndex);
                 }
             }
-
+            this.negotiateContexts = contexts;
         }
 
         return bufferIndex - start;
@@ -363,6 +419,86 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
      * @return
      */
     protected static NegotiateContextResponse createContext ( int type ) {
+        switch ( type ) {
+        case PreauthIntegrityNegotiateContext.NEGO_CTX_PREAUTH_TYPE:
+            return new PreauthIntegrityNegotiateContext();
+        case CompressionNegotiateContext.NEGO_CTX_COMPRESSION_TYPE:
+            return new CompressionNegotiateContext();
+        case EncryptionNegotiateContext.NEGO_CTX_ENC_TYPE:
+            return new EncryptionNegotiateContext();
+        case SigningNegotiateContext.NEGO_CTX_SIGNING_TYPE:
+            return new SigningNegotiateContext();
+        }
+        return null;
+    }
+
+
+    /**
+     * @return the compression algorithm selected by the server, {@link CompressionNegotiateContext#COMPRESSION_NONE} if
+     *         not negotiated
+     */
+    public int getCompressionAlgorithm () {
+        if ( this.negotiateContexts != null ) {
+            for ( NegotiateContextResponse ctx : this.negotiateContexts ) {
+                if ( ctx instanceof CompressionNegotiateContext ) {
+                    int[] algos = ( (CompressionNegotiateContext) ctx ).getCompressionAlgos();
+                    if ( algos != null && algos.length > 0 ) {
+                        return algos[ 0 ];
+                    }
+                }
+            }
+        }
+        return CompressionNegotiateContext.COMPRESSION_NONE;
+    }
+
+
+    /**
+     * @return the cipher to use for encryption, 0 if encryption is not supported
+     */
+    public int getCipher () {
+        if ( getDialectRevision() == Smb2Constants.SMB2_DIALECT_0300 || getDialectRevision() == Smb2Constants.SMB2_DIALECT_0302 ) {
+            return haveCapabilitiy(Smb2Constants.SMB2_GLOBAL_CAP_ENCRYPTION) ? EncryptionNegotiateContext.CIPHER_AES128_CCM : 0;
+        }
+        if ( this.negotiateContexts != null ) {
+            for ( NegotiateContextResponse ctx : this.negotiateContexts ) {
+                if ( ctx instanceof EncryptionNegotiateContext ) {
+                    int[] ciphers = ( (EncryptionNegotiateContext) ctx ).getCiphers();
+                    if ( ciphers != null && ciphers.length > 0 ) {
+                        return ciphers[ 0 ];
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+
+    /**
+     * @return the signing algorithm selected by the server, -1 if not negotiated
+     */
+    public int getSigningAlgorithm () {
+        if ( this.negotiateContexts != null ) {
+            for ( NegotiateContextResponse ctx : this.negotiateContexts ) {
+                if ( ctx instanceof SigningNegotiateContext ) {
+                    int[] algos = ( (SigningNegotiateContext) ctx ).getSigningAlgos();
+                    if ( algos != null && algos.length > 0 ) {
+                        return algos[ 0 ];
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    private PreauthIntegrityNegotiateContext getPreauthIntegrityContext () {
+        if ( this.negotiateContexts != null ) {
+            for ( NegotiateContextResponse ctx : this.negotiateContexts ) {
+                if ( ctx instanceof PreauthIntegrityNegotiateContext ) {
+                    return (PreauthIntegrityNegotiateContext) ctx;
+                }
+            }
+        }
         return null;
     }
 
@@ -35,6 +35,7 @@ public class Smb2SessionSetupRequest extends ServerMessageBlock2Request<Smb2Sess
     private int capabilities;
     private long previousSessionId;
     private int securityMode;
+    private boolean sessionBinding;
 
 
     /**
@@ -53,12 +54,39 @@ public class Smb2SessionSetupRequest extends ServerMessageBlock2Request<Smb2Sess
     }
 
 
+    /**
+     * @param sessionBinding
+     *            whether this binds an additional channel to an existing session
+     */
+    public void setSessionBinding ( boolean sessionBinding ) {
+        this.sessionBinding = sessionBinding;
+    }
+
+
     @Override
     protected Smb2SessionSetupResponse createResponse ( CIFSContext tc, ServerMessageBlock2Request<Smb2SessionSetupResponse> req ) {
         return new Smb2SessionSetupResponse(tc.getConfig());
     }
 
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The final response to a binding request is signed with the channel key, which is not known at this point,
+     * so it needs to be verified by the caller.
+     *
+     * @see jcifs.internal.smb2.ServerMessageBlock2Request#initResponse(jcifs.CIFSContext)
+     */
+    @Override
+    public Smb2SessionSetupResponse initResponse ( CIFSContext tc ) {
+        Smb2SessionSetupResponse resp = super.initResponse(tc);
+        if ( this.sessionBinding && resp != null ) {
+            resp.setDigest(null);
+        }
+        return resp;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -93,7 +121,7 @@ public class Smb2SessionSetupRequest extends ServerMessageBlock2Request<Smb2Sess
 
         SMBUtil.writeInt2(25, dst, dstIndex);
 
-        dst[ dstIndex + 2 ] = (byte) ( this.previousSessionId != 0 ? 0x1 : 0 );
+        dst[ dstIndex + 2 ] = (byte) ( this.sessionBinding ? 0x1 : 0 );
         dst[ dstIndex + 3 ] = (byte) ( this.securityMode );
         dstIndex += 4;
 
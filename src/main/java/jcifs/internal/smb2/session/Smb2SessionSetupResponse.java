@@ -136,6 +136,14 @@ public class Smb2SessionSetupResponse extends ServerMessageBlock2Response {
     }
 
 
+    /**
+     * @return whether the server requires all messages of the session to be encrypted
+     */
+    public boolean isEncryptData () {
+        return ( this.sessionFlags & SMB2_SESSION_FLAG_ENCRYPT_DATA ) != 0;
+    }
+
+
     /**
      * @return security blob
      */
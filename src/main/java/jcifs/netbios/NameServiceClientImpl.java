@@ -42,6 +42,7 @@ import jcifs.NetbiosAddress;
 import jcifs.ResolverType;
 import jcifs.RuntimeCIFSException;
 import jcifs.SmbConstants;
+import jcifs.SmbTracer;
 import jcifs.util.Hexdump;
 
 
@@ -951,6 +952,28 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
 
     @Override
     public UniAddress[] getAllByName ( String hostname, boolean possibleNTDomainOrWorkgroup ) throws UnknownHostException {
+        SmbTracer.Span span = this.transportContext.getTracer().startSpan("nameservice.resolve");
+        if ( span.isRecording() && hostname != null ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, hostname);
+        }
+        try {
+            UniAddress[] addrs = resolveAllByName(hostname, possibleNTDomainOrWorkgroup);
+            if ( span.isRecording() ) {
+                span.setAttribute(SmbTracer.ATTR_ADDRESSES, addrs.length);
+            }
+            return addrs;
+        }
+        catch ( UnknownHostException | RuntimeException e ) {
+            span.recordException(e);
+            throw e;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+
+    private UniAddress[] resolveAllByName ( String hostname, boolean possibleNTDomainOrWorkgroup ) throws UnknownHostException {
         Object addr;
         if ( hostname == null || hostname.length() == 0 ) {
             throw new UnknownHostException();
@@ -20,6 +20,7 @@ package jcifs.smb;
 
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import jcifs.BufferCache;
 import jcifs.Configuration;
@@ -28,13 +29,22 @@ import jcifs.Configuration;
 /**
  * Cache for reusable byte buffers
  * 
+ * Buffers are kept in size classes, doubling from {@link #MIN_BUFFER_SIZE} up to the maximum buffer size. Each class
+ * holds a fixed number of slots that are claimed and returned using atomic operations, so that concurrent callers do
+ * not contend on a single lock.
+ * 
  * @internal
  */
 public class BufferCacheImpl implements BufferCache {
 
-    private final Object[] cache;
+    /**
+     * Size of the smallest buffer class
+     */
+    public static final int MIN_BUFFER_SIZE = 1024;
+
+    private final AtomicReferenceArray<byte[]>[] cache;
+    private final int[] classSizes;
     private final int bufferSize;
-    private int freeBuffers = 0;
 
 
     /**
@@ -48,12 +58,27 @@ public class BufferCacheImpl implements BufferCache {
 
     /**
      * @param maxBuffers
+     *            number of buffers cached per size class
      * @param maxSize
      * 
      */
+    @SuppressWarnings ( {
+        "unchecked", "rawtypes"
+    } )
     public BufferCacheImpl ( int maxBuffers, int maxSize ) {
-        this.cache = new Object[maxBuffers];
         this.bufferSize = maxSize;
+        int classes = 1;
+        for ( long sz = MIN_BUFFER_SIZE; sz < maxSize; sz *= 2 ) {
+            classes++;
+        }
+        this.classSizes = new int[classes];
+        this.cache = new AtomicReferenceArray[classes];
+        int sz = Math.min(MIN_BUFFER_SIZE, maxSize);
+        for ( int i = 0; i < classes; i++ ) {
+            this.classSizes[ i ] = i == classes - 1 ? maxSize : sz;
+            this.cache[ i ] = new AtomicReferenceArray<>(maxBuffers);
+            sz *= 2;
+        }
     }
 
 
@@ -64,21 +89,35 @@ public class BufferCacheImpl implements BufferCache {
      */
     @Override
     public byte[] getBuffer () {
-        synchronized ( this.cache ) {
-            byte[] buf;
-
-            if ( this.freeBuffers > 0 ) {
-                for ( int i = 0; i < this.cache.length; i++ ) {
-                    if ( this.cache[ i ] != null ) {
-                        buf = (byte[]) this.cache[ i ];
-                        this.cache[ i ] = null;
-                        this.freeBuffers--;
-                        return buf;
-                    }
+        return getBuffer(this.bufferSize);
+    }
+
+
+    /**
+     * 
+     * @param minSize
+     *            the minimum required buffer size
+     * @return a buffer of at least the requested size from the cache, or a new one
+     */
+    public byte[] getBuffer ( int minSize ) {
+        int cls = sizeClass(minSize);
+        if ( cls < 0 ) {
+            return new byte[minSize];
+        }
+
+        AtomicReferenceArray<byte[]> slots = this.cache[ cls ];
+        int n = slots.length();
+        int start = slotHint(n);
+        for ( int i = 0; i < n; i++ ) {
+            int idx = ( start + i ) % n;
+            if ( slots.get(idx) != null ) {
+                byte[] buf = slots.getAndSet(idx, null);
+                if ( buf != null ) {
+                    return buf;
                 }
             }
-            return new byte[this.bufferSize];
         }
+        return new byte[this.classSizes[ cls ]];
     }
 
 
@@ -89,18 +128,58 @@ public class BufferCacheImpl implements BufferCache {
      */
     @Override
     public void releaseBuffer ( byte[] buf ) {
+        releaseBuffer(buf, buf.length);
+    }
+
+
+    /**
+     * Return a buffer to the cache
+     * 
+     * @param buf
+     * @param used
+     *            number of bytes at the start of the buffer that may have been written to, only these are cleared
+     */
+    public void releaseBuffer ( byte[] buf, int used ) {
         // better safe than sorry: prevent leaks if there is some out of bound access
-        Arrays.fill(buf, (byte) 0);
-        synchronized ( this.cache ) {
-            if ( this.freeBuffers < this.cache.length ) {
-                for ( int i = 0; i < this.cache.length; i++ ) {
-                    if ( this.cache[ i ] == null ) {
-                        this.cache[ i ] = buf;
-                        this.freeBuffers++;
-                        return;
-                    }
-                }
+        Arrays.fill(buf, 0, Math.min(Math.max(used, 0), buf.length), (byte) 0);
+
+        int cls = sizeClass(buf.length);
+        if ( cls < 0 || this.classSizes[ cls ] != buf.length ) {
+            // not one of ours
+            return;
+        }
+
+        AtomicReferenceArray<byte[]> slots = this.cache[ cls ];
+        int n = slots.length();
+        int start = slotHint(n);
+        for ( int i = 0; i < n; i++ ) {
+            int idx = ( start + i ) % n;
+            if ( slots.get(idx) == null && slots.compareAndSet(idx, null, buf) ) {
+                return;
             }
         }
     }
+
+
+    /**
+     * @return index of the smallest size class that holds buffers of at least the given size, -1 if larger than the
+     *         maximum buffer size
+     */
+    private int sizeClass ( int size ) {
+        for ( int i = 0; i < this.classSizes.length; i++ ) {
+            if ( size <= this.classSizes[ i ] ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private static int slotHint ( int n ) {
+        if ( n == 0 ) {
+            return 0;
+        }
+        // spread threads over the slots to reduce collisions
+        return (int) ( Thread.currentThread().getId() % n );
+    }
 }
@@ -33,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import jcifs.CIFSContext;
 import jcifs.DfsReferralData;
 import jcifs.DfsResolver;
+import jcifs.SmbTracer;
 import jcifs.SmbTransport;
 import jcifs.internal.dfs.DfsReferralDataImpl;
 import jcifs.internal.dfs.DfsReferralDataInternal;
@@ -285,12 +286,20 @@ public class DfsImpl implements DfsResolver {
         if ( path != null ) {
             p += path;
         }
+        SmbTracer.Span span = tf.getTracer().startSpan("dfs.referral");
+        if ( span.isRecording() ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, targetHost);
+            span.setAttribute(SmbTracer.ATTR_PATH, p);
+        }
         try {
             if ( log.isDebugEnabled() ) {
                 log.debug("Fetching referral for " + p);
             }
             DfsReferralData dr = trans.getDfsReferrals(tf, p, targetHost, targetDomain, 0);
             if ( dr != null ) {
+                if ( span.isRecording() ) {
+                    span.setAttribute(SmbTracer.ATTR_DFS_TARGET, dr.getServer());
+                }
 
                 if ( log.isDebugEnabled() ) {
                     log.debug(String.format("Referral for %s: %s", p, dr));
@@ -300,6 +309,7 @@ public class DfsImpl implements DfsResolver {
             }
         }
         catch ( IOException ioe ) {
+            SmbTracing.fail(span, ioe);
             if ( log.isDebugEnabled() ) {
                 log.debug(String.format("Getting referral for %s failed", p), ioe);
             }
@@ -307,6 +317,9 @@ public class DfsImpl implements DfsResolver {
                 throw (SmbAuthException) ioe;
             }
         }
+        finally {
+            span.end();
+        }
         return null;
     }
 
@@ -328,6 +341,33 @@ public class DfsImpl implements DfsResolver {
             return null;
         }
 
+        SmbTracer.Span span = tf.getTracer().startSpan("dfs.resolve");
+        if ( span.isRecording() ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, domain);
+            span.setAttribute(SmbTracer.ATTR_SHARE, root);
+            if ( path != null ) {
+                span.setAttribute(SmbTracer.ATTR_PATH, path);
+            }
+        }
+        try {
+            DfsReferralData dr = resolve0(tf, domain, root, path);
+            if ( dr != null && span.isRecording() ) {
+                span.setAttribute(SmbTracer.ATTR_DFS_TARGET, dr.getServer());
+            }
+            return dr;
+        }
+        catch ( SmbAuthException | RuntimeException e ) {
+            SmbTracing.fail(span, e);
+            throw e;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+
+    private DfsReferralData resolve0 ( CIFSContext tf, String domain, String root, String path ) throws SmbAuthException {
+
         domain = domain.toLowerCase();
 
         if ( log.isTraceEnabled() ) {
@@ -42,6 +42,9 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
     private byte[] fileId;
     private Smb2QueryDirectoryResponse response;
 
+    private Smb2QueryDirectoryRequest prefetchRequest;
+    private Smb2QueryDirectoryResponse prefetchResponse;
+
 
     /**
      * @param th
@@ -88,6 +91,7 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
         create.setCreateOptions(Smb2CreateRequest.FILE_DIRECTORY_FILE);
         Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(th.getConfig());
         query.setFileName(getWildcard());
+        query.setOutputBufferLength(getOutputBufferLength(th));
         create.chain(query);
         Smb2CreateResponse createResp;
         try {
@@ -107,6 +111,7 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
         }
         this.fileId = createResp.getFileId();
         this.response = query.getResponse();
+        prefetch(th);
         FileEntry n = advance(false);
         if ( n == null ) {
             doClose();
@@ -123,14 +128,18 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
     @SuppressWarnings ( "resource" )
     @Override
     protected boolean fetchMore () throws CIFSException {
-        FileEntry[] results = this.response.getResults();
         SmbTreeHandleImpl th = getTreeHandle();
-        Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(th.getConfig(), this.fileId);
-        query.setFileName(this.getWildcard());
-        query.setFileIndex(results[ results.length - 1 ].getFileIndex());
-        query.setQueryFlags(Smb2QueryDirectoryRequest.SMB2_INDEX_SPECIFIED);
+        Smb2QueryDirectoryRequest query = this.prefetchRequest;
+        Smb2QueryDirectoryResponse pending = this.prefetchResponse;
+        this.prefetchRequest = null;
+        this.prefetchResponse = null;
         try {
-            this.response = th.send(query);
+            if ( query != null ) {
+                this.response = th.waitForResponse(query, pending, RequestParam.NO_RETRY);
+            }
+            else {
+                this.response = th.send(nextQuery(th));
+            }
         }
         catch ( SmbException e ) {
             if ( e.getNtStatus() == 0x80000006 ) { // NO_MORE_FILES
@@ -139,10 +148,61 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
             }
             throw e;
         }
+        prefetch(th);
         return true;
     }
 
 
+    /**
+     * Request the batch following the current one so that it is in flight while the current results are consumed
+     * 
+     * Only done if credits are immediately available, otherwise the next batch is fetched once needed.
+     * 
+     * @param th
+     * @throws CIFSException
+     */
+    private void prefetch ( SmbTreeHandleImpl th ) throws CIFSException {
+        if ( !th.getConfig().isListPrefetch() || this.fileId == null ) {
+            return;
+        }
+        FileEntry[] results = this.response.getResults();
+        if ( results == null || results.length == 0 ) {
+            return;
+        }
+        Smb2QueryDirectoryRequest query = nextQuery(th);
+        Smb2QueryDirectoryResponse resp = th.sendNoWait(query, RequestParam.NO_RETRY, RequestParam.NO_CREDIT_WAIT);
+        if ( resp != null ) {
+            this.prefetchRequest = query;
+            this.prefetchResponse = resp;
+        }
+    }
+
+
+    private Smb2QueryDirectoryRequest nextQuery ( SmbTreeHandleImpl th ) throws CIFSException {
+        FileEntry[] results = this.response.getResults();
+        Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(th.getConfig(), this.fileId);
+        query.setFileName(this.getWildcard());
+        query.setFileIndex(results[ results.length - 1 ].getFileIndex());
+        query.setQueryFlags(Smb2QueryDirectoryRequest.SMB2_INDEX_SPECIFIED);
+        query.setOutputBufferLength(getOutputBufferLength(th));
+        return query;
+    }
+
+
+    /**
+     * @param th
+     * @return output buffer length for directory queries, the configured size limited by the negotiated transaction
+     *         size
+     * @throws CIFSException
+     */
+    private static int getOutputBufferLength ( SmbTreeHandleImpl th ) throws CIFSException {
+        int max = th.getMaximumBufferSize();
+        int configured = th.getConfig().getListBufferSize();
+        int size = configured > 0 ? Math.min(configured, max) : max;
+        return Math.max(size - Smb2QueryDirectoryResponse.OVERHEAD, 1024);
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -162,11 +222,22 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
         try {
             @SuppressWarnings ( "resource" )
             SmbTreeHandleImpl th = getTreeHandle();
+            if ( this.prefetchRequest != null ) {
+                // the response has to be received before closing the handle
+                try {
+                    th.waitForResponse(this.prefetchRequest, this.prefetchResponse, RequestParam.NO_RETRY);
+                }
+                catch ( CIFSException e ) {
+                    log.debug("Discarding prefetched directory entries", e);
+                }
+            }
             if ( this.fileId != null && th.isConnected() ) {
                 th.send(new Smb2CloseRequest(th.getConfig(), this.fileId));
             }
         }
         finally {
+            this.prefetchRequest = null;
+            this.prefetchResponse = null;
             this.fileId = null;
         }
     }
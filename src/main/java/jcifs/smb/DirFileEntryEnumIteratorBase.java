@@ -40,6 +40,8 @@ public abstract class DirFileEntryEnumIteratorBase implements CloseableIterator<
     private final SmbResource parent;
     private final String wildcard;
     private final int searchAttributes;
+    private final SmbMetadataCache metadata;
+    private final String parentPath;
     private FileEntry next;
     private int ridx;
 
@@ -61,6 +63,9 @@ public abstract class DirFileEntryEnumIteratorBase implements CloseableIterator<
         this.wildcard = wildcard;
         this.nameFilter = filter;
         this.searchAttributes = searchAttributes;
+        this.metadata = SmbMetadataCache.get(parent.getContext());
+        String path = parent.getLocator().getUNCPath();
+        this.parentPath = path.endsWith("\\") ? path : path + '\\';
 
         this.treeHandle = th.acquire();
         try {
@@ -140,6 +145,17 @@ public abstract class DirFileEntryEnumIteratorBase implements CloseableIterator<
             FileEntry itm = results[ this.ridx ];
             this.ridx++;
             if ( filter(itm) ) {
+                if ( this.metadata != null ) {
+                    this.metadata.put(
+                        SmbMetadataCache.key(this.treeHandle, this.parentPath + itm.getName()),
+                        true,
+                        itm.getAttributes(),
+                        itm.createTime(),
+                        itm.lastModified(),
+                        itm.lastAccess(),
+                        true,
+                        itm.length());
+                }
                 return itm;
             }
         }
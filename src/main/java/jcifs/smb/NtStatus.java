@@ -37,9 +37,11 @@ public interface NtStatus {
     public static final int NT_STATUS_INVALID_PARAMETER = 0xC000000d;
     public static final int NT_STATUS_NO_SUCH_DEVICE = 0xC000000e;
     public static final int NT_STATUS_NO_SUCH_FILE = 0xC000000f;
+    public static final int NT_STATUS_INVALID_DEVICE_REQUEST = 0xC0000010;
     public static final int NT_STATUS_MORE_PROCESSING_REQUIRED = 0xC0000016;
     public static final int NT_STATUS_ACCESS_DENIED = 0xC0000022;
     public static final int NT_STATUS_BUFFER_TOO_SMALL = 0xC0000023;
+    public static final int NT_STATUS_OBJECT_TYPE_MISMATCH = 0xC0000024;
     public static final int NT_STATUS_OBJECT_NAME_INVALID = 0xC0000033;
     public static final int NT_STATUS_OBJECT_NAME_NOT_FOUND = 0xC0000034;
     public static final int NT_STATUS_OBJECT_NAME_COLLISION = 0xC0000035;
@@ -70,6 +72,7 @@ public interface NtStatus {
     public static final int NT_STATUS_PIPE_CLOSING = 0xC00000b1;
     public static final int NT_STATUS_PIPE_LISTENING = 0xC00000b3;
     public static final int NT_STATUS_FILE_IS_A_DIRECTORY = 0xC00000ba;
+    public static final int NT_STATUS_NOT_SUPPORTED = 0xC00000bb;
     public static final int NT_STATUS_DUPLICATE_NAME = 0xC00000bd;
     public static final int NT_STATUS_NETWORK_NAME_DELETED = 0xC00000c9;
     public static final int NT_STATUS_NETWORK_ACCESS_DENIED = 0xC00000ca;
@@ -97,18 +100,19 @@ public interface NtStatus {
 
     static final int[] NT_STATUS_CODES = {
         NT_STATUS_OK, NT_STATUS_PENDING, NT_STATUS_UNSUCCESSFUL, NT_STATUS_NOT_IMPLEMENTED, NT_STATUS_INVALID_INFO_CLASS, NT_STATUS_ACCESS_VIOLATION,
-        NT_STATUS_INVALID_HANDLE, NT_STATUS_INVALID_PARAMETER, NT_STATUS_NO_SUCH_DEVICE, NT_STATUS_NO_SUCH_FILE, NT_STATUS_MORE_PROCESSING_REQUIRED,
-        NT_STATUS_ACCESS_DENIED, NT_STATUS_BUFFER_TOO_SMALL, NT_STATUS_OBJECT_NAME_INVALID, NT_STATUS_OBJECT_NAME_NOT_FOUND,
-        NT_STATUS_OBJECT_NAME_COLLISION, NT_STATUS_PORT_DISCONNECTED, NT_STATUS_OBJECT_PATH_INVALID, NT_STATUS_OBJECT_PATH_NOT_FOUND,
-        NT_STATUS_OBJECT_PATH_SYNTAX_BAD, NT_STATUS_SHARING_VIOLATION, NT_STATUS_DELETE_PENDING, NT_STATUS_NO_LOGON_SERVERS, NT_STATUS_USER_EXISTS,
-        NT_STATUS_NO_SUCH_USER, NT_STATUS_WRONG_PASSWORD, NT_STATUS_LOGON_FAILURE, NT_STATUS_ACCOUNT_RESTRICTION, NT_STATUS_INVALID_LOGON_HOURS,
-        NT_STATUS_INVALID_WORKSTATION, NT_STATUS_PASSWORD_EXPIRED, NT_STATUS_ACCOUNT_DISABLED, NT_STATUS_NONE_MAPPED, NT_STATUS_INVALID_SID,
-        NT_STATUS_DISK_FULL, NT_STATUS_INSTANCE_NOT_AVAILABLE, NT_STATUS_PIPE_NOT_AVAILABLE, NT_STATUS_INVALID_PIPE_STATE, NT_STATUS_PIPE_BUSY,
-        NT_STATUS_PIPE_DISCONNECTED, NT_STATUS_PIPE_CLOSING, NT_STATUS_PIPE_LISTENING, NT_STATUS_FILE_IS_A_DIRECTORY, NT_STATUS_DUPLICATE_NAME,
-        NT_STATUS_NETWORK_NAME_DELETED, NT_STATUS_NETWORK_ACCESS_DENIED, NT_STATUS_BAD_DEVICE_TYPE, NT_STATUS_BAD_NETWORK_NAME,
-        NT_STATUS_REQUEST_NOT_ACCEPTED, NT_STATUS_CANT_ACCESS_DOMAIN_INFO, NT_STATUS_NO_SUCH_DOMAIN, NT_STATUS_NOT_A_DIRECTORY,
-        NT_STATUS_CANNOT_DELETE, NT_STATUS_INVALID_COMPUTER_NAME, NT_STATUS_PIPE_BROKEN, NT_STATUS_NO_SUCH_ALIAS, NT_STATUS_LOGON_TYPE_NOT_GRANTED,
-        NT_STATUS_NO_TRUST_SAM_ACCOUNT, NT_STATUS_TRUSTED_DOMAIN_FAILURE, NT_STATUS_TRUSTED_RELATIONSHIP_FAILURE,
+        NT_STATUS_INVALID_HANDLE, NT_STATUS_INVALID_PARAMETER, NT_STATUS_NO_SUCH_DEVICE, NT_STATUS_NO_SUCH_FILE, NT_STATUS_INVALID_DEVICE_REQUEST,
+        NT_STATUS_MORE_PROCESSING_REQUIRED, NT_STATUS_ACCESS_DENIED, NT_STATUS_BUFFER_TOO_SMALL, NT_STATUS_OBJECT_TYPE_MISMATCH,
+        NT_STATUS_OBJECT_NAME_INVALID, NT_STATUS_OBJECT_NAME_NOT_FOUND, NT_STATUS_OBJECT_NAME_COLLISION, NT_STATUS_PORT_DISCONNECTED,
+        NT_STATUS_OBJECT_PATH_INVALID, NT_STATUS_OBJECT_PATH_NOT_FOUND, NT_STATUS_OBJECT_PATH_SYNTAX_BAD, NT_STATUS_SHARING_VIOLATION,
+        NT_STATUS_DELETE_PENDING, NT_STATUS_NO_LOGON_SERVERS, NT_STATUS_USER_EXISTS, NT_STATUS_NO_SUCH_USER, NT_STATUS_WRONG_PASSWORD,
+        NT_STATUS_LOGON_FAILURE, NT_STATUS_ACCOUNT_RESTRICTION, NT_STATUS_INVALID_LOGON_HOURS, NT_STATUS_INVALID_WORKSTATION,
+        NT_STATUS_PASSWORD_EXPIRED, NT_STATUS_ACCOUNT_DISABLED, NT_STATUS_NONE_MAPPED, NT_STATUS_INVALID_SID, NT_STATUS_DISK_FULL,
+        NT_STATUS_INSTANCE_NOT_AVAILABLE, NT_STATUS_PIPE_NOT_AVAILABLE, NT_STATUS_INVALID_PIPE_STATE, NT_STATUS_PIPE_BUSY,
+        NT_STATUS_PIPE_DISCONNECTED, NT_STATUS_PIPE_CLOSING, NT_STATUS_PIPE_LISTENING, NT_STATUS_FILE_IS_A_DIRECTORY, NT_STATUS_NOT_SUPPORTED,
+        NT_STATUS_DUPLICATE_NAME, NT_STATUS_NETWORK_NAME_DELETED, NT_STATUS_NETWORK_ACCESS_DENIED, NT_STATUS_BAD_DEVICE_TYPE,
+        NT_STATUS_BAD_NETWORK_NAME, NT_STATUS_REQUEST_NOT_ACCEPTED, NT_STATUS_CANT_ACCESS_DOMAIN_INFO, NT_STATUS_NO_SUCH_DOMAIN,
+        NT_STATUS_NOT_A_DIRECTORY, NT_STATUS_CANNOT_DELETE, NT_STATUS_INVALID_COMPUTER_NAME, NT_STATUS_PIPE_BROKEN, NT_STATUS_NO_SUCH_ALIAS,
+        NT_STATUS_LOGON_TYPE_NOT_GRANTED, NT_STATUS_NO_TRUST_SAM_ACCOUNT, NT_STATUS_TRUSTED_DOMAIN_FAILURE, NT_STATUS_TRUSTED_RELATIONSHIP_FAILURE,
         NT_STATUS_NOLOGON_WORKSTATION_TRUST_ACCOUNT, NT_STATUS_PASSWORD_MUST_CHANGE, NT_STATUS_NOT_FOUND, NT_STATUS_ACCOUNT_LOCKED_OUT,
         NT_STATUS_CONNECTION_REFUSED, NT_STATUS_PATH_NOT_COVERED, NT_STATUS_IO_REPARSE_TAG_NOT_HANDLED,
     };
@@ -116,8 +120,9 @@ public interface NtStatus {
     static final String[] NT_STATUS_MESSAGES = {
         "The operation completed successfully.", "Request is pending", "A device attached to the system is not functioning.", "Incorrect function.",
         "The parameter is incorrect.", "Invalid access to memory location.", "The handle is invalid.", "The parameter is incorrect.",
-        "The system cannot find the file specified.", "The system cannot find the file specified.", "More data is available.", "Access is denied.",
-        "The data area passed to a system call is too small.", "The filename, directory name, or volume label syntax is incorrect.",
+        "The system cannot find the file specified.", "The system cannot find the file specified.", "Incorrect function.",
+        "More data is available.", "Access is denied.", "The data area passed to a system call is too small.",
+        "The object type does not match the requested operation.", "The filename, directory name, or volume label syntax is incorrect.",
         "The system cannot find the file specified.", "Cannot create a file when that file already exists.", "The handle is invalid.",
         "The specified path is invalid.", "The system cannot find the path specified.", "The specified path is invalid.",
         "The process cannot access the file because it is being used by another process.", "Access is denied.",
@@ -128,7 +133,8 @@ public interface NtStatus {
         "Logon failure: account currently disabled.", "No mapping between account names and security IDs was done.",
         "The security ID structure is invalid.", "The file system is full.", "All pipe instances are busy.", "All pipe instances are busy.",
         "The pipe state is invalid.", "All pipe instances are busy.", "No process is on the other end of the pipe.", "The pipe is being closed.",
-        "Waiting for a process to open the other end of the pipe.", "File is a directory.", "A duplicate name exists on the network.",
+        "Waiting for a process to open the other end of the pipe.", "File is a directory.", "The request is not supported.",
+        "A duplicate name exists on the network.",
         "The specified network name is no longer available.", "Network access is denied.", "Bad device type", "The network name cannot be found.",
         "No more connections can be made to this remote computer at this time because there are already as many connections as the computer can accept.",
         "Indicates a Windows NT Server could not be contacted or that objects within the domain are protected such that necessary information could not be retrieved.",
@@ -44,5 +44,20 @@ public enum RequestParam {
     /**
      * Save the raw payload for further inspection
      */
-    RETAIN_PAYLOAD
+    RETAIN_PAYLOAD,
+
+    /**
+     * Do not wait for credits to become available when sending an asynchronous request
+     * 
+     * If there are not enough credits, the request is not sent and no response is returned.
+     */
+    NO_CREDIT_WAIT,
+
+    /**
+     * The asynchronous request is completed by the response's completion handler instead of a waiting caller
+     * 
+     * If there are not enough credits, the request is queued and sent once credits are released instead of blocking
+     * the caller. Unless {@link #NO_TIMEOUT} is specified, the response fails if it is not received in time.
+     */
+    ASYNC_COMPLETION
 }
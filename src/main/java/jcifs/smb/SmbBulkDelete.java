@@ -0,0 +1,365 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.CloseableIterator;
+import jcifs.SmbConstants;
+import jcifs.SmbResource;
+import jcifs.internal.smb2.ServerMessageBlock2Request;
+import jcifs.internal.smb2.create.Smb2CloseRequest;
+import jcifs.internal.smb2.create.Smb2CloseResponse;
+import jcifs.internal.smb2.create.Smb2CreateRequest;
+import jcifs.internal.smb2.create.Smb2CreateResponse;
+
+
+/**
+ * Recursively deletes a directory tree using SMB2
+ * 
+ * Files are deleted in batches, each batch being a single compound of unrelated CREATE (delete on close) + CLOSE
+ * pairs. Sibling directories are processed concurrently, a directory itself is removed once all of its contents are
+ * gone. Read only attributes are only cleared for entries that could not be deleted.
+ * 
+ * @author mbechler
+ *
+ */
+final class SmbBulkDelete {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbBulkDelete.class);
+
+    private final int batchSize;
+    private final SmbWorkerPool workers;
+
+
+    /**
+     * @param batchSize
+     *            maximum number of entries per compound request
+     * @param threads
+     *            number of worker threads
+     */
+    SmbBulkDelete ( int batchSize, int threads ) {
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = new SmbWorkerPool("delete", threads);
+    }
+
+
+    /**
+     * @param th
+     * @return whether the tree supports batched deletes
+     */
+    static boolean isSupported ( SmbTreeHandleImpl th ) throws CIFSException {
+        if ( !th.isSMB2() || th.getConfig().getDeleteBatchSize() <= 0 ) {
+            return false;
+        }
+        // paths of the additional requests in a compound would not be resolved
+        SmbTreeImpl t = th.getTreeInternal();
+        return t != null && !t.isDfs();
+    }
+
+
+    /**
+     * Delete the directory and all of its contents
+     * 
+     * @param dir
+     * @throws CIFSException
+     */
+    void delete ( SmbFile dir ) throws CIFSException {
+        this.workers.submit(new DirectoryNode(dir, null));
+        this.workers.await();
+    }
+
+
+    /**
+     * Delete the given entries, as few compound requests as possible
+     * 
+     * @param th
+     * @param entries
+     * @param directories
+     *            whether the entries are directories
+     * @throws CIFSException
+     */
+    void deleteEntries ( SmbTreeHandleImpl th, List<SmbFile> entries, boolean directories ) throws CIFSException {
+        List<SmbFile> remain = entries;
+        while ( !remain.isEmpty() ) {
+            remain = deleteBatch(th, remain, directories);
+        }
+    }
+
+
+    /**
+     * @return the entries that still need to be processed
+     */
+    private List<SmbFile> deleteBatch ( SmbTreeHandleImpl th, List<SmbFile> entries, boolean directories ) throws CIFSException {
+        int credits;
+        try ( SmbSessionImpl session = th.getSession();
+              SmbTransportImpl transport = session.getTransport() ) {
+            credits = transport.getAvailableCredits();
+        }
+        // every entry costs two credits, the transport would split the compound otherwise
+        int max = Math.min(this.batchSize, Math.max(1, credits / 2));
+        int maxSize = Math.min(th.getConfig().getMaximumBufferSize(), th.getSendBufferSize()) - 1024;
+
+        List<Smb2CreateRequest> creates = new ArrayList<>();
+        List<Smb2CloseRequest> closes = new ArrayList<>();
+        ServerMessageBlock2Request<?> head = null;
+        int size = 0;
+        for ( SmbFile entry : entries ) {
+            String path = entry.getUncPath();
+            Smb2CreateRequest cr = new Smb2CreateRequest(th.getConfig(), path);
+            cr.setDesiredAccess(0x10000); // delete
+            cr.setCreateOptions(
+                directories ? Smb2CreateRequest.FILE_DELETE_ON_CLOSE | Smb2CreateRequest.FILE_DIRECTORY_FILE : Smb2CreateRequest.FILE_DELETE_ON_CLOSE);
+            cr.setCreateDisposition(Smb2CreateRequest.FILE_OPEN);
+            Smb2CloseRequest close = new Smb2CloseRequest(th.getConfig(), path);
+            cr.chain(close);
+
+            int s = cr.size() + close.size();
+            if ( head != null && ( creates.size() >= max || size + s > maxSize ) ) {
+                break;
+            }
+            size += s;
+            if ( head == null ) {
+                head = cr;
+            }
+            else {
+                head.chainUnrelated(cr);
+            }
+            creates.add(cr);
+            closes.add(close);
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug(String.format("Deleting %d of %d entries", creates.size(), entries.size()));
+        }
+
+        CIFSException sendFailure = null;
+        try {
+            th.send(head);
+        }
+        catch ( CIFSException e ) {
+            // individual results are checked below
+            log.trace("Batch delete had failures", e);
+            sendFailure = e;
+        }
+
+        List<SmbFile> remain = new ArrayList<>(entries.subList(creates.size(), entries.size()));
+        List<SmbFile> readOnly = new ArrayList<>();
+        CIFSException error = null;
+        boolean progress = false;
+        for ( int i = 0; i < creates.size(); i++ ) {
+            SmbFile entry = entries.get(i);
+            Smb2CreateResponse createResp = creates.get(i).getResponse();
+            if ( !createResp.isReceived() ) {
+                // not sent, the compound was cut short
+                remain.add(entry);
+                continue;
+            }
+            progress = true;
+
+            int status = createResp.getStatus();
+            if ( status == NtStatus.NT_STATUS_OK ) {
+                Smb2CloseResponse closeResp = closes.get(i).getResponse();
+                if ( !closeResp.isReceived() || closeResp.getStatus() != NtStatus.NT_STATUS_OK ) {
+                    // the close was not processed as part of the compound, the file is removed once closed
+                    try {
+                        th.send(new Smb2CloseRequest(th.getConfig(), createResp.getFileId()), RequestParam.NO_RETRY);
+                    }
+                    catch ( CIFSException e ) {
+                        error = firstFailure(error, e);
+                    }
+                }
+            }
+            else if ( status == NtStatus.NT_STATUS_NO_SUCH_FILE || status == NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND
+                    || status == NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND ) {
+                log.debug("Already deleted {}", entry);
+            }
+            else if ( ( status == NtStatus.NT_STATUS_ACCESS_DENIED || status == NtStatus.NT_STATUS_CANNOT_DELETE )
+                    && ( entry.getAttributes() & SmbConstants.ATTR_READONLY ) != 0 ) {
+                readOnly.add(entry);
+            }
+            else {
+                // still close the remaining opens before failing
+                error = firstFailure(error, new SmbException(status, null));
+            }
+        }
+
+        if ( !progress && sendFailure != null ) {
+            throw sendFailure;
+        }
+
+        for ( SmbFile entry : readOnly ) {
+            // only clear the attribute after the delete failed because of it
+            try {
+                entry.setReadWrite();
+                deleteEntries(th, Collections.singletonList(entry), directories);
+            }
+            catch ( CIFSException e ) {
+                error = firstFailure(error, e);
+            }
+        }
+
+        if ( error != null ) {
+            throw error;
+        }
+        return remain;
+    }
+
+
+    private static CIFSException firstFailure ( CIFSException first, CIFSException e ) {
+        if ( first == null ) {
+            return e;
+        }
+        log.debug("Additional failure while deleting", e);
+        return first;
+    }
+
+
+    private final class DirectoryNode implements Runnable {
+
+        private final SmbFile dir;
+        private final DirectoryNode parent;
+
+        /**
+         * outstanding subdirectories plus one for the enumeration itself
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+
+        DirectoryNode ( SmbFile dir, DirectoryNode parent ) {
+            this.dir = dir;
+            this.parent = parent;
+        }
+
+
+        @Override
+        public void run () {
+            try {
+                if ( !SmbBulkDelete.this.workers.isAborted() ) {
+                    deleteContents();
+                }
+            }
+            catch ( CIFSException e ) {
+                SmbBulkDelete.this.workers.abort(e);
+            }
+            catch ( RuntimeException e ) {
+                SmbBulkDelete.this.workers.abort(new SmbException("Failed to delete directory " + this.dir, e));
+            }
+            finally {
+                childDone();
+            }
+        }
+
+
+        private void deleteContents () throws CIFSException {
+            List<SmbFile> files = new ArrayList<>();
+            try ( SmbTreeHandleImpl th = this.dir.ensureTreeConnected();
+                  CloseableIterator<SmbResource> it = SmbEnumerationUtil
+                          .doEnum(this.dir, "*", SmbConstants.ATTR_DIRECTORY | SmbConstants.ATTR_HIDDEN | SmbConstants.ATTR_SYSTEM, null, null) ) {
+                while ( it.hasNext() && !SmbBulkDelete.this.workers.isAborted() ) {
+                    SmbResource r = it.next();
+                    if ( ! ( r instanceof SmbFile ) ) {
+                        r.close();
+                        continue;
+                    }
+                    SmbFile child = (SmbFile) r;
+                    if ( child.isDirectory() ) {
+                        this.pending.incrementAndGet();
+                        SmbBulkDelete.this.workers.submit(new DirectoryNode(child, this));
+                        continue;
+                    }
+
+                    files.add(child);
+                    if ( files.size() >= SmbBulkDelete.this.batchSize ) {
+                        deleteFiles(th, files);
+                    }
+                }
+
+                if ( !files.isEmpty() && !SmbBulkDelete.this.workers.isAborted() ) {
+                    deleteFiles(th, files);
+                }
+            }
+            catch ( SmbException se ) {
+                /*
+                 * Oracle FilesOnline version 9.0.4 doesn't send '.' and '..' so
+                 * listFiles may generate undesireable "cannot find
+                 * the file specified".
+                 */
+                log.debug("delete", se);
+                if ( se.getNtStatus() != NtStatus.NT_STATUS_NO_SUCH_FILE ) {
+                    throw se;
+                }
+            }
+            finally {
+                for ( SmbFile f : files ) {
+                    f.close();
+                }
+            }
+        }
+
+
+        private void deleteFiles ( SmbTreeHandleImpl th, List<SmbFile> files ) throws CIFSException {
+            try {
+                deleteEntries(th, files, false);
+            }
+            finally {
+                for ( SmbFile f : files ) {
+                    f.close();
+                }
+                files.clear();
+            }
+        }
+
+
+        void childDone () {
+            if ( this.pending.decrementAndGet() == 0 ) {
+                finished();
+            }
+        }
+
+
+        private void finished () {
+            try {
+                if ( !SmbBulkDelete.this.workers.isAborted() ) {
+                    // now empty
+                    try ( SmbTreeHandleImpl th = this.dir.ensureTreeConnected() ) {
+                        deleteEntries(th, Collections.singletonList(this.dir), true);
+                    }
+                    catch ( CIFSException e ) {
+                        SmbBulkDelete.this.workers.abort(e);
+                    }
+                }
+            }
+            finally {
+                if ( this.parent != null ) {
+                    this.dir.close();
+                    this.parent.childDone();
+                }
+            }
+        }
+    }
+
+}
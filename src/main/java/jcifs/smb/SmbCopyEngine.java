@@ -0,0 +1,279 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.net.MalformedURLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.CloseableIterator;
+import jcifs.SmbConstants;
+import jcifs.SmbCopyListener;
+import jcifs.SmbResource;
+
+
+/**
+ * Copies directory trees using a pool of worker threads
+ * 
+ * Directories are enumerated and files are copied concurrently, each worker transferring one file at a time. The
+ * attributes and times of a target directory are set once all of its contents have been copied, as creating the
+ * children would otherwise update them again.
+ * 
+ * @author mbechler
+ *
+ */
+final class SmbCopyEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbCopyEngine.class);
+
+    private final SmbCopyListener listener;
+    private final boolean ignoreErrors;
+    private final int bufferSize;
+
+    private final SmbWorkerPool workers;
+    private ThreadLocal<byte[]> buffers;
+
+
+    /**
+     * @param threads
+     *            number of worker threads
+     * @param bufferSize
+     *            transfer buffer size
+     * @param listener
+     *            progress listener, may be null
+     * @param ignoreErrors
+     *            whether to continue after errors when there is no listener
+     */
+    SmbCopyEngine ( int threads, int bufferSize, SmbCopyListener listener, boolean ignoreErrors ) {
+        this.workers = new SmbWorkerPool("copy", threads);
+        this.bufferSize = bufferSize;
+        this.listener = listener;
+        this.ignoreErrors = ignoreErrors;
+    }
+
+
+    /**
+     * Copy the source file or directory tree to the destination
+     * 
+     * @param src
+     * @param dest
+     * @throws CIFSException
+     */
+    void copy ( SmbFile src, SmbFile dest ) throws CIFSException {
+        this.buffers = new ThreadLocal<byte[]>() {
+
+            @Override
+            protected byte[] initialValue () {
+                return new byte[SmbCopyEngine.this.bufferSize];
+            }
+        };
+
+        try {
+            if ( !src.isDirectory() ) {
+                copyFile(src, dest);
+            }
+            else {
+                this.workers.submit(new DirectoryNode(src, dest, null));
+            }
+            this.workers.await();
+        }
+        finally {
+            dest.clearAttributeCache();
+        }
+    }
+
+
+    private void copyFile ( SmbFile src, SmbFile dest ) {
+        if ( this.workers.isAborted() ) {
+            return;
+        }
+        try ( SmbTreeHandleImpl sh = src.ensureTreeConnected();
+              SmbTreeHandleImpl dh = dest.ensureTreeConnected() ) {
+            long size = SmbCopyUtil.copyFile(src, dest, this.buffers.get(), sh, dh);
+            if ( this.listener != null ) {
+                this.listener.fileCopied(src, dest, size);
+            }
+        }
+        catch ( CIFSException e ) {
+            failed(src, dest, e);
+        }
+    }
+
+
+    private void failed ( SmbResource src, SmbResource dest, CIFSException e ) {
+        if ( this.listener != null ) {
+            if ( this.listener.copyFailed(src, dest, e) ) {
+                return;
+            }
+        }
+        else if ( this.ignoreErrors ) {
+            log.warn("Copy failed", e);
+            return;
+        }
+        this.workers.abort(e);
+    }
+
+
+    private final class DirectoryNode implements Runnable {
+
+        private final SmbFile src;
+        private final SmbFile dest;
+        private final DirectoryNode parent;
+
+        /**
+         * outstanding children plus one for the enumeration itself
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+
+        DirectoryNode ( SmbFile src, SmbFile dest, DirectoryNode parent ) {
+            this.src = src;
+            this.dest = dest;
+            this.parent = parent;
+        }
+
+
+        @Override
+        public void run () {
+            try {
+                if ( !SmbCopyEngine.this.workers.isAborted() ) {
+                    enumerate();
+                }
+            }
+            catch ( CIFSException e ) {
+                failed(this.src, this.dest, e);
+            }
+            catch ( RuntimeException e ) {
+                failed(this.src, this.dest, new SmbException("Failed to copy directory " + this.src, e));
+            }
+            finally {
+                childDone();
+            }
+        }
+
+
+        private void enumerate () throws CIFSException {
+            if ( this.dest.getLocator().getUNCPath().length() > 1 ) {
+                try {
+                    this.dest.mkdir();
+                }
+                catch ( SmbException se ) {
+                    log.trace("mkdir", se);
+                    if ( se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED && se.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION ) {
+                        throw se;
+                    }
+                }
+            }
+
+            try ( CloseableIterator<SmbResource> it = SmbEnumerationUtil
+                    .doEnum(this.src, "*", SmbConstants.ATTR_DIRECTORY | SmbConstants.ATTR_HIDDEN | SmbConstants.ATTR_SYSTEM, null, null) ) {
+                while ( it.hasNext() && !SmbCopyEngine.this.workers.isAborted() ) {
+                    SmbResource r = it.next();
+                    if ( ! ( r instanceof SmbFile ) ) {
+                        r.close();
+                        continue;
+                    }
+                    final SmbFile child = (SmbFile) r;
+                    final SmbFile ndest;
+                    try {
+                        ndest = new SmbFile(
+                            this.dest,
+                            r.getLocator().getName(),
+                            true,
+                            r.getLocator().getType(),
+                            r.getAttributes(),
+                            r.createTime(),
+                            r.lastModified(),
+                            r.lastAccess(),
+                            r.length());
+                    }
+                    catch ( MalformedURLException e ) {
+                        child.close();
+                        throw new SmbException(this.src.getURL().toString(), e);
+                    }
+
+                    this.pending.incrementAndGet();
+                    if ( child.isDirectory() ) {
+                        SmbCopyEngine.this.workers.submit(new DirectoryNode(child, ndest, this));
+                    }
+                    else {
+                        SmbCopyEngine.this.workers.submit(new Runnable() {
+
+                            @Override
+                            public void run () {
+                                try {
+                                    copyFile(child, ndest);
+                                }
+                                finally {
+                                    child.close();
+                                    ndest.close();
+                                    childDone();
+                                }
+                            }
+                        });
+                    }
+                }
+            }
+        }
+
+
+        void childDone () {
+            if ( this.pending.decrementAndGet() == 0 ) {
+                finished();
+            }
+        }
+
+
+        private void finished () {
+            try {
+                if ( !SmbCopyEngine.this.workers.isAborted() && this.dest.getLocator().getUNCPath().length() > 1 ) {
+                    // set after the contents were written, creating children modifies the times
+                    try ( SmbTreeHandleImpl dh = this.dest.ensureTreeConnected() ) {
+                        if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
+                            this.dest.setPathInformation(this.src.getAttributes(), this.src.createTime(), this.src.lastModified(), this.src.lastAccess());
+                        }
+                        else {
+                            this.dest.setPathInformation(this.src.getAttributes(), 0L, this.src.lastModified(), 0L);
+                        }
+                    }
+                    catch ( SmbException se ) {
+                        log.trace("setPathInformation", se);
+                        if ( se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED ) {
+                            failed(this.src, this.dest, se);
+                        }
+                    }
+                    catch ( CIFSException e ) {
+                        failed(this.src, this.dest, e);
+                    }
+                }
+            }
+            finally {
+                if ( this.parent != null ) {
+                    this.src.close();
+                    this.dest.close();
+                    this.parent.childDone();
+                }
+            }
+        }
+    }
+
+}
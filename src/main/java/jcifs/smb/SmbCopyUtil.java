@@ -20,6 +20,8 @@ package jcifs.smb;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,15 +108,18 @@ final class SmbCopyUtil {
     static void copyFile ( SmbFile src, SmbFile dest, byte[][] b, int bsize, WriterThread w, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh )
             throws SmbException {
 
-        if ( sh.isSMB2() && dh.isSMB2() && sh.isSameTree(dh) ) {
-            try {
+        try {
+            if ( canServerSideCopy(sh, dh) ) {
                 serverSideCopy(src, dest, sh, dh, false);
                 return;
             }
-            catch ( CIFSException e ) {
+        }
+        catch ( CIFSException e ) {
+            if ( sh.isSameTree(dh) || !isServerSideCopyUnsupported(e) ) {
                 log.warn("Server side copy failed", e);
                 throw SmbException.wrap(e);
             }
+            log.debug("Server side copy between shares is not supported, copying through the client", e);
         }
 
         try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0);
@@ -163,22 +168,9 @@ final class SmbCopyUtil {
                     log.debug(String.format("Copied a total of %d bytes", off));
                 }
 
-                if ( dh.isSMB2() ) {
-                    Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
-                    req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
-                    dh.send(req);
-                }
-                else if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
-                    // use the open file descriptor
-                    dh.send(
-                        new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
-                        new Trans2SetFileInformationResponse(dh.getConfig()));
-                }
-                else {
-                    dh.send(
-                        new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
-                        new SmbComSetInformationResponse(dh.getConfig()));
-                }
+                // pending write-behind requests must not be applied after the timestamps
+                fos.flush();
+                setFileInformation(dest, dh, dfd, attrs, ctime, mtime, atime);
             }
         }
         catch ( IOException se ) {
@@ -190,132 +182,307 @@ final class SmbCopyUtil {
     }
 
 
+    /**
+     * Copy a single file on the calling thread using one buffer
+     * 
+     * Used by concurrent copies where multiple files are transferred at the same time instead of overlapping reads and
+     * writes of a single file.
+     * 
+     * @param src
+     * @param dest
+     * @param b
+     *            transfer buffer
+     * @param sh
+     * @param dh
+     * @return number of bytes copied
+     * @throws CIFSException
+     */
+    static long copyFile ( SmbFile src, SmbFile dest, byte[] b, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh ) throws CIFSException {
+        int attrs = src.getAttributes();
+        long mtime = src.lastModified();
+        long ctime = src.createTime();
+        long atime = src.lastAccess();
+
+        if ( canServerSideCopy(sh, dh) ) {
+            try {
+                long size = serverSideCopy(src, dest, sh, dh, false);
+                dest.setPathInformation(attrs, ctime, mtime, atime);
+                return size;
+            }
+            catch ( CIFSException e ) {
+                if ( sh.isSameTree(dh) || !isServerSideCopyUnsupported(e) ) {
+                    throw e;
+                }
+                log.debug("Server side copy between shares is not supported, copying through the client", e);
+            }
+        }
+
+        try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0);
+              SmbFileInputStream fis = new SmbFileInputStream(src, sh, sfd);
+              SmbFileHandleImpl dfd = openCopyTargetFile(dest, attrs, false);
+              SmbFileOutputStream fos = new SmbFileOutputStream(
+                  dest,
+                  dh,
+                  dfd,
+                  SmbConstants.O_CREAT | SmbConstants.O_WRONLY | SmbConstants.O_TRUNC,
+                  SmbConstants.FILE_WRITE_DATA | SmbConstants.FILE_WRITE_ATTRIBUTES,
+                  SmbConstants.FILE_NO_SHARE) ) {
+            long off = 0L;
+            int read;
+            while ( ( read = fis.read(b) ) > 0 ) {
+                fos.write(b, 0, read);
+                off += read;
+            }
+            fos.flush();
+            setFileInformation(dest, dh, dfd, attrs, ctime, mtime, atime);
+            return off;
+        }
+        catch ( CIFSException e ) {
+            throw e;
+        }
+        catch ( IOException e ) {
+            throw new SmbException("Failed to copy file from [" + src.toString() + "] to [" + dest.toString() + "]", e);
+        }
+    }
+
+
+    private static void setFileInformation ( SmbFile dest, SmbTreeHandleImpl dh, SmbFileHandleImpl dfd, int attrs, long ctime, long mtime,
+            long atime ) throws CIFSException {
+        if ( dh.isSMB2() ) {
+            Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
+            req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
+            dh.send(req);
+        }
+        else if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
+            // use the open file descriptor
+            dh.send(
+                new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
+                new Trans2SetFileInformationResponse(dh.getConfig()));
+        }
+        else {
+            dh.send(new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime), new SmbComSetInformationResponse(dh.getConfig()));
+        }
+    }
+
+
+    /**
+     * Whether a server side copy can be used between the two trees
+     * 
+     * Copychunk works between any two opens on the same server within the same session, not only within one share.
+     * 
+     * @param sh
+     * @param dh
+     * @return whether server side copy should be attempted
+     * @throws CIFSException
+     */
+    static boolean canServerSideCopy ( SmbTreeHandleImpl sh, SmbTreeHandleImpl dh ) throws CIFSException {
+        return sh.isSMB2() && dh.isSMB2() && ( sh.isSameTree(dh) || sh.isSameSession(dh) );
+    }
+
+
+    /**
+     * @param e
+     * @return whether the server does not support server side copy between the given opens
+     */
+    static boolean isServerSideCopyUnsupported ( CIFSException e ) {
+        if ( ! ( e instanceof SmbException ) ) {
+            return false;
+        }
+        int status = ( (SmbException) e ).getNtStatus();
+        return status == NtStatus.NT_STATUS_NOT_SUPPORTED || status == NtStatus.NT_STATUS_INVALID_DEVICE_REQUEST
+                || status == NtStatus.NT_STATUS_OBJECT_TYPE_MISMATCH;
+    }
+
+
     /**
      * @param src
      * @param dest
      * @param sh
      * @param dh
+     * @return number of bytes copied
      * @throws SmbException
      */
-    @SuppressWarnings ( "resource" )
-    private static void serverSideCopy ( SmbFile src, SmbFile dest, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh, boolean write ) throws CIFSException {
+    static long serverSideCopy ( SmbFile src, SmbFile dest, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh, boolean write ) throws CIFSException {
         log.debug("Trying server side copy");
-        SmbFileHandleImpl dfd = null;
-        try {
-            long size;
-            byte[] resumeKey;
-
-            // despite there being a resume key, we still need an open file descriptor?
-            try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0) ) {
-                if ( sfd.getInitialSize() == 0 ) {
-                    try ( SmbFileHandleImpl edfd = openCopyTargetFile(dest, src.getAttributes(), !write) ) {
-                        return;
-                    }
+        // despite there being a resume key, we still need an open file descriptor?
+        try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0) ) {
+            long size = sfd.getInitialSize();
+            if ( size == 0 ) {
+                try ( SmbFileHandleImpl edfd = openCopyTargetFile(dest, src.getAttributes(), !write) ) {
+                    return 0;
                 }
+            }
 
-                Smb2IoctlRequest resumeReq = new Smb2IoctlRequest(sh.getConfig(), Smb2IoctlRequest.FSCTL_SRV_REQUEST_RESUME_KEY, sfd.getFileId());
-                resumeReq.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
-                Smb2IoctlResponse resumeResp = sh.send(resumeReq);
-                SrvRequestResumeKeyResponse rkresp = resumeResp.getOutputData(SrvRequestResumeKeyResponse.class);
-                size = sfd.getInitialSize();
-                resumeKey = rkresp.getResumeKey();
-
-                // start with some reasonably safe defaults, the server will till us if it does not like it
-                // can we resume this if we loose the file descriptor?
-
-                int maxChunks = 256;
-                int maxChunkSize = 1024 * 1024;
-                int byteLimit = 16 * 1024 * 1024;
-                boolean retry = false;
-                do {
-                    long ooff = 0;
-                    while ( ooff < size ) {
-                        long wsize = size - ooff;
-                        if ( wsize > byteLimit ) {
-                            wsize = byteLimit;
-                        }
+            Smb2IoctlRequest resumeReq = new Smb2IoctlRequest(sh.getConfig(), Smb2IoctlRequest.FSCTL_SRV_REQUEST_RESUME_KEY, sfd.getFileId());
+            resumeReq.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+            Smb2IoctlResponse resumeResp = sh.send(resumeReq);
+            SrvRequestResumeKeyResponse rkresp = resumeResp.getOutputData(SrvRequestResumeKeyResponse.class);
 
-                        int chunks = (int) ( wsize / maxChunkSize );
-                        int lastChunkSize;
-                        if ( chunks + 1 > maxChunks ) {
-                            chunks = maxChunks;
-                            lastChunkSize = maxChunkSize;
-                        }
-                        else {
-                            lastChunkSize = (int) ( wsize % maxChunkSize );
-                            if ( lastChunkSize != 0 ) {
-                                chunks++;
-                            }
-                            else {
-                                lastChunkSize = maxChunkSize;
-                            }
-                        }
+            try ( SmbFileHandleImpl dfd = openCopyTargetFile(dest, src.getAttributes(), !write) ) {
+                copyChunks(dh, dfd, rkresp.getResumeKey(), size, write);
+            }
+            return size;
+        }
+        catch ( CIFSException e ) {
+            throw e;
+        }
+        catch ( IOException se ) {
+            throw new CIFSException("Server side copy failed", se);
+        }
+    }
 
-                        SrvCopychunk[] chunkInfo = new SrvCopychunk[chunks];
-                        long ioff = 0;
-                        for ( int i = 0; i < chunks; i++ ) {
-                            long absoff = ooff + ioff;
-                            int csize = i == chunks - 1 ? lastChunkSize : maxChunkSize;
-                            chunkInfo[ i ] = new SrvCopychunk(absoff, absoff, csize);
-                            ioff += maxChunkSize;
-                        }
 
-                        if ( dfd == null || !dfd.isValid() ) {
-                            // don't reopen the file for every round if it's not necessary, keep the lock
-                            dfd = openCopyTargetFile(dest, src.getAttributes(), !write);
-                        }
+    /**
+     * Copy the given range using copychunk requests, keeping several requests in flight
+     * 
+     * The batches start out with commonly accepted limits, if the server rejects them it reports its own limits which
+     * are used from then on. Until a first batch succeeded only one request is sent at a time.
+     */
+    private static void copyChunks ( SmbTreeHandleImpl dh, SmbFileHandleImpl dfd, byte[] resumeKey, long size, boolean write )
+            throws CIFSException {
+        int window = Math.max(1, dh.getConfig().getServerSideCopyConcurrency());
+
+        // start with some reasonably safe defaults, the server will tell us if it does not like it
+        int maxChunks = 256;
+        int maxChunkSize = 1024 * 1024;
+        int byteLimit = 16 * 1024 * 1024;
+        boolean limitsKnown = false;
+
+        Deque<long[]> ranges = new ArrayDeque<>();
+        ranges.add(new long[] {
+            0, size
+        });
+        Deque<PendingCopy> inflight = new ArrayDeque<>();
+        try {
+            while ( !ranges.isEmpty() || !inflight.isEmpty() ) {
+                while ( !ranges.isEmpty() && inflight.size() < ( limitsKnown ? window : 1 ) ) {
+                    long[] range = ranges.peekFirst();
+                    long batchLimit = Math.min(byteLimit, (long) maxChunks * maxChunkSize);
+                    // split smaller files so that the window is used, but never below a single chunk
+                    long perWindow = ( ( size / window + maxChunkSize - 1 ) / maxChunkSize ) * maxChunkSize;
+                    long len = Math.min(range[ 1 ], Math.min(batchLimit, Math.max(maxChunkSize, perWindow)));
+
+                    // FSCTL_SRV_COPYCHUNK_WRITE allows to open the file for writing only, FSCTL_SRV_COPYCHUNK also
+                    // needs read access
+                    Smb2IoctlRequest copy = new Smb2IoctlRequest(
+                        dh.getConfig(),
+                        write ? Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE : Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK,
+                        dfd.getFileId());
+                    copy.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+                    copy.setInputData(new SrvCopychunkCopy(resumeKey, makeChunks(range[ 0 ], len, maxChunkSize)));
+
+                    Smb2IoctlResponse resp = inflight.isEmpty() ? dh.sendNoWait(copy, RequestParam.NO_RETRY)
+                            : dh.sendNoWait(copy, RequestParam.NO_RETRY, RequestParam.NO_CREDIT_WAIT);
+                    if ( resp == null ) {
+                        // out of credits, collect a response first
+                        break;
+                    }
+                    inflight.add(new PendingCopy(copy, resp, range[ 0 ], len, maxChunkSize));
+                    range[ 0 ] += len;
+                    range[ 1 ] -= len;
+                    if ( range[ 1 ] == 0 ) {
+                        ranges.removeFirst();
+                    }
+                }
 
-                        // FSCTL_SRV_COPYCHUNK_WRITE allows to open the file for writing only, FSCTL_SRV_COPYCHUNK also
-                        // needs read access
-                        Smb2IoctlRequest copy = new Smb2IoctlRequest(
-                            sh.getConfig(),
-                            write ? Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE : Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK,
-                            dfd.getFileId());
-                        copy.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
-                        copy.setInputData(new SrvCopychunkCopy(resumeKey, chunkInfo));
-
-                        try {
-                            SrvCopyChunkCopyResponse r = dh.send(copy, RequestParam.NO_RETRY).getOutputData(SrvCopyChunkCopyResponse.class);
+                PendingCopy p = inflight.removeFirst();
+                try {
+                    dh.waitForResponse(p.request, p.response, RequestParam.NO_RETRY);
+                }
+                catch ( SmbException e ) {
+                    if ( p.response.isReceived() && !p.response.isError() && p.response.getStatus() == NtStatus.NT_STATUS_INVALID_PARAMETER ) {
+                        SrvCopyChunkCopyResponse limits = p.response.getOutputData(SrvCopyChunkCopyResponse.class);
+                        // retry if the limits changed or the request was built with limits since replaced
+                        if ( limits != null && limits.getChunksWritten() > 0 && limits.getChunkBytesWritten() > 0 && limits.getTotalBytesWritten() > 0
+                                && ( !limitsKnown || limits.getChunksWritten() < maxChunks || limits.getChunkBytesWritten() < maxChunkSize
+                                        || limits.getTotalBytesWritten() < byteLimit || p.chunkSize > maxChunkSize || p.length > byteLimit
+                                        || ( p.length + p.chunkSize - 1 ) / p.chunkSize > maxChunks ) ) {
+                            maxChunks = Math.min(maxChunks, limits.getChunksWritten());
+                            maxChunkSize = Math.min(maxChunkSize, limits.getChunkBytesWritten());
+                            byteLimit = Math.min(byteLimit, limits.getTotalBytesWritten());
+                            limitsKnown = true;
                             if ( log.isDebugEnabled() ) {
-                                log.debug(
-                                    String.format(
-                                        "Wrote %d bytes (%d chunks, last partial write %d)",
-                                        r.getTotalBytesWritten(),
-                                        r.getChunksWritten(),
-                                        r.getChunkBytesWritten()));
-                            }
-                            ooff += r.getTotalBytesWritten();
-                        }
-                        catch ( SmbException e ) {
-                            Smb2IoctlResponse response = copy.getResponse();
-                            if ( !retry && response.isReceived() && !response.isError()
-                                    && response.getStatus() == NtStatus.NT_STATUS_INVALID_PARAMETER ) {
-                                retry = true;
-                                SrvCopyChunkCopyResponse outputData = response.getOutputData(SrvCopyChunkCopyResponse.class);
-                                maxChunks = outputData.getChunksWritten();
-                                maxChunkSize = outputData.getChunkBytesWritten();
-                                byteLimit = outputData.getTotalBytesWritten();
-                                continue;
+                                log.debug(String.format("Server copychunk limits: %d chunks of %d bytes, %d total", maxChunks, maxChunkSize, byteLimit));
                             }
-                            throw e;
+                            ranges.addFirst(new long[] {
+                                p.offset, p.length
+                            });
+                            continue;
                         }
                     }
-                    break;
+                    throw e;
+                }
+
+                limitsKnown = true;
+                SrvCopyChunkCopyResponse r = p.response.getOutputData(SrvCopyChunkCopyResponse.class);
+                if ( log.isDebugEnabled() ) {
+                    log.debug(
+                        String.format(
+                            "Wrote %d bytes at %d (%d chunks, last partial write %d)",
+                            r.getTotalBytesWritten(),
+                            p.offset,
+                            r.getChunksWritten(),
+                            r.getChunkBytesWritten()));
+                }
+
+                long w = r.getTotalBytesWritten() & 0xFFFFFFFFL;
+                if ( w < p.length ) {
+                    if ( w == 0 ) {
+                        throw new SmbException("Server side copy did not make progress");
+                    }
+                    ranges.addFirst(new long[] {
+                        p.offset + w, p.length - w
+                    });
                 }
-                while ( retry );
             }
         }
-        catch ( IOException se ) {
-            throw new CIFSException("Server side copy failed", se);
-        }
         finally {
-            if ( dfd != null ) {
-                dfd.close();
+            // collect outstanding responses so that they are not left pending
+            for ( PendingCopy p : inflight ) {
+                try {
+                    dh.waitForResponse(p.request, p.response, RequestParam.NO_RETRY);
+                }
+                catch ( CIFSException e ) {
+                    log.debug("Outstanding copy request failed", e);
+                }
             }
         }
     }
 
 
+    private static SrvCopychunk[] makeChunks ( long offset, long length, int maxChunkSize ) {
+        int chunks = (int) ( ( length + maxChunkSize - 1 ) / maxChunkSize );
+        SrvCopychunk[] chunkInfo = new SrvCopychunk[chunks];
+        long ioff = 0;
+        for ( int i = 0; i < chunks; i++ ) {
+            long absoff = offset + ioff;
+            int csize = (int) Math.min(maxChunkSize, length - ioff);
+            chunkInfo[ i ] = new SrvCopychunk(absoff, absoff, csize);
+            ioff += csize;
+        }
+        return chunkInfo;
+    }
+
+
+    private static final class PendingCopy {
+
+        final Smb2IoctlRequest request;
+        final Smb2IoctlResponse response;
+        final long offset;
+        final long length;
+        final int chunkSize;
+
+
+        PendingCopy ( Smb2IoctlRequest request, Smb2IoctlResponse response, long offset, long length, int chunkSize ) {
+            this.request = request;
+            this.response = response;
+            this.offset = offset;
+            this.length = length;
+            this.chunkSize = chunkSize;
+        }
+    }
+
+
     /**
      * @param dest
      * @param b
@@ -26,6 +26,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,9 +38,12 @@ import jcifs.Configuration;
 import jcifs.ResourceFilter;
 import jcifs.ResourceNameFilter;
 import jcifs.SmbConstants;
+import jcifs.SmbCopyListener;
 import jcifs.SmbFileHandle;
 import jcifs.SmbResource;
 import jcifs.SmbResourceLocator;
+import jcifs.SmbResourceVisitor;
+import jcifs.SmbTracer;
 import jcifs.SmbTreeHandle;
 import jcifs.SmbWatchHandle;
 import jcifs.context.SingletonContext;
@@ -89,6 +93,8 @@ import jcifs.internal.smb2.create.Smb2CreateResponse;
 import jcifs.internal.smb2.info.Smb2QueryInfoRequest;
 import jcifs.internal.smb2.info.Smb2QueryInfoResponse;
 import jcifs.internal.smb2.info.Smb2SetInfoRequest;
+import jcifs.internal.smb2.io.Smb2ReadRequest;
+import jcifs.internal.smb2.io.Smb2WriteRequest;
 
 
 /**
@@ -598,6 +604,24 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    /**
+     * @param name
+     * @return a new span for an operation on this resource
+     */
+    private SmbTracer.Span startSpan ( String name ) {
+        SmbTracer.Span span = getContext().getTracer().startSpan(name);
+        if ( span.isRecording() ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, this.fileLocator.getServer());
+            String share = this.fileLocator.getShare();
+            if ( share != null ) {
+                span.setAttribute(SmbTracer.ATTR_SHARE, share);
+                span.setAttribute(SmbTracer.ATTR_PATH, this.fileLocator.getUNCPath());
+            }
+        }
+        return span;
+    }
+
+
     /**
      * @return
      * @throws CIFSException
@@ -707,6 +731,9 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             SmbBasicFileInfo info;
             boolean haveSize = true, haveAttributes = true;
             long fileSize = 0;
+            if ( ( access & ~SmbLeaseCache.READ_ACCESS_MASK ) != 0 || ( flags & ( O_CREAT | O_EXCL | O_TRUNC ) ) != 0 ) {
+                invalidateCached(h, uncPath, false);
+            }
             if ( h.isSMB2() ) {
                 Smb2CreateRequest req = new Smb2CreateRequest(config, uncPath);
                 req.setDesiredAccess(access);
@@ -807,6 +834,44 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
 
     SmbBasicFileInfo queryPath ( SmbTreeHandleImpl th, String path, int infoLevel ) throws CIFSException {
+        SmbMetadataCache metadata = SmbMetadataCache.get(getContext());
+        if ( metadata == null ) {
+            return queryPathInternal(th, path, infoLevel);
+        }
+
+        String key = SmbMetadataCache.key(th, path);
+        boolean needSize = infoLevel == FileInformation.FILE_STANDARD_INFO;
+        SmbBasicFileInfo info = metadata.get(key, needSize);
+        if ( info != null ) {
+            if ( log.isTraceEnabled() ) {
+                log.trace("Using shared cached metadata for " + path);
+            }
+            return info;
+        }
+
+        try {
+            info = queryPathInternal(th, path, infoLevel);
+        }
+        catch ( SmbException e ) {
+            switch ( e.getNtStatus() ) {
+            case NtStatus.NT_STATUS_NO_SUCH_FILE:
+            case NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND:
+            case NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND:
+                metadata.putMissing(key, e.getNtStatus());
+                break;
+            default:
+            }
+            throw e;
+        }
+
+        // SMB2 and legacy responses contain everything, the SMB1 information levels only part of it
+        boolean complete = th.isSMB2() || !th.hasCapability(SmbConstants.CAP_NT_SMBS);
+        metadata.put(key, info, complete || !needSize, complete || needSize);
+        return info;
+    }
+
+
+    private SmbBasicFileInfo queryPathInternal ( SmbTreeHandleImpl th, String path, int infoLevel ) throws CIFSException {
         if ( log.isDebugEnabled() ) {
             log.debug("queryPath: " + path);
         }
@@ -820,6 +885,14 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
          */
 
         if ( th.isSMB2() ) {
+            SmbLeaseCache leases = getLeaseCache(th);
+            if ( leases != null ) {
+                SmbBasicFileInfo info = leases.queryPath(th, path);
+                if ( info != null ) {
+                    return info;
+                }
+            }
+
             Smb2CreateRequest req = new Smb2CreateRequest(th.getConfig(), path);
             Smb2CloseRequest closeRequest = new Smb2CloseRequest(th.getConfig(), path);
             closeRequest.setCloseFlags(Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB);
@@ -857,8 +930,72 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    /**
+     * @param th
+     * @return the lease cache if leases can be used on this tree
+     * @throws CIFSException
+     */
+    private static SmbLeaseCache getLeaseCache ( SmbTreeHandleImpl th ) throws CIFSException {
+        try ( SmbSessionImpl session = th.getSession() ) {
+            SmbLeaseCache leases = session != null ? session.getLeaseCache() : null;
+            if ( leases != null && SmbLeaseCache.isUsable(th) ) {
+                return leases;
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * @param th
+     * @return the file contents if they can be served while holding a lease, <tt>null</tt> otherwise
+     * @throws CIFSException
+     */
+    byte[] getLeasedData ( SmbTreeHandleImpl th ) throws CIFSException {
+        if ( !th.isSMB2() ) {
+            return null;
+        }
+        SmbLeaseCache leases = getLeaseCache(th);
+        return leases != null ? leases.getData(th, getUncPath()) : null;
+    }
+
+
+    /**
+     * Drop shared cached information about a file before modifying it
+     * 
+     * @param th
+     * @param uncPath
+     * @param recursive
+     *            whether to drop the cached metadata of children as well
+     * @throws CIFSException
+     */
+    void invalidateCached ( SmbTreeHandleImpl th, String uncPath, boolean recursive ) throws CIFSException {
+        SmbMetadataCache metadata = SmbMetadataCache.get(getContext());
+        if ( metadata != null ) {
+            metadata.invalidate(SmbMetadataCache.key(th, uncPath), recursive);
+        }
+        if ( th.isSMB2() ) {
+            SmbLeaseCache leases = getLeaseCache(th);
+            if ( leases != null ) {
+                leases.invalidate(th, uncPath);
+            }
+        }
+    }
+
+
     @Override
     public boolean exists () throws SmbException {
+        return SmbTracing.trace(startSpan("SmbFile.exists"), new SmbTracing.Operation<Boolean>() {
+
+            @Override
+            public Boolean run () throws SmbException {
+                return exists0();
+            }
+        });
+    }
+
+
+    private boolean exists0 () throws SmbException {
 
         if ( this.attrExpiration > System.currentTimeMillis() ) {
             log.trace("Using cached attributes");
@@ -1345,7 +1482,37 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
 
     @Override
-    public void renameTo ( SmbResource d ) throws SmbException {
+    public void walk ( SmbResourceVisitor visitor ) throws CIFSException {
+        walk(visitor, -1, (ResourceFilter) null);
+    }
+
+
+    @Override
+    public void walk ( SmbResourceVisitor visitor, int maxDepth, ResourceFilter filter ) throws CIFSException {
+        new SmbTreeWalker(getContext().getConfig().getWalkThreads(), visitor, maxDepth, null, filter).walk(this);
+    }
+
+
+    @Override
+    public void walk ( SmbResourceVisitor visitor, int maxDepth, ResourceNameFilter filter ) throws CIFSException {
+        new SmbTreeWalker(getContext().getConfig().getWalkThreads(), visitor, maxDepth, filter, null).walk(this);
+    }
+
+
+    @Override
+    public void renameTo ( final SmbResource d ) throws SmbException {
+        SmbTracing.trace(startSpan("SmbFile.renameTo"), new SmbTracing.Operation<Void>() {
+
+            @Override
+            public Void run () throws SmbException {
+                renameTo0(d);
+                return null;
+            }
+        });
+    }
+
+
+    private void renameTo0 ( SmbResource d ) throws SmbException {
         if ( ! ( d instanceof SmbFile ) ) {
             throw new SmbException("Invalid target resource");
         }
@@ -1376,6 +1543,8 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
             this.attrExpiration = this.sizeExpiration = 0;
             dest.attrExpiration = 0;
+            invalidateCached(sh, getUncPath(), true);
+            invalidateCached(th, dest.getUncPath(), true);
 
             /*
              * Rename Request / Response
@@ -1458,6 +1627,12 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 throw new SmbException("Source and destination paths overlap.");
             }
 
+            int threads = getContext().getConfig().getCopyThreads();
+            if ( threads > 1 && isDirectory() ) {
+                copyConcurrent(dest, threads, null, sh, dh);
+                return;
+            }
+
             WriterThread w = new WriterThread();
             w.setDaemon(true);
 
@@ -1485,8 +1660,52 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    @Override
+    public void copyTo ( SmbResource d, SmbCopyListener listener ) throws SmbException {
+        if ( ! ( d instanceof SmbFile ) ) {
+            throw new SmbException("Invalid target resource");
+        }
+        SmbFile dest = (SmbFile) d;
+        try ( SmbTreeHandleImpl sh = ensureTreeConnected();
+              SmbTreeHandleImpl dh = dest.ensureTreeConnected() ) {
+            if ( this.fileLocator.getShare() == null || dest.getLocator().getShare() == null ) {
+                throw new SmbException("Invalid operation for workgroups or servers");
+            }
+
+            if ( this.fileLocator.overlaps(dest.getLocator()) ) {
+                throw new SmbException("Source and destination paths overlap.");
+            }
+
+            copyConcurrent(dest, getContext().getConfig().getCopyThreads(), listener, sh, dh);
+        }
+        catch ( CIFSException e ) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+
+    private void copyConcurrent ( SmbFile dest, int threads, SmbCopyListener listener, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh )
+            throws CIFSException {
+        // use commonly acceptable buffer size
+        int bsize = Math.min(sh.getReceiveBufferSize() - 70, dh.getSendBufferSize() - 70);
+        new SmbCopyEngine(threads, bsize, listener, getContext().getConfig().isIgnoreCopyToException()).copy(this, dest);
+    }
+
+
     @Override
     public void delete () throws SmbException {
+        SmbTracing.trace(startSpan("SmbFile.delete"), new SmbTracing.Operation<Void>() {
+
+            @Override
+            public Void run () throws SmbException {
+                delete0();
+                return null;
+            }
+        });
+    }
+
+
+    private void delete0 () throws SmbException {
         exists();
         try {
             delete(this.fileLocator.getUNCPath());
@@ -1534,10 +1753,22 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 this.isExists = true;
             }
 
+            if ( ( this.attributes & ATTR_DIRECTORY ) != 0 && SmbBulkDelete.isSupported(th) ) {
+                invalidateCached(th, fileName, true);
+                if ( log.isDebugEnabled() ) {
+                    log.debug("delete (batched): " + fileName);
+                }
+                new SmbBulkDelete(th.getConfig().getDeleteBatchSize(), th.getConfig().getDeleteThreads()).delete(this);
+                this.attrExpiration = this.sizeExpiration = 0;
+                return;
+            }
+
             if ( ( this.attributes & ATTR_READONLY ) != 0 ) {
                 setReadWrite();
             }
 
+            invalidateCached(th, fileName, ( this.attributes & ATTR_DIRECTORY ) != 0);
+
             /*
              * Delete or Delete Directory Request / Response
              */
@@ -1610,6 +1841,17 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
     @Override
     public long length () throws SmbException {
+        return SmbTracing.trace(startSpan("SmbFile.length"), new SmbTracing.Operation<Long>() {
+
+            @Override
+            public Long run () throws SmbException {
+                return length0();
+            }
+        });
+    }
+
+
+    private long length0 () throws SmbException {
         if ( this.sizeExpiration > System.currentTimeMillis() ) {
             return this.size;
         }
@@ -1696,6 +1938,18 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
     @Override
     public void mkdir () throws SmbException {
+        SmbTracing.trace(startSpan("SmbFile.mkdir"), new SmbTracing.Operation<Void>() {
+
+            @Override
+            public Void run () throws SmbException {
+                mkdir0();
+                return null;
+            }
+        });
+    }
+
+
+    private void mkdir0 () throws SmbException {
         String path = this.fileLocator.getUNCPath();
 
         if ( path.length() == 1 ) {
@@ -1728,6 +1982,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             else {
                 th.send(new SmbComCreateDirectory(th.getConfig(), path), new SmbComBlankResponse(th.getConfig()));
             }
+            invalidateCached(th, path, false);
             this.attrExpiration = this.sizeExpiration = 0;
         }
         catch ( CIFSException e ) {
@@ -1791,6 +2046,9 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     @SuppressWarnings ( "unchecked" )
     protected <T extends ServerMessageBlock2Response> T withOpen ( SmbTreeHandleImpl th, int createDisposition, int createOptions, int fileAttributes,
             int desiredAccess, int shareAccess, ServerMessageBlock2Request<T> first, ServerMessageBlock2Request<?>... others ) throws CIFSException {
+        if ( ( desiredAccess & ~SmbLeaseCache.READ_ACCESS_MASK ) != 0 || createDisposition != Smb2CreateRequest.FILE_OPEN ) {
+            invalidateCached(th, getUncPath(), false);
+        }
         Smb2CreateRequest cr = new Smb2CreateRequest(th.getConfig(), getUncPath());
         try {
             cr.setCreateDisposition(createDisposition);
@@ -1827,13 +2085,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 info = createResp;
             }
 
-            this.createTime = info.getCreateTime();
-            this.lastModified = info.getLastWriteTime();
-            this.lastAccess = info.getLastAccessTime();
-            this.size = info.getSize();
-            this.attributes = info.getAttributes() & ATTR_GET_MASK;
-            this.attrExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
-            this.isExists = true;
+            updateAttributes(th, info);
             return (T) createResp.getNextResponse();
         }
         catch (
@@ -1855,8 +2107,31 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    private void updateAttributes ( SmbTreeHandleImpl th, SmbBasicFileInfo info ) {
+        this.createTime = info.getCreateTime();
+        this.lastModified = info.getLastWriteTime();
+        this.lastAccess = info.getLastAccessTime();
+        this.size = info.getSize();
+        this.attributes = info.getAttributes() & ATTR_GET_MASK;
+        this.attrExpiration = this.sizeExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
+        this.isExists = true;
+    }
+
+
     @Override
     public void createNewFile () throws SmbException {
+        SmbTracing.trace(startSpan("SmbFile.createNewFile"), new SmbTracing.Operation<Void>() {
+
+            @Override
+            public Void run () throws SmbException {
+                createNewFile0();
+                return null;
+            }
+        });
+    }
+
+
+    private void createNewFile0 () throws SmbException {
         if ( this.fileLocator.isRoot() ) {
             throw new SmbException("Invalid operation for workgroups, servers, or shares");
         }
@@ -1914,6 +2189,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                     new SmbComSetInformationResponse(th.getConfig()));
             }
 
+            invalidateCached(th, getUncPath(), false);
             this.attrExpiration = 0;
         }
     }
@@ -2190,6 +2466,236 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    @Override
+    public SmbFileHandle openFileHandle ( int flags, int access, int sharing ) throws CIFSException {
+        return openUnshared(flags, access, sharing, ATTR_NORMAL, 0);
+    }
+
+
+    @Override
+    public byte[] readAll () throws CIFSException {
+        return readAll(Integer.MAX_VALUE);
+    }
+
+
+    @Override
+    public byte[] readAll ( int maxLength ) throws CIFSException {
+        if ( maxLength < 0 ) {
+            throw new IllegalArgumentException("Negative length");
+        }
+        try ( SmbTreeHandleImpl th = ensureTreeConnected() ) {
+            byte[] first = readHead(th, maxLength);
+            if ( first == null ) {
+                // cannot use a compound, just read through a stream
+                try ( InputStream is = openInputStream() ) {
+                    return readFully(is, new byte[0], maxLength);
+                }
+            }
+
+            if ( first.length < Math.min(maxLength, th.getReceiveBufferSize()) || first.length >= Math.min(maxLength, this.size) ) {
+                return first;
+            }
+
+            // file is larger than a single read, continue reading through a stream
+            try ( InputStream is = openInputStream() ) {
+                is.skip(first.length);
+                return readFully(is, first, (int) Math.min(maxLength, this.size));
+            }
+        }
+        catch ( CIFSException e ) {
+            throw e;
+        }
+        catch ( IOException e ) {
+            throw new SmbException("Failed to read file", e);
+        }
+    }
+
+
+    @Override
+    public InputStream openHeadInputStream ( long maxLength ) throws CIFSException {
+        if ( maxLength < 0 ) {
+            throw new IllegalArgumentException("Negative length");
+        }
+        try ( SmbTreeHandleImpl th = ensureTreeConnected() ) {
+            byte[] first = readHead(th, (int) Math.min(maxLength, th.getReceiveBufferSize()));
+            if ( first == null ) {
+                first = new byte[0];
+            }
+            else if ( first.length < Math.min(maxLength, th.getReceiveBufferSize()) ) {
+                maxLength = first.length;
+            }
+            return new SmbFileHeadInputStream(this, first, maxLength);
+        }
+    }
+
+
+    @Override
+    public void writeAll ( byte[] data ) throws CIFSException {
+        writeAll(data, 0, data.length, 0L, 0L);
+    }
+
+
+    @Override
+    public void writeAll ( byte[] data, int off, int len, long createTime, long lastModified ) throws CIFSException {
+        if ( off < 0 || len < 0 || off + len > data.length ) {
+            throw new IndexOutOfBoundsException();
+        }
+        try ( SmbTreeHandleImpl th = ensureTreeConnected() ) {
+            // leave room for the other requests in the compound
+            int maxWrite = Math.min(th.getSendBufferSize(), th.getConfig().getMaximumBufferSize()) - 1024;
+            if ( !th.isSMB2() || getType() != TYPE_FILESYSTEM || len > maxWrite ) {
+                try ( SmbFileOutputStream os = openOutputStream() ) {
+                    os.write(data, off, len);
+                }
+                catch ( CIFSException e ) {
+                    throw e;
+                }
+                catch ( IOException e ) {
+                    throw new SmbException("Failed to write file", e);
+                }
+                if ( createTime != 0L || lastModified != 0L ) {
+                    setPathInformation(0, createTime, lastModified, 0L);
+                }
+                return;
+            }
+
+            Smb2WriteRequest writeReq = new Smb2WriteRequest(th.getConfig(), Smb2Constants.UNSPECIFIED_FILEID);
+            writeReq.setOffset(0);
+            writeReq.setData(data, off, len);
+
+            int access = FILE_WRITE_DATA | FILE_READ_ATTRIBUTES | READ_CONTROL | SYNCHRONIZE;
+            if ( createTime != 0L || lastModified != 0L ) {
+                Smb2SetInfoRequest infoReq = new Smb2SetInfoRequest(th.getConfig());
+                infoReq.setFileInformation(new FileBasicInfo(createTime, 0L, lastModified, 0L, 0));
+                withOpen(
+                    th,
+                    Smb2CreateRequest.FILE_OVERWRITE_IF,
+                    0,
+                    ATTR_NORMAL,
+                    access | FILE_WRITE_ATTRIBUTES,
+                    FILE_SHARE_READ,
+                    writeReq,
+                    infoReq);
+            }
+            else {
+                withOpen(th, Smb2CreateRequest.FILE_OVERWRITE_IF, 0, ATTR_NORMAL, access, FILE_SHARE_READ, writeReq);
+            }
+
+            SmbMetadataCache metadata = SmbMetadataCache.get(getContext());
+            if ( metadata != null ) {
+                metadata.put(
+                    SmbMetadataCache.key(th, getUncPath()),
+                    true,
+                    this.attributes,
+                    this.createTime,
+                    this.lastModified,
+                    this.lastAccess,
+                    true,
+                    this.size);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the first bytes of the file, using a single compound request if possible
+     * 
+     * @param th
+     * @param maxLength
+     * @return the data read, at most one read worth, null if the file cannot be read this way
+     * @throws CIFSException
+     */
+    private byte[] readHead ( SmbTreeHandleImpl th, int maxLength ) throws CIFSException {
+        if ( !th.isSMB2() || getType() != TYPE_FILESYSTEM ) {
+            return null;
+        }
+
+        byte[] leased = getLeasedData(th);
+        if ( leased != null ) {
+            this.size = leased.length;
+            return Arrays.copyOf(leased, Math.min(leased.length, maxLength));
+        }
+
+        String uncPath = getUncPath();
+        byte[] buffer = new byte[Math.min(maxLength, th.getReceiveBufferSize())];
+        Smb2CreateRequest cr = new Smb2CreateRequest(th.getConfig(), uncPath);
+        cr.setCreateDisposition(Smb2CreateRequest.FILE_OPEN);
+        cr.setDesiredAccess(0x00120089);
+        cr.setShareAccess(FILE_SHARE_READ | FILE_SHARE_WRITE);
+
+        Smb2ReadRequest readReq = new Smb2ReadRequest(th.getConfig(), Smb2Constants.UNSPECIFIED_FILEID, buffer, 0);
+        readReq.setOffset(0);
+        readReq.setReadLength(buffer.length);
+        cr.chain(readReq);
+
+        Smb2CloseRequest closeReq = new Smb2CloseRequest(th.getConfig(), uncPath);
+        closeReq.setCloseFlags(Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB);
+        cr.chain(closeReq);
+
+        int read;
+        try {
+            th.send(cr);
+            read = readReq.getResponse().getDataLength();
+        }
+        catch (
+            CIFSException |
+            RuntimeException e ) {
+            Smb2CreateResponse createResp = cr.getResponse();
+            if ( !createResp.isReceived() || createResp.getStatus() != NtStatus.NT_STATUS_OK ) {
+                throw e;
+            }
+
+            Smb2CloseResponse closeResp = closeReq.getResponse();
+            if ( !closeResp.isReceived() || closeResp.getStatus() != NtStatus.NT_STATUS_OK ) {
+                try {
+                    // make sure that the handle is closed when one of the requests fails
+                    th.send(new Smb2CloseRequest(th.getConfig(), createResp.getFileId()), RequestParam.NO_RETRY);
+                }
+                catch ( Exception e2 ) {
+                    log.debug("Failed to close after failure", e2);
+                    e.addSuppressed(e2);
+                }
+            }
+
+            if ( ! ( e instanceof SmbException ) || ( (SmbException) e ).getNtStatus() != 0xC0000011 ) {
+                throw e;
+            }
+            // empty file
+            read = 0;
+        }
+
+        Smb2CloseResponse closeResp = closeReq.getResponse();
+        if ( closeResp.isReceived() && ( closeResp.getCloseFlags() & Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB ) != 0 ) {
+            updateAttributes(th, closeResp);
+        }
+        else {
+            updateAttributes(th, cr.getResponse());
+        }
+
+        if ( read < buffer.length ) {
+            return Arrays.copyOf(buffer, read);
+        }
+        return buffer;
+    }
+
+
+    private static byte[] readFully ( InputStream is, byte[] head, int maxLength ) throws IOException {
+        byte[] data = Arrays.copyOf(head, Math.max(head.length, Math.min(maxLength, 64 * 1024)));
+        int pos = head.length;
+        while ( pos < maxLength ) {
+            if ( pos == data.length ) {
+                data = Arrays.copyOf(data, (int) Math.min(maxLength, 2L * data.length));
+            }
+            int n = is.read(data, pos, data.length - pos);
+            if ( n <= 0 ) {
+                break;
+            }
+            pos += n;
+        }
+        return pos < data.length ? Arrays.copyOf(data, pos) : data;
+    }
+
+
     @Override
     public OutputStream getOutputStream () throws IOException {
         return new SmbFileOutputStream(this);
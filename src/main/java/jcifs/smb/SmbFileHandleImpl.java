@@ -19,7 +19,11 @@ package jcifs.smb;
 
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +34,10 @@ import jcifs.SmbFileHandle;
 import jcifs.internal.smb1.com.SmbComBlankResponse;
 import jcifs.internal.smb1.com.SmbComClose;
 import jcifs.internal.smb2.create.Smb2CloseRequest;
+import jcifs.internal.smb2.io.Smb2ReadRequest;
+import jcifs.internal.smb2.io.Smb2ReadResponse;
+import jcifs.internal.smb2.io.Smb2WriteRequest;
+import jcifs.internal.smb2.io.Smb2WriteResponse;
 import jcifs.util.Hexdump;
 
 
@@ -168,6 +176,76 @@ class SmbFileHandleImpl implements SmbFileHandle {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.SmbFileHandle#readAsync(long, byte[], int, int)
+     */
+    @Override
+    public CompletableFuture<Integer> readAsync ( long offset, byte[] b, int off, int len ) {
+        try ( SmbTreeHandleImpl th = getTree() ) {
+            if ( !th.isSMB2() ) {
+                return failed(new SmbUnsupportedOperationException("Asynchronous reads require SMB2"));
+            }
+            Smb2ReadRequest request = new Smb2ReadRequest(this.cfg, getFileId(), b, off);
+            request.setOffset(offset);
+            request.setReadLength(Math.min(len, th.getReceiveBufferSize()));
+            return th.sendAsync(request, RequestParam.NO_RETRY).handle(new BiFunction<Smb2ReadResponse, Throwable, Integer>() {
+
+                @Override
+                public Integer apply ( Smb2ReadResponse resp, Throwable t ) {
+                    if ( t == null ) {
+                        return resp.getDataLength();
+                    }
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    if ( cause instanceof SmbException && ( (SmbException) cause ).getNtStatus() == 0xC0000011 ) {
+                        return -1;
+                    }
+                    throw new CompletionException(cause);
+                }
+            });
+        }
+        catch ( CIFSException e ) {
+            return failed(e);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.SmbFileHandle#writeAsync(long, byte[], int, int)
+     */
+    @Override
+    public CompletableFuture<Integer> writeAsync ( long offset, byte[] b, int off, int len ) {
+        try ( SmbTreeHandleImpl th = getTree() ) {
+            if ( !th.isSMB2() ) {
+                return failed(new SmbUnsupportedOperationException("Asynchronous writes require SMB2"));
+            }
+            Smb2WriteRequest request = new Smb2WriteRequest(this.cfg, getFileId());
+            request.setOffset(offset);
+            request.setData(b, off, Math.min(len, th.getSendBufferSize()));
+            return th.sendAsync(request, RequestParam.NO_RETRY).thenApply(new Function<Smb2WriteResponse, Integer>() {
+
+                @Override
+                public Integer apply ( Smb2WriteResponse resp ) {
+                    return resp.getCount();
+                }
+            });
+        }
+        catch ( CIFSException e ) {
+            return failed(e);
+        }
+    }
+
+
+    private static CompletableFuture<Integer> failed ( Throwable t ) {
+        CompletableFuture<Integer> f = new CompletableFuture<>();
+        f.completeExceptionally(t);
+        return f;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -209,6 +287,11 @@ class SmbFileHandleImpl implements SmbFileHandle {
                 else {
                     t.send(new SmbComClose(this.cfg, this.fid, lastWriteTime), new SmbComBlankResponse(this.cfg), RequestParam.NO_RETRY);
                 }
+
+                if ( ( this.access & ~SmbLeaseCache.READ_ACCESS_MASK ) != 0 ) {
+                    // size and times may have changed through this handle
+                    invalidateMetadata(t);
+                }
             }
         }
         finally {
@@ -222,6 +305,16 @@ class SmbFileHandleImpl implements SmbFileHandle {
     }
 
 
+    private void invalidateMetadata ( SmbTreeHandleImpl t ) {
+        try ( SmbSessionImpl s = t.getSession() ) {
+            SmbMetadataCache metadata = s != null ? SmbMetadataCache.get(s.getContext()) : null;
+            if ( metadata != null ) {
+                metadata.invalidate(SmbMetadataCache.key(t, this.unc), false);
+            }
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      *
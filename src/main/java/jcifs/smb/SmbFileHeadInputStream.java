@@ -0,0 +1,110 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream over the first bytes of a file
+ * 
+ * The first chunk has already been fetched using a compound request, the file is only opened when reading beyond
+ * that.
+ * 
+ * @author mbechler
+ *
+ */
+class SmbFileHeadInputStream extends InputStream {
+
+    private final SmbFile file;
+    private final byte[] head;
+    private final long limit;
+    private long pos;
+    private InputStream rest;
+    private final byte[] tmp = new byte[1];
+
+
+    /**
+     * @param file
+     * @param head
+     *            data already read from the start of the file
+     * @param limit
+     *            maximum number of bytes to return
+     */
+    SmbFileHeadInputStream ( SmbFile file, byte[] head, long limit ) {
+        this.file = file;
+        this.head = head;
+        this.limit = limit;
+    }
+
+
+    @Override
+    public int read () throws IOException {
+        return read(this.tmp, 0, 1) == -1 ? -1 : this.tmp[ 0 ] & 0xFF;
+    }
+
+
+    @Override
+    public int read ( byte[] b, int off, int len ) throws IOException {
+        if ( len <= 0 ) {
+            return 0;
+        }
+        if ( this.pos >= this.limit ) {
+            return -1;
+        }
+
+        len = (int) Math.min(len, this.limit - this.pos);
+        if ( this.pos < this.head.length ) {
+            int n = (int) Math.min(len, this.head.length - this.pos);
+            System.arraycopy(this.head, (int) this.pos, b, off, n);
+            this.pos += n;
+            return n;
+        }
+
+        if ( this.rest == null ) {
+            this.rest = this.file.openInputStream();
+            this.rest.skip(this.pos);
+        }
+        int n = this.rest.read(b, off, len);
+        if ( n > 0 ) {
+            this.pos += n;
+        }
+        return n;
+    }
+
+
+    @Override
+    public int available () throws IOException {
+        if ( this.pos < this.head.length ) {
+            return (int) Math.min(this.head.length - this.pos, this.limit - this.pos);
+        }
+        return this.rest != null ? this.rest.available() : 0;
+    }
+
+
+    @Override
+    public void close () throws IOException {
+        if ( this.rest != null ) {
+            this.rest.close();
+            this.rest = null;
+        }
+    }
+
+}
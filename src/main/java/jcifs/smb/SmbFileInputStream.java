@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +60,16 @@ public class SmbFileInputStream extends InputStream {
 
     private boolean smb2;
 
+    private int readAheadCount;
+    private final Deque<PendingRead> readAhead = new ArrayDeque<>();
+    private final Deque<byte[]> readAheadBuffers = new ArrayDeque<>();
+    private PendingRead readAheadCurrent;
+    private int readAheadCurrentPos;
+    private long readAheadOffset = -1;
+    private boolean readAheadEof;
+
+    private byte[] leasedData;
+
 
     /**
      * @param url
@@ -93,9 +105,15 @@ public class SmbFileInputStream extends InputStream {
         this.openFlags = openFlags;
         this.access = access;
 
-        try ( SmbTreeHandleInternal th = file.ensureTreeConnected() ) {
+        try ( SmbTreeHandleImpl th = file.ensureTreeConnected() ) {
             this.smb2 = th.isSMB2();
-            if ( file.getType() != SmbConstants.TYPE_NAMED_PIPE ) {
+            if ( this.smb2 && file.getType() == SmbConstants.TYPE_FILESYSTEM && ( access & ~SmbLeaseCache.READ_ACCESS_MASK ) == 0
+                    && ( openFlags & ( SmbConstants.O_CREAT | SmbConstants.O_TRUNC ) ) == 0 ) {
+                // served from the lease cache without opening the file
+                this.leasedData = file.getLeasedData(th);
+            }
+
+            if ( this.leasedData == null && file.getType() != SmbConstants.TYPE_NAMED_PIPE ) {
                 try ( SmbFileHandle h = ensureOpen() ) {}
                 this.openFlags &= ~ ( SmbConstants.O_CREAT | SmbConstants.O_TRUNC );
             }
@@ -135,6 +153,7 @@ public class SmbFileInputStream extends InputStream {
         if ( this.smb2 ) {
             this.readSize = th.getReceiveBufferSize();
             this.readSizeFile = th.getReceiveBufferSize();
+            this.readAheadCount = th.getConfig().getReadAheadCount();
             return;
         }
 
@@ -216,6 +235,11 @@ public class SmbFileInputStream extends InputStream {
         try {
             SmbFileHandleImpl h = this.handle;
             if ( h != null ) {
+                if ( this.readAheadCurrent != null || !this.readAhead.isEmpty() ) {
+                    try ( SmbTreeHandleImpl th = h.getTree() ) {
+                        discardReadAhead(th);
+                    }
+                }
                 h.close();
             }
         }
@@ -295,10 +319,26 @@ public class SmbFileInputStream extends InputStream {
         if ( this.tmp == null ) {
             throw new IOException("Bad file descriptor");
         }
+
+        if ( this.leasedData != null ) {
+            if ( this.fp >= this.leasedData.length ) {
+                return -1;
+            }
+            int n = (int) Math.min(len, this.leasedData.length - this.fp);
+            System.arraycopy(this.leasedData, (int) this.fp, b, off, n);
+            this.fp += n;
+            return n;
+        }
+
         // ensure file is open
         try ( SmbFileHandleImpl fd = ensureOpen();
               SmbTreeHandleImpl th = fd.getTree() ) {
 
+            int type = this.file.getType();
+            if ( this.readAheadCount > 0 && type == SmbConstants.TYPE_FILESYSTEM && th.isSMB2() ) {
+                return readAhead(fd, th, b, off, len);
+            }
+
             /*
              * Read AndX Request / Response
              */
@@ -309,7 +349,6 @@ public class SmbFileInputStream extends InputStream {
 
             SmbComReadAndXResponse response = new SmbComReadAndXResponse(th.getConfig(), b, off);
 
-            int type = this.file.getType();
             int r, n;
             int blockSize = ( type == SmbConstants.TYPE_FILESYSTEM ) ? this.readSizeFile : this.readSize;
             do {
@@ -385,6 +424,159 @@ public class SmbFileInputStream extends InputStream {
     }
 
 
+    /**
+     * Read using a window of outstanding read requests
+     * 
+     * Requests are issued for consecutive blocks starting at the current file pointer, completed blocks are handed out
+     * in order. This will only block for the first block, further already received data is returned as well.
+     */
+    private int readAhead ( SmbFileHandleImpl fd, SmbTreeHandleImpl th, byte[] b, int off, int len ) throws IOException {
+        if ( this.readAheadOffset < 0 || this.readAheadPosition() != this.fp ) {
+            // first read or the file pointer was moved
+            discardReadAhead(th);
+            this.readAheadOffset = this.fp;
+        }
+        else if ( this.readAheadCurrent == null && this.readAhead.isEmpty() ) {
+            // previously hit end of file, check again in case the file has grown
+            this.readAheadEof = false;
+        }
+
+        int total = 0;
+        try {
+            while ( len > 0 ) {
+                if ( this.readAheadCurrent == null ) {
+                    fillReadAhead(fd, th);
+                    PendingRead next = this.readAhead.peek();
+                    if ( next == null || ( total > 0 && !next.response.isReceived() ) ) {
+                        break;
+                    }
+                    this.readAhead.poll();
+                    if ( completeRead(th, next) <= 0 ) {
+                        this.readAheadBuffers.add(next.buffer);
+                        // anything beyond this point is past the end of file
+                        this.readAheadEof = true;
+                        discardReadAhead(th);
+                        this.readAheadOffset = this.fp;
+                        break;
+                    }
+                    if ( next.dataLength < next.buffer.length ) {
+                        // short read, reached end of file, later blocks would not continue at this block's end
+                        this.readAheadEof = true;
+                        discardReadAhead(th);
+                        this.readAheadOffset = next.offset + next.dataLength;
+                    }
+                    this.readAheadCurrent = next;
+                    this.readAheadCurrentPos = 0;
+                }
+
+                PendingRead cur = this.readAheadCurrent;
+                int n = Math.min(len, cur.dataLength - this.readAheadCurrentPos);
+                System.arraycopy(cur.buffer, this.readAheadCurrentPos, b, off, n);
+                this.readAheadCurrentPos += n;
+                this.fp += n;
+                off += n;
+                len -= n;
+                total += n;
+
+                if ( this.readAheadCurrentPos >= cur.dataLength ) {
+                    this.readAheadBuffers.add(cur.buffer);
+                    this.readAheadCurrent = null;
+                }
+            }
+        }
+        catch ( SmbException se ) {
+            discardReadAhead(th);
+            throw seToIoe(se);
+        }
+        catch ( CIFSException e ) {
+            discardReadAhead(th);
+            throw SmbException.wrap(e);
+        }
+        return total > 0 ? total : -1;
+    }
+
+
+    /**
+     * @return the file offset of the next byte available from the read-ahead window
+     */
+    private long readAheadPosition () {
+        if ( this.readAheadCurrent != null ) {
+            return this.readAheadCurrent.offset + this.readAheadCurrentPos;
+        }
+        PendingRead next = this.readAhead.peek();
+        if ( next != null ) {
+            return next.offset;
+        }
+        return this.readAheadOffset;
+    }
+
+
+    private void fillReadAhead ( SmbFileHandleImpl fd, SmbTreeHandleImpl th ) throws CIFSException {
+        while ( !this.readAheadEof && this.readAhead.size() < this.readAheadCount ) {
+            byte[] buf = this.readAheadBuffers.poll();
+            if ( buf == null ) {
+                buf = new byte[this.readSizeFile];
+            }
+            Smb2ReadRequest request = new Smb2ReadRequest(th.getConfig(), fd.getFileId(), buf, 0);
+            request.setOffset(this.readAheadOffset);
+            request.setReadLength(buf.length);
+
+            // do not block waiting for credits while holding outstanding requests
+            Smb2ReadResponse response = this.readAhead.isEmpty() ? th.sendNoWait(request, RequestParam.NO_RETRY)
+                    : th.sendNoWait(request, RequestParam.NO_RETRY, RequestParam.NO_CREDIT_WAIT);
+            if ( response == null ) {
+                this.readAheadBuffers.add(buf);
+                if ( log.isTraceEnabled() ) {
+                    log.trace("Insufficient credits, read-ahead limited to " + this.readAhead.size());
+                }
+                break;
+            }
+            this.readAhead.add(new PendingRead(this.readAheadOffset, buf, request, response));
+            this.readAheadOffset += buf.length;
+        }
+    }
+
+
+    /**
+     * @return number of bytes read, -1 at end of file
+     */
+    private static int completeRead ( SmbTreeHandleImpl th, PendingRead pr ) throws CIFSException {
+        try {
+            th.waitForResponse(pr.request, pr.response, RequestParam.NO_RETRY);
+            pr.dataLength = pr.response.getDataLength();
+        }
+        catch ( SmbException e ) {
+            if ( e.getNtStatus() != 0xC0000011 ) {
+                throw e;
+            }
+            log.debug("Reached end of file", e);
+            pr.dataLength = -1;
+        }
+        return pr.dataLength;
+    }
+
+
+    /**
+     * Wait for all outstanding read-ahead requests and drop any buffered data
+     */
+    private void discardReadAhead ( SmbTreeHandleImpl th ) {
+        if ( this.readAheadCurrent != null ) {
+            this.readAheadBuffers.add(this.readAheadCurrent.buffer);
+            this.readAheadCurrent = null;
+        }
+        PendingRead pr;
+        while ( ( pr = this.readAhead.poll() ) != null ) {
+            try {
+                th.waitForResponse(pr.request, pr.response, RequestParam.NO_RETRY);
+            }
+            catch ( CIFSException e ) {
+                log.debug("Discarded read-ahead failed", e);
+            }
+            this.readAheadBuffers.add(pr.buffer);
+        }
+    }
+
+
     /**
      * This stream class is unbuffered. Therefore this method will always
      * return 0 for streams connected to regular files. However, a
@@ -413,4 +605,22 @@ public class SmbFileInputStream extends InputStream {
         return 0;
     }
 
+
+    private static final class PendingRead {
+
+        final long offset;
+        final byte[] buffer;
+        final Smb2ReadRequest request;
+        final Smb2ReadResponse response;
+        int dataLength;
+
+
+        PendingRead ( long offset, byte[] buffer, Smb2ReadRequest request, Smb2ReadResponse response ) {
+            this.offset = offset;
+            this.buffer = buffer;
+            this.request = request;
+            this.response = response;
+        }
+    }
+
 }
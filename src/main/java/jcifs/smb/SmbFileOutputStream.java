@@ -21,6 +21,8 @@ package jcifs.smb;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +63,10 @@ public class SmbFileOutputStream extends OutputStream {
 
     private final boolean smb2;
 
+    private int writeBehindCount;
+    private final Deque<PendingWrite> writeBehind = new ArrayDeque<>();
+    private IOException writeBehindError;
+
 
     /**
      * Creates an {@link java.io.OutputStream} for writing bytes to a file on
@@ -152,6 +158,7 @@ public class SmbFileOutputStream extends OutputStream {
         if ( this.smb2 ) {
             this.writeSize = sendBufferSize;
             this.writeSizeFile = sendBufferSize;
+            this.writeBehindCount = th.getConfig().getWriteBehindCount();
             return;
         }
 
@@ -199,6 +206,11 @@ public class SmbFileOutputStream extends OutputStream {
     @Override
     public void close () throws IOException {
         try {
+            if ( !this.writeBehind.isEmpty() && this.handle.isValid() ) {
+                try ( SmbTreeHandleImpl th = this.handle.getTree() ) {
+                    completeWrites(th, 0);
+                }
+            }
             if ( this.handle.isValid() ) {
                 this.handle.close();
             }
@@ -207,6 +219,29 @@ public class SmbFileOutputStream extends OutputStream {
             this.file.clearAttributeCache();
             this.tmp = null;
         }
+        checkWriteBehindError();
+    }
+
+
+    /**
+     * Waits for all outstanding writes to complete
+     * 
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush () throws IOException {
+        if ( !this.writeBehind.isEmpty() && isOpen() ) {
+            try ( SmbFileHandleImpl fh = ensureOpen();
+                  SmbTreeHandleImpl th = fh.getTree() ) {
+                completeWrites(th, 0);
+            }
+            catch ( CIFSException e ) {
+                throw SmbException.wrap(e);
+            }
+        }
+        checkWriteBehindError();
     }
 
 
@@ -299,6 +334,7 @@ public class SmbFileOutputStream extends OutputStream {
             return;
         }
 
+        checkWriteBehindError();
         if ( this.tmp == null ) {
             throw new IOException("Bad file descriptor");
         }
@@ -309,6 +345,11 @@ public class SmbFileOutputStream extends OutputStream {
                 log.debug("write: fid=" + fh + ",off=" + off + ",len=" + len);
             }
 
+            if ( this.writeBehindCount > 0 && flags == 0 && this.file.getType() == SmbConstants.TYPE_FILESYSTEM && th.isSMB2() ) {
+                writeBehind(fh, th, b, off, len);
+                return;
+            }
+
             int w;
             do {
                 int blockSize = ( this.file.getType() == SmbConstants.TYPE_FILESYSTEM ) ? this.writeSizeFile : this.writeSize;
@@ -361,4 +402,89 @@ public class SmbFileOutputStream extends OutputStream {
         }
     }
 
+
+    /**
+     * Send the writes without waiting for the responses
+     * 
+     * The request data is encoded when sending, so the caller's buffer is not referenced after this returns.
+     */
+    private void writeBehind ( SmbFileHandleImpl fh, SmbTreeHandleImpl th, byte[] b, int off, int len ) throws IOException {
+        while ( len > 0 ) {
+            int w = Math.min(len, this.writeSizeFile);
+            completeWrites(th, this.writeBehindCount - 1);
+            checkWriteBehindError();
+
+            Smb2WriteRequest wr = new Smb2WriteRequest(th.getConfig(), fh.getFileId());
+            wr.setOffset(this.fp);
+            wr.setData(b, off, w);
+
+            Smb2WriteResponse resp;
+            if ( this.writeBehind.isEmpty() ) {
+                resp = th.sendNoWait(wr, RequestParam.NO_RETRY);
+            }
+            else {
+                // do not block waiting for credits while holding outstanding requests
+                resp = th.sendNoWait(wr, RequestParam.NO_RETRY, RequestParam.NO_CREDIT_WAIT);
+                if ( resp == null ) {
+                    completeWrites(th, this.writeBehind.size() - 1);
+                    continue;
+                }
+            }
+
+            this.writeBehind.add(new PendingWrite(wr, resp, w));
+            this.fp += w;
+            off += w;
+            len -= w;
+        }
+    }
+
+
+    /**
+     * Wait for outstanding writes until at most <tt>max</tt> are left
+     * 
+     * The first error is recorded and reported by the next operation on the stream.
+     */
+    private void completeWrites ( SmbTreeHandleImpl th, int max ) {
+        while ( this.writeBehind.size() > Math.max(0, max) ) {
+            PendingWrite pw = this.writeBehind.poll();
+            try {
+                th.waitForResponse(pw.request, pw.response, RequestParam.NO_RETRY);
+                if ( pw.response.getCount() != pw.length && this.writeBehindError == null ) {
+                    this.writeBehindError = new SmbException(
+                        String.format("Short write, requested %d but wrote %d", pw.length, pw.response.getCount()));
+                }
+            }
+            catch ( CIFSException e ) {
+                log.debug("Write failed", e);
+                if ( this.writeBehindError == null ) {
+                    this.writeBehindError = SmbException.wrap(e);
+                }
+            }
+        }
+    }
+
+
+    private void checkWriteBehindError () throws IOException {
+        IOException e = this.writeBehindError;
+        if ( e != null ) {
+            // the file contents are undefined from here on, keep failing
+            throw e;
+        }
+    }
+
+
+    private static final class PendingWrite {
+
+        final Smb2WriteRequest request;
+        final Smb2WriteResponse response;
+        final int length;
+
+
+        PendingWrite ( Smb2WriteRequest request, Smb2WriteResponse response, int length ) {
+            this.request = request;
+            this.response = response;
+            this.length = length;
+        }
+    }
+
 }
@@ -0,0 +1,516 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.Configuration;
+import jcifs.SmbConstants;
+import jcifs.internal.SmbBasicFileInfo;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.create.CreateContextResponse;
+import jcifs.internal.smb2.create.Smb2CloseRequest;
+import jcifs.internal.smb2.create.Smb2CreateRequest;
+import jcifs.internal.smb2.create.Smb2CreateResponse;
+import jcifs.internal.smb2.io.Smb2ReadRequest;
+import jcifs.internal.smb2.io.Smb2ReadResponse;
+import jcifs.internal.smb2.lease.Smb2LeaseBreakAcknowledgement;
+import jcifs.internal.smb2.lease.Smb2LeaseBreakNotification;
+import jcifs.internal.smb2.lease.Smb2LeaseCreateContextRequest;
+import jcifs.internal.smb2.lease.Smb2LeaseCreateContextResponse;
+import jcifs.internal.smb2.lease.Smb2LeaseKey;
+import jcifs.internal.smb2.lease.Smb2LeaseState;
+
+
+/**
+ * Per session cache of files opened with a read/handle lease
+ * 
+ * A leased file is kept open, its attributes and - up to a configured size - its contents are served locally until
+ * the server breaks the lease, the file is modified through this session, or it is evicted.
+ * 
+ * @author mbechler
+ *
+ */
+class SmbLeaseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbLeaseCache.class);
+
+    /**
+     * Access flags that do not modify the file
+     */
+    static final int READ_ACCESS_MASK = SmbConstants.FILE_READ_DATA | SmbConstants.FILE_READ_EA | SmbConstants.FILE_EXECUTE
+            | SmbConstants.FILE_READ_ATTRIBUTES | SmbConstants.READ_CONTROL | SmbConstants.SYNCHRONIZE | SmbConstants.GENERIC_READ
+            | SmbConstants.GENERIC_EXECUTE;
+
+    private static final int REQUESTED_LEASE_STATE = Smb2LeaseState.SMB2_LEASE_READ_CACHING | Smb2LeaseState.SMB2_LEASE_HANDLE_CACHING;
+
+    /**
+     * Time for which paths that did not get a lease are not opened with a lease request again
+     */
+    private static final long NOT_LEASED_TIMEOUT = 60000;
+
+    private final Configuration config;
+    private final SmbTransportImpl transport;
+    private final int maxEntries;
+    private final int maxFileSize;
+
+    private final Map<String, LeasedFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Smb2LeaseKey, LeasedFile> byLease = new HashMap<>();
+    private final Map<String, Long> notLeased = new LinkedHashMap<>(16, 0.75f, true);
+
+
+    /**
+     * @param config
+     * @param transport
+     */
+    SmbLeaseCache ( Configuration config, SmbTransportImpl transport ) {
+        this.config = config;
+        this.transport = transport;
+        this.maxEntries = config.getLeaseCacheEntries();
+        this.maxFileSize = config.getLeaseCacheMaxFileSize();
+    }
+
+
+    /**
+     * @param th
+     * @return whether leases can be used on the tree
+     * @throws CIFSException
+     */
+    static boolean isUsable ( SmbTreeHandleImpl th ) throws CIFSException {
+        return th.isSMB2() && th.hasCapability(Smb2Constants.SMB2_GLOBAL_CAP_LEASING);
+    }
+
+
+    /**
+     * Query file information, opening the file with a lease if it is not cached yet
+     * 
+     * Directories and files that recently did not get a lease are not opened, the caller should query them with a
+     * compound CREATE/CLOSE instead.
+     * 
+     * @param th
+     * @param path
+     * @return file information, <tt>null</tt> if the path should not be opened with a lease
+     * @throws CIFSException
+     */
+    SmbBasicFileInfo queryPath ( SmbTreeHandleImpl th, String path ) throws CIFSException {
+        if ( path.endsWith("\\") ) {
+            return null;
+        }
+        String key = key(th, path);
+        LeasedFile f = get(key);
+        if ( f != null ) {
+            if ( log.isTraceEnabled() ) {
+                log.trace("Using leased attributes for " + path);
+            }
+            return f.info;
+        }
+        if ( isNotLeased(key) ) {
+            return null;
+        }
+        return open(th, path, key).info;
+    }
+
+
+    /**
+     * Get the file contents, reading them while holding a lease
+     * 
+     * @param th
+     * @param path
+     * @return the file contents, <tt>null</tt> if the file cannot be cached
+     * @throws CIFSException
+     */
+    byte[] getData ( SmbTreeHandleImpl th, String path ) throws CIFSException {
+        String key = key(th, path);
+        LeasedFile f = get(key);
+        if ( f == null ) {
+            if ( isNotLeased(key) ) {
+                return null;
+            }
+            f = open(th, path, key);
+            if ( !f.cached ) {
+                return null;
+            }
+        }
+
+        if ( f.info.getSize() > this.maxFileSize ) {
+            return null;
+        }
+
+        synchronized ( f ) {
+            if ( f.data == null ) {
+                f.data = readAll(th, f);
+            }
+        }
+
+        // data read after the lease was broken may be stale
+        return f.valid ? f.data : null;
+    }
+
+
+    /**
+     * Drop the cached file, must be called before modifying it
+     * 
+     * @param th
+     * @param path
+     */
+    void invalidate ( SmbTreeHandleImpl th, String path ) {
+        LeasedFile f;
+        synchronized ( this ) {
+            f = this.entries.remove(key(th, path));
+            if ( f == null ) {
+                return;
+            }
+            remove(f);
+        }
+        if ( log.isDebugEnabled() ) {
+            log.debug("Invalidating leased file " + path);
+        }
+        close(f);
+    }
+
+
+    /**
+     * Drop all entries without closing the files, which is done by the session logoff
+     */
+    void clear () {
+        List<LeasedFile> dropped;
+        synchronized ( this ) {
+            dropped = new ArrayList<>(this.byLease.values());
+            this.entries.clear();
+            this.byLease.clear();
+            this.notLeased.clear();
+        }
+        for ( LeasedFile f : dropped ) {
+            f.valid = false;
+            this.transport.unregisterLease(f.leaseKey);
+        }
+    }
+
+
+    /**
+     * Handle a lease break
+     * 
+     * Called by the thread receiving messages, acknowledging the break and closing the file is done by a separate
+     * thread as it requires a response.
+     * 
+     * @param notification
+     */
+    void leaseBroken ( final Smb2LeaseBreakNotification notification ) {
+        final LeasedFile f;
+        final boolean open;
+        synchronized ( this ) {
+            f = this.byLease.get(notification.getLeaseKey());
+            if ( f == null ) {
+                return;
+            }
+            this.entries.remove(f.key, f);
+            remove(f);
+            open = f.fileId != null;
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug("Lease broken for " + f.key + ": " + notification);
+        }
+
+        if ( !notification.isAckRequired() && !open ) {
+            return;
+        }
+
+        LeaseBreakExecutor.INSTANCE.execute(new Runnable() {
+
+            @Override
+            public void run () {
+                if ( notification.isAckRequired() ) {
+                    acknowledge(f, notification.getNewLeaseState());
+                }
+                close(f);
+            }
+        });
+    }
+
+
+    private synchronized boolean isNotLeased ( String key ) {
+        Long expires = this.notLeased.get(key);
+        if ( expires == null ) {
+            return false;
+        }
+        if ( expires < System.currentTimeMillis() ) {
+            this.notLeased.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Must hold the cache lock
+     */
+    private void markNotLeased ( String key ) {
+        this.notLeased.put(key, System.currentTimeMillis() + NOT_LEASED_TIMEOUT);
+        Iterator<Long> it = this.notLeased.values().iterator();
+        while ( this.notLeased.size() > this.maxEntries && it.hasNext() ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+
+    private synchronized LeasedFile get ( String key ) {
+        LeasedFile f = this.entries.get(key);
+        if ( f != null && ( !f.valid || !f.tree.isConnected() || f.tree.getTreeNum() != f.treeNum ) ) {
+            this.entries.remove(key);
+            remove(f);
+            return null;
+        }
+        return f;
+    }
+
+
+    private LeasedFile open ( SmbTreeHandleImpl th, String path, String key ) throws CIFSException {
+        byte[] lk = new byte[16];
+        this.config.getRandom().nextBytes(lk);
+        LeasedFile f = new LeasedFile(key, new Smb2LeaseKey(lk), th.getTreeInternal(), th.getTreeId());
+
+        // the break may arrive before the create response is processed
+        synchronized ( this ) {
+            this.byLease.put(f.leaseKey, f);
+        }
+        this.transport.registerLease(f.leaseKey, this);
+
+        Smb2CreateRequest req = new Smb2CreateRequest(this.config, path);
+        req.setShareAccess(SmbConstants.DEFAULT_SHARING);
+        req.setRequestedOplockLevel(Smb2CreateRequest.SMB2_OPLOCK_LEVEL_LEASE);
+        req.setCreateContexts(new Smb2LeaseCreateContextRequest(f.leaseKey, REQUESTED_LEASE_STATE));
+
+        Smb2CreateResponse resp;
+        try {
+            resp = th.send(req);
+        }
+        catch ( CIFSException e ) {
+            synchronized ( this ) {
+                remove(f);
+            }
+            this.transport.unregisterLease(f.leaseKey);
+            throw e;
+        }
+
+        int granted = grantedLeaseState(resp);
+        List<LeasedFile> evicted = null;
+        synchronized ( this ) {
+            f.info = resp;
+            f.fileId = resp.getFileId();
+            f.cached = f.valid && ( granted & REQUESTED_LEASE_STATE ) == REQUESTED_LEASE_STATE
+                    && ( resp.getFileAttributes() & SmbConstants.ATTR_DIRECTORY ) == 0;
+            if ( f.cached ) {
+                LeasedFile old = this.entries.put(key, f);
+                if ( old != null ) {
+                    evicted = new ArrayList<>();
+                    evicted.add(old);
+                    remove(old);
+                }
+                Iterator<LeasedFile> it = this.entries.values().iterator();
+                while ( this.entries.size() > this.maxEntries && it.hasNext() ) {
+                    LeasedFile e = it.next();
+                    it.remove();
+                    remove(e);
+                    if ( evicted == null ) {
+                        evicted = new ArrayList<>();
+                    }
+                    evicted.add(e);
+                }
+            }
+            else {
+                if ( f.valid ) {
+                    remove(f);
+                }
+                markNotLeased(key);
+            }
+        }
+
+        if ( !f.cached ) {
+            if ( log.isDebugEnabled() ) {
+                log.debug(String.format("Lease not granted for %s (0x%x)", path, granted));
+            }
+            close(f);
+        }
+        else if ( log.isDebugEnabled() ) {
+            log.debug("Opened leased file " + path);
+        }
+
+        if ( evicted != null ) {
+            for ( LeasedFile e : evicted ) {
+                close(e);
+            }
+        }
+        return f;
+    }
+
+
+    private static int grantedLeaseState ( Smb2CreateResponse resp ) {
+        if ( resp.getOplockLevel() != Smb2CreateRequest.SMB2_OPLOCK_LEVEL_LEASE || resp.getCreateContexts() == null ) {
+            return Smb2LeaseState.SMB2_LEASE_NONE;
+        }
+        for ( CreateContextResponse ctx : resp.getCreateContexts() ) {
+            if ( ctx instanceof Smb2LeaseCreateContextResponse ) {
+                return ( (Smb2LeaseCreateContextResponse) ctx ).getLeaseState();
+            }
+        }
+        return Smb2LeaseState.SMB2_LEASE_NONE;
+    }
+
+
+    private byte[] readAll ( SmbTreeHandleImpl th, LeasedFile f ) throws CIFSException {
+        byte[] data = new byte[(int) f.info.getSize()];
+        int pos = 0;
+        try {
+            while ( pos < data.length ) {
+                Smb2ReadRequest req = new Smb2ReadRequest(this.config, f.fileId, data, pos);
+                req.setOffset(pos);
+                req.setReadLength(Math.min(data.length - pos, th.getReceiveBufferSize()));
+                Smb2ReadResponse resp = th.send(req, RequestParam.NO_RETRY);
+                if ( resp.getDataLength() <= 0 ) {
+                    break;
+                }
+                pos += resp.getDataLength();
+            }
+        }
+        catch ( SmbException e ) {
+            if ( e.getNtStatus() != 0xC0000011 ) {
+                throw e;
+            }
+            log.debug("Reached end of file", e);
+        }
+
+        if ( pos < data.length ) {
+            byte[] trunc = new byte[pos];
+            System.arraycopy(data, 0, trunc, 0, pos);
+            return trunc;
+        }
+        return data;
+    }
+
+
+    /**
+     * Must hold the cache lock
+     */
+    private void remove ( LeasedFile f ) {
+        f.valid = false;
+        if ( this.byLease.remove(f.leaseKey) != null ) {
+            this.transport.unregisterLease(f.leaseKey);
+        }
+    }
+
+
+    private void acknowledge ( LeasedFile f, int leaseState ) {
+        try ( SmbTreeImpl t = f.tree.acquire(false) ) {
+            if ( t.isConnected() && t.getTreeNum() == f.treeNum ) {
+                t.send(new Smb2LeaseBreakAcknowledgement(this.config, f.leaseKey, leaseState), RequestParam.NO_RETRY);
+            }
+        }
+        catch ( CIFSException e ) {
+            log.debug("Failed to acknowledge lease break", e);
+        }
+    }
+
+
+    private void close ( LeasedFile f ) {
+        if ( f.fileId == null || !f.closed.compareAndSet(false, true) ) {
+            return;
+        }
+        try ( SmbTreeImpl t = f.tree.acquire(false) ) {
+            if ( t.isConnected() && t.getTreeNum() == f.treeNum ) {
+                t.send(new Smb2CloseRequest(this.config, f.fileId), RequestParam.NO_RETRY);
+            }
+        }
+        catch ( CIFSException e ) {
+            log.debug("Failed to close leased file", e);
+        }
+    }
+
+
+    private static String key ( SmbTreeHandleImpl th, String path ) {
+        if ( path.length() > 0 && path.charAt(0) == '\\' ) {
+            path = path.substring(1);
+        }
+        return th.getTreeId() + ":" + path.toLowerCase(Locale.ROOT);
+    }
+
+    static final class LeasedFile {
+
+        final String key;
+        final Smb2LeaseKey leaseKey;
+        final SmbTreeImpl tree;
+        final long treeNum;
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        volatile boolean valid = true;
+        boolean cached;
+        byte[] fileId;
+        SmbBasicFileInfo info;
+        byte[] data;
+
+
+        LeasedFile ( String key, Smb2LeaseKey leaseKey, SmbTreeImpl tree, long treeNum ) {
+            this.key = key;
+            this.leaseKey = leaseKey;
+            this.tree = tree;
+            this.treeNum = treeNum;
+        }
+    }
+
+
+    /**
+     * Shared daemon threads for acknowledging lease breaks and closing the broken files
+     */
+    private static final class LeaseBreakExecutor {
+
+        static final ExecutorService INSTANCE;
+
+        static {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>());
+            executor.setThreadFactory(new ThreadFactory() {
+
+                @Override
+                public Thread newThread ( Runnable r ) {
+                    Thread t = new Thread(r, "jcifs-lease-break");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            INSTANCE = executor;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import jcifs.CIFSContext;
+import jcifs.SmbTransportPool;
+import jcifs.internal.SmbBasicFileInfo;
+
+
+/**
+ * Context wide cache of file metadata, shared by all {@link SmbFile} instances
+ * 
+ * Entries are keyed by tree and normalized path, so a reconnected tree does not see previous entries. They expire
+ * after the attribute cache timeout and the least recently used entries are evicted once the configured size is
+ * reached. Missing files are cached as well, modifications through this context must invalidate the entries.
+ * 
+ * @author mbechler
+ *
+ */
+class SmbMetadataCache {
+
+    private final int maxEntries;
+    private final long timeout;
+
+    private final Map<String, CachedInfo> entries = new LinkedHashMap<String, CachedInfo>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        protected boolean removeEldestEntry ( Entry<String, CachedInfo> eldest ) {
+            return size() > SmbMetadataCache.this.maxEntries;
+        }
+    };
+
+
+    /**
+     * @param maxEntries
+     * @param timeout
+     *            entry lifetime in milliseconds
+     */
+    SmbMetadataCache ( int maxEntries, long timeout ) {
+        this.maxEntries = maxEntries;
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * @param tc
+     * @return the context's cache, <tt>null</tt> if disabled
+     */
+    static SmbMetadataCache get ( CIFSContext tc ) {
+        SmbTransportPool pool = tc.getTransportPool();
+        if ( pool instanceof SmbTransportPoolImpl ) {
+            return ( (SmbTransportPoolImpl) pool ).getMetadataCache(tc);
+        }
+        return null;
+    }
+
+
+    /**
+     * @param th
+     * @param path
+     *            path below the share
+     * @return cache key
+     */
+    static String key ( SmbTreeHandleImpl th, String path ) {
+        int start = 0, end = path.length();
+        if ( end > 0 && path.charAt(0) == '\\' ) {
+            start++;
+        }
+        if ( end > start && path.charAt(end - 1) == '\\' ) {
+            end--;
+        }
+        return th.getTreeId() + ":" + path.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * @param key
+     * @param needSize
+     *            whether the size is required, otherwise the attributes and times are
+     * @return the cached information, <tt>null</tt> if not cached
+     * @throws SmbException
+     *             with the cached status if the file is known to not exist
+     */
+    SmbBasicFileInfo get ( String key, boolean needSize ) throws SmbException {
+        CachedInfo ci;
+        synchronized ( this ) {
+            ci = this.entries.get(key);
+            if ( ci == null ) {
+                return null;
+            }
+            if ( ci.expiration < System.currentTimeMillis() ) {
+                this.entries.remove(key);
+                return null;
+            }
+        }
+
+        if ( ci.status != 0 ) {
+            throw new SmbException(ci.status, false);
+        }
+        if ( needSize ? ci.haveSize : ci.haveAttributes ) {
+            return ci;
+        }
+        return null;
+    }
+
+
+    /**
+     * Store file information, merging with an existing entry
+     * 
+     * @param key
+     * @param info
+     * @param haveAttributes
+     *            whether info contains valid attributes and times
+     * @param haveSize
+     *            whether info contains a valid size
+     */
+    void put ( String key, SmbBasicFileInfo info, boolean haveAttributes, boolean haveSize ) {
+        put(
+            key,
+            haveAttributes,
+            info.getAttributes(),
+            info.getCreateTime(),
+            info.getLastWriteTime(),
+            info.getLastAccessTime(),
+            haveSize,
+            info.getSize());
+    }
+
+
+    /**
+     * Store file information, merging with an existing entry
+     * 
+     * @param key
+     * @param haveAttributes
+     *            whether attributes and times are valid
+     * @param attributes
+     * @param createTime
+     * @param lastWriteTime
+     * @param lastAccessTime
+     * @param haveSize
+     *            whether the size is valid
+     * @param size
+     */
+    void put ( String key, boolean haveAttributes, int attributes, long createTime, long lastWriteTime, long lastAccessTime, boolean haveSize,
+            long size ) {
+        long now = System.currentTimeMillis();
+        synchronized ( this ) {
+            CachedInfo old = this.entries.get(key);
+            CachedInfo ci = new CachedInfo(now + this.timeout);
+            if ( old != null && old.status == 0 && old.expiration >= now ) {
+                ci.copyFrom(old);
+            }
+            if ( haveAttributes ) {
+                ci.attributes = attributes;
+                ci.createTime = createTime;
+                ci.lastWriteTime = lastWriteTime;
+                ci.lastAccessTime = lastAccessTime;
+                ci.haveAttributes = true;
+            }
+            if ( haveSize ) {
+                ci.size = size;
+                ci.haveSize = true;
+            }
+            this.entries.put(key, ci);
+        }
+    }
+
+
+    /**
+     * Remember that a file does not exist
+     * 
+     * @param key
+     * @param status
+     *            the status returned when querying it
+     */
+    synchronized void putMissing ( String key, int status ) {
+        CachedInfo ci = new CachedInfo(System.currentTimeMillis() + this.timeout);
+        ci.status = status;
+        this.entries.put(key, ci);
+    }
+
+
+    /**
+     * @param key
+     * @param recursive
+     *            whether to also drop all entries below the path
+     */
+    synchronized void invalidate ( String key, boolean recursive ) {
+        this.entries.remove(key);
+        if ( recursive ) {
+            String prefix = key.endsWith(":") ? key : key + '\\';
+            Iterator<String> it = this.entries.keySet().iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().startsWith(prefix) ) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 
+     */
+    synchronized void clear () {
+        this.entries.clear();
+    }
+
+    private static final class CachedInfo implements SmbBasicFileInfo {
+
+        final long expiration;
+        int status;
+        boolean haveAttributes;
+        boolean haveSize;
+        int attributes;
+        long createTime;
+        long lastWriteTime;
+        long lastAccessTime;
+        long size;
+
+
+        CachedInfo ( long expiration ) {
+            this.expiration = expiration;
+        }
+
+
+        void copyFrom ( CachedInfo o ) {
+            this.haveAttributes = o.haveAttributes;
+            this.haveSize = o.haveSize;
+            this.attributes = o.attributes;
+            this.createTime = o.createTime;
+            this.lastWriteTime = o.lastWriteTime;
+            this.lastAccessTime = o.lastAccessTime;
+            this.size = o.size;
+        }
+
+
+        @Override
+        public int getAttributes () {
+            return this.attributes;
+        }
+
+
+        @Override
+        public long getCreateTime () {
+            return this.createTime;
+        }
+
+
+        @Override
+        public long getLastWriteTime () {
+            return this.lastWriteTime;
+        }
+
+
+        @Override
+        public long getLastAccessTime () {
+            return this.lastAccessTime;
+        }
+
+
+        @Override
+        public long getSize () {
+            return this.size;
+        }
+    }
+}
@@ -20,15 +20,21 @@ package jcifs.smb;
 
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.security.GeneralSecurityException;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -44,6 +50,7 @@ import jcifs.Configuration;
 import jcifs.RuntimeCIFSException;
 import jcifs.SmbConstants;
 import jcifs.SmbSession;
+import jcifs.SmbTracer;
 import jcifs.internal.CommonServerMessageBlock;
 import jcifs.internal.CommonServerMessageBlockRequest;
 import jcifs.internal.CommonServerMessageBlockResponse;
@@ -58,11 +65,22 @@ import jcifs.internal.smb1.com.SmbComSessionSetupAndX;
 import jcifs.internal.smb1.com.SmbComSessionSetupAndXResponse;
 import jcifs.internal.smb1.com.SmbComTreeConnectAndX;
 import jcifs.internal.smb2.ServerMessageBlock2Request;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.Smb2EncryptionContext;
 import jcifs.internal.smb2.Smb2SigningDigest;
+import jcifs.internal.smb2.io.Smb2ReadRequest;
+import jcifs.internal.smb2.io.Smb2WriteRequest;
+import jcifs.internal.smb2.ioctl.NetworkInterfaceInfo;
+import jcifs.internal.smb2.ioctl.QueryNetworkInterfaceInfoResponse;
+import jcifs.internal.smb2.ioctl.Smb2IoctlRequest;
+import jcifs.internal.smb2.ioctl.Smb2IoctlResponse;
+import jcifs.internal.smb2.nego.EncryptionNegotiateContext;
 import jcifs.internal.smb2.nego.Smb2NegotiateResponse;
 import jcifs.internal.smb2.session.Smb2LogoffRequest;
 import jcifs.internal.smb2.session.Smb2SessionSetupRequest;
 import jcifs.internal.smb2.session.Smb2SessionSetupResponse;
+import jcifs.internal.smb2.tree.Smb2TreeConnectRequest;
+import jcifs.netbios.UniAddress;
 
 
 /**
@@ -98,10 +116,27 @@ final class SmbSessionImpl implements SmbSessionInternal {
     private long sessionId;
 
     private SMBSigningDigest digest;
+    private SMBSigningDigest treeConnectDigest;
+    private byte[] preauthIntegrityHash;
+    private volatile Smb2EncryptionContext encryptionContext;
+    private volatile boolean encryptData;
 
     private final String targetDomain;
     private final String targetHost;
 
+    private final SmbLeaseCache leaseCache;
+
+    private static final AtomicInteger CHANNEL_THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * additional SMB3 channels bound to this session
+     */
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean channelSetup = new AtomicBoolean();
+    private final Map<CommonServerMessageBlockRequest, SmbTransportImpl> asyncChannels = Collections
+            .synchronizedMap(new IdentityHashMap<CommonServerMessageBlockRequest, SmbTransportImpl>());
+    private volatile long primaryLinkSpeed = 1;
+
 
     SmbSessionImpl ( CIFSContext tf, String targetHost, String targetDomain, SmbTransportImpl transport ) {
         this.transportContext = tf;
@@ -110,6 +145,15 @@ final class SmbSessionImpl implements SmbSessionInternal {
         this.transport = transport.acquire();
         this.trees = new ArrayList<>();
         this.credentials = tf.getCredentials().unwrap(CredentialsInternal.class).clone();
+        this.leaseCache = tf.getConfig().getLeaseCacheEntries() > 0 ? new SmbLeaseCache(tf.getConfig(), transport) : null;
+    }
+
+
+    /**
+     * @return the cache of leased files, <tt>null</tt> if leasing is disabled
+     */
+    SmbLeaseCache getLeaseCache () {
+        return this.leaseCache;
     }
 
 
@@ -244,6 +288,27 @@ final class SmbSessionImpl implements SmbSessionInternal {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.smb.SmbSessionInternal#getChannelCount()
+     */
+    @Override
+    public int getChannelCount () {
+        return this.channels.size();
+    }
+
+
+    /**
+     * The session key is truncated to 16 bytes, right padded with 0 if shorter
+     */
+    private static byte[] toSessionKey ( byte[] sk ) {
+        byte[] key = new byte[16];
+        System.arraycopy(sk, 0, key, 0, Math.min(16, sk.length));
+        return key;
+    }
+
+
     @Override
     public synchronized SmbTreeImpl getSmbTree ( String share, String service ) {
         if ( share == null ) {
@@ -382,7 +447,11 @@ final class SmbSessionImpl implements SmbSessionInternal {
                 request.setUid(this.uid);
 
                 if ( request.getDigest() == null ) {
-                    request.setDigest(getDigest());
+                    SMBSigningDigest dgst = getDigest();
+                    if ( dgst == null && request instanceof Smb2TreeConnectRequest ) {
+                        dgst = this.treeConnectDigest;
+                    }
+                    request.setDigest(dgst);
                 }
 
                 if ( request instanceof RequestWithPath ) {
@@ -394,7 +463,14 @@ final class SmbSessionImpl implements SmbSessionInternal {
                     if ( log.isTraceEnabled() ) {
                         log.trace("Request " + request);
                     }
-                    response = this.transport.send(request, response, params);
+                    Channel ch = selectChannel(request);
+                    SmbTransportImpl t = this.transport;
+                    if ( ch != null ) {
+                        t = ch.transport;
+                        request.setDigest(ch.digest);
+                    }
+                    setupEncryption(request);
+                    response = t.send(request, response, params);
                     if ( log.isTraceEnabled() ) {
                         log.trace("Response " + response);
                     }
@@ -417,12 +493,386 @@ final class SmbSessionImpl implements SmbSessionInternal {
             }
             finally {
                 request.setDigest(null);
+                if ( request instanceof ServerMessageBlock2Request ) {
+                    ( (ServerMessageBlock2Request<?>) request ).setEncryptionContext(null);
+                }
                 this.expiration = System.currentTimeMillis() + this.transportContext.getConfig().getSoTimeout();
             }
         }
     }
 
 
+    /**
+     * Send a request without waiting for the response
+     * 
+     * @param request
+     * @param params
+     * @return the response that will be filled once received
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T sendAsync ( CommonServerMessageBlockRequest request, Set<RequestParam> params )
+            throws CIFSException {
+        try ( SmbTransportImpl trans = getTransport() ) {
+            try {
+                sessionSetup(null, null);
+            }
+            catch ( GeneralSecurityException e ) {
+                throw new SmbException("Session setup failed", e);
+            }
+
+            request.setSessionId(this.sessionId);
+            request.setUid(this.uid);
+
+            if ( request.getDigest() == null ) {
+                request.setDigest(getDigest());
+            }
+
+            Channel ch = selectChannel(request);
+            if ( ch != null ) {
+                request.setDigest(ch.digest);
+            }
+            setupEncryption(request);
+
+            try {
+                T resp = ( ch != null ? ch.transport : trans ).sendAsync(request, params);
+                if ( resp != null && ch != null ) {
+                    this.asyncChannels.put(request, ch.transport);
+                }
+                return resp;
+            }
+            finally {
+                // requests queued for credits are cleaned up by the transport once sent
+                if ( !params.contains(RequestParam.ASYNC_COMPLETION) ) {
+                    request.setDigest(null);
+                    if ( request instanceof ServerMessageBlock2Request ) {
+                        ( (ServerMessageBlock2Request<?>) request ).setEncryptionContext(null);
+                    }
+                }
+                this.expiration = System.currentTimeMillis() + this.transportContext.getConfig().getSoTimeout();
+            }
+        }
+    }
+
+
+    /**
+     * Encrypt the request if the session or the tree it is sent to requires it, encrypted messages are not signed
+     * 
+     * @param request
+     */
+    private void setupEncryption ( CommonServerMessageBlockRequest request ) {
+        if ( ! ( request instanceof ServerMessageBlock2Request ) ) {
+            return;
+        }
+        ServerMessageBlock2Request<?> req = (ServerMessageBlock2Request<?>) request;
+        if ( req.getEncryptionContext() == null && this.encryptData ) {
+            req.setEncryptionContext(this.encryptionContext);
+        }
+        if ( req.getEncryptionContext() != null ) {
+            req.setDigest(null);
+        }
+    }
+
+
+    /**
+     * @return the context used to encrypt messages of this session, null if encryption is not available
+     */
+    Smb2EncryptionContext getEncryptionContext () {
+        return this.encryptionContext;
+    }
+
+
+    /**
+     * Wait for the response to a request sent using {@link #sendAsync(CommonServerMessageBlockRequest, Set)}
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @return the response
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T waitForResponse ( CommonServerMessageBlockRequest request, T response,
+            Set<RequestParam> params ) throws CIFSException {
+        SmbTransportImpl ch = this.asyncChannels.remove(request);
+        if ( ch != null ) {
+            return ch.waitForResponse(request, response, params);
+        }
+        try ( SmbTransportImpl trans = getTransport() ) {
+            return trans.waitForResponse(request, response, params);
+        }
+    }
+
+
+    /**
+     * Selects the connection a request is sent on
+     * 
+     * Only plain read and write requests are distributed across channels, these are assigned to the channel
+     * with the lowest number of outstanding requests relative to it's link speed.
+     * 
+     * @param request
+     * @return the channel to use, null for the primary connection
+     */
+    private Channel selectChannel ( CommonServerMessageBlockRequest request ) {
+        if ( this.channels.isEmpty() || ! ( request instanceof Smb2ReadRequest || request instanceof Smb2WriteRequest )
+                || request.getNext() != null ) {
+            return null;
+        }
+
+        Channel selected = null;
+        double load = ( this.transport.getInflightRequests() + 1 ) / (double) this.primaryLinkSpeed;
+        for ( Channel c : this.channels ) {
+            if ( c.transport.isDisconnected() ) {
+                if ( this.channels.remove(c) ) {
+                    log.debug("Removing disconnected channel " + c.transport);
+                    c.transport.release();
+                }
+                continue;
+            }
+            double l = ( c.transport.getInflightRequests() + 1 ) / (double) c.linkSpeed;
+            if ( l < load ) {
+                load = l;
+                selected = c;
+            }
+        }
+        return selected;
+    }
+
+
+    /**
+     * Establish additional channels for this session, if enabled and supported by the server
+     * 
+     * This is triggered after the first successful tree connect, channels are set up in the background.
+     * 
+     * @param tree
+     *            connected tree used to query the server's network interfaces
+     */
+    void setupChannels ( final SmbTreeImpl tree ) {
+        if ( getConfig().getMaxChannels() <= 1 || this.credentials.isAnonymous() || this.sessionKey == null ) {
+            return;
+        }
+
+        Smb2NegotiateResponse nego;
+        try {
+            if ( !this.transport.isSMB2() ) {
+                return;
+            }
+            nego = (Smb2NegotiateResponse) this.transport.getNegotiateResponse();
+        }
+        catch ( SmbException e ) {
+            log.debug("Failed to get negotiate response", e);
+            return;
+        }
+
+        if ( nego.getDialectRevision() < Smb2Constants.SMB2_DIALECT_0300 || !nego.haveCapabilitiy(Smb2Constants.SMB2_GLOBAL_CAP_MULTI_CHANNEL)
+                || !this.channelSetup.compareAndSet(false, true) ) {
+            return;
+        }
+
+        tree.acquire();
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run () {
+                try {
+                    establishChannels(tree);
+                }
+                catch ( Exception e ) {
+                    log.debug("Failed to set up additional channels", e);
+                }
+                finally {
+                    tree.release();
+                }
+            }
+        }, "jcifs-channels-" + CHANNEL_THREAD_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    private void establishChannels ( SmbTreeImpl tree ) throws CIFSException, GeneralSecurityException, UnknownHostException {
+        Smb2NegotiateResponse nego = (Smb2NegotiateResponse) this.transport.getNegotiateResponse();
+        SMBSigningDigest dgst = this.digest;
+        if ( dgst == null ) {
+            // channels always need to be signed
+            dgst = new Smb2SigningDigest(this.sessionKey, nego.getDialectRevision(), this.preauthIntegrityHash,
+                    nego.getSigningAlgorithm());
+        }
+
+        Smb2IoctlRequest req = new Smb2IoctlRequest(getConfig(), Smb2IoctlRequest.FSCTL_QUERY_NETWORK_INTERFACE_INFO);
+        req.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+        Smb2IoctlResponse resp = tree.send(req);
+        List<NetworkInterfaceInfo> ifs = resp.getOutputData(QueryNetworkInterfaceInfoResponse.class).getInterfaces();
+
+        InetAddress primaryAddr = this.transport.getRemoteAddress().toInetAddress();
+        List<NetworkInterfaceInfo> primaryIfs = new ArrayList<>();
+        List<NetworkInterfaceInfo> otherIfs = new ArrayList<>();
+        for ( NetworkInterfaceInfo ni : ifs ) {
+            if ( ni.getAddress() == null ) {
+                continue;
+            }
+            else if ( ni.getAddress().equals(primaryAddr) ) {
+                primaryIfs.add(ni);
+            }
+            else {
+                otherIfs.add(ni);
+            }
+        }
+
+        Comparator<NetworkInterfaceInfo> bySpeed = new Comparator<NetworkInterfaceInfo>() {
+
+            @Override
+            public int compare ( NetworkInterfaceInfo o1, NetworkInterfaceInfo o2 ) {
+                return Long.compare(o2.getLinkSpeed(), o1.getLinkSpeed());
+            }
+        };
+        Collections.sort(otherIfs, bySpeed);
+        Collections.sort(primaryIfs, bySpeed);
+
+        if ( !primaryIfs.isEmpty() ) {
+            this.primaryLinkSpeed = Math.max(1, primaryIfs.get(0).getLinkSpeed());
+        }
+        else if ( !otherIfs.isEmpty() ) {
+            // connected through an address the server did not report (NAT, name alias), assume the fastest link
+            this.primaryLinkSpeed = Math.max(1, otherIfs.get(0).getLinkSpeed());
+        }
+
+        // prefer interfaces other than the one already used, fall back to additional connections to the same
+        List<NetworkInterfaceInfo> targets = new ArrayList<>(otherIfs);
+        targets.addAll(primaryIfs);
+        if ( targets.isEmpty() ) {
+            log.debug("Server did not report any usable interfaces");
+            return;
+        }
+
+        int want = getConfig().getMaxChannels() - 1;
+        for ( int i = 0; i < want && this.channelSetup.get(); i++ ) {
+            NetworkInterfaceInfo target = targets.get(i % targets.size());
+            try {
+                bindChannel(nego, target, dgst);
+            }
+            catch ( IOException e ) {
+                log.debug("Failed to bind channel to " + target, e);
+            }
+        }
+    }
+
+
+    private void bindChannel ( Smb2NegotiateResponse primaryNego, NetworkInterfaceInfo target, SMBSigningDigest dgst )
+            throws IOException, GeneralSecurityException {
+        SmbTransportImpl ch = getContext().getTransportPool()
+                .getSmbTransport(getContext(), new UniAddress(target.getAddress()), SmbConstants.DEFAULT_PORT, true, true)
+                .unwrap(SmbTransportImpl.class);
+        boolean bound = false;
+        try {
+            ch.ensureConnected();
+            Smb2NegotiateResponse nego = (Smb2NegotiateResponse) ch.getNegotiateResponse();
+            if ( nego.getDialectRevision() != primaryNego.getDialectRevision()
+                    || !nego.haveCapabilitiy(Smb2Constants.SMB2_GLOBAL_CAP_MULTI_CHANNEL) ) {
+                throw new SmbException("Channel negotiated incompatible dialect or capabilities");
+            }
+
+            Subject s = this.credentials.getSubject();
+            SSPContext ctx = createContext(ch, this.targetDomain, nego, true, s);
+            byte[] token = nego.getSecurityBlob();
+            byte[] preauthHash = ch.getPreauthIntegrityHash();
+            Smb2SessionSetupResponse response = null;
+            while ( !ctx.isEstablished() ) {
+                token = initSecContext(ctx, s, token);
+                if ( token == null ) {
+                    break;
+                }
+
+                Smb2SessionSetupRequest request = new Smb2SessionSetupRequest(getContext(), nego.getSecurityMode(), 0, 0, token);
+                request.setSessionBinding(true);
+                request.setSessionId(this.sessionId);
+                request.setDigest(dgst);
+                if ( preauthHash != null ) {
+                    request.retainPayload();
+                }
+
+                try {
+                    response = ch.send(request, null, EnumSet.of(RequestParam.RETAIN_PAYLOAD));
+                }
+                catch ( SmbAuthException sae ) {
+                    throw sae;
+                }
+                catch ( SmbException e ) {
+                    response = request.getResponse();
+                    if ( !response.isReceived() || response.getStatus() != NtStatus.NT_STATUS_MORE_PROCESSING_REQUIRED ) {
+                        throw e;
+                    }
+                }
+
+                if ( preauthHash != null ) {
+                    byte[] reqBytes = request.getRawPayload();
+                    preauthHash = SmbTransportImpl.calculatePreauthHash(reqBytes, 0, reqBytes.length, preauthHash);
+                    if ( response.getStatus() == NtStatus.NT_STATUS_MORE_PROCESSING_REQUIRED ) {
+                        byte[] respBytes = response.getRawPayload();
+                        preauthHash = SmbTransportImpl.calculatePreauthHash(respBytes, 0, respBytes.length, preauthHash);
+                    }
+                }
+                token = response.getBlob();
+            }
+
+            if ( !ctx.isEstablished() || response == null || response.getStatus() != NtStatus.NT_STATUS_OK ) {
+                throw new SmbException("Channel binding did not complete");
+            }
+
+            // the channel signing key is derived from the key of the binding authentication, for SMB 3.1.1 also using
+            // the channel's preauth integrity hash
+            byte[] sk = ctx.getSigningKey();
+            if ( sk == null ) {
+                throw new SmbException("Channel binding did not provide a session key");
+            }
+            SMBSigningDigest chDigest = new Smb2SigningDigest(toSessionKey(sk), nego.getDialectRevision(), preauthHash,
+                nego.getSigningAlgorithm());
+            // the final response is signed with the channel key
+            response.setDigest(chDigest);
+            byte[] payload = response.getRawPayload();
+            if ( !response.verifySignature(payload, 0, payload.length) ) {
+                throw new SmbException("Channel binding signature validation failed");
+            }
+
+            ch.setPrimary(this.transport);
+            Smb2EncryptionContext enc = this.encryptionContext;
+            if ( enc != null ) {
+                ch.registerEncryptionContext(enc);
+            }
+            Channel c = new Channel(ch, Math.max(1, target.getLinkSpeed()), chDigest);
+            this.channels.add(c);
+            bound = true;
+            if ( log.isDebugEnabled() ) {
+                log.debug("Bound channel " + ch + " to session " + this);
+            }
+        }
+        finally {
+            if ( !bound ) {
+                ch.release();
+            }
+        }
+    }
+
+
+    private void closeChannels ( boolean inError ) {
+        this.channelSetup.set(false);
+        for ( Channel c : this.channels ) {
+            if ( this.channels.remove(c) ) {
+                c.transport.unregisterEncryptionContext(this.sessionId);
+                try {
+                    c.transport.disconnect(inError, false);
+                }
+                catch ( IOException e ) {
+                    log.debug("Failed to disconnect channel " + c.transport, e);
+                }
+                finally {
+                    c.transport.release();
+                }
+            }
+        }
+        this.asyncChannels.clear();
+        this.primaryLinkSpeed = 1;
+    }
+
+
     <T extends CommonServerMessageBlock> T sessionSetup ( CommonServerMessageBlockRequest chained, T chainedResponse )
             throws CIFSException, GeneralSecurityException {
         try ( SmbTransportImpl trans = getTransport() ) {
@@ -459,12 +909,25 @@ final class SmbSessionImpl implements SmbSessionInternal {
                      */
                     this.uid = 0;
 
-                    if ( trans.isSMB2() ) {
-                        return sessionSetupSMB2(trans, this.targetDomain, (ServerMessageBlock2Request<?>) chained, chainedResponse);
+                    SmbTracer.Span span = getContext().getTracer().startSpan("smb.session.setup");
+                    if ( span.isRecording() ) {
+                        span.setAttribute(SmbTracer.ATTR_SERVER, trans.getRemoteHostName());
                     }
+                    try {
+                        if ( trans.isSMB2() ) {
+                            return sessionSetupSMB2(trans, this.targetDomain, (ServerMessageBlock2Request<?>) chained, chainedResponse);
+                        }
 
-                    sessionSetupSMB1(trans, this.targetDomain, (ServerMessageBlock) chained, (ServerMessageBlock) chainedResponse);
-                    return chainedResponse;
+                        sessionSetupSMB1(trans, this.targetDomain, (ServerMessageBlock) chained, (ServerMessageBlock) chainedResponse);
+                        return chainedResponse;
+                    }
+                    catch ( CIFSException | RuntimeException e ) {
+                        SmbTracing.fail(span, e);
+                        throw e;
+                    }
+                    finally {
+                        span.end();
+                    }
                 }
                 catch ( CIFSException se ) {
                     log.debug("Session setup failed", se);
@@ -502,78 +965,19 @@ final class SmbSessionImpl implements SmbSessionInternal {
         final int securityMode = negoResp.getSecurityMode();
         final boolean doSigning = securityMode != 0 && !anonymous;
         long sessId = 0;
+        byte[] preauthHash = trans.getPreauthIntegrityHash();
 
         while ( true ) {
             Subject s = this.credentials.getSubject();
-            final byte[] curToken = token;
             if ( ctx == null ) {
-                String host = trans.getRemoteAddress().getHostAddress();
-                try {
-                    host = trans.getRemoteAddress().getHostName();
-                }
-                catch ( Exception e ) {
-                    log.debug("Failed to resolve host name", e);
-                }
-
-                if ( log.isDebugEnabled() ) {
-                    log.debug("Remote host is " + host);
-                }
-
-                if ( s == null ) {
-                    ctx = this.credentials.createContext(getContext(), tdomain, host, negoResp.getSecurityBlob(), doSigning);
-                }
-                else {
-                    try {
-                        final String hostName = host;
-                        ctx = Subject.doAs(s, new PrivilegedExceptionAction<SSPContext>() {
-
-                            @Override
-                            public SSPContext run () throws Exception {
-                                return getCredentials().createContext(getContext(), tdomain, hostName, negoResp.getSecurityBlob(), doSigning);
-                            }
-
-                        });
-                    }
-                    catch ( PrivilegedActionException e ) {
-                        if ( e.getException() instanceof SmbException ) {
-                            throw (SmbException) e.getException();
-                        }
-                        throw new SmbException("Unexpected exception during context initialization", e);
-                    }
-                }
+                ctx = createContext(trans, tdomain, negoResp, doSigning, s);
             }
 
-            final SSPContext curCtx = ctx;
-
             if ( log.isTraceEnabled() ) {
                 log.trace(ctx.toString());
             }
 
-            if ( s != null ) {
-                try {
-                    token = Subject.doAs(s, new PrivilegedExceptionAction<byte[]>() {
-
-                        @Override
-                        public byte[] run () throws Exception {
-                            return curCtx.initSecContext(curToken, 0, curToken == null ? 0 : curToken.length);
-                        }
-
-                    });
-                }
-                catch (
-
-                PrivilegedActionException e )
-
-                {
-                    if ( e.getException() instanceof SmbException ) {
-                        throw (SmbException) e.getException();
-                    }
-                    throw new SmbException("Unexpected exception during context initialization", e);
-                }
-            }
-            else {
-                token = ctx.initSecContext(token, 0, token == null ? 0 : token.length);
-            }
+            token = initSecContext(ctx, s, token);
 
             if ( token != null ) {
                 request = new Smb2SessionSetupRequest(this.getContext(), securityMode, 0, 0, token);
@@ -581,10 +985,14 @@ final class SmbSessionImpl implements SmbSessionInternal {
                 // session setup complete
 
                 request.setSessionId(sessId);
+                if ( preauthHash != null ) {
+                    request.retainPayload();
+                }
 
                 // we can only chain if we don't sign or already have a signing key
+                // with SMB 3.1.1 the signing key depends on the whole session setup request, so never chain
                 byte[] sk = ctx.isEstablished() ? ctx.getSigningKey() : null;
-                if ( chain != null && ( anonymous || !isSignatureSetupRequired() || sk != null ) ) {
+                if ( chain != null && preauthHash == null && ( anonymous || !isSignatureSetupRequired() || sk != null ) ) {
                     request.chain(chain);
                     if ( sk != null && !anonymous && isSignatureSetupRequired() ) {
                         // session key is truncated to 16 bytes, right padded with 0 if shorter
@@ -611,6 +1019,16 @@ final class SmbSessionImpl implements SmbSessionInternal {
                     response = sessResponse;
                 }
 
+                if ( preauthHash != null ) {
+                    // all session setup requests and responses except the final successful one
+                    byte[] reqBytes = request.getRawPayload();
+                    preauthHash = SmbTransportImpl.calculatePreauthHash(reqBytes, 0, reqBytes.length, preauthHash);
+                    if ( response.getStatus() == NtStatus.NT_STATUS_MORE_PROCESSING_REQUIRED ) {
+                        byte[] respBytes = response.getRawPayload();
+                        preauthHash = SmbTransportImpl.calculatePreauthHash(respBytes, 0, respBytes.length, preauthHash);
+                    }
+                }
+
                 if ( response.isLoggedInAsGuest() && !this.credentials.isGuest() ) {
                     throw new SmbAuthException(NtStatus.NT_STATUS_LOGON_FAILURE);
                 }
@@ -629,15 +1047,14 @@ final class SmbSessionImpl implements SmbSessionInternal {
                 setNetbiosName(ctx.getNetbiosName());
                 byte[] sk = ctx.getSigningKey();
                 if ( sk != null ) {
-                    // session key is truncated to 16 bytes, right padded with 0 if shorter
-                    byte[] key = new byte[16];
-                    System.arraycopy(sk, 0, key, 0, Math.min(16, sk.length));
-                    this.sessionKey = key;
+                    this.sessionKey = toSessionKey(sk);
                 }
+                this.preauthIntegrityHash = preauthHash;
                 if ( !anonymous && isSignatureSetupRequired() ) {
                     byte[] signingKey = ctx.getSigningKey();
                     if ( signingKey != null && response != null ) {
-                        Smb2SigningDigest dgst = new Smb2SigningDigest(this.sessionKey, negoResp.getDialectRevision());
+                        Smb2SigningDigest dgst = new Smb2SigningDigest(this.sessionKey, negoResp.getDialectRevision(), preauthHash,
+                            negoResp.getSigningAlgorithm());
                         // verify the server signature here, this is not done automatically as we don't set the request
                         // digest
                         response.setDigest(dgst);
@@ -651,9 +1068,17 @@ final class SmbSessionImpl implements SmbSessionInternal {
                         throw new SmbException("Signing required but no session key available");
                     }
                 }
+                else if ( preauthHash != null && !anonymous && !this.credentials.isGuest() && this.sessionKey != null ) {
+                    // SMB 3.1.1 requires tree connects to be signed even if signing is not required
+                    this.treeConnectDigest = new Smb2SigningDigest(this.sessionKey, negoResp.getDialectRevision(), preauthHash,
+                            negoResp.getSigningAlgorithm());
+                }
                 else if ( log.isDebugEnabled() ) {
                     log.debug("No digest setup " + anonymous + " B " + isSignatureSetupRequired());
                 }
+                if ( response != null ) {
+                    setupEncryption(negoResp, response, sk, preauthHash, anonymous);
+                }
                 setSessionSetup(response);
                 if ( ex != null ) {
                     throw ex;
@@ -664,6 +1089,112 @@ final class SmbSessionImpl implements SmbSessionInternal {
     }
 
 
+    /**
+     * Derive the session's encryption keys, if encryption is supported
+     * 
+     * @param negoResp
+     * @param response
+     *            final session setup response
+     * @param fullSessionKey
+     *            the untruncated session key
+     * @param preauthHash
+     * @param anonymous
+     * @throws GeneralSecurityException
+     * @throws SmbException
+     *             if encryption is required, but not available
+     */
+    private void setupEncryption ( Smb2NegotiateResponse negoResp, Smb2SessionSetupResponse response, byte[] fullSessionKey,
+            byte[] preauthHash, boolean anonymous ) throws GeneralSecurityException, SmbException {
+        boolean required = response.isEncryptData() || getConfig().isEncryptData();
+        int cipher = negoResp.getCipher();
+        if ( cipher == 0 || anonymous || this.credentials.isGuest() || fullSessionKey == null ) {
+            if ( required ) {
+                throw new SmbUnsupportedOperationException("Encryption is required but not available");
+            }
+            return;
+        }
+
+        byte[] key = this.sessionKey;
+        if ( cipher == EncryptionNegotiateContext.CIPHER_AES256_CCM || cipher == EncryptionNegotiateContext.CIPHER_AES256_GCM ) {
+            key = fullSessionKey;
+        }
+        Smb2EncryptionContext ctx = new Smb2EncryptionContext(
+            cipher,
+            negoResp.getDialectRevision(),
+            response.getSessionId(),
+            key,
+            preauthHash);
+        this.transport.registerEncryptionContext(ctx);
+        this.encryptionContext = ctx;
+        this.encryptData = required;
+        if ( log.isDebugEnabled() ) {
+            log.debug("Encryption available with cipher " + cipher + ", required " + required);
+        }
+    }
+
+
+    private SSPContext createContext ( SmbTransportImpl trans, final String tdomain, final Smb2NegotiateResponse negoResp, final boolean doSigning,
+            Subject s ) throws SmbException {
+        String host = trans.getRemoteAddress().getHostAddress();
+        try {
+            host = trans.getRemoteAddress().getHostName();
+        }
+        catch ( Exception e ) {
+            log.debug("Failed to resolve host name", e);
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug("Remote host is " + host);
+        }
+
+        if ( s == null ) {
+            return this.credentials.createContext(getContext(), tdomain, host, negoResp.getSecurityBlob(), doSigning);
+        }
+
+        try {
+            final String hostName = host;
+            return Subject.doAs(s, new PrivilegedExceptionAction<SSPContext>() {
+
+                @Override
+                public SSPContext run () throws Exception {
+                    return getCredentials().createContext(getContext(), tdomain, hostName, negoResp.getSecurityBlob(), doSigning);
+                }
+
+            });
+        }
+        catch ( PrivilegedActionException e ) {
+            if ( e.getException() instanceof SmbException ) {
+                throw (SmbException) e.getException();
+            }
+            throw new SmbException("Unexpected exception during context initialization", e);
+        }
+    }
+
+
+    private static byte[] initSecContext ( final SSPContext ctx, Subject s, final byte[] token ) throws SmbException {
+        if ( s == null ) {
+            return ctx.initSecContext(token, 0, token == null ? 0 : token.length);
+        }
+
+        try {
+            return Subject.doAs(s, new PrivilegedExceptionAction<byte[]>() {
+
+                @Override
+                public byte[] run () throws Exception {
+                    return ctx.initSecContext(token, 0, token == null ? 0 : token.length);
+                }
+
+            });
+        }
+        catch ( PrivilegedActionException e ) {
+            if ( e.getException() instanceof SmbException ) {
+                throw (SmbException) e.getException();
+            }
+            throw new SmbException("Unexpected exception during context initialization", e);
+        }
+    }
+
+
     /**
      * @param trans
      * @param andx
@@ -962,6 +1493,11 @@ final class SmbSessionImpl implements SmbSessionInternal {
 
                 this.netbiosName = null;
 
+                if ( this.leaseCache != null ) {
+                    // leased files are closed by the tree disconnects
+                    this.leaseCache.clear();
+                }
+
                 long us = this.usageCount.get();
                 if ( ( inUse && us != 1 ) || ( !inUse && us > 0 ) ) {
                     log.warn("Logging off session while still in use " + this + ":" + this.trees);
@@ -982,6 +1518,7 @@ final class SmbSessionImpl implements SmbSessionInternal {
                     Smb2LogoffRequest request = new Smb2LogoffRequest(getConfig());
                     request.setDigest(getDigest());
                     request.setSessionId(this.sessionId);
+                    setupEncryption(request);
                     try {
                         this.transport.send(request.ignoreDisconnect(), null);
                     }
@@ -1012,8 +1549,16 @@ final class SmbSessionImpl implements SmbSessionInternal {
             log.warn("Error in logoff", e);
         }
         finally {
+            closeChannels(inError);
             this.connectionState.set(0);
             this.digest = null;
+            this.treeConnectDigest = null;
+            this.preauthIntegrityHash = null;
+            if ( this.encryptionContext != null ) {
+                this.transport.unregisterEncryptionContext(this.encryptionContext.getSessionId());
+                this.encryptionContext = null;
+                this.encryptData = false;
+            }
             this.transport.notifyAll();
         }
         return wasInUse;
@@ -1107,4 +1652,18 @@ final class SmbSessionImpl implements SmbSessionInternal {
         return this.transport.isFailed();
     }
 
+
+    private static final class Channel {
+
+        final SmbTransportImpl transport;
+        final long linkSpeed;
+        final SMBSigningDigest digest;
+
+
+        Channel ( SmbTransportImpl transport, long linkSpeed, SMBSigningDigest digest ) {
+            this.transport = transport;
+            this.linkSpeed = linkSpeed;
+            this.digest = digest;
+        }
+    }
 }
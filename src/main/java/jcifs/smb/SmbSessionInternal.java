@@ -64,4 +64,10 @@ public interface SmbSessionInternal extends SmbSession {
      * @return tree instance
      */
     SmbTree getSmbTree ( String share, String service );
+
+
+    /**
+     * @return number of additional channels bound to this session
+     */
+    int getChannelCount ();
 }
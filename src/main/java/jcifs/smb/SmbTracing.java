@@ -0,0 +1,80 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import jcifs.SmbTracer;
+
+
+/**
+ * @author mbechler
+ *
+ */
+final class SmbTracing {
+
+    private SmbTracing () {}
+
+
+    /**
+     * Mark a span as failed, recording the NT status if available
+     * 
+     * @param span
+     * @param t
+     */
+    static void fail ( SmbTracer.Span span, Throwable t ) {
+        if ( span.isRecording() && t instanceof SmbException ) {
+            span.setAttribute(SmbTracer.ATTR_STATUS, ( (SmbException) t ).getNtStatus());
+        }
+        span.recordException(t);
+    }
+
+
+    /**
+     * Run the operation within the span, ending it afterwards
+     * 
+     * @param span
+     * @param op
+     * @return the operation's result
+     * @throws SmbException
+     */
+    static <T> T trace ( SmbTracer.Span span, Operation<T> op ) throws SmbException {
+        try {
+            return op.run();
+        }
+        catch ( SmbException | RuntimeException e ) {
+            fail(span, e);
+            throw e;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+    /**
+     * @param <T>
+     *            result type
+     */
+    interface Operation <T> {
+
+        /**
+         * @return the result
+         * @throws SmbException
+         */
+        T run () throws SmbException;
+    }
+}
@@ -20,6 +20,7 @@
 package jcifs.smb;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,25 +30,38 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jcifs.Address;
+import jcifs.BufferCache;
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.DfsReferralData;
 import jcifs.SmbConstants;
+import jcifs.SmbMetrics;
+import jcifs.SmbTracer;
 import jcifs.SmbTransport;
 import jcifs.internal.CommonServerMessageBlock;
 import jcifs.internal.CommonServerMessageBlockRequest;
@@ -73,20 +87,32 @@ import jcifs.internal.smb1.trans2.Trans2GetDfsReferralResponse;
 import jcifs.internal.smb2.ServerMessageBlock2;
 import jcifs.internal.smb2.ServerMessageBlock2Request;
 import jcifs.internal.smb2.ServerMessageBlock2Response;
+import jcifs.internal.smb2.Smb2CompressionTransform;
 import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.Smb2EncryptionContext;
+import jcifs.internal.smb2.io.Smb2ReadRequest;
+import jcifs.internal.smb2.io.Smb2ReadResponse;
+import jcifs.internal.smb2.io.Smb2WriteRequest;
 import jcifs.internal.smb2.ioctl.Smb2IoctlRequest;
+import jcifs.internal.smb2.lease.Smb2LeaseBreakNotification;
+import jcifs.internal.smb2.lease.Smb2LeaseKey;
+import jcifs.internal.smb2.nego.CompressionNegotiateContext;
 import jcifs.internal.smb2.nego.Smb2NegotiateRequest;
 import jcifs.internal.smb2.nego.Smb2NegotiateResponse;
 import jcifs.netbios.Name;
 import jcifs.netbios.NbtException;
 import jcifs.netbios.SessionRequestPacket;
 import jcifs.netbios.SessionServicePacket;
+import jcifs.util.Crypto;
 import jcifs.util.Encdec;
 import jcifs.util.Hexdump;
+import jcifs.util.transport.ChannelOutputStream;
+import jcifs.util.transport.MessageInputStream;
 import jcifs.util.transport.Request;
 import jcifs.util.transport.Response;
 import jcifs.util.transport.Transport;
 import jcifs.util.transport.TransportException;
+import jcifs.util.transport.TransportSelector;
 
 
 /**
@@ -101,13 +127,30 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     private int localPort;
     private Address address;
     private Socket socket;
+    private final TransportSelector selector;
     private int port;
     private final AtomicLong mid = new AtomicLong();
     private OutputStream out;
     private InputStream in;
     private final byte[] sbuf = new byte[512]; /* small local buffer */
+
+    /* SMB 3.1.1 connection preauth integrity hash */
+    private byte[] preauthIntegrityHash;
+    private int compressionAlgorithm = CompressionNegotiateContext.COMPRESSION_NONE;
+    /* while a decrypted or decompressed message is being read, the socket input stream */
+    private InputStream transformIn;
+    /* buffer holding the decrypted message being read */
+    private byte[] transformBuffer;
+    /* set when the message passed to peekKey was already decrypted by unwrapMessage */
+    private boolean unwrappedEncrypted;
+    /* whether the message currently being received was encrypted */
+    private boolean receivedEncrypted;
+    private final Map<Long, Smb2EncryptionContext> encryptionContexts = new ConcurrentHashMap<>();
+    private static final byte[] PADDING = new byte[8];
     private long sessionExpiration;
     private final List<SmbSessionImpl> sessions = new LinkedList<>();
+    private final Map<Smb2LeaseKey, SmbLeaseCache> leases = new ConcurrentHashMap<>();
+    private volatile SmbTransportImpl primary;
 
     private String tconHostName = null;
 
@@ -119,12 +162,50 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     private SMBSigningDigest digest;
 
     private final Semaphore credits = new Semaphore(1, true);
+    /* asynchronous requests waiting for credits, sent in order once credits are released */
+    private final Deque<QueuedRequest> creditQueue = new ArrayDeque<>();
 
     private final int desiredCredits = 512;
 
+    /* SMB2_NEGOTIATE through SMB2_OPLOCK_BREAK */
+    private static final int SMB2_COMMANDS = 0x13;
+    private final String metricsServer;
+    private final SmbMetrics.Counter bytesSent;
+    private final SmbMetrics.Counter bytesReceived;
+    private final SmbMetrics.Histogram creditWait;
+    private final SmbMetrics.Counter creditTimeouts;
+    private final SmbTracer tracer;
+    /* looked up on first use, only accessed while receiving */
+    private final SmbMetrics.Histogram[] requestLatency = new SmbMetrics.Histogram[SMB2_COMMANDS];
+    private final SmbMetrics.Counter[] requestErrors = new SmbMetrics.Counter[SMB2_COMMANDS];
+    private boolean gaugesRegistered;
+
+    private final LongSupplier creditsGauge = new LongSupplier() {
+
+        @Override
+        public long getAsLong () {
+            return SmbTransportImpl.this.credits.availablePermits();
+        }
+    };
+
+    private final LongSupplier inflightGauge = new LongSupplier() {
+
+        @Override
+        public long getAsLong () {
+            return SmbTransportImpl.this.response_map.size();
+        }
+    };
+
 
     SmbTransportImpl ( CIFSContext tc, Address address, int port, InetAddress localAddr, int localPort, boolean forceSigning ) {
+        this(tc, address, port, localAddr, localPort, forceSigning, null);
+    }
+
+
+    SmbTransportImpl ( CIFSContext tc, Address address, int port, InetAddress localAddr, int localPort, boolean forceSigning,
+            TransportSelector selector ) {
         this.transportContext = tc;
+        this.selector = selector;
 
         this.signingEnforced = forceSigning || this.getContext().getConfig().isSigningEnforced();
         this.sessionExpiration = System.currentTimeMillis() + tc.getConfig().getSessionTimeout();
@@ -134,6 +215,13 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         this.localAddr = localAddr;
         this.localPort = localPort;
 
+        SmbMetrics metrics = tc.getMetrics();
+        this.metricsServer = address.getHostName();
+        this.bytesSent = metrics.getCounter(SmbMetrics.BYTES_SENT, this.metricsServer, null);
+        this.bytesReceived = metrics.getCounter(SmbMetrics.BYTES_RECEIVED, this.metricsServer, null);
+        this.creditWait = metrics.getHistogram(SmbMetrics.CREDIT_WAIT, this.metricsServer, null);
+        this.creditTimeouts = metrics.getCounter(SmbMetrics.CREDIT_TIMEOUTS, this.metricsServer, null);
+        this.tracer = tc.getTracer();
     }
 
 
@@ -148,6 +236,17 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.util.transport.Transport#isSelectorReceive()
+     */
+    @Override
+    protected boolean isSelectorReceive () {
+        return this.selector != null;
+    }
+
+
     /**
      * @return the address
      */
@@ -408,11 +507,12 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         CIFSContext tc = this.transportContext;
         Name calledName = new Name(tc.getConfig(), this.address.firstCalledName(), 0x20, null);
         do {
-            this.socket = new Socket();
+            this.socket = createSocket();
             if ( this.localAddr != null )
                 this.socket.bind(new InetSocketAddress(this.localAddr, this.localPort));
             this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), 139), tc.getConfig().getConnTimeout());
             this.socket.setSoTimeout(tc.getConfig().getSoTimeout());
+            this.socket.setTcpNoDelay(true);
 
             this.out = this.socket.getOutputStream();
             this.in = this.socket.getInputStream();
@@ -460,6 +560,15 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
+    private Socket createSocket () throws IOException {
+        if ( this.selector != null ) {
+            // channel stays in blocking mode until negotiation is complete
+            return SocketChannel.open().socket();
+        }
+        return new Socket();
+    }
+
+
     private SmbNegotiationResponse negotiate ( int prt ) throws IOException {
         /*
          * We cannot use Transport.sendrecv() yet because
@@ -475,11 +584,13 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 if ( prt == 0 )
                     prt = DEFAULT_PORT; // 445
 
-                this.socket = new Socket();
+                this.socket = createSocket();
                 if ( this.localAddr != null )
                     this.socket.bind(new InetSocketAddress(this.localAddr, this.localPort));
                 this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), prt), this.transportContext.getConfig().getConnTimeout());
                 this.socket.setSoTimeout(this.transportContext.getConfig().getSoTimeout());
+                // messages may be written in multiple parts, do not delay the last one
+                this.socket.setTcpNoDelay(true);
 
                 this.out = this.socket.getOutputStream();
                 this.in = this.socket.getInputStream();
@@ -605,6 +716,9 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
         // further negotiation needed
         Smb2NegotiateRequest smb2neg = new Smb2NegotiateRequest(getContext().getConfig(), securityMode);
+        if ( getContext().getTransportPool() instanceof SmbTransportPoolImpl ) {
+            smb2neg.setClientGuid( ( (SmbTransportPoolImpl) getContext().getTransportPool() ).getClientGuid());
+        }
 
         if ( this.credits.drainPermits() == 0 ) {
             throw new IOException("No credits for negotiate");
@@ -613,13 +727,22 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         try {
             smb2neg.setRequestCredits(Math.max(1, this.desiredCredits - this.credits.availablePermits()));
 
-            negotiateWrite(smb2neg, first != null);
+            int n = negotiateWrite(smb2neg, first != null);
+            byte[] preauthHash = calculatePreauthHash(this.sbuf, 4, n, new byte[64]);
             negotiatePeek();
 
             r = smb2neg.initResponse(getContext());
             r.decode(this.sbuf, 4);
             r.received();
 
+            if ( r.getDialectRevision() == Smb2Constants.SMB2_DIALECT_0311 ) {
+                size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF;
+                this.preauthIntegrityHash = calculatePreauthHash(this.sbuf, 4, size, preauthHash);
+            }
+            else {
+                this.preauthIntegrityHash = null;
+            }
+
             if ( log.isTraceEnabled() ) {
                 log.trace(r.toString());
                 log.trace(Hexdump.toHexString(this.sbuf, 4, size));
@@ -644,13 +767,47 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
      */
     @Override
     public boolean ensureConnected () throws SmbException {
+        if ( this.state == 3 ) {
+            // fast path, connected
+            try {
+                return super.connect(this.transportContext.getConfig().getResponseTimeout());
+            }
+            catch ( TransportException te ) {
+                throw new SmbException("Failed to connect: " + this.address, te);
+            }
+        }
+
+        // the connection is established by the transport thread, trace it here while waiting for it
+        SmbTracer.Span span = this.tracer.startSpan("smb.transport.connect");
+        if ( span.isRecording() ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, this.address.getHostAddress());
+            span.setAttribute(SmbTracer.ATTR_PORT, this.port);
+        }
         try {
-            return super.connect(this.transportContext.getConfig().getResponseTimeout());
+            boolean r = super.connect(this.transportContext.getConfig().getResponseTimeout());
+            if ( span.isRecording() ) {
+                SmbNegotiationResponse nego = this.negotiated;
+                if ( nego instanceof Smb2NegotiateResponse ) {
+                    span.setAttribute(SmbTracer.ATTR_DIALECT, String.format("0x%04x", ( (Smb2NegotiateResponse) nego ).getDialectRevision()));
+                }
+                else if ( nego != null ) {
+                    span.setAttribute(SmbTracer.ATTR_DIALECT, "NT LM 0.12");
+                }
+            }
+            return r;
         }
         catch ( TransportException te ) {
-            throw new SmbException("Failed to connect: " + this.address, te);
+            SmbException e = new SmbException("Failed to connect: " + this.address, te);
+            span.recordException(e);
+            throw e;
+        }
+        catch ( RuntimeException e ) {
+            span.recordException(e);
+            throw e;
+        }
+        finally {
+            span.end();
         }
-
     }
 
 
@@ -693,6 +850,185 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         /* Adjust negotiated values */
         this.tconHostName = this.address.getHostName();
         this.negotiated = resp;
+        this.compressionAlgorithm = resp instanceof Smb2NegotiateResponse ? ( (Smb2NegotiateResponse) resp ).getCompressionAlgorithm()
+                : CompressionNegotiateContext.COMPRESSION_NONE;
+
+        if ( this.selector != null ) {
+            int soTimeout = getContext().getConfig().getSoTimeout();
+            SocketChannel ch = this.socket.getChannel();
+            MessageInputStream mis = new MessageInputStream();
+            this.in = mis;
+            this.out = new ChannelOutputStream(ch, soTimeout);
+            this.selector.register(this, ch, mis, soTimeout, getContext().getConfig().getMaximumBufferSize());
+        }
+        registerMetrics();
+    }
+
+
+    private synchronized void registerMetrics () {
+        SmbMetrics metrics = getContext().getMetrics();
+        metrics.getCounter(SmbMetrics.CONNECTS, this.metricsServer, null).increment(1);
+        metrics.registerGauge(SmbMetrics.CREDITS_AVAILABLE, this.metricsServer, this.creditsGauge);
+        metrics.registerGauge(SmbMetrics.REQUESTS_INFLIGHT, this.metricsServer, this.inflightGauge);
+        this.gaugesRegistered = true;
+    }
+
+
+    private synchronized void unregisterMetrics () {
+        if ( !this.gaugesRegistered ) {
+            return;
+        }
+        this.gaugesRegistered = false;
+        SmbMetrics metrics = getContext().getMetrics();
+        metrics.unregisterGauge(SmbMetrics.CREDITS_AVAILABLE, this.metricsServer, this.creditsGauge);
+        metrics.unregisterGauge(SmbMetrics.REQUESTS_INFLIGHT, this.metricsServer, this.inflightGauge);
+        metrics.getCounter(SmbMetrics.DISCONNECTS, this.metricsServer, null).increment(1);
+    }
+
+
+    private SmbMetrics.Histogram getRequestLatency ( int command ) {
+        SmbMetrics.Histogram h = this.requestLatency[ command ];
+        if ( h == null ) {
+            h = getContext().getMetrics().getHistogram(SmbMetrics.REQUEST_LATENCY, this.metricsServer, ServerMessageBlock2.getCommandName(command));
+            this.requestLatency[ command ] = h;
+        }
+        return h;
+    }
+
+
+    private SmbMetrics.Counter getRequestErrors ( int command ) {
+        SmbMetrics.Counter c = this.requestErrors[ command ];
+        if ( c == null ) {
+            c = getContext().getMetrics().getCounter(SmbMetrics.REQUEST_ERRORS, this.metricsServer, ServerMessageBlock2.getCommandName(command));
+            this.requestErrors[ command ] = c;
+        }
+        return c;
+    }
+
+
+    /**
+     * @param request
+     *            request (chain) about to be sent
+     * @param reqCredits
+     *            credits requested
+     * @return span for the request
+     */
+    private SmbTracer.Span startRequestSpan ( CommonServerMessageBlockRequest request, int reqCredits ) {
+        String name = request instanceof ServerMessageBlock2
+                ? ServerMessageBlock2.getCommandName(( (ServerMessageBlock2) request ).getCommand()) : "SMB1";
+        SmbTracer.Span span = this.tracer.startSpan(name);
+        if ( span.isRecording() ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, this.metricsServer);
+            span.setAttribute(SmbTracer.ATTR_CREDITS_REQUESTED, reqCredits);
+        }
+        return span;
+    }
+
+
+    /**
+     * @param span
+     * @param request
+     *            request (chain) that was sent
+     * @param grantedCredits
+     *            credits granted by the responses
+     */
+    private static void endRequestSpan ( SmbTracer.Span span, CommonServerMessageBlockRequest request, int grantedCredits ) {
+        if ( span.isRecording() ) {
+            int n = 0;
+            int charge = 0;
+            long sent = 0;
+            long received = 0;
+            int status = 0;
+            CommonServerMessageBlockRequest cur = request;
+            while ( cur != null ) {
+                n++;
+                charge += cur.getCreditCost();
+                sent += messageLength(cur);
+                CommonServerMessageBlockResponse resp = cur.getResponse();
+                if ( resp != null && resp.isReceived() ) {
+                    received += messageLength(resp);
+                    if ( status == 0 ) {
+                        status = resp.getErrorCode();
+                    }
+                }
+                cur = cur.getNext();
+            }
+
+            if ( request instanceof ServerMessageBlock2 ) {
+                span.setAttribute(SmbTracer.ATTR_MESSAGE_ID, ( (ServerMessageBlock2) request ).getMid());
+            }
+            else if ( request instanceof ServerMessageBlock ) {
+                span.setAttribute(SmbTracer.ATTR_MESSAGE_ID, ( (ServerMessageBlock) request ).getMid());
+            }
+            span.setAttribute(SmbTracer.ATTR_COMPOUND, n);
+            span.setAttribute(SmbTracer.ATTR_CREDIT_CHARGE, charge);
+            span.setAttribute(SmbTracer.ATTR_CREDITS_GRANTED, grantedCredits);
+            span.setAttribute(SmbTracer.ATTR_BYTES_SENT, sent);
+            span.setAttribute(SmbTracer.ATTR_BYTES_RECEIVED, received);
+            span.setAttribute(SmbTracer.ATTR_STATUS, status);
+
+            CommonServerMessageBlockResponse resp = request.getResponse();
+            if ( resp instanceof ServerMessageBlock2Response ) {
+                ServerMessageBlock2Response r2 = (ServerMessageBlock2Response) resp;
+                long sendTime = r2.getSendTime();
+                long receiveTime = r2.getReceiveTime();
+                if ( sendTime != 0 && receiveTime != 0 ) {
+                    span.setAttribute(SmbTracer.ATTR_SERVER_TIME, receiveTime - sendTime);
+                }
+            }
+        }
+        span.end();
+    }
+
+
+    private static int messageLength ( CommonServerMessageBlock msg ) {
+        if ( msg instanceof ServerMessageBlock2 ) {
+            return ( (ServerMessageBlock2) msg ).getLength();
+        }
+        else if ( msg instanceof ServerMessageBlock ) {
+            return ( (ServerMessageBlock) msg ).getLength();
+        }
+        return 0;
+    }
+
+
+    /**
+     * Records latency and status of a received response
+     * 
+     * @param response
+     */
+    private void recordResponse ( ServerMessageBlock2Response response ) {
+        int status = response.getStatus();
+        if ( response.isAsync() && status == NtStatus.NT_STATUS_PENDING ) {
+            // interim response, the final one follows
+            return;
+        }
+        int command = response.getCommand();
+        long sent = response.getSendTime();
+        if ( command < 0 || command >= SMB2_COMMANDS || sent == 0 ) {
+            return;
+        }
+        getRequestLatency(command).record(System.nanoTime() - sent);
+        if ( ( status & 0xC0000000 ) == 0xC0000000 ) {
+            getRequestErrors(command).increment(1);
+        }
+    }
+
+
+    /**
+     * @param request
+     *            request chain about to be sent
+     */
+    private static void setSendTime ( ServerMessageBlock2Request<?> request ) {
+        long now = System.nanoTime();
+        ServerMessageBlock2Request<?> cur = request;
+        while ( cur != null ) {
+            ServerMessageBlock2Response resp = cur.getResponse();
+            if ( resp != null ) {
+                resp.setSendTime(now);
+            }
+            cur = cur.getNext();
+        }
     }
 
 
@@ -733,6 +1069,12 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 }
             }
 
+            if ( this.transformIn != null ) {
+                this.in = this.transformIn;
+                this.transformIn = null;
+                this.transformBuffer = null;
+            }
+
             if ( this.socket != null ) {
                 this.socket.shutdownOutput();
                 this.out.close();
@@ -751,6 +1093,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             this.socket = null;
             this.digest = null;
             this.tconHostName = null;
+            unregisterMetrics();
+            failQueued(new TransportException("Transport was disconnected"));
             this.transportContext.getTransportPool().removeTransport(this);
         }
         return wasInUse;
@@ -768,24 +1112,99 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
+    /**
+     * @param minSize
+     * @return a buffer of at least the given size
+     */
+    private byte[] getBuffer ( int minSize ) {
+        BufferCache bc = getContext().getBufferCache();
+        if ( bc instanceof BufferCacheImpl ) {
+            return ( (BufferCacheImpl) bc ).getBuffer(minSize);
+        }
+        byte[] buf = bc.getBuffer();
+        if ( buf.length < minSize ) {
+            bc.releaseBuffer(buf);
+            return new byte[minSize];
+        }
+        return buf;
+    }
+
+
+    /**
+     * @param buf
+     * @param used
+     *            number of bytes at the start of the buffer that may have been written to
+     */
+    private void releaseBuffer ( byte[] buf, int used ) {
+        BufferCache bc = getContext().getBufferCache();
+        if ( bc instanceof BufferCacheImpl ) {
+            ( (BufferCacheImpl) bc ).releaseBuffer(buf, used);
+        }
+        else {
+            bc.releaseBuffer(buf);
+        }
+    }
+
+
+    @Override
+    protected long getKey ( Request request ) {
+        if ( request instanceof ServerMessageBlock2 ) {
+            return ( (ServerMessageBlock2) request ).getMid();
+        }
+        return ( (ServerMessageBlock) request ).getMid();
+    }
+
+
     @Override
     protected Long peekKey () throws IOException {
+        if ( this.transformIn != null ) {
+            // previous message was decrypted or decompressed, continue reading from the socket
+            this.in = this.transformIn;
+            this.transformIn = null;
+        }
+        if ( this.transformBuffer != null ) {
+            getContext().getBufferCache().releaseBuffer(this.transformBuffer);
+            this.transformBuffer = null;
+        }
+        boolean encrypted = this.unwrappedEncrypted;
+        this.unwrappedEncrypted = false;
+
         do {
             if ( ( readn(this.in, this.sbuf, 0, 4) ) < 4 ) {
                 return null;
             }
         }
         while ( this.sbuf[ 0 ] == (byte) 0x85 ); /* Dodge NetBIOS keep-alive */
+        if ( !encrypted ) {
+            // messages already decrypted by unwrapMessage have been accounted for there
+            this.bytesReceived.increment(4 + ( ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16 ));
+        }
         /* read smb header */
         if ( ( readn(this.in, this.sbuf, 4, SmbConstants.SMB1_HEADER_LENGTH) ) < SmbConstants.SMB1_HEADER_LENGTH ) {
             return null;
         }
 
+        if ( this.smb2 && Smb2EncryptionContext.isEncrypted(this.sbuf, 4) ) {
+            if ( !peekEncrypted() ) {
+                return null;
+            }
+            encrypted = true;
+            // continue with the decrypted message
+            if ( readn(this.in, this.sbuf, 0, 4 + SmbConstants.SMB1_HEADER_LENGTH) < 4 + SmbConstants.SMB1_HEADER_LENGTH ) {
+                throw new IOException("Truncated encrypted message");
+            }
+        }
+        this.receivedEncrypted = encrypted;
+
         if ( log.isTraceEnabled() ) {
             log.trace("New data read: " + this);
             log.trace(Hexdump.toHexString(this.sbuf, 4, 32));
         }
 
+        if ( this.smb2 && Smb2CompressionTransform.isCompressed(this.sbuf, 4) ) {
+            return peekCompressed();
+        }
+
         for ( ;; ) {
             /*
              * 01234567
@@ -838,12 +1257,39 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     protected void doSend ( Request request ) throws IOException {
 
         CommonServerMessageBlock smb = (CommonServerMessageBlock) request;
+        if ( smb instanceof ServerMessageBlock2Request ) {
+            setSendTime((ServerMessageBlock2Request<?>) smb);
+            if ( ( (ServerMessageBlock2Request<?>) smb ).getEncryptionContext() != null ) {
+                doSendEncrypted((ServerMessageBlock2Request<?>) smb);
+                return;
+            }
+        }
+
+        boolean compress = false;
+        if ( smb instanceof Smb2WriteRequest ) {
+            Smb2WriteRequest wr = (Smb2WriteRequest) smb;
+            compress = this.compressionAlgorithm != CompressionNegotiateContext.COMPRESSION_NONE && wr.getNext() == null
+                    && wr.getDataLength() >= getContext().getConfig().getCompressionThreshold();
+            // signing and compression need the whole message in one buffer
+            if ( wr.getNext() == null && wr.getDigest() == null && !compress ) {
+                doSendWrite(wr);
+                return;
+            }
+        }
+        else if ( smb instanceof Smb2ReadRequest && this.compressionAlgorithm != CompressionNegotiateContext.COMPRESSION_NONE ) {
+            Smb2ReadRequest rr = (Smb2ReadRequest) smb;
+            if ( rr.getReadLength() >= getContext().getConfig().getCompressionThreshold() ) {
+                rr.setReadFlags((byte) ( rr.getReadFlags() | Smb2ReadRequest.SMB2_READFLAG_REQUEST_COMPRESSED ));
+            }
+        }
+
         byte[] buffer = this.getContext().getBufferCache().getBuffer();
+        int n = 0;
         try {
             // synchronize around encode and write so that the ordering for SMB1 signing can be maintained
             synchronized ( this.outLock ) {
-                int n = smb.encode(buffer, 4);
-                Encdec.enc_uint32be(n & 0xFFFF, buffer, 0); /* 4 byte session message header */
+                n = smb.encode(buffer, 4);
+                Encdec.enc_uint32be(n & 0xFFFFFF, buffer, 0); /* 4 byte session message header */
                 if ( log.isTraceEnabled() ) {
                     do {
                         log.trace(smb.toString());
@@ -857,12 +1303,126 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                  * "NBSS Continuation Message" frame according to WireShark
                  */
 
+                if ( !compress || !doSendCompressed(buffer, n) ) {
+                    this.out.write(buffer, 0, 4 + n);
+                    this.bytesSent.increment(4 + n);
+                }
+                this.out.flush();
+            }
+        }
+        finally {
+            releaseBuffer(buffer, 4 + n);
+        }
+    }
+
+
+    /**
+     * Sends an encrypted message
+     * 
+     * SMB2 messages do not depend on the order in which they are encoded, so encoding and encryption happen before
+     * taking the output lock and any number of threads can encrypt concurrently.
+     * 
+     * @param smb
+     * @throws IOException
+     */
+    private void doSendEncrypted ( ServerMessageBlock2Request<?> smb ) throws IOException {
+        Smb2EncryptionContext enc = smb.getEncryptionContext();
+        byte[] buffer = this.getContext().getBufferCache().getBuffer();
+        int n = 0;
+        try {
+            int msgStart = 4 + Smb2EncryptionContext.HEADER_LENGTH;
+            int len = smb.encode(buffer, msgStart);
+            if ( log.isTraceEnabled() ) {
+                log.trace(smb.toString());
+                log.trace(Hexdump.toHexString(buffer, msgStart, len));
+            }
+            n = enc.encrypt(buffer, 4, len);
+            Encdec.enc_uint32be(n & 0xFFFFFF, buffer, 0); /* 4 byte session message header */
+            synchronized ( this.outLock ) {
                 this.out.write(buffer, 0, 4 + n);
                 this.out.flush();
             }
+            this.bytesSent.increment(4 + n);
+        }
+        finally {
+            releaseBuffer(buffer, 4 + n + Smb2EncryptionContext.TAG_LENGTH);
+        }
+    }
+
+
+    /**
+     * Sends an encoded write request with a compressed payload, headers are sent uncompressed
+     * 
+     * @param buffer
+     *            encoded message, starting at offset 4
+     * @param n
+     *            message length
+     * @return whether the message was sent, false if the data did not compress
+     * @throws IOException
+     */
+    private boolean doSendCompressed ( byte[] buffer, int n ) throws IOException {
+        byte[] cbuf = getBuffer(4 + n);
+        int cn = -1;
+        try {
+            cn = Smb2CompressionTransform
+                    .compress(this.compressionAlgorithm, buffer, 4, n, Smb2WriteRequest.OVERHEAD - 4, cbuf, 4);
+            if ( cn < 0 ) {
+                if ( log.isTraceEnabled() ) {
+                    log.trace("Data does not compress, sending uncompressed");
+                }
+                return false;
+            }
+            Encdec.enc_uint32be(cn & 0xFFFFFF, cbuf, 0); /* 4 byte session message header */
+            if ( log.isTraceEnabled() ) {
+                log.trace(String.format("Compressed message %d -> %d bytes", n, cn));
+            }
+            this.out.write(cbuf, 0, 4 + cn);
+            this.bytesSent.increment(4 + cn);
+            return true;
+        }
+        finally {
+            releaseBuffer(cbuf, 4 + Math.max(cn, 0));
+        }
+    }
+
+
+    /**
+     * Sends the encoded write request head followed by the data straight from the caller's buffer
+     * 
+     * @param request
+     * @throws IOException
+     */
+    private void doSendWrite ( Smb2WriteRequest request ) throws IOException {
+        byte[] buffer = getBuffer(Smb2WriteRequest.OVERHEAD);
+        int headLen = Smb2WriteRequest.OVERHEAD - 4;
+        try {
+            synchronized ( this.outLock ) {
+                int n;
+                request.setSendDataDirect(true);
+                try {
+                    n = request.encode(buffer, 4);
+                }
+                finally {
+                    request.setSendDataDirect(false);
+                }
+                Encdec.enc_uint32be(n & 0xFFFFFF, buffer, 0); /* 4 byte session message header */
+                if ( log.isTraceEnabled() ) {
+                    log.trace(request.toString());
+                    log.trace(Hexdump.toHexString(buffer, 4, headLen));
+                }
+
+                int padLen = n - headLen - request.getDataLength();
+                this.out.write(buffer, 0, 4 + headLen);
+                this.out.write(request.getData(), request.getDataOffset(), request.getDataLength());
+                if ( padLen > 0 ) {
+                    this.out.write(PADDING, 0, padLen);
+                }
+                this.out.flush();
+                this.bytesSent.increment(4 + n);
+            }
         }
         finally {
-            this.getContext().getBufferCache().releaseBuffer(buffer);
+            releaseBuffer(buffer, 4 + headLen);
         }
     }
 
@@ -916,16 +1476,28 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                     // don't have enough credits/space for the first request, block until available
                     // for space there is nothing we can do, callers need to make sure that a single message fits
 
+                    SmbTracer.Span waitSpan = this.tracer.startSpan("smb.credits.wait");
+                    if ( waitSpan.isRecording() ) {
+                        waitSpan.setAttribute(SmbTracer.ATTR_CREDIT_CHARGE, cost);
+                    }
                     try {
                         long timeout = this.transportContext.getConfig().getResponseTimeout();
-                        if ( !params.contains(RequestParam.NO_TIMEOUT) ) {
-                            this.credits.acquire(cost);
-                        }
-                        else {
-                            if ( !this.credits.tryAcquire(cost, timeout, TimeUnit.MILLISECONDS) ) {
-                                throw new SmbException("Failed to acquire credits in time");
+                        long start = System.nanoTime();
+                        try {
+                            if ( params.contains(RequestParam.NO_TIMEOUT) ) {
+                                this.credits.acquire(cost);
                             }
+                            else if ( !this.credits.tryAcquire(cost, timeout, TimeUnit.MILLISECONDS) ) {
+                                this.creditTimeouts.increment(1);
+                                SmbException e = new SmbException("Failed to acquire credits in time");
+                                waitSpan.recordException(e);
+                                throw e;
+                            }
+                        }
+                        finally {
+                            waitSpan.end();
                         }
+                        this.creditWait.record(System.nanoTime() - start);
                         totalSize += size;
                         // split off first request
 
@@ -961,6 +1533,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             request.setRequestCredits(reqCredits);
 
             CommonServerMessageBlockRequest thisReq = curHead;
+            SmbTracer.Span span = startRequestSpan(thisReq, reqCredits);
             try {
                 CommonServerMessageBlockResponse resp = thisReq.getResponse();
                 if ( log.isTraceEnabled() ) {
@@ -982,6 +1555,10 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 }
                 curHead = nextHead;
             }
+            catch ( IOException | RuntimeException e ) {
+                span.recordException(e);
+                throw e;
+            }
             finally {
                 CommonServerMessageBlockRequest curReq = thisReq;
                 int grantedCredits = 0;
@@ -1016,8 +1593,9 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                     if ( log.isTraceEnabled() ) {
                         log.trace("Adding credits " + grantedCredits);
                     }
-                    this.credits.release(grantedCredits);
+                    releaseCredits(grantedCredits);
                 }
+                endRequestSpan(span, thisReq, grantedCredits);
             }
         }
 
@@ -1053,6 +1631,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                     if ( log.isDebugEnabled() ) {
                         log.debug("Credit from intermediate " + credit);
                     }
+                    // called while holding the response monitor, queued requests are sent by the next release
                     this.credits.release(credit);
                 }
                 return true;
@@ -1080,40 +1659,199 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
-    // must be synchronized with peekKey
-    @Override
-    protected void doRecv ( Response response ) throws IOException {
-        CommonServerMessageBlock resp = (CommonServerMessageBlock) response;
-        this.negotiated.setupResponse(response);
+    /**
+     * Reads and decrypts an encrypted message
+     * 
+     * The decrypted message, preceded by a session message header, is served from memory to the regular receive
+     * methods until the next message is peeked.
+     * 
+     * Without selector threads this runs on the transport thread while holding the input lock. That lock is held
+     * by the transport thread while blocking on the socket anyway, so decrypting here does not delay any other thread,
+     * but messages are still decrypted one after the other. With selector threads {@link #unwrapMessage(byte[])}
+     * decrypts before the lock is taken.
+     * 
+     * @return whether the message was read completely
+     * @throws IOException
+     */
+    private boolean peekEncrypted () throws IOException {
+        int size = ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16;
+        if ( size < Smb2EncryptionContext.HEADER_LENGTH + Smb2Constants.SMB2_HEADER_LENGTH ) {
+            throw new IOException("Invalid encrypted message size: " + size);
+        }
+
+        byte[] frame = getBuffer(size);
+        boolean ok = false;
         try {
-            if ( this.smb2 ) {
-                doRecvSMB2(resp);
-            }
-            else {
-                doRecvSMB1(resp);
-            }
+            System.arraycopy(this.sbuf, 4, frame, 0, SmbConstants.SMB1_HEADER_LENGTH);
+            if ( readn(this.in, frame, SmbConstants.SMB1_HEADER_LENGTH, size - SmbConstants.SMB1_HEADER_LENGTH) < size
+                    - SmbConstants.SMB1_HEADER_LENGTH ) {
+                return false;
+            }
+            int n = decrypt(frame, 0, size);
+            int off = Smb2EncryptionContext.HEADER_LENGTH - 4;
+            Encdec.enc_uint32be(n & 0xFFFFFF, frame, off);
+            this.transformIn = this.in;
+            this.transformBuffer = frame;
+            this.in = new ByteArrayInputStream(frame, off, 4 + n);
+            ok = true;
+            return true;
         }
-        catch ( Exception e ) {
-            log.warn("Failure decoding message, disconnecting transport", e);
-            response.exception(e);
-            synchronized ( response ) {
-                response.notifyAll();
+        finally {
+            if ( !ok ) {
+                releaseBuffer(frame, size);
             }
-            throw e;
         }
-
     }
 
 
     /**
-     * @param response
-     * @throws IOException
-     * @throws SMBProtocolDecodingException
+     * {@inheritDoc}
+     * 
+     * Decrypts encrypted messages in place, before the input lock is taken.
+     *
+     * @see jcifs.util.transport.Transport#unwrapMessage(byte[])
      */
-    private void doRecvSMB2 ( CommonServerMessageBlock response ) throws IOException, SMBProtocolDecodingException {
-        int size = ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16;
-        if ( size < ( Smb2Constants.SMB2_HEADER_LENGTH + 1 ) ) {
-            throw new IOException("Invalid payload size: " + size);
+    @Override
+    protected int unwrapMessage ( byte[] message ) throws IOException {
+        if ( !this.smb2 || message.length < 4 + Smb2EncryptionContext.HEADER_LENGTH || !Smb2EncryptionContext.isEncrypted(message, 4) ) {
+            return 0;
+        }
+        this.bytesReceived.increment(message.length);
+        int n = decrypt(message, 4, message.length - 4);
+        int off = Smb2EncryptionContext.HEADER_LENGTH;
+        Encdec.enc_uint32be(n & 0xFFFFFF, message, off);
+        this.unwrappedEncrypted = true;
+        return off;
+    }
+
+
+    private int decrypt ( byte[] buffer, int off, int len ) throws IOException {
+        long sessId = Smb2EncryptionContext.getSessionId(buffer, off);
+        Smb2EncryptionContext ctx = this.encryptionContexts.get(sessId);
+        if ( ctx == null ) {
+            throw new IOException("Received encrypted message for unknown session " + sessId);
+        }
+        try {
+            return ctx.decrypt(buffer, off, len);
+        }
+        catch ( SMBProtocolDecodingException e ) {
+            throw new IOException("Failed to decrypt message", e);
+        }
+    }
+
+
+    /**
+     * Enable decryption of messages for a session
+     * 
+     * @param ctx
+     */
+    void registerEncryptionContext ( Smb2EncryptionContext ctx ) {
+        this.encryptionContexts.put(ctx.getSessionId(), ctx);
+    }
+
+
+    /**
+     * @param sessionId
+     */
+    void unregisterEncryptionContext ( long sessionId ) {
+        this.encryptionContexts.remove(sessionId);
+    }
+
+
+    /**
+     * Reads and decompresses a compressed message
+     * 
+     * The decompressed message's header is placed in the local buffer, the remainder is served from memory to the
+     * regular receive methods until the next message is peeked.
+     * 
+     * @return the message id of the decompressed message
+     * @throws IOException
+     */
+    private Long peekCompressed () throws IOException {
+        int size = ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16;
+        if ( size < SmbConstants.SMB1_HEADER_LENGTH ) {
+            throw new IOException("Invalid compressed message size: " + size);
+        }
+
+        byte[] frame = getBuffer(size);
+        byte[] msg;
+        int msgSize;
+        try {
+            System.arraycopy(this.sbuf, 4, frame, 0, SmbConstants.SMB1_HEADER_LENGTH);
+            if ( readn(this.in, frame, SmbConstants.SMB1_HEADER_LENGTH, size - SmbConstants.SMB1_HEADER_LENGTH) < size
+                    - SmbConstants.SMB1_HEADER_LENGTH ) {
+                return null;
+            }
+
+            msgSize = Smb2CompressionTransform.getOriginalSize(frame, 0, size);
+            if ( msgSize < Smb2Constants.SMB2_HEADER_LENGTH + 1 || msgSize > 0xFFFFFF ) {
+                throw new IOException("Invalid decompressed message size: " + msgSize);
+            }
+            msg = new byte[msgSize];
+            Smb2CompressionTransform.decompress(frame, 0, size, msg, 0);
+        }
+        catch ( SMBProtocolDecodingException e ) {
+            throw new IOException("Failed to decompress message", e);
+        }
+        finally {
+            releaseBuffer(frame, size);
+        }
+
+        if ( msg[ 0 ] != (byte) 0xFE || msg[ 1 ] != (byte) 'S' || msg[ 2 ] != (byte) 'M' || msg[ 3 ] != (byte) 'B' ) {
+            throw new IOException("Decompressed message is not a SMB2 message");
+        }
+
+        if ( log.isTraceEnabled() ) {
+            log.trace(String.format("Decompressed message %d -> %d bytes", size, msgSize));
+        }
+
+        Encdec.enc_uint32be(msgSize & 0xFFFFFF, this.sbuf, 0);
+        System.arraycopy(msg, 0, this.sbuf, 4, Smb2Constants.SMB2_HEADER_LENGTH);
+        if ( this.transformIn == null ) {
+            this.transformIn = this.in;
+        }
+        this.in = new ByteArrayInputStream(msg, Smb2Constants.SMB2_HEADER_LENGTH, msgSize - Smb2Constants.SMB2_HEADER_LENGTH);
+        return Encdec.dec_uint64le(this.sbuf, 28);
+    }
+
+
+    // must be synchronized with peekKey
+    @Override
+    protected void doRecv ( Response response ) throws IOException {
+        CommonServerMessageBlock resp = (CommonServerMessageBlock) response;
+        if ( resp instanceof ServerMessageBlock2Response ) {
+            ( (ServerMessageBlock2Response) resp ).setReceiveTime(System.nanoTime());
+        }
+        this.negotiated.setupResponse(response);
+        try {
+            if ( this.smb2 ) {
+                doRecvSMB2(resp);
+            }
+            else {
+                doRecvSMB1(resp);
+            }
+        }
+        catch ( Exception e ) {
+            log.warn("Failure decoding message, disconnecting transport", e);
+            response.exception(e);
+            synchronized ( response ) {
+                response.notifyAll();
+            }
+            throw e;
+        }
+
+    }
+
+
+    /**
+     * @param response
+     * @throws IOException
+     * @throws SMBProtocolDecodingException
+     */
+    private void doRecvSMB2 ( CommonServerMessageBlock response ) throws IOException, SMBProtocolDecodingException {
+        int size = ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16;
+        if ( size < ( Smb2Constants.SMB2_HEADER_LENGTH + 1 ) ) {
+            throw new IOException("Invalid payload size: " + size);
         }
 
         if ( this.sbuf[ 0 ] != (byte) 0x00 || this.sbuf[ 4 ] != (byte) 0xFE || this.sbuf[ 5 ] != (byte) 'S' || this.sbuf[ 6 ] != (byte) 'M'
@@ -1121,7 +1859,20 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             throw new IOException("Houston we have a synchronization problem");
         }
 
+        if ( !this.receivedEncrypted && response instanceof ServerMessageBlock2Response
+                && ( (ServerMessageBlock2Response) response ).isEncryptionRequired() ) {
+            throw new IOException("Received unencrypted response to an encrypted request");
+        }
+
         int nextCommand = Encdec.dec_uint32le(this.sbuf, 4 + 20);
+        if ( nextCommand == 0 && response instanceof Smb2ReadResponse && Encdec.dec_uint32le(this.sbuf, 4 + 8) == 0 ) {
+            Smb2ReadResponse rr = (Smb2ReadResponse) response;
+            if ( rr.getDigest() == null && !rr.isRetainPayload() ) {
+                doRecvSMB2Read(rr, size);
+                return;
+            }
+        }
+
         int maximumBufferSize = getContext().getConfig().getMaximumBufferSize();
         int msgSize = nextCommand != 0 ? nextCommand : size;
         if ( msgSize > maximumBufferSize ) {
@@ -1129,7 +1880,9 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         }
 
         ServerMessageBlock2Response cur = (ServerMessageBlock2Response) response;
-        byte[] buffer = getContext().getBufferCache().getBuffer();
+        // no single message in the compound can be larger than the total or the maximum buffer size
+        int bufferSize = Math.min(size, maximumBufferSize);
+        byte[] buffer = getBuffer(bufferSize);
         try {
             int rl = nextCommand != 0 ? nextCommand : size;
 
@@ -1138,6 +1891,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             readn(this.in, buffer, Smb2Constants.SMB2_HEADER_LENGTH, rl - Smb2Constants.SMB2_HEADER_LENGTH);
 
             int len = cur.decode(buffer, 0);
+            recordResponse(cur);
 
             if ( len > rl ) {
                 throw new IOException(String.format("WHAT? ( read %d decoded %d ): %s", rl, len, cur));
@@ -1172,6 +1926,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 readn(this.in, buffer, Smb2Constants.SMB2_HEADER_LENGTH, rl - Smb2Constants.SMB2_HEADER_LENGTH);
 
                 len = cur.decode(buffer, 0, true);
+                recordResponse(cur);
                 if ( len > rl ) {
                     throw new IOException(String.format("WHAT? ( read %d decoded %d ): %s", rl, len, cur));
                 }
@@ -1182,7 +1937,66 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
         }
         finally {
-            getContext().getBufferCache().releaseBuffer(buffer);
+            releaseBuffer(buffer, bufferSize);
+        }
+    }
+
+
+    /**
+     * Successful, unsigned read responses are received without an intermediate buffer
+     * 
+     * Header and fixed part of the response are read into the small local buffer, the data is read from the socket
+     * directly into the response's output buffer.
+     * 
+     * @param response
+     * @param size
+     * @throws IOException
+     * @throws SMBProtocolDecodingException
+     */
+    private void doRecvSMB2Read ( Smb2ReadResponse response, int size ) throws IOException, SMBProtocolDecodingException {
+        int hdrEnd = 4 + Smb2Constants.SMB2_HEADER_LENGTH;
+        int fixedLen = Math.min(16, size - Smb2Constants.SMB2_HEADER_LENGTH);
+        if ( readn(this.in, this.sbuf, hdrEnd, fixedLen) < fixedLen ) {
+            throw new EOFException();
+        }
+        int remain = size - Smb2Constants.SMB2_HEADER_LENGTH - fixedLen;
+
+        int structureSize = Encdec.dec_uint16le(this.sbuf, hdrEnd);
+        int dataOffset = this.sbuf[ hdrEnd + 2 ] & 0xFF;
+        int dataLength = Encdec.dec_uint32le(this.sbuf, hdrEnd + 4);
+        int padLen = dataOffset - Smb2Constants.SMB2_HEADER_LENGTH - fixedLen;
+        if ( structureSize != 17 || padLen < 0 || hdrEnd + fixedLen + padLen > this.sbuf.length || dataLength < 0
+                || padLen + dataLength > remain ) {
+            throw new IOException("Invalid read response");
+        }
+        byte[] out = response.getOutputBuffer();
+        int outOff = response.getOutputBufferOffset();
+        if ( dataLength + outOff > out.length ) {
+            skipn(this.in, remain);
+            throw new SMBProtocolDecodingException("Buffer to small for read response");
+        }
+
+        if ( readn(this.in, this.sbuf, hdrEnd + fixedLen, padLen) < padLen || readn(this.in, out, outOff, dataLength) < dataLength ) {
+            throw new EOFException();
+        }
+        skipn(this.in, remain - padLen - dataLength);
+
+        response.setDirectRead(true);
+        response.decode(this.sbuf, 4);
+        recordResponse(response);
+    }
+
+
+    private static void skipn ( InputStream in, int len ) throws IOException {
+        while ( len > 0 ) {
+            long n = in.skip(len);
+            if ( n <= 0 ) {
+                if ( in.read() < 0 ) {
+                    throw new EOFException();
+                }
+                n = 1;
+            }
+            len -= n;
         }
     }
 
@@ -1194,9 +2008,10 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
      */
     private void doRecvSMB1 ( CommonServerMessageBlock resp ) throws IOException, SMBProtocolDecodingException {
         byte[] buffer = getContext().getBufferCache().getBuffer();
+        int size = 0;
         try {
             System.arraycopy(this.sbuf, 0, buffer, 0, 4 + SMB1_HEADER_LENGTH);
-            int size = ( Encdec.dec_uint16be(buffer, 2) & 0xFFFF );
+            size = ( Encdec.dec_uint16be(buffer, 2) & 0xFFFF );
             if ( size < ( SMB1_HEADER_LENGTH + 1 ) || ( 4 + size ) > getContext().getConfig().getMaximumBufferSize() ) {
                 throw new IOException("Invalid payload size: " + size);
             }
@@ -1224,14 +2039,130 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
         }
         finally {
-            getContext().getBufferCache().releaseBuffer(buffer);
+            releaseBuffer(buffer, 4 + Math.max(size, SMB1_HEADER_LENGTH));
+        }
+    }
+
+
+    /**
+     * Register a lease so that break notifications are delivered to the cache holding it
+     * 
+     * @param key
+     * @param cache
+     */
+    void registerLease ( Smb2LeaseKey key, SmbLeaseCache cache ) {
+        this.leases.put(key, cache);
+    }
+
+
+    /**
+     * @param key
+     */
+    void unregisterLease ( Smb2LeaseKey key ) {
+        this.leases.remove(key);
+    }
+
+
+    /**
+     * @return number of credits currently available for sending requests
+     */
+    int getAvailableCredits () {
+        return this.credits.availablePermits();
+    }
+
+
+    /**
+     * @return number of requests waiting for a response
+     */
+    int getInflightRequests () {
+        return this.response_map.size();
+    }
+
+
+    /**
+     * @return the SMB 3.1.1 preauth integrity hash after negotiation, null for other dialects
+     */
+    byte[] getPreauthIntegrityHash () {
+        return this.preauthIntegrityHash;
+    }
+
+
+    /**
+     * @param input
+     * @param off
+     * @param len
+     * @param oldHash
+     * @return the updated preauth integrity hash
+     */
+    static byte[] calculatePreauthHash ( byte[] input, int off, int len, byte[] oldHash ) {
+        MessageDigest md = Crypto.getSHA512();
+        md.update(oldHash);
+        md.update(input, off, len);
+        return md.digest();
+    }
+
+
+    /**
+     * Mark this transport as an additional channel of a session established on another transport
+     * 
+     * Lease breaks received on this channel are dispatched to the leases registered on the primary transport.
+     * 
+     * @param primaryTransport
+     */
+    void setPrimary ( SmbTransportImpl primaryTransport ) {
+        this.primary = primaryTransport;
+    }
+
+
+    /**
+     * Receive a break notification, must not block as this runs on the receiving thread
+     * 
+     * @throws IOException
+     */
+    private void doRecvBreakNotification () throws IOException {
+        Smb2LeaseBreakNotification notification = new Smb2LeaseBreakNotification(getContext().getConfig());
+        try {
+            doRecvSMB2(notification);
+        }
+        catch ( SMBProtocolDecodingException e ) {
+            throw new IOException("Failed to decode break notification", e);
+        }
+
+        if ( notification.getLeaseKey() == null ) {
+            log.debug("Ignoring oplock break");
+            return;
+        }
+
+        SmbLeaseCache cache = this.leases.get(notification.getLeaseKey());
+        SmbTransportImpl p = this.primary;
+        if ( cache == null && p != null ) {
+            cache = p.leases.get(notification.getLeaseKey());
+        }
+        if ( cache != null ) {
+            cache.leaseBroken(notification);
+        }
+        else if ( log.isDebugEnabled() ) {
+            log.debug("Break for unknown lease " + notification.getLeaseKey());
         }
     }
 
 
     @Override
-    protected void doSkip () throws IOException {
+    protected void doSkip ( Long key ) throws IOException {
         synchronized ( this.inLock ) {
+            if ( this.smb2 && key != null && key == -1L
+                    && Encdec.dec_uint16le(this.sbuf, 4 + 12) == Smb2LeaseBreakNotification.BREAK_COMMAND ) {
+                doRecvBreakNotification();
+                return;
+            }
+
+            if ( this.smb2 ) {
+                int size = ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16;
+                log.debug("Skipping message");
+                skipn(this.in, size - Smb2Constants.SMB2_HEADER_LENGTH);
+                return;
+            }
+
             int size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF;
             if ( size < 33 || ( 4 + size ) > this.getContext().getConfig().getRecieveBufferSize() ) {
                 /* log message? */
@@ -1433,6 +2364,290 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
+    /**
+     * Send a single request without waiting for the response
+     * 
+     * This is only supported for SMB2 non-compound requests. Credits for the request are acquired before sending,
+     * the response must be collected using
+     * {@link #waitForResponse(CommonServerMessageBlockRequest, CommonServerMessageBlockResponse, Set)}.
+     * 
+     * @param request
+     * @param params
+     * @return the response that will be filled once received, null if {@link RequestParam#NO_CREDIT_WAIT} is specified
+     *         and there are not enough credits available
+     * @throws SmbException
+     */
+    @SuppressWarnings ( "unchecked" )
+    <T extends CommonServerMessageBlockResponse> T sendAsync ( CommonServerMessageBlockRequest request, Set<RequestParam> params )
+            throws SmbException {
+        ensureConnected();
+        if ( !this.smb2 || ! ( request instanceof ServerMessageBlock2Request ) ) {
+            throw new SmbUnsupportedOperationException("Asynchronous requests are only supported with SMB2");
+        }
+        if ( request.getNext() != null ) {
+            throw new SmbException("Compound requests cannot be sent asynchronously");
+        }
+
+        this.negotiated.setupRequest(request);
+        T response = (T) ( (ServerMessageBlock2Request<?>) request ).initResponse(getContext());
+        if ( response == null ) {
+            throw new SmbException("Invalid response");
+        }
+
+        int cost = request.getCreditCost();
+        try {
+            if ( params.contains(RequestParam.ASYNC_COMPLETION) ) {
+                ServerMessageBlock2Response resp = (ServerMessageBlock2Response) response;
+                if ( !params.contains(RequestParam.NO_TIMEOUT) ) {
+                    scheduleExpiration((ServerMessageBlock2Request<?>) request, resp, System.currentTimeMillis() + getResponseTimeout());
+                }
+                synchronized ( this.creditQueue ) {
+                    if ( !this.creditQueue.isEmpty() || !this.credits.tryAcquire(cost, 0, TimeUnit.MILLISECONDS) ) {
+                        if ( log.isDebugEnabled() ) {
+                            log.debug("Insufficient credits, queueing " + request);
+                        }
+                        this.creditQueue.add(new QueuedRequest(request, response, params));
+                        return response;
+                    }
+                }
+            }
+            else if ( params.contains(RequestParam.NO_CREDIT_WAIT) ) {
+                if ( !this.credits.tryAcquire(cost) ) {
+                    return null;
+                }
+            }
+            else if ( !this.credits.tryAcquire(cost, 0, TimeUnit.MILLISECONDS) ) {
+                // unlike tryAcquire(int) this does not overtake waiting requests
+                long start = System.nanoTime();
+                if ( params.contains(RequestParam.NO_TIMEOUT) ) {
+                    this.credits.acquire(cost);
+                }
+                else if ( !this.credits.tryAcquire(cost, getResponseTimeout(), TimeUnit.MILLISECONDS) ) {
+                    this.creditTimeouts.increment(1);
+                    throw new SmbException("Failed to acquire credits in time");
+                }
+                this.creditWait.record(System.nanoTime() - start);
+            }
+        }
+        catch ( InterruptedException e ) {
+            throw new SmbException("Failed to acquire credits", e);
+        }
+
+        sendAcquired(request, response, params);
+        return response;
+    }
+
+
+    /**
+     * @param request
+     *            request for which credits have been acquired
+     * @param response
+     * @param params
+     * @throws SmbException
+     */
+    private void sendAcquired ( CommonServerMessageBlockRequest request, CommonServerMessageBlockResponse response, Set<RequestParam> params )
+            throws SmbException {
+        request.setRequestCredits(Math.max(1, this.desiredCredits - this.credits.availablePermits()));
+        try {
+            if ( log.isTraceEnabled() ) {
+                log.trace("Sending async " + request);
+            }
+            super.sendAsync(request, response, params);
+        }
+        catch ( IOException ioe ) {
+            throw new SmbException(ioe.getMessage(), ioe);
+        }
+        finally {
+            if ( params.contains(RequestParam.ASYNC_COMPLETION) ) {
+                // the session leaves these set until the request is actually sent
+                request.setDigest(null);
+                ( (ServerMessageBlock2Request<?>) request ).setEncryptionContext(null);
+            }
+        }
+    }
+
+
+    /**
+     * Release credits and schedule sending queued requests that can be sent with them
+     * 
+     * @param n
+     */
+    private void releaseCredits ( int n ) {
+        this.credits.release(n);
+        scheduleQueued();
+    }
+
+
+    /**
+     * Send queued requests on a worker thread
+     * 
+     * Credits are released by the thread receiving responses, which must never block on writing to the socket.
+     */
+    private void scheduleQueued () {
+        synchronized ( this.creditQueue ) {
+            if ( this.creditQueue.isEmpty() ) {
+                return;
+            }
+        }
+        SmbWorkerPool.execute(new Runnable() {
+
+            @Override
+            public void run () {
+                sendQueued();
+            }
+        });
+    }
+
+
+    /**
+     * Send queued requests as long as there are enough credits
+     */
+    private void sendQueued () {
+        for ( ;; ) {
+            QueuedRequest q;
+            synchronized ( this.creditQueue ) {
+                q = this.creditQueue.peek();
+                try {
+                    // does not overtake callers blocking for credits
+                    if ( q == null || !this.credits.tryAcquire(q.request.getCreditCost(), 0, TimeUnit.MILLISECONDS) ) {
+                        return;
+                    }
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                this.creditQueue.poll();
+            }
+
+            try {
+                sendAcquired(q.request, q.response, q.params);
+            }
+            catch ( SmbException e ) {
+                q.response.exception(e);
+            }
+        }
+    }
+
+
+    /**
+     * Fail all requests still waiting for credits
+     * 
+     * @param e
+     */
+    private void failQueued ( Exception e ) {
+        QueuedRequest[] queued;
+        synchronized ( this.creditQueue ) {
+            queued = this.creditQueue.toArray(new QueuedRequest[this.creditQueue.size()]);
+            this.creditQueue.clear();
+        }
+        for ( QueuedRequest q : queued ) {
+            q.response.exception(e);
+        }
+    }
+
+
+    private void scheduleExpiration ( final ServerMessageBlock2Request<?> request, final ServerMessageBlock2Response response, long expiration ) {
+        long delay = Math.max(0, expiration - System.currentTimeMillis());
+        response.setExpirationTask(ExpirationTimer.INSTANCE.schedule(new Runnable() {
+
+            @Override
+            public void run () {
+                expire(request, response);
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+
+    /**
+     * Fail an asynchronous request that has not been completed in time
+     * 
+     * @param request
+     * @param response
+     */
+    private void expire ( ServerMessageBlock2Request<?> request, ServerMessageBlock2Response response ) {
+        boolean queued = false;
+        synchronized ( this.creditQueue ) {
+            Iterator<QueuedRequest> it = this.creditQueue.iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().response == response ) {
+                    it.remove();
+                    queued = true;
+                    break;
+                }
+            }
+        }
+
+        if ( queued ) {
+            this.creditTimeouts.increment(1);
+            response.exception(new SmbException("Failed to acquire credits in time"));
+            return;
+        }
+
+        if ( response.isReceived() ) {
+            return;
+        }
+
+        Long exp = response.getExpiration();
+        if ( handleIntermediate(request, response) || ( exp != null && exp > System.currentTimeMillis() ) ) {
+            // sent after being queued or server indicated that the operation is pending, keep waiting
+            scheduleQueued();
+            exp = response.getExpiration();
+            scheduleExpiration(request, response, exp != null ? exp : System.currentTimeMillis() + getResponseTimeout());
+            return;
+        }
+
+        // like a synchronous request timing out this drops the connection, the response's credits are lost otherwise
+        abandonResponse(request, response, new TransportException(this.name + " timedout waiting for response to " + request));
+        try {
+            disconnect(true);
+        }
+        catch ( IOException e ) {
+            log.info("disconnect failed", e);
+        }
+    }
+
+
+    /**
+     * Wait for the response to a request sent using {@link #sendAsync(CommonServerMessageBlockRequest, Set)}
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @return the response
+     * @throws SmbException
+     *             if the request failed or the response status indicates an error
+     */
+    <T extends CommonServerMessageBlockResponse> T waitForResponse ( CommonServerMessageBlockRequest request, T response,
+            Set<RequestParam> params ) throws SmbException {
+        try {
+            super.waitForResponse(request, response, params);
+        }
+        catch ( IOException ioe ) {
+            throw new SmbException(ioe.getMessage(), ioe);
+        }
+        finally {
+            // credits for async responses have been granted with the interim response
+            if ( response.isReceived() && !request.isResponseAsync() ) {
+                releaseCredits(response.getGrantedCredits());
+            }
+        }
+
+        if ( log.isTraceEnabled() ) {
+            log.trace("Response is " + response);
+        }
+
+        if ( !response.isReceived() ) {
+            throw new SmbException("No response", response.getException());
+        }
+        if ( response.isError() ) {
+            throw new SmbException("Request failed", response.getException());
+        }
+        checkStatus(request, response);
+        return response;
+    }
+
+
     /**
      * @param request
      * @param response
@@ -1638,4 +2853,46 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         }
     }
 
+
+    /**
+     * Asynchronous request waiting for credits
+     */
+    private static final class QueuedRequest {
+
+        final CommonServerMessageBlockRequest request;
+        final CommonServerMessageBlockResponse response;
+        final Set<RequestParam> params;
+
+
+        QueuedRequest ( CommonServerMessageBlockRequest request, CommonServerMessageBlockResponse response, Set<RequestParam> params ) {
+            this.request = request;
+            this.response = response;
+            this.params = params;
+        }
+    }
+
+    /**
+     * Shared timer expiring asynchronous requests, started on first use
+     */
+    private static final class ExpirationTimer {
+
+        static final ScheduledThreadPoolExecutor INSTANCE;
+
+        static {
+            INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+                @Override
+                public Thread newThread ( Runnable r ) {
+                    Thread t = new Thread(r, "jcifs-async-expiration");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+
+
+        private ExpirationTimer () {}
+    }
+
 }
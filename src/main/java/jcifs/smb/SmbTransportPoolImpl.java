@@ -21,12 +21,17 @@ package jcifs.smb;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,9 +40,12 @@ import jcifs.Address;
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.SmbConstants;
+import jcifs.SmbMetrics;
 import jcifs.SmbTransport;
 import jcifs.SmbTransportPool;
+import jcifs.internal.util.SMBUtil;
 import jcifs.util.transport.TransportException;
+import jcifs.util.transport.TransportSelector;
 
 
 /**
@@ -48,11 +56,38 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
 
     private static final Logger log = LoggerFactory.getLogger(SmbTransportPoolImpl.class);
 
-    private final List<SmbTransportImpl> connections = new LinkedList<>();
+    /**
+     * pooled connections, by target and local binding
+     * 
+     * Lookups do not lock, creating a connection locks the respective list.
+     */
+    private final ConcurrentMap<TransportKey, List<SmbTransportImpl>> connections = new ConcurrentHashMap<>();
     private final List<SmbTransportImpl> nonPooledConnections = new LinkedList<>();
+    /* guards lazy creation of the shared selector and metadata cache */
+    private final Object sharedLock = new Object();
+    private volatile TransportSelector selector;
+    private volatile SmbMetadataCache metadataCache;
+    private final byte[] clientGuid = makeClientGuid();
     final Map<String, Integer> failCounts = new ConcurrentHashMap<>();
 
 
+    private static byte[] makeClientGuid () {
+        UUID uuid = UUID.randomUUID();
+        byte[] guid = new byte[16];
+        SMBUtil.writeInt8(uuid.getMostSignificantBits(), guid, 0);
+        SMBUtil.writeInt8(uuid.getLeastSignificantBits(), guid, 8);
+        return guid;
+    }
+
+
+    /**
+     * @return the client identifier announced on SMB2 connections from this pool
+     */
+    byte[] getClientGuid () {
+        return this.clientGuid;
+    }
+
+
     @Override
     public SmbTransportImpl getSmbTransport ( CIFSContext tc, Address address, int port, boolean nonPooled ) {
         return getSmbTransport(tc, address, port, tc.getConfig().getLocalAddr(), tc.getConfig().getLocalPort(), null, nonPooled);
@@ -78,27 +113,113 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
         if ( port <= 0 ) {
             port = SmbConstants.DEFAULT_PORT;
         }
-        synchronized ( this.connections ) {
-            if ( log.isTraceEnabled() ) {
-                log.trace("Exclusive " + nonPooled + " enforced signing " + forceSigning);
+        if ( log.isTraceEnabled() ) {
+            log.trace("Exclusive " + nonPooled + " enforced signing " + forceSigning);
+        }
+
+        if ( nonPooled ) {
+            SmbTransportImpl conn = newTransport(tc, address, port, localAddr, localPort, forceSigning);
+            synchronized ( this.nonPooledConnections ) {
+                this.nonPooledConnections.add(conn);
             }
-            if ( !nonPooled && tc.getConfig().getSessionLimit() != 1 ) {
+            return conn;
+        }
+
+        boolean reuse = tc.getConfig().getSessionLimit() != 1;
+        if ( reuse ) {
+            SmbTransportImpl existing = findConnection(tc, address, port, localAddr, localPort, hostName, forceSigning, false);
+            if ( existing != null ) {
+                return existing;
+            }
+        }
+
+        TransportKey key = new TransportKey(address, port, localAddr, localPort, forceSigning || tc.getConfig().isSigningEnforced());
+        List<SmbTransportImpl> conns = getConnections(key);
+        synchronized ( conns ) {
+            if ( reuse ) {
+                // another thread might have created a matching connection in the meantime
                 SmbTransportImpl existing = findConnection(tc, address, port, localAddr, localPort, hostName, forceSigning, false);
                 if ( existing != null ) {
                     return existing;
                 }
             }
-            SmbTransportImpl conn = new SmbTransportImpl(tc, address, port, localAddr, localPort, forceSigning);
-            if ( log.isDebugEnabled() ) {
-                log.debug("New transport connection " + conn);
+            SmbTransportImpl conn = newTransport(tc, address, port, localAddr, localPort, forceSigning);
+            conns.add(0, conn);
+            tc.getMetrics().getCounter(SmbMetrics.POOL_CONNECTIONS_CREATED, address.getHostName(), null).increment(1);
+            return conn;
+        }
+    }
+
+
+    private SmbTransportImpl newTransport ( CIFSContext tc, Address address, int port, InetAddress localAddr, int localPort,
+            boolean forceSigning ) {
+        SmbTransportImpl conn = new SmbTransportImpl(tc, address, port, localAddr, localPort, forceSigning, getSelector(tc));
+        if ( log.isDebugEnabled() ) {
+            log.debug("New transport connection " + conn);
+        }
+        return conn;
+    }
+
+
+    private List<SmbTransportImpl> getConnections ( TransportKey key ) {
+        List<SmbTransportImpl> conns = this.connections.get(key);
+        if ( conns == null ) {
+            conns = new CopyOnWriteArrayList<>();
+            List<SmbTransportImpl> existing = this.connections.putIfAbsent(key, conns);
+            if ( existing != null ) {
+                return existing;
             }
-            if ( nonPooled ) {
-                this.nonPooledConnections.add(conn);
+        }
+        return conns;
+    }
+
+
+    /**
+     * @param tc
+     * @return the shared selector if enabled, null if every transport should use its own reader thread
+     */
+    private TransportSelector getSelector ( CIFSContext tc ) {
+        int threads = tc.getConfig().getSelectorThreads();
+        if ( threads <= 0 ) {
+            return null;
+        }
+        TransportSelector s = this.selector;
+        if ( s != null ) {
+            return s;
+        }
+        synchronized ( this.sharedLock ) {
+            if ( this.selector == null ) {
+                try {
+                    this.selector = new TransportSelector(threads, "jcifs-selector");
+                }
+                catch ( IOException e ) {
+                    log.warn("Failed to create selector, using reader threads", e);
+                    return null;
+                }
             }
-            else {
-                this.connections.add(0, conn);
+            return this.selector;
+        }
+    }
+
+
+    /**
+     * @param tc
+     * @return the shared metadata cache, null if disabled
+     */
+    SmbMetadataCache getMetadataCache ( CIFSContext tc ) {
+        SmbMetadataCache c = this.metadataCache;
+        if ( c != null ) {
+            return c;
+        }
+        int size = tc.getConfig().getMetadataCacheSize();
+        if ( size <= 0 ) {
+            return null;
+        }
+        synchronized ( this.sharedLock ) {
+            if ( this.metadataCache == null ) {
+                this.metadataCache = new SmbMetadataCache(size, tc.getConfig().getAttributeCacheTimeout());
             }
-            return conn;
+            return this.metadataCache;
         }
     }
 
@@ -115,7 +236,92 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
      */
     private SmbTransportImpl findConnection ( CIFSContext tc, Address address, int port, InetAddress localAddr, int localPort, String hostName,
             boolean forceSigning, boolean connectedOnly ) {
-        for ( SmbTransportImpl conn : this.connections ) {
+        if ( port <= 0 ) {
+            port = SmbConstants.DEFAULT_PORT;
+        }
+        // port 139 connections may be used if 445 was requested, either one may have been created for the other
+        int[] ports;
+        if ( port == SmbConstants.DEFAULT_PORT || port == 139 ) {
+            ports = new int[] {
+                port, port == 139 ? SmbConstants.DEFAULT_PORT : 139
+            };
+        }
+        else {
+            ports = new int[] {
+                port
+            };
+        }
+
+        // with striping, only reuse connections once the configured number of them exists
+        int stripes = Math.max(1, tc.getConfig().getTransportsPerServer());
+        List<SmbTransportImpl> found = new ArrayList<>(stripes);
+        boolean signing = forceSigning || tc.getConfig().isSigningEnforced();
+        for ( int p : ports ) {
+            collectConnections(
+                tc,
+                this.connections.get(new TransportKey(address, p, localAddr, localPort, signing)),
+                address,
+                port,
+                localAddr,
+                localPort,
+                hostName,
+                forceSigning,
+                connectedOnly,
+                found,
+                stripes);
+            if ( found.size() < stripes && !signing ) {
+                // connections with signing enforced may still be used if the server requires signing anyways
+                collectConnections(
+                    tc,
+                    this.connections.get(new TransportKey(address, p, localAddr, localPort, true)),
+                    address,
+                    port,
+                    localAddr,
+                    localPort,
+                    hostName,
+                    forceSigning,
+                    connectedOnly,
+                    found,
+                    stripes);
+            }
+            if ( found.size() >= stripes ) {
+                break;
+            }
+        }
+
+        if ( found.size() < stripes ) {
+            return null;
+        }
+
+        SmbTransportImpl conn = found.get(0);
+        for ( int i = 1; i < found.size(); i++ ) {
+            SmbTransportImpl c = found.get(i);
+            int inflight = c.getInflightRequests();
+            int best = conn.getInflightRequests();
+            if ( inflight < best || ( inflight == best && c.getAvailableCredits() > conn.getAvailableCredits() ) ) {
+                conn = c;
+            }
+        }
+
+        if ( log.isTraceEnabled() ) {
+            log.trace("Reusing transport connection " + conn);
+        }
+        return conn.acquire();
+    }
+
+
+    /**
+     * Add the reusable connections from the given list to found, until it contains max entries
+     */
+    private static void collectConnections ( CIFSContext tc, List<SmbTransportImpl> conns, Address address, int port, InetAddress localAddr,
+            int localPort, String hostName, boolean forceSigning, boolean connectedOnly, List<SmbTransportImpl> found, int max ) {
+        if ( conns == null ) {
+            return;
+        }
+        for ( SmbTransportImpl conn : conns ) {
+            if ( found.size() >= max ) {
+                return;
+            }
             if ( conn.matches(address, port, localAddr, localPort, hostName)
                     && ( tc.getConfig().getSessionLimit() == 0 || conn.getNumSessions() < tc.getConfig().getSessionLimit() ) ) {
                 try {
@@ -153,14 +359,9 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
                     continue;
                 }
 
-                if ( log.isTraceEnabled() ) {
-                    log.trace("Reusing transport connection " + conn);
-                }
-                return conn.acquire();
+                found.add(conn);
             }
         }
-
-        return null;
     }
 
 
@@ -215,6 +416,7 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
             catch ( IOException e ) {
                 String hostAddress = addr.getHostAddress();
                 this.failCounts.put(hostAddress, this.failCounts.getOrDefault(hostAddress, 0) + 1);
+                tf.getMetrics().getCounter(SmbMetrics.CONNECT_FAILURES, addr.getHostName(), null).increment(1);
                 ex = e;
             }
         }
@@ -232,19 +434,24 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
      * @return whether (non-exclusive) connection is in the pool
      */
     public boolean contains ( SmbTransport trans ) {
-        synchronized ( this.connections ) {
-            return this.connections.contains(trans);
+        for ( List<SmbTransportImpl> conns : this.connections.values() ) {
+            if ( conns.contains(trans) ) {
+                return true;
+            }
         }
+        return false;
     }
 
 
     @Override
     public void removeTransport ( SmbTransport trans ) {
-        synchronized ( this.connections ) {
-            if ( log.isDebugEnabled() ) {
-                log.debug("Removing transport connection " + trans + " (" + System.identityHashCode(trans) + ")");
-            }
-            this.connections.remove(trans);
+        if ( log.isDebugEnabled() ) {
+            log.debug("Removing transport connection " + trans + " (" + System.identityHashCode(trans) + ")");
+        }
+        for ( List<SmbTransportImpl> conns : this.connections.values() ) {
+            conns.remove(trans);
+        }
+        synchronized ( this.nonPooledConnections ) {
             this.nonPooledConnections.remove(trans);
         }
     }
@@ -258,9 +465,12 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
     @Override
     public boolean close () throws CIFSException {
         boolean inUse = false;
-        synchronized ( this.connections ) {
+        synchronized ( this.nonPooledConnections ) {
             log.debug("Closing pool");
-            List<SmbTransportImpl> toClose = new LinkedList<>(this.connections);
+            List<SmbTransportImpl> toClose = new LinkedList<>();
+            for ( List<SmbTransportImpl> conns : this.connections.values() ) {
+                toClose.addAll(conns);
+            }
             toClose.addAll(this.nonPooledConnections);
             for ( SmbTransportImpl conn : toClose ) {
                 try {
@@ -272,6 +482,15 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
             }
             this.connections.clear();
             this.nonPooledConnections.clear();
+            synchronized ( this.sharedLock ) {
+                if ( this.selector != null ) {
+                    this.selector.close();
+                    this.selector = null;
+                }
+                if ( this.metadataCache != null ) {
+                    this.metadataCache.clear();
+                }
+            }
         }
         return inUse;
     }
@@ -316,4 +535,45 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
         }
     }
 
+
+    /**
+     * Key of the connection index
+     * 
+     * Host names are not part of the key, they are checked when looking up connections.
+     */
+    private static final class TransportKey {
+
+        private final Address address;
+        private final int port;
+        private final InetAddress localAddr;
+        private final int localPort;
+        private final boolean signingEnforced;
+
+
+        TransportKey ( Address address, int port, InetAddress localAddr, int localPort, boolean signingEnforced ) {
+            this.address = address;
+            this.port = port;
+            this.localAddr = localAddr;
+            this.localPort = localPort;
+            this.signingEnforced = signingEnforced;
+        }
+
+
+        @Override
+        public int hashCode () {
+            return Objects.hash(this.address, this.port, this.localAddr, this.localPort, this.signingEnforced);
+        }
+
+
+        @Override
+        public boolean equals ( Object obj ) {
+            if ( ! ( obj instanceof TransportKey ) ) {
+                return false;
+            }
+            TransportKey o = (TransportKey) obj;
+            return this.port == o.port && this.localPort == o.localPort && this.signingEnforced == o.signingEnforced
+                    && Objects.equals(this.address, o.address) && Objects.equals(this.localAddr, o.localAddr);
+        }
+    }
+
 }
@@ -36,7 +36,9 @@ import jcifs.Configuration;
 import jcifs.DfsReferralData;
 import jcifs.RuntimeCIFSException;
 import jcifs.SmbConstants;
+import jcifs.SmbMetrics;
 import jcifs.SmbResourceLocator;
+import jcifs.SmbTracer;
 import jcifs.SmbTreeHandle;
 import jcifs.internal.CommonServerMessageBlockRequest;
 import jcifs.internal.CommonServerMessageBlockResponse;
@@ -118,7 +120,7 @@ class SmbTreeConnection {
     /**
      * @return
      */
-    private synchronized SmbTreeImpl getTreeInternal () {
+    synchronized SmbTreeImpl getTreeInternal () {
         SmbTreeImpl t = this.tree;
         if ( t != null ) {
             return t;
@@ -331,6 +333,7 @@ class SmbTreeConnection {
             if ( log.isDebugEnabled() ) {
                 log.debug(String.format("Retrying (%d/%d) request %s", retries, maxRetries, request));
             }
+            this.ctx.getMetrics().getCounter(SmbMetrics.RETRIES, loc.getServer(), null).increment(1);
 
             // should we disconnect the transport here? otherwise we make an additional attempt to detect that if the
             // server closed the connection as a result
@@ -367,6 +370,7 @@ class SmbTreeConnection {
 
             try ( SmbTreeHandle th = connectWrapException(loc) ) {
                 log.debug("Have new tree connection for retry");
+                this.ctx.getMetrics().getCounter(SmbMetrics.RECONNECTS, loc.getServer(), null).increment(1);
             }
             catch ( SmbException e ) {
                 log.debug("Failed to connect tree on retry", e);
@@ -382,6 +386,47 @@ class SmbTreeConnection {
     }
 
 
+    /**
+     * Send a request without waiting for the response
+     * 
+     * Asynchronous requests are never retried.
+     * 
+     * @param request
+     * @param params
+     * @return the response that will be filled once received
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T sendAsync ( CommonServerMessageBlockRequest request, Set<RequestParam> params )
+            throws CIFSException {
+        try ( SmbTreeImpl t = getTree() ) {
+            if ( t == null ) {
+                throw new CIFSException("Failed to get tree connection");
+            }
+            return t.sendAsync(request, params);
+        }
+    }
+
+
+    /**
+     * Wait for the response to a request sent using {@link #sendAsync(CommonServerMessageBlockRequest, Set)}
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @return the response
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T waitForResponse ( CommonServerMessageBlockRequest request, T response,
+            Set<RequestParam> params ) throws CIFSException {
+        try ( SmbTreeImpl t = getTree() ) {
+            if ( t == null ) {
+                throw new CIFSException("Failed to get tree connection");
+            }
+            return t.waitForResponse(request, response, params);
+        }
+    }
+
+
     private <T extends CommonServerMessageBlockResponse> T send0 ( SmbResourceLocatorImpl loc, CommonServerMessageBlockRequest request, T response,
             Set<RequestParam> params ) throws CIFSException, DfsReferral {
         for ( int limit = 10; limit > 0; limit-- ) {
@@ -453,7 +498,21 @@ class SmbTreeConnection {
                 return new SmbTreeHandleImpl(loc, this);
             }
 
-            return connectHost(loc, loc.getServerWithDfs());
+            SmbTracer.Span span = this.ctx.getTracer().startSpan("smb.connect");
+            if ( span.isRecording() ) {
+                span.setAttribute(SmbTracer.ATTR_SERVER, loc.getServerWithDfs());
+                span.setAttribute(SmbTracer.ATTR_SHARE, loc.getShare());
+            }
+            try {
+                return connectHost(loc, loc.getServerWithDfs());
+            }
+            catch ( IOException | RuntimeException e ) {
+                SmbTracing.fail(span, e);
+                throw e;
+            }
+            finally {
+                span.end();
+            }
         }
 
     }
@@ -576,6 +635,26 @@ class SmbTreeConnection {
      */
     private SmbTreeImpl connectTree ( SmbResourceLocator loc, String addr, String share, SmbTransportInternal trans, SmbTreeImpl t,
             DfsReferralData referral ) throws CIFSException {
+        SmbTracer.Span span = this.ctx.getTracer().startSpan("smb.tree.connect");
+        if ( span.isRecording() ) {
+            span.setAttribute(SmbTracer.ATTR_SERVER, addr);
+            span.setAttribute(SmbTracer.ATTR_SHARE, share);
+        }
+        try {
+            return connectTree0(loc, addr, share, trans, t, referral);
+        }
+        catch ( CIFSException | RuntimeException e ) {
+            SmbTracing.fail(span, e);
+            throw e;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+
+    private SmbTreeImpl connectTree0 ( SmbResourceLocator loc, String addr, String share, SmbTransportInternal trans, SmbTreeImpl t,
+            DfsReferralData referral ) throws CIFSException {
         if ( log.isDebugEnabled() && trans.isSigningOptional() && !loc.isIPC() && !this.ctx.getConfig().isSigningEnforced() ) {
             log.debug("Signatures for file enabled but not required " + this);
         }
@@ -18,7 +18,10 @@
 package jcifs.smb;
 
 
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -32,6 +35,7 @@ import jcifs.internal.CommonServerMessageBlockRequest;
 import jcifs.internal.CommonServerMessageBlockResponse;
 import jcifs.internal.SmbNegotiationResponse;
 import jcifs.internal.smb1.com.SmbComNegotiateResponse;
+import jcifs.internal.smb2.ServerMessageBlock2Response;
 
 
 /**
@@ -64,6 +68,14 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
     }
 
 
+    /**
+     * @return the tree currently used by this handle, the usage count is not increased
+     */
+    SmbTreeImpl getTreeInternal () {
+        return this.treeConnection.getTreeInternal();
+    }
+
+
     @Override
     public void ensureDFSResolved () throws CIFSException {
         this.treeConnection.ensureDFSResolved(this.resourceLoc);
@@ -145,6 +157,107 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
     }
 
 
+    /**
+     * Send a request without waiting for the response
+     * 
+     * Only supported for SMB2 non-compound requests, the response must be collected using
+     * {@link #waitForResponse(CommonServerMessageBlockRequest, CommonServerMessageBlockResponse, RequestParam...)}
+     * 
+     * @param req
+     * @param params
+     * @return response that will be filled once received, null if {@link RequestParam#NO_CREDIT_WAIT} is specified and
+     *         there are not enough credits available
+     * @throws CIFSException
+     */
+    public <T extends CommonServerMessageBlockResponse> T sendNoWait ( jcifs.internal.Request<T> req, RequestParam... params ) throws CIFSException {
+        return this.treeConnection.sendAsync((CommonServerMessageBlockRequest) req, toParamSet(params));
+    }
+
+
+    /**
+     * Send a request asynchronously
+     * 
+     * Only supported for SMB2 non-compound requests. The returned future is completed by a shared worker thread, never
+     * by the thread receiving responses, dependent actions should still not block for long. If there are not enough credits the
+     * request is queued until credits are released, the caller does not block. Unless {@link RequestParam#NO_TIMEOUT}
+     * is given the future fails if the request is not completed within the response timeout.
+     * 
+     * @param req
+     * @param params
+     * @return future completed with the response, or exceptionally if sending failed or the response has an error status
+     */
+    public <T extends CommonServerMessageBlockResponse> CompletableFuture<T> sendAsync ( final jcifs.internal.Request<T> req,
+            final RequestParam... params ) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if ( !isSMB2() ) {
+            future.completeExceptionally(new SmbUnsupportedOperationException("Asynchronous requests require SMB2"));
+            return future;
+        }
+
+        // keep the tree in use until the response is processed
+        final SmbTreeHandleImpl th = acquire();
+        final T response;
+        try {
+            Set<RequestParam> ps = toParamSet(params);
+            ps.add(RequestParam.ASYNC_COMPLETION);
+            response = this.treeConnection.sendAsync((CommonServerMessageBlockRequest) req, ps);
+            if ( response == null ) {
+                throw new SmbException("Insufficient credits to send request");
+            }
+        }
+        catch ( CIFSException e ) {
+            th.release();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        final Runnable complete = new Runnable() {
+
+            @Override
+            public void run () {
+                try {
+                    future.complete(th.waitForResponse((CommonServerMessageBlockRequest) req, response, params));
+                }
+                catch ( CIFSException e ) {
+                    future.completeExceptionally(e);
+                }
+                finally {
+                    th.release();
+                }
+            }
+        };
+        // the handler runs on the receiving thread, completion may block and runs dependent stages
+        ( (ServerMessageBlock2Response) response ).setCompletionHandler(new Runnable() {
+
+            @Override
+            public void run () {
+                SmbWorkerPool.execute(complete);
+            }
+        });
+        return future;
+    }
+
+
+    /**
+     * Wait for the response to a request sent using {@link #sendNoWait(jcifs.internal.Request, RequestParam...)}
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @return response
+     * @throws CIFSException
+     */
+    public <T extends CommonServerMessageBlockResponse> T waitForResponse ( CommonServerMessageBlockRequest request, T response,
+            RequestParam... params ) throws CIFSException {
+        return this.treeConnection.waitForResponse(request, response, toParamSet(params));
+    }
+
+
+    private static Set<RequestParam> toParamSet ( RequestParam... params ) {
+        return params.length == 0 ? EnumSet.noneOf(RequestParam.class) : EnumSet.copyOf(Arrays.asList(params));
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -283,6 +396,18 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
     }
 
 
+    /**
+     * @param th
+     * @return whether both trees are connected through the same session
+     */
+    boolean isSameSession ( SmbTreeHandleImpl th ) {
+        try ( SmbSessionImpl s1 = getSession();
+              SmbSessionImpl s2 = th.getSession() ) {
+            return s1 != null && s1 == s2;
+        }
+    }
+
+
     @Override
     public int getSendBufferSize () throws SmbException {
         try ( SmbSessionImpl session = this.treeConnection.getSession();
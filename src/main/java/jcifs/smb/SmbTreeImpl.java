@@ -54,7 +54,9 @@ import jcifs.internal.smb1.trans.SmbComTransaction;
 import jcifs.internal.smb1.trans2.Trans2FindFirst2;
 import jcifs.internal.smb1.trans2.Trans2FindFirst2Response;
 import jcifs.internal.smb2.ServerMessageBlock2;
+import jcifs.internal.smb2.ServerMessageBlock2Request;
 import jcifs.internal.smb2.tree.Smb2TreeConnectRequest;
+import jcifs.internal.smb2.tree.Smb2TreeConnectResponse;
 import jcifs.internal.smb2.tree.Smb2TreeDisconnectRequest;
 
 
@@ -79,6 +81,7 @@ class SmbTreeImpl implements SmbTreeInternal {
     private volatile int tid;
     private volatile String service = "?????";
     private volatile boolean inDfs, inDomainDfs;
+    private volatile boolean encrypt;
     private volatile long treeNum; // used by SmbFile.isOpen
 
     private final AtomicLong usageCount = new AtomicLong(0);
@@ -433,6 +436,9 @@ class SmbTreeImpl implements SmbTreeInternal {
                 throw new SmbException("Tree id is 0");
             }
             request.setTid(t);
+            if ( this.encrypt ) {
+                ( (ServerMessageBlock2Request<?>) request ).setEncryptionContext(sess.getEncryptionContext());
+            }
 
             if ( !transport.isSMB2() ) {
                 ServerMessageBlock req = (ServerMessageBlock) request;
@@ -481,6 +487,55 @@ class SmbTreeImpl implements SmbTreeInternal {
     }
 
 
+    /**
+     * Send a request without waiting for the response
+     * 
+     * @param request
+     * @param params
+     * @return the response that will be filled once received
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T sendAsync ( CommonServerMessageBlockRequest request, Set<RequestParam> params )
+            throws CIFSException {
+        try ( SmbSessionImpl sess = getSession() ) {
+            treeConnect(null, null);
+            int t = this.tid;
+            if ( t == 0 ) {
+                throw new SmbException("Tree id is 0");
+            }
+            request.setTid(t);
+            if ( this.encrypt ) {
+                ( (ServerMessageBlock2Request<?>) request ).setEncryptionContext(sess.getEncryptionContext());
+            }
+            return sess.sendAsync(request, params);
+        }
+    }
+
+
+    /**
+     * Wait for the response to a request sent using {@link #sendAsync(CommonServerMessageBlockRequest, Set)}
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @return the response
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T waitForResponse ( CommonServerMessageBlockRequest request, T response,
+            Set<RequestParam> params ) throws CIFSException {
+        try ( SmbSessionImpl sess = getSession() ) {
+            return sess.waitForResponse(request, response, params);
+        }
+        catch ( SmbException se ) {
+            if ( se.getNtStatus() == NtStatus.NT_STATUS_NETWORK_NAME_DELETED ) {
+                log.debug("Disconnect tree on NT_STATUS_NETWORK_NAME_DELETED");
+                treeDisconnect(true, true);
+            }
+            throw se;
+        }
+    }
+
+
     /**
      * @param transport
      * @param request
@@ -599,6 +654,9 @@ class SmbTreeImpl implements SmbTreeInternal {
 
                     response = sess.send(request, response);
                     treeConnected(transport, response);
+                    if ( transport.isSMB2() ) {
+                        sess.setupChannels(this);
+                    }
 
                     if ( andxResponse != null && andxResponse.isReceived() ) {
                         return andxResponse;
@@ -653,6 +711,11 @@ class SmbTreeImpl implements SmbTreeInternal {
         }
         this.service = rsvc;
         this.inDfs = response.isShareDfs();
+        this.encrypt = response instanceof Smb2TreeConnectResponse
+                && ( ( (Smb2TreeConnectResponse) response ).getShareFlags() & Smb2TreeConnectResponse.SMB2_SHAREFLAG_ENCRYPT_DATA ) != 0;
+        if ( this.encrypt && this.session.getEncryptionContext() == null ) {
+            throw new SmbException("Share requires encryption, which is not available for this session");
+        }
         this.treeNum = TREE_CONN_COUNTER.incrementAndGet();
 
         this.connectionState.set(2); // connected
@@ -757,6 +820,7 @@ class SmbTreeImpl implements SmbTreeInternal {
                 }
                 this.inDfs = false;
                 this.inDomainDfs = false;
+                this.encrypt = false;
                 this.connectionState.set(0);
                 transport.notifyAll();
             }
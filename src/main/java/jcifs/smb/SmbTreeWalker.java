@@ -0,0 +1,174 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.CloseableIterator;
+import jcifs.ResourceFilter;
+import jcifs.ResourceNameFilter;
+import jcifs.SmbConstants;
+import jcifs.SmbResource;
+import jcifs.SmbResourceVisitor;
+
+
+/**
+ * Walks a directory tree, enumerating directories concurrently
+ * 
+ * Every directory is enumerated by a single task, subdirectories are queued as they are found. The number of worker
+ * threads bounds the number of concurrent enumerations.
+ * 
+ * @author mbechler
+ *
+ */
+final class SmbTreeWalker {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbTreeWalker.class);
+
+    private final SmbResourceVisitor visitor;
+    private final int maxDepth;
+    private final ResourceNameFilter nameFilter;
+    private final ResourceFilter filter;
+    private final SmbWorkerPool workers;
+
+
+    /**
+     * @param threads
+     *            number of worker threads
+     * @param visitor
+     * @param maxDepth
+     *            maximum depth, negative for unlimited
+     * @param nameFilter
+     * @param filter
+     */
+    SmbTreeWalker ( int threads, SmbResourceVisitor visitor, int maxDepth, ResourceNameFilter nameFilter, ResourceFilter filter ) {
+        this.visitor = visitor;
+        this.maxDepth = maxDepth;
+        this.nameFilter = nameFilter;
+        this.filter = filter;
+        this.workers = new SmbWorkerPool("walk", threads);
+    }
+
+
+    /**
+     * Walk the tree below the given directory
+     * 
+     * @param root
+     * @throws CIFSException
+     */
+    void walk ( SmbFile root ) throws CIFSException {
+        if ( this.maxDepth == 0 ) {
+            return;
+        }
+
+        // the visitor must not be called after returning, aborted tasks are waited for as well
+        this.workers.submit(new DirectoryTask(root, 0, true));
+        this.workers.await();
+    }
+
+
+    private final class DirectoryTask implements Runnable {
+
+        private final SmbFile dir;
+        private final int depth;
+        private final boolean root;
+
+
+        DirectoryTask ( SmbFile dir, int depth, boolean root ) {
+            this.dir = dir;
+            this.depth = depth;
+            this.root = root;
+        }
+
+
+        @Override
+        public void run () {
+            try {
+                if ( !SmbTreeWalker.this.workers.isAborted() ) {
+                    enumerate();
+                }
+            }
+            catch ( CIFSException e ) {
+                SmbTreeWalker.this.workers.abort(e);
+            }
+            catch ( RuntimeException e ) {
+                SmbTreeWalker.this.workers.abort(new SmbException("Failed to walk directory " + this.dir, e));
+            }
+            finally {
+                release();
+            }
+        }
+
+
+        void release () {
+            if ( !this.root ) {
+                this.dir.close();
+            }
+        }
+
+
+        private void enumerate () throws CIFSException {
+            int childDepth = this.depth + 1;
+            boolean descend = SmbTreeWalker.this.maxDepth < 0 || childDepth < SmbTreeWalker.this.maxDepth;
+            try ( CloseableIterator<SmbResource> it = SmbEnumerationUtil.doEnum(
+                this.dir,
+                "*",
+                SmbConstants.ATTR_DIRECTORY | SmbConstants.ATTR_HIDDEN | SmbConstants.ATTR_SYSTEM,
+                SmbTreeWalker.this.nameFilter,
+                SmbTreeWalker.this.filter) ) {
+                while ( it.hasNext() && !SmbTreeWalker.this.workers.isAborted() ) {
+                    SmbResource r = it.next();
+                    boolean queued = false;
+                    try {
+                        boolean accepted;
+                        try {
+                            accepted = SmbTreeWalker.this.visitor.visit(r, childDepth);
+                        }
+                        catch ( CIFSException e ) {
+                            // errors raised by the visitor always abort
+                            SmbTreeWalker.this.workers.abort(e);
+                            return;
+                        }
+                        if ( accepted && descend && r instanceof SmbFile && r.isDirectory() ) {
+                            SmbTreeWalker.this.workers.submit(new DirectoryTask((SmbFile) r, childDepth, false));
+                            queued = true;
+                        }
+                    }
+                    finally {
+                        if ( !queued ) {
+                            r.close();
+                        }
+                    }
+                }
+            }
+            catch ( CIFSException e ) {
+                if ( SmbTreeWalker.this.workers.isAborted() ) {
+                    throw e;
+                }
+                log.debug("Failed to enumerate " + this.dir, e);
+                if ( !SmbTreeWalker.this.visitor.visitFailed(this.dir, e) ) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+
+
+/**
+ * Runs the tasks of a single tree operation on shared worker threads
+ * 
+ * At most the given number of tasks of one operation run at the same time, further tasks are queued. The first failure
+ * aborts the operation, tasks still queued or running afterwards are expected to skip their work.
+ * 
+ * @author mbechler
+ *
+ */
+final class SmbWorkerPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbWorkerPool.class);
+
+    private final String operation;
+    private final int threads;
+
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+    private int running;
+    /**
+     * queued or running tasks
+     */
+    private int pending;
+    private volatile CIFSException failure;
+
+
+    /**
+     * @param operation
+     *            operation name used in messages
+     * @param threads
+     *            maximum number of concurrently running tasks
+     */
+    SmbWorkerPool ( String operation, int threads ) {
+        this.operation = operation;
+        this.threads = Math.max(1, threads);
+    }
+
+
+    /**
+     * @return whether the operation was aborted
+     */
+    boolean isAborted () {
+        return this.failure != null;
+    }
+
+
+    /**
+     * Abort the operation, only the first failure is reported
+     * 
+     * @param e
+     */
+    synchronized void abort ( CIFSException e ) {
+        if ( this.failure == null ) {
+            this.failure = e;
+        }
+        else {
+            log.debug("Additional failure after abort", e);
+        }
+    }
+
+
+    /**
+     * @param task
+     */
+    void submit ( Runnable task ) {
+        synchronized ( this ) {
+            this.pending++;
+            if ( this.running >= this.threads ) {
+                this.queue.add(task);
+                return;
+            }
+            this.running++;
+        }
+        Workers.INSTANCE.execute(new Worker(task));
+    }
+
+
+    /**
+     * Run a task on the shared worker threads, not counted against any operation
+     * 
+     * @param task
+     */
+    static void execute ( Runnable task ) {
+        Workers.INSTANCE.execute(task);
+    }
+
+
+    /**
+     * Wait until all submitted tasks are done
+     * 
+     * Tasks are never cancelled, an interrupt aborts the operation but still waits for the remaining tasks.
+     * 
+     * @throws CIFSException
+     *             the first failure
+     */
+    void await () throws CIFSException {
+        boolean interrupted = false;
+        synchronized ( this ) {
+            while ( this.pending > 0 ) {
+                try {
+                    wait();
+                }
+                catch ( InterruptedException e ) {
+                    interrupted = true;
+                    abort(new SmbException("Interrupted while waiting for " + this.operation, e));
+                }
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+
+        CIFSException f = this.failure;
+        if ( f != null ) {
+            throw f;
+        }
+    }
+
+
+    private synchronized Runnable next () {
+        this.pending--;
+        Runnable task = this.queue.poll();
+        if ( task == null ) {
+            this.running--;
+            if ( this.pending == 0 ) {
+                notifyAll();
+            }
+        }
+        return task;
+    }
+
+
+    private final class Worker implements Runnable {
+
+        private final Runnable first;
+
+
+        Worker ( Runnable first ) {
+            this.first = first;
+        }
+
+
+        @Override
+        public void run () {
+            Runnable task = this.first;
+            while ( task != null ) {
+                try {
+                    task.run();
+                }
+                catch ( RuntimeException e ) {
+                    abort(new SmbException("Unexpected failure during " + SmbWorkerPool.this.operation, e));
+                }
+                task = next();
+            }
+        }
+    }
+
+
+    /**
+     * Daemon threads shared by all operations, idle threads exit after a minute
+     */
+    private static final class Workers {
+
+        static final Executor INSTANCE;
+
+        static {
+            final AtomicInteger seq = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>());
+            executor.setThreadFactory(new ThreadFactory() {
+
+                @Override
+                public Thread newThread ( Runnable r ) {
+                    Thread t = new Thread(r, "jcifs-worker-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            INSTANCE = executor;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -60,6 +61,20 @@ public final class Crypto {
     }
 
 
+    /**
+     * 
+     * @return SHA-512 digest
+     */
+    public static MessageDigest getSHA512 () {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+    }
+
+
     /**
      * 
      * @return MD5 digest
@@ -104,6 +119,69 @@ public final class Crypto {
     }
 
 
+    /**
+     * @param key
+     *            128 bit AES key
+     * @return AES-CMAC initialized with the key
+     */
+    public static Mac getAESCMAC ( byte[] key ) {
+        try {
+            Mac m = Mac.getInstance("AESCMAC", BCPROV);
+            m.init(new SecretKeySpec(key, "AES"));
+            return m;
+        }
+        catch (
+            NoSuchAlgorithmException |
+            InvalidKeyException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+    }
+
+
+    /**
+     * 
+     * @return AES-GMAC, needs to be initialized with key and nonce for every message
+     */
+    public static Mac getAESGMAC () {
+        try {
+            return Mac.getInstance("AES-GMAC", BCPROV);
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+    }
+
+
+    /**
+     * 
+     * @return AES-CCM cipher, needs to be initialized with key and nonce for every message
+     */
+    public static Cipher getAESCCM () {
+        return getAEADCipher("AES/CCM/NoPadding");
+    }
+
+
+    /**
+     * 
+     * @return AES-GCM cipher, needs to be initialized with key and nonce for every message
+     */
+    public static Cipher getAESGCM () {
+        return getAEADCipher("AES/GCM/NoPadding");
+    }
+
+
+    private static Cipher getAEADCipher ( String transformation ) {
+        try {
+            return Cipher.getInstance(transformation, BCPROV);
+        }
+        catch (
+            NoSuchAlgorithmException |
+            NoSuchPaddingException e ) {
+            throw new CIFSUnsupportedCryptoException(e);
+        }
+    }
+
+
     /**
      * @param key
      *            7 or 8 byte DES key
@@ -0,0 +1,292 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.util;
+
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+
+/**
+ * Plain LZ77 compression as specified in MS-XCA 2.3/2.4
+ * 
+ * The compressor uses a single entry hash table for match finding, trading compression ratio for speed.
+ * 
+ * @author mbechler
+ *
+ */
+public final class LZ77 {
+
+    private static final int HASH_BITS = 14;
+    private static final int MAX_OFFSET = 8192;
+    private static final int MIN_MATCH = 3;
+
+    /**
+     * Maximum number of bytes written for a single literal or match, including a new flag word
+     */
+    private static final int MAX_STEP = 16;
+
+    private static final ThreadLocal<int[]> HASH_TABLE = new ThreadLocal<int[]>() {
+
+        @Override
+        protected int[] initialValue () {
+            return new int[1 << HASH_BITS];
+        }
+    };
+
+
+    /**
+     * 
+     */
+    private LZ77 () {}
+
+
+    /**
+     * 
+     * @param src
+     * @param srcOff
+     * @param srcLen
+     * @param dst
+     * @param dstOff
+     * @param dstLen
+     *            maximum compressed length
+     * @return the compressed length, -1 if the compressed data would exceed dstLen
+     */
+    public static int compress ( byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen ) {
+        int[] table = HASH_TABLE.get();
+        Arrays.fill(table, -1);
+
+        int ip = srcOff;
+        int end = srcOff + srcLen;
+        int limit = dstOff + dstLen;
+        int flagPos = dstOff;
+        int op = dstOff + 4;
+        int flags = 0;
+        int flagCount = 0;
+        int halfByte = -1;
+
+        while ( ip < end ) {
+            if ( op + MAX_STEP > limit ) {
+                return -1;
+            }
+
+            int matchLen = 0;
+            int matchOff = 0;
+            if ( ip + MIN_MATCH <= end ) {
+                int h = hash(src, ip);
+                int cand = table[ h ];
+                table[ h ] = ip;
+                if ( cand >= 0 && ip - cand <= MAX_OFFSET && src[ cand ] == src[ ip ] && src[ cand + 1 ] == src[ ip + 1 ]
+                        && src[ cand + 2 ] == src[ ip + 2 ] ) {
+                    int l = MIN_MATCH;
+                    while ( ip + l < end && src[ cand + l ] == src[ ip + l ] ) {
+                        l++;
+                    }
+                    matchLen = l;
+                    matchOff = ip - cand;
+                }
+            }
+
+            if ( matchLen == 0 ) {
+                dst[ op++ ] = src[ ip++ ];
+                flags <<= 1;
+            }
+            else {
+                int ml = matchLen - MIN_MATCH;
+                int mo = ( matchOff - 1 ) << 3;
+                if ( ml < 7 ) {
+                    Encdec.enc_uint16le((short) ( mo | ml ), dst, op);
+                    op += 2;
+                }
+                else {
+                    Encdec.enc_uint16le((short) ( mo | 7 ), dst, op);
+                    op += 2;
+                    ml -= 7;
+                    int nibble = Math.min(ml, 15);
+                    if ( halfByte < 0 ) {
+                        halfByte = op;
+                        dst[ op++ ] = (byte) nibble;
+                    }
+                    else {
+                        dst[ halfByte ] |= (byte) ( nibble << 4 );
+                        halfByte = -1;
+                    }
+
+                    if ( ml >= 15 ) {
+                        ml -= 15;
+                        if ( ml < 255 ) {
+                            dst[ op++ ] = (byte) ml;
+                        }
+                        else {
+                            dst[ op++ ] = (byte) 255;
+                            ml += 15 + 7;
+                            if ( ml < ( 1 << 16 ) ) {
+                                Encdec.enc_uint16le((short) ml, dst, op);
+                                op += 2;
+                            }
+                            else {
+                                Encdec.enc_uint16le((short) 0, dst, op);
+                                Encdec.enc_uint32le(ml, dst, op + 2);
+                                op += 6;
+                            }
+                        }
+                    }
+                }
+
+                // index the positions covered by the match
+                int next = ip + matchLen;
+                for ( int i = ip + 1; i < next && i + MIN_MATCH <= end; i++ ) {
+                    table[ hash(src, i) ] = i;
+                }
+                ip = next;
+                flags = ( flags << 1 ) | 1;
+            }
+
+            flagCount++;
+            if ( flagCount == 32 ) {
+                Encdec.enc_uint32le(flags, dst, flagPos);
+                flagCount = 0;
+                flags = 0;
+                flagPos = op;
+                op += 4;
+            }
+        }
+
+        // remaining flag bits are set, the decoder stops at the first match without input
+        long last = ( (long) flags << ( 32 - flagCount ) ) | ( ( 1L << ( 32 - flagCount ) ) - 1 );
+        Encdec.enc_uint32le((int) last, dst, flagPos);
+        return op - dstOff;
+    }
+
+
+    /**
+     * 
+     * @param src
+     * @param srcOff
+     * @param srcLen
+     * @param dst
+     * @param dstOff
+     * @param dstLen
+     *            maximum decompressed length
+     * @return the decompressed length
+     * @throws DataFormatException
+     *             if the input is corrupt or decompresses to more than dstLen bytes
+     */
+    public static int decompress ( byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen ) throws DataFormatException {
+        int ip = srcOff;
+        int end = srcOff + srcLen;
+        int op = dstOff;
+        int oend = dstOff + dstLen;
+        int flags = 0;
+        int flagCount = 0;
+        int halfByte = -1;
+
+        while ( ip < end ) {
+            if ( flagCount == 0 ) {
+                if ( ip + 4 > end ) {
+                    throw new DataFormatException("Truncated flags");
+                }
+                flags = Encdec.dec_uint32le(src, ip);
+                ip += 4;
+                flagCount = 32;
+            }
+            flagCount--;
+
+            if ( ( flags & ( 1 << flagCount ) ) == 0 ) {
+                if ( ip >= end ) {
+                    throw new DataFormatException("Truncated literal");
+                }
+                if ( op >= oend ) {
+                    throw new DataFormatException("Output exceeds expected size");
+                }
+                dst[ op++ ] = src[ ip++ ];
+                continue;
+            }
+
+            if ( ip == end ) {
+                break;
+            }
+            else if ( ip + 2 > end ) {
+                throw new DataFormatException("Truncated match");
+            }
+
+            int matchBytes = Encdec.dec_uint16le(src, ip) & 0xFFFF;
+            ip += 2;
+            int ml = matchBytes & 7;
+            int mo = ( matchBytes >>> 3 ) + 1;
+            if ( ml == 7 ) {
+                if ( halfByte < 0 ) {
+                    if ( ip >= end ) {
+                        throw new DataFormatException("Truncated match length");
+                    }
+                    ml = src[ ip ] & 0xF;
+                    halfByte = ip++;
+                }
+                else {
+                    ml = ( src[ halfByte ] & 0xFF ) >>> 4;
+                    halfByte = -1;
+                }
+
+                if ( ml == 15 ) {
+                    if ( ip >= end ) {
+                        throw new DataFormatException("Truncated match length");
+                    }
+                    ml = src[ ip++ ] & 0xFF;
+                    if ( ml == 255 ) {
+                        if ( ip + 2 > end ) {
+                            throw new DataFormatException("Truncated match length");
+                        }
+                        ml = Encdec.dec_uint16le(src, ip) & 0xFFFF;
+                        ip += 2;
+                        if ( ml == 0 ) {
+                            if ( ip + 4 > end ) {
+                                throw new DataFormatException("Truncated match length");
+                            }
+                            ml = Encdec.dec_uint32le(src, ip);
+                            ip += 4;
+                        }
+                        if ( ml < 15 + 7 ) {
+                            throw new DataFormatException("Invalid match length");
+                        }
+                        ml -= 15 + 7;
+                    }
+                    ml += 15;
+                }
+                ml += 7;
+            }
+            ml += MIN_MATCH;
+
+            if ( mo > op - dstOff ) {
+                throw new DataFormatException("Match offset out of range");
+            }
+            if ( ml < 0 || ml > oend - op ) {
+                throw new DataFormatException("Output exceeds expected size");
+            }
+            for ( int i = 0; i < ml; i++, op++ ) {
+                dst[ op ] = dst[ op - mo ];
+            }
+        }
+        return op - dstOff;
+    }
+
+
+    private static int hash ( byte[] b, int off ) {
+        int v = ( b[ off ] & 0xFF ) | ( b[ off + 1 ] & 0xFF ) << 8 | ( b[ off + 2 ] & 0xFF ) << 16;
+        return ( v * 0x9E3779B1 ) >>> ( 32 - HASH_BITS );
+    }
+}
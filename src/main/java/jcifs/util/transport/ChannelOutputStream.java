@@ -0,0 +1,109 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.util.transport;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * Output stream writing to a non-blocking socket channel
+ * 
+ * Blocks the writing thread while the socket send buffer is full.
+ * 
+ * @author mbechler
+ *
+ */
+public class ChannelOutputStream extends OutputStream {
+
+    private final SocketChannel channel;
+    private final long timeout;
+    private Selector writeSelector;
+
+
+    /**
+     * @param channel
+     *            non-blocking channel to write to
+     * @param timeout
+     *            maximum time to wait for the channel to become writable, 0 for no timeout
+     */
+    public ChannelOutputStream ( SocketChannel channel, long timeout ) {
+        this.channel = channel;
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write ( int b ) throws IOException {
+        write(new byte[] {
+            (byte) b
+        }, 0, 1);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write ( byte[] b, int off, int len ) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+        while ( buf.hasRemaining() ) {
+            if ( this.channel.write(buf) == 0 ) {
+                awaitWritable();
+            }
+        }
+    }
+
+
+    private void awaitWritable () throws IOException {
+        if ( this.writeSelector == null ) {
+            this.writeSelector = Selector.open();
+            this.channel.register(this.writeSelector, SelectionKey.OP_WRITE);
+        }
+        if ( this.writeSelector.select(this.timeout) == 0 ) {
+            throw new SocketTimeoutException("Write timed out");
+        }
+        this.writeSelector.selectedKeys().clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close () throws IOException {
+        if ( this.writeSelector != null ) {
+            this.writeSelector.close();
+        }
+    }
+}
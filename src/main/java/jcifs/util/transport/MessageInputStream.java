@@ -0,0 +1,105 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.util.transport;
+
+
+import java.io.InputStream;
+
+
+/**
+ * Input stream over a single, completely received message
+ * 
+ * Used by transports whose data is read by a {@link TransportSelector}, the protocol parsing then reads from this
+ * stream as it would from the socket.
+ * 
+ * @author mbechler
+ *
+ */
+public class MessageInputStream extends InputStream {
+
+    private byte[] message = new byte[0];
+    private int pos;
+
+
+    /**
+     * @param message
+     *            message to read from
+     * @param off
+     *            offset to start reading at
+     */
+    void setMessage ( byte[] message, int off ) {
+        this.message = message;
+        this.pos = off;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read () {
+        if ( this.pos >= this.message.length ) {
+            return -1;
+        }
+        return this.message[ this.pos++ ] & 0xFF;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read ( byte[] b, int off, int len ) {
+        int avail = this.message.length - this.pos;
+        if ( avail <= 0 ) {
+            return -1;
+        }
+        int n = Math.min(avail, len);
+        System.arraycopy(this.message, this.pos, b, off, n);
+        this.pos += n;
+        return n;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#skip(long)
+     */
+    @Override
+    public long skip ( long n ) {
+        int skip = (int) Math.max(0, Math.min(n, this.message.length - this.pos));
+        this.pos += skip;
+        return skip;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available () {
+        return this.message.length - this.pos;
+    }
+}
@@ -167,6 +167,13 @@ public abstract class Transport implements Runnable, AutoCloseable {
     protected abstract long makeKey ( Request request ) throws IOException;
 
 
+    /**
+     * @param request
+     * @return the key previously assigned to the request by {@link #makeKey(Request)}
+     */
+    protected abstract long getKey ( Request request );
+
+
     protected abstract Long peekKey () throws IOException;
 
 
@@ -176,7 +183,7 @@ public abstract class Transport implements Runnable, AutoCloseable {
     protected abstract void doRecv ( Response response ) throws IOException;
 
 
-    protected abstract void doSkip () throws IOException;
+    protected abstract void doSkip ( Long key ) throws IOException;
 
 
     /**
@@ -225,7 +232,7 @@ public abstract class Transport implements Runnable, AutoCloseable {
                         response.received();
                         return response;
                     }
-                    doSkip();
+                    doSkip(peekKey);
                 }
             }
 
@@ -246,18 +253,112 @@ public abstract class Transport implements Runnable, AutoCloseable {
             throw new TransportException(ie);
         }
         finally {
-            Response curResp = response;
-            Request curReq = request;
-            while ( curResp != null ) {
-                this.response_map.remove(curResp);
-                Request next = curReq.getNext();
-                if ( next != null ) {
-                    curReq = next;
-                    curResp = next.getResponse();
-                }
-                else {
-                    break;
-                }
+            removeResponses(request, response);
+        }
+    }
+
+
+    /**
+     * Send a request message without waiting for the response
+     * 
+     * The response must be collected using {@link #waitForResponse(Request, Response, Set)}, which also
+     * releases the response handler.
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @throws IOException
+     */
+    public <T extends Response> void sendAsync ( Request request, T response, Set<RequestParam> params ) throws IOException {
+        if ( isDisconnected() && this.state != 5 ) {
+            throw new TransportException("Transport is disconnected " + this.name);
+        }
+        try {
+            long timeout = !params.contains(RequestParam.NO_TIMEOUT) ? getResponseTimeout() : 0;
+            doSend(request, response, params, timeout);
+        }
+        catch ( IOException ioe ) {
+            log.warn("sendAsync failed", ioe);
+            removeResponses(request, response);
+            try {
+                disconnect(true);
+            }
+            catch ( IOException ioe2 ) {
+                ioe.addSuppressed(ioe2);
+                log.info("disconnect failed", ioe2);
+            }
+            throw ioe;
+        }
+    }
+
+
+    /**
+     * Wait for the response to a request sent using {@link #sendAsync(Request, Response, Set)}
+     * 
+     * @param request
+     * @param response
+     * @param params
+     * @return the response
+     * @throws IOException
+     */
+    public <T extends Response> T waitForResponse ( Request request, T response, Set<RequestParam> params ) throws IOException {
+        try {
+            long timeout = !params.contains(RequestParam.NO_TIMEOUT) ? getResponseTimeout() : 0;
+            if ( timeout > 0 && response.getExpiration() != null ) {
+                timeout = Math.max(1, response.getExpiration() - System.currentTimeMillis());
+            }
+            return waitForResponses(request, response, timeout);
+        }
+        catch ( IOException ioe ) {
+            log.warn("waitForResponse failed", ioe);
+            try {
+                disconnect(true);
+            }
+            catch ( IOException ioe2 ) {
+                ioe.addSuppressed(ioe2);
+                log.info("disconnect failed", ioe2);
+            }
+            throw ioe;
+        }
+        catch ( InterruptedException ie ) {
+            throw new TransportException(ie);
+        }
+        finally {
+            removeResponses(request, response);
+        }
+    }
+
+
+    /**
+     * Stop waiting for the response to a request sent using {@link #sendAsync(Request, Response, Set)}
+     * 
+     * @param request
+     * @param response
+     * @param e
+     *            exception the response is failed with
+     */
+    protected <T extends Response> void abandonResponse ( Request request, T response, Exception e ) {
+        removeResponses(request, response);
+        response.exception(e);
+    }
+
+
+    private <T extends Response> void removeResponses ( Request request, T response ) {
+        Response curResp = response;
+        Request curReq = request;
+        while ( curResp != null ) {
+            long k = getKey(curReq);
+            // only remove our own handler, the key may be stale if the request was not sent
+            if ( this.response_map.get(k) == curResp ) {
+                this.response_map.remove(k);
+            }
+            Request next = curReq.getNext();
+            if ( next != null ) {
+                curReq = next;
+                curResp = next.getResponse();
+            }
+            else {
+                break;
             }
         }
     }
@@ -435,63 +536,152 @@ public abstract class Transport implements Runnable, AutoCloseable {
                         }
                         throw e;
                     }
-                    if ( key == null ) {
-                        synchronized ( this ) {
-                            for ( Response response : this.response_map.values() ) {
-                                response.error();
-                            }
-                        }
-                        throw new IOException("end of stream");
-                    }
-
-                    Response response = this.response_map.get(key);
-                    if ( response == null ) {
-                        if ( log.isDebugEnabled() ) {
-                            log.debug("Unexpected message id, skipping message " + key);
-                        }
-                        doSkip();
-                    }
-                    else {
-                        doRecv(response);
-                        response.received();
-                    }
+                    dispatch(key);
                 }
             }
             catch ( Exception ex ) {
-                String msg = ex.getMessage();
-                boolean timeout = ( ex instanceof SocketTimeoutException ) || msg != null && msg.equals("Read timed out");
-                boolean closed = msg != null && msg.equals("Socket closed");
+                receiveFailed(ex);
+                return;
+            }
+        }
 
-                if ( closed ) {
-                    log.trace("Remote closed connection");
-                }
-                else if ( !timeout ) {
-                    log.debug("recv failed", ex);
+    }
+
+
+    private void dispatch ( Long key ) throws IOException {
+        if ( key == null ) {
+            synchronized ( this ) {
+                for ( Response response : this.response_map.values() ) {
+                    response.error();
                 }
+            }
+            throw new IOException("end of stream");
+        }
 
-                synchronized ( this ) {
-                    try {
-                        disconnect(!timeout, false);
-                    }
-                    catch ( IOException ioe ) {
-                        ex.addSuppressed(ioe);
-                        log.warn("Failed to disconnect", ioe);
-                    }
-                    log.debug("Disconnected");
+        Response response = this.response_map.get(key);
+        if ( response == null ) {
+            if ( log.isDebugEnabled() ) {
+                log.debug("Unexpected message id, skipping message " + key);
+            }
+            doSkip(key);
+        }
+        else {
+            doRecv(response);
+            response.received();
+        }
+    }
 
-                    Iterator<Entry<Long, Response>> iterator = this.response_map.entrySet().iterator();
-                    while ( iterator.hasNext() ) {
-                        Response resp = iterator.next().getValue();
-                        resp.exception(ex);
-                        iterator.remove();
 
-                    }
-                    log.debug("Notified clients");
-                    return;
-                }
+    /**
+     * Process a single complete message read by a {@link TransportSelector}
+     * 
+     * @param in
+     *            the stream the transport reads from
+     * @param message
+     *            message including the 4 byte session message header
+     * @throws IOException
+     */
+    final void receiveMessage ( MessageInputStream in, byte[] message ) throws IOException {
+        // potentially expensive, keep it out of the lock
+        int off = unwrapMessage(message);
+        synchronized ( this.inLock ) {
+            in.setMessage(message, off);
+            dispatch(peekKey());
+        }
+    }
+
+
+    /**
+     * Prepare a message read by a {@link TransportSelector} before it is dispatched
+     * 
+     * This is called without holding the input lock, by a single thread per transport and in the order messages
+     * are received.
+     * 
+     * @param message
+     *            message including the 4 byte session message header, may be modified in place
+     * @return offset of the message to dispatch, including its 4 byte session message header
+     * @throws IOException
+     */
+    protected int unwrapMessage ( byte[] message ) throws IOException {
+        return 0;
+    }
+
+
+    /**
+     * Called by a {@link TransportSelector} when no data was received for the idle timeout
+     * 
+     * @return whether the transport is being closed
+     */
+    final boolean receiveIdle () {
+        if ( getUsageCount() > 0 ) {
+            if ( log.isDebugEnabled() ) {
+                log.debug("Transport still in use, no idle timeout " + this);
+            }
+            return false;
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug(String.format("Idle timeout on %s", this.name));
+        }
+
+        // disconnecting may need to exchange messages, which the selector thread must be free to receive
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run () {
+                receiveFailed(new SocketTimeoutException("Idle timeout"));
+            }
+        }, this.name + "-idle");
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+
+    /**
+     * Tear down the transport after receiving failed
+     * 
+     * @param ex
+     */
+    final void receiveFailed ( Exception ex ) {
+        String msg = ex.getMessage();
+        boolean timeout = ( ex instanceof SocketTimeoutException ) || msg != null && msg.equals("Read timed out");
+        boolean closed = msg != null && msg.equals("Socket closed");
+
+        if ( closed ) {
+            log.trace("Remote closed connection");
+        }
+        else if ( !timeout ) {
+            log.debug("recv failed", ex);
+        }
+
+        synchronized ( this ) {
+            try {
+                disconnect(!timeout, false);
             }
+            catch ( IOException ioe ) {
+                ex.addSuppressed(ioe);
+                log.warn("Failed to disconnect", ioe);
+            }
+            log.debug("Disconnected");
+
+            Iterator<Entry<Long, Response>> iterator = this.response_map.entrySet().iterator();
+            while ( iterator.hasNext() ) {
+                Response resp = iterator.next().getValue();
+                resp.exception(ex);
+                iterator.remove();
+
+            }
+            log.debug("Notified clients");
         }
+    }
 
+
+    /**
+     * @return whether responses are received by a {@link TransportSelector} instead of a dedicated thread
+     */
+    protected boolean isSelectorReceive () {
+        return false;
     }
 
 
@@ -748,6 +938,11 @@ public abstract class Transport implements Runnable, AutoCloseable {
             }
         }
 
+        if ( isSelectorReceive() ) {
+            // responses are processed by the selector
+            return;
+        }
+
         /*
          * Proccess responses
          */
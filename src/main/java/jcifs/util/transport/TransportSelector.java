@@ -0,0 +1,244 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.util.transport;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Receives messages for many transports using a small number of selector threads
+ * 
+ * Each registered transport's non-blocking channel is read by one of the selector threads, complete messages are
+ * handed to the transport which dispatches them by message id like its reader thread would.
+ * 
+ * @author mbechler
+ *
+ */
+public class TransportSelector implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TransportSelector.class);
+
+    private final Worker[] workers;
+    private final AtomicInteger next = new AtomicInteger();
+
+
+    /**
+     * @param threads
+     *            number of selector threads
+     * @param name
+     *            thread name prefix
+     * @throws IOException
+     */
+    public TransportSelector ( int threads, String name ) throws IOException {
+        this.workers = new Worker[Math.max(1, threads)];
+        for ( int i = 0; i < this.workers.length; i++ ) {
+            this.workers[ i ] = new Worker(Selector.open());
+            Thread t = new Thread(this.workers[ i ], name + "-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+
+    /**
+     * Start receiving messages for a connected transport
+     * 
+     * The channel is switched to non-blocking mode, the transport must read from the given input stream afterwards.
+     * 
+     * @param transport
+     * @param channel
+     * @param in
+     *            stream the transport reads messages from
+     * @param idleTimeout
+     *            time without received data after which the transport is checked for idle disconnect, 0 to disable
+     * @param maxMessageSize
+     *            maximum size of a single message (excluding the 4 byte length prefix), larger messages fail the transport
+     * @throws IOException
+     */
+    public void register ( Transport transport, SocketChannel channel, MessageInputStream in, long idleTimeout, int maxMessageSize )
+            throws IOException {
+        channel.configureBlocking(false);
+        Worker w = this.workers[ ( this.next.getAndIncrement() & Integer.MAX_VALUE ) % this.workers.length ];
+        w.pending.add(new Registration(transport, channel, in, idleTimeout, maxMessageSize));
+        w.selector.wakeup();
+    }
+
+
+    /**
+     * Stop all selector threads
+     * 
+     * {@inheritDoc}
+     *
+     * @see java.lang.AutoCloseable#close()
+     */
+    @Override
+    public void close () {
+        for ( Worker w : this.workers ) {
+            try {
+                w.selector.close();
+            }
+            catch ( IOException e ) {
+                log.debug("Failed to close selector", e);
+            }
+        }
+    }
+
+    private static final class Registration {
+
+        final Transport transport;
+        final SocketChannel channel;
+        final MessageInputStream in;
+        final long idleTimeout;
+        final int maxMessageSize;
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        ByteBuffer message;
+        long lastActivity = System.currentTimeMillis();
+
+
+        Registration ( Transport transport, SocketChannel channel, MessageInputStream in, long idleTimeout, int maxMessageSize ) {
+            this.transport = transport;
+            this.channel = channel;
+            this.in = in;
+            this.idleTimeout = idleTimeout;
+            this.maxMessageSize = maxMessageSize;
+        }
+
+
+        /**
+         * Read all available data, dispatching complete messages
+         */
+        void read () throws IOException {
+            for ( ;; ) {
+                if ( this.message == null ) {
+                    if ( this.channel.read(this.header) < 0 ) {
+                        throw new EOFException("end of stream");
+                    }
+                    if ( this.header.hasRemaining() ) {
+                        return;
+                    }
+                    byte[] h = this.header.array();
+                    this.header.clear();
+                    if ( h[ 0 ] == (byte) 0x85 ) {
+                        // NetBIOS keep-alive
+                        continue;
+                    }
+                    int size = ( h[ 1 ] & 0xFF ) << 16 | ( h[ 2 ] & 0xFF ) << 8 | ( h[ 3 ] & 0xFF );
+                    if ( size > this.maxMessageSize ) {
+                        throw new IOException(String.format("Message size %d exceeds maximum buffer size %d", size, this.maxMessageSize));
+                    }
+                    this.message = ByteBuffer.allocate(4 + size);
+                    this.message.put(h);
+                }
+
+                if ( this.channel.read(this.message) < 0 ) {
+                    throw new EOFException("end of stream");
+                }
+                if ( this.message.hasRemaining() ) {
+                    return;
+                }
+                byte[] msg = this.message.array();
+                this.message = null;
+                this.lastActivity = System.currentTimeMillis();
+                this.transport.receiveMessage(this.in, msg);
+            }
+        }
+    }
+
+    private static final class Worker implements Runnable {
+
+        final Selector selector;
+        final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+
+
+        Worker ( Selector selector ) {
+            this.selector = selector;
+        }
+
+
+        @Override
+        public void run () {
+            try {
+                while ( this.selector.isOpen() ) {
+                    this.selector.select(1000);
+
+                    Registration r;
+                    while ( ( r = this.pending.poll() ) != null ) {
+                        try {
+                            r.channel.register(this.selector, SelectionKey.OP_READ, r);
+                        }
+                        catch ( IOException e ) {
+                            r.transport.receiveFailed(e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                    while ( it.hasNext() ) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Registration reg = (Registration) key.attachment();
+                        try {
+                            if ( key.isValid() && key.isReadable() ) {
+                                reg.read();
+                            }
+                        }
+                        catch ( Exception e ) {
+                            key.cancel();
+                            reg.transport.receiveFailed(e);
+                        }
+                    }
+
+                    checkIdle();
+                }
+            }
+            catch ( ClosedSelectorException e ) {
+                log.trace("Selector closed", e);
+            }
+            catch ( IOException e ) {
+                log.error("Selector failed", e);
+            }
+        }
+
+
+        private void checkIdle () {
+            long now = System.currentTimeMillis();
+            for ( SelectionKey key : this.selector.keys() ) {
+                Registration reg = (Registration) key.attachment();
+                if ( !key.isValid() || reg.idleTimeout <= 0 || now - reg.lastActivity < reg.idleTimeout ) {
+                    continue;
+                }
+                reg.lastActivity = now;
+                // keep receiving, disconnecting may still need responses
+                reg.transport.receiveIdle();
+            }
+        }
+    }
+}
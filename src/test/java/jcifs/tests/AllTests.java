@@ -54,9 +54,10 @@ import jcifs.context.BaseContext;
  */
 @RunWith ( Suite.class )
 @SuiteClasses ( {
-    ContextConfigTest.class, PACTest.class, FileLocationTest.class, SessionTest.class, KerberosTest.class, TimeoutTest.class, SidTest.class,
-    NamingTest.class, DfsTest.class, FileAttributesTest.class, EnumTest.class, PipeTest.class, FileOperationsTest.class, WatchTest.class,
-    ReadWriteTest.class, ConcurrencyTest.class, RandomAccessFileTest.class,
+    ContextConfigTest.class, PACTest.class, CompressionTest.class, EncryptionTest.class, SigningTest.class, BufferCacheTest.class,
+    CreditChargeTest.class, FileLocationTest.class, SessionTest.class, KerberosTest.class, TimeoutTest.class, SidTest.class,
+    NamingTest.class, DfsTest.class, FileAttributesTest.class, EnumTest.class, PipeTest.class, FileOperationsTest.class,
+    WatchTest.class, ReadWriteTest.class, ConcurrencyTest.class, RandomAccessFileTest.class, MetricsTest.class, TracingTest.class
 } )
 
 public class AllTests {
@@ -175,6 +176,59 @@ public class AllTests {
                 return cfg;
             }
         });
+
+        MUTATIONS.put("smb3", new TestMutation() {
+
+            @Override
+            public Map<String, String> mutate ( Map<String, String> cfg ) {
+                cfg.put("jcifs.smb.client.enableSMB2", "true");
+                cfg.put("jcifs.smb.client.enableSMB3", "true");
+                return cfg;
+            }
+        });
+
+        MUTATIONS.put("multichannel", new TestMutation() {
+
+            @Override
+            public Map<String, String> mutate ( Map<String, String> cfg ) {
+                cfg.put("jcifs.smb.client.enableSMB2", "true");
+                cfg.put("jcifs.smb.client.enableSMB3", "true");
+                cfg.put("jcifs.smb.client.maxChannels", "4");
+                return cfg;
+            }
+        });
+
+        MUTATIONS.put("compression", new TestMutation() {
+
+            @Override
+            public Map<String, String> mutate ( Map<String, String> cfg ) {
+                cfg.put("jcifs.smb.client.enableSMB2", "true");
+                cfg.put("jcifs.smb.client.enableSMB3", "true");
+                cfg.put("jcifs.smb.client.enableCompression", "true");
+                cfg.put("jcifs.smb.client.compressionThreshold", "1024");
+                return cfg;
+            }
+        });
+
+        MUTATIONS.put("encryption", new TestMutation() {
+
+            @Override
+            public Map<String, String> mutate ( Map<String, String> cfg ) {
+                cfg.put("jcifs.smb.client.enableSMB2", "true");
+                cfg.put("jcifs.smb.client.enableSMB3", "true");
+                cfg.put("jcifs.smb.client.encryptData", "true");
+                return cfg;
+            }
+        });
+
+        MUTATIONS.put("selector", new TestMutation() {
+
+            @Override
+            public Map<String, String> mutate ( Map<String, String> cfg ) {
+                cfg.put("jcifs.smb.client.selectorThreads", "2");
+                return cfg;
+            }
+        });
     }
 
 
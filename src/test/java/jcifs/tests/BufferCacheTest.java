@@ -0,0 +1,108 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jcifs.smb.BufferCacheImpl;
+
+
+/**
+ * @author mbechler
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class BufferCacheTest {
+
+    private static final int MAX_SIZE = 100000;
+
+
+    @Test
+    public void testSizeClasses () {
+        BufferCacheImpl cache = new BufferCacheImpl(4, MAX_SIZE);
+        Assert.assertEquals(BufferCacheImpl.MIN_BUFFER_SIZE, cache.getBuffer(1).length);
+        Assert.assertEquals(1024, cache.getBuffer(1024).length);
+        Assert.assertEquals(2048, cache.getBuffer(1025).length);
+        Assert.assertEquals(65536, cache.getBuffer(65536).length);
+        // the largest class is the maximum buffer size, not the next power of two
+        Assert.assertEquals(MAX_SIZE, cache.getBuffer(65537).length);
+        Assert.assertEquals(MAX_SIZE, cache.getBuffer().length);
+        // larger requests are not cached, but still served
+        Assert.assertEquals(MAX_SIZE + 1, cache.getBuffer(MAX_SIZE + 1).length);
+    }
+
+
+    @Test
+    public void testReuse () {
+        BufferCacheImpl cache = new BufferCacheImpl(4, MAX_SIZE);
+        byte[] buf = cache.getBuffer(1500);
+        cache.releaseBuffer(buf);
+        // any request of the same size class gets the cached buffer
+        Assert.assertTrue(buf == cache.getBuffer(1100));
+        Assert.assertTrue(buf != cache.getBuffer(1100));
+
+        byte[] large = cache.getBuffer();
+        cache.releaseBuffer(large);
+        Assert.assertTrue(large == cache.getBuffer(70000));
+    }
+
+
+    @Test
+    public void testLimit () {
+        BufferCacheImpl cache = new BufferCacheImpl(1, MAX_SIZE);
+        byte[] b1 = cache.getBuffer(4096);
+        byte[] b2 = cache.getBuffer(4096);
+        cache.releaseBuffer(b1);
+        cache.releaseBuffer(b2);
+        Assert.assertTrue(b1 == cache.getBuffer(4096));
+        byte[] b3 = cache.getBuffer(4096);
+        Assert.assertTrue(b3 != b1 && b3 != b2);
+    }
+
+
+    @Test
+    public void testForeignBufferNotCached () {
+        BufferCacheImpl cache = new BufferCacheImpl(4, MAX_SIZE);
+        byte[] foreign = new byte[1500];
+        cache.releaseBuffer(foreign);
+        byte[] buf = cache.getBuffer(1500);
+        Assert.assertTrue(buf != foreign);
+        Assert.assertEquals(2048, buf.length);
+    }
+
+
+    @Test
+    public void testZeroing () {
+        BufferCacheImpl cache = new BufferCacheImpl(4, MAX_SIZE);
+        byte[] buf = cache.getBuffer(2048);
+        Arrays.fill(buf, (byte) 0x55);
+        cache.releaseBuffer(buf);
+        Assert.assertTrue(buf == cache.getBuffer(2048));
+        Assert.assertArrayEquals(new byte[2048], buf);
+
+        // only the used part is cleared
+        Arrays.fill(buf, 0, 100, (byte) 0x55);
+        cache.releaseBuffer(buf, 100);
+        Assert.assertTrue(buf == cache.getBuffer(2048));
+        Assert.assertArrayEquals(new byte[2048], buf);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.Smb2CompressionTransform;
+import jcifs.internal.smb2.nego.CompressionNegotiateContext;
+import jcifs.util.Hexdump;
+import jcifs.util.LZ77;
+
+
+/**
+ * @author mbechler
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class CompressionTest {
+
+    @Test
+    public void testLZ77Vector () throws DataFormatException {
+        // MS-XCA 3.1 example
+        byte[] data = "abcdefghijklmnopqrstuvwxyz".getBytes();
+        byte[] comp = new byte[64];
+        int clen = LZ77.compress(data, 0, data.length, comp, 0, comp.length);
+        Assert.assertEquals(
+            "3F0000006162636465666768696A6B6C6D6E6F707172737475767778797A",
+            Hexdump.toHexString(comp, 0, clen));
+        byte[] out = new byte[data.length];
+        Assert.assertEquals(data.length, LZ77.decompress(comp, 0, clen, out, 0, out.length));
+        Assert.assertArrayEquals(data, out);
+    }
+
+
+    @Test
+    public void testLZ77DecompressLongMatch () throws DataFormatException {
+        // MS-XCA 3.1 example, "abc" repeated 100 times
+        byte[] comp = new byte[] {
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x1f, 0x61, 0x62, 0x63, 0x17, 0x00, 0x0f, (byte) 0xff, 0x26, 0x01
+        };
+        byte[] out = new byte[300];
+        Assert.assertEquals(300, LZ77.decompress(comp, 0, comp.length, out, 0, out.length));
+        for ( int i = 0; i < out.length; i++ ) {
+            Assert.assertEquals("abc".charAt(i % 3), out[ i ]);
+        }
+    }
+
+
+    @Test
+    public void testLZ77RoundTrip () throws DataFormatException {
+        Random r = new Random(0x5eed);
+        for ( int size : new int[] {
+            0, 1, 3, 31, 32, 33, 4096, 70000, 1024 * 1024
+        } ) {
+            byte[] data = new byte[size];
+            for ( int i = 0; i < size; i++ ) {
+                // mostly repetitive, some noise
+                data[ i ] = r.nextInt(8) == 0 ? (byte) r.nextInt() : (byte) ( i % 53 );
+            }
+            byte[] comp = new byte[size * 2 + 64];
+            int clen = LZ77.compress(data, 0, size, comp, 0, comp.length);
+            Assert.assertTrue(clen > 0);
+            byte[] out = new byte[size];
+            Assert.assertEquals(size, LZ77.decompress(comp, 0, clen, out, 0, out.length));
+            Assert.assertArrayEquals(data, out);
+        }
+    }
+
+
+    @Test ( expected = DataFormatException.class )
+    public void testLZ77DecompressOverflow () throws DataFormatException {
+        byte[] data = new byte[1024];
+        byte[] comp = new byte[256];
+        int clen = LZ77.compress(data, 0, data.length, comp, 0, comp.length);
+        LZ77.decompress(comp, 0, clen, new byte[512], 0, 512);
+    }
+
+
+    @Test
+    public void testTransformRoundTrip () throws SMBProtocolDecodingException {
+        byte[] msg = new byte[65536];
+        for ( int i = 0; i < msg.length; i++ ) {
+            msg[ i ] = (byte) ( i % 17 );
+        }
+        byte[] comp = new byte[msg.length];
+        int clen = Smb2CompressionTransform.compress(CompressionNegotiateContext.COMPRESSION_LZ77, msg, 0, msg.length, 112, comp, 0);
+        Assert.assertTrue(clen > 0 && clen < msg.length / 2);
+        Assert.assertTrue(Smb2CompressionTransform.isCompressed(comp, 0));
+        Assert.assertEquals(msg.length, Smb2CompressionTransform.getOriginalSize(comp, 0, clen));
+
+        byte[] out = new byte[msg.length];
+        Assert.assertEquals(msg.length, Smb2CompressionTransform.decompress(comp, 0, clen, out, 0));
+        Assert.assertArrayEquals(msg, out);
+    }
+
+
+    @Test
+    public void testTransformIncompressible () {
+        byte[] msg = new byte[65536];
+        new Random(1).nextBytes(msg);
+        byte[] comp = new byte[msg.length];
+        Assert.assertEquals(-1, Smb2CompressionTransform.compress(CompressionNegotiateContext.COMPRESSION_LZ77, msg, 0, msg.length, 112, comp, 0));
+    }
+
+
+    @Test
+    public void testTransformSmallMessage () throws SMBProtocolDecodingException {
+        for ( int dataLen : new int[] {
+            1, 16, 64, 127, 128, 200
+        } ) {
+            // highly compressible, output must still fit into a buffer of the original size
+            byte[] msg = new byte[112 + dataLen];
+            byte[] comp = new byte[msg.length];
+            int clen = Smb2CompressionTransform.compress(CompressionNegotiateContext.COMPRESSION_LZ77, msg, 0, msg.length, 112, comp, 0);
+            Assert.assertTrue(clen <= msg.length);
+            if ( clen > 0 ) {
+                byte[] out = new byte[msg.length];
+                Assert.assertEquals(msg.length, Smb2CompressionTransform.decompress(comp, 0, clen, out, 0));
+                Assert.assertArrayEquals(msg, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jcifs.CIFSException;
+import jcifs.Configuration;
+import jcifs.config.BaseConfiguration;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.io.Smb2ReadRequest;
+import jcifs.internal.smb2.io.Smb2WriteRequest;
+import jcifs.internal.smb2.ioctl.Smb2IoctlRequest;
+
+
+/**
+ * Credit charge of multi-credit requests, one credit per started 64 KiB of payload
+ * 
+ * @author mbechler
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class CreditChargeTest {
+
+    private static final int[][] CHARGES = new int[][] {
+        {
+            0, 1
+        }, {
+            1, 1
+        }, {
+            65535, 1
+        }, {
+            65536, 1
+        }, {
+            65537, 2
+        }, {
+            131072, 2
+        }, {
+            131073, 3
+        }, {
+            8 * 1024 * 1024, 128
+        }
+    };
+
+
+    private static Configuration config () throws CIFSException {
+        return new BaseConfiguration(true);
+    }
+
+
+    @Test
+    public void testReadCharge () throws CIFSException {
+        for ( int[] c : CHARGES ) {
+            Smb2ReadRequest req = new Smb2ReadRequest(config(), Smb2Constants.UNSPECIFIED_FILEID, new byte[0], 0);
+            req.setReadLength(c[ 0 ]);
+            Assert.assertEquals("Read of " + c[ 0 ], c[ 1 ], req.getCreditCost());
+        }
+    }
+
+
+    @Test
+    public void testWriteCharge () throws CIFSException {
+        byte[] data = new byte[8 * 1024 * 1024];
+        for ( int[] c : CHARGES ) {
+            Smb2WriteRequest req = new Smb2WriteRequest(config(), Smb2Constants.UNSPECIFIED_FILEID);
+            req.setData(data, 0, c[ 0 ]);
+            Assert.assertEquals("Write of " + c[ 0 ], c[ 1 ], req.getCreditCost());
+        }
+    }
+
+
+    @Test
+    public void testIoctlCharge () throws CIFSException {
+        for ( int[] c : CHARGES ) {
+            Smb2IoctlRequest req = new Smb2IoctlRequest(config(), Smb2IoctlRequest.FSCTL_PIPE_TRANSCEIVE);
+            req.setMaxOutputResponse(c[ 0 ]);
+            Assert.assertEquals("Ioctl response of " + c[ 0 ], c[ 1 ], req.getCreditCost());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.Smb2EncryptionContext;
+import jcifs.internal.smb2.Smb3KeyDerivation;
+import jcifs.internal.smb2.nego.EncryptionNegotiateContext;
+import jcifs.util.Crypto;
+import jcifs.util.Hexdump;
+
+
+/**
+ * @author mbechler
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class EncryptionTest {
+
+    private static final byte[] SESSION_KEY = toBytes("B4546771B515F766A86735532DD6C4F0");
+    private static final long SESSION_ID = 0x8e40014000011L;
+
+
+    @Test
+    public void testKeyDerivation300 () throws GeneralSecurityException {
+        Assert.assertEquals(
+            "261B72350558F2E9DCF613070383EDBF",
+            Hexdump.toHexString(Smb3KeyDerivation.deriveEncryptionKey(Smb2Constants.SMB2_DIALECT_0300, SESSION_KEY, null, 16)));
+        Assert.assertEquals(
+            "8FE2B57EC34D2DB5B1A9727F526BBDB5",
+            Hexdump.toHexString(Smb3KeyDerivation.deriveDecryptionKey(Smb2Constants.SMB2_DIALECT_0300, SESSION_KEY, null, 16)));
+    }
+
+
+    @Test
+    public void testAES128CCM () throws GeneralSecurityException, SMBProtocolDecodingException {
+        testCipher(EncryptionNegotiateContext.CIPHER_AES128_CCM, Smb2Constants.SMB2_DIALECT_0300);
+        testCipher(EncryptionNegotiateContext.CIPHER_AES128_CCM, Smb2Constants.SMB2_DIALECT_0311);
+    }
+
+
+    @Test
+    public void testAES128GCM () throws GeneralSecurityException, SMBProtocolDecodingException {
+        testCipher(EncryptionNegotiateContext.CIPHER_AES128_GCM, Smb2Constants.SMB2_DIALECT_0311);
+    }
+
+
+    @Test
+    public void testAES256GCM () throws GeneralSecurityException, SMBProtocolDecodingException {
+        testCipher(EncryptionNegotiateContext.CIPHER_AES256_GCM, Smb2Constants.SMB2_DIALECT_0311);
+    }
+
+
+    private static void testCipher ( int cipher, int dialect ) throws GeneralSecurityException, SMBProtocolDecodingException {
+        byte[] preauth = dialect == Smb2Constants.SMB2_DIALECT_0311 ? new byte[64] : null;
+        int keyLength = cipher == EncryptionNegotiateContext.CIPHER_AES256_GCM ? 32 : 16;
+        boolean ccm = cipher == EncryptionNegotiateContext.CIPHER_AES128_CCM;
+        Smb2EncryptionContext ctx = new Smb2EncryptionContext(cipher, dialect, SESSION_ID, SESSION_KEY, preauth);
+
+        byte[] msg = new byte[1000];
+        new Random(cipher).nextBytes(msg);
+        byte[] buf = new byte[Smb2EncryptionContext.OVERHEAD + msg.length];
+        System.arraycopy(msg, 0, buf, Smb2EncryptionContext.HEADER_LENGTH, msg.length);
+
+        // encrypted message can be decrypted by the server
+        int len = ctx.encrypt(buf, 0, msg.length);
+        Assert.assertEquals(Smb2EncryptionContext.HEADER_LENGTH + msg.length, len);
+        Assert.assertTrue(Smb2EncryptionContext.isEncrypted(buf, 0));
+        Assert.assertEquals(SESSION_ID, Smb2EncryptionContext.getSessionId(buf, 0));
+        byte[] serverIn = Smb3KeyDerivation.deriveEncryptionKey(dialect, SESSION_KEY, preauth, keyLength);
+        Assert.assertArrayEquals(msg, serverCrypt(Cipher.DECRYPT_MODE, ccm, serverIn, buf, len));
+
+        // message encrypted by the server is decrypted in place
+        byte[] serverOut = Smb3KeyDerivation.deriveDecryptionKey(dialect, SESSION_KEY, preauth, keyLength);
+        System.arraycopy(msg, 0, buf, Smb2EncryptionContext.HEADER_LENGTH, msg.length);
+        byte[] enc = serverCrypt(Cipher.ENCRYPT_MODE, ccm, serverOut, buf, len);
+        System.arraycopy(enc, 0, buf, Smb2EncryptionContext.HEADER_LENGTH, msg.length);
+        System.arraycopy(enc, msg.length, buf, 4, Smb2EncryptionContext.TAG_LENGTH);
+        byte[] copy = Arrays.copyOf(buf, len);
+        Assert.assertEquals(msg.length, ctx.decrypt(buf, 0, len));
+        Assert.assertArrayEquals(msg, Arrays.copyOfRange(buf, Smb2EncryptionContext.HEADER_LENGTH, len));
+
+        // modified message fails authentication
+        copy[ Smb2EncryptionContext.HEADER_LENGTH + 10 ] ^= 1;
+        try {
+            ctx.decrypt(copy, 0, len);
+            Assert.fail("Modified message was decrypted");
+        }
+        catch ( SMBProtocolDecodingException e ) {
+            // expected
+        }
+    }
+
+
+    private static byte[] serverCrypt ( int mode, boolean ccm, byte[] key, byte[] buf, int len ) throws GeneralSecurityException {
+        Cipher c = ccm ? Crypto.getAESCCM() : Crypto.getAESGCM();
+        c.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, buf, 20, ccm ? 11 : 12));
+        c.updateAAD(buf, 20, 32);
+        if ( mode == Cipher.DECRYPT_MODE ) {
+            byte[] out = new byte[len - Smb2EncryptionContext.HEADER_LENGTH];
+            int n = c.update(buf, Smb2EncryptionContext.HEADER_LENGTH, out.length, out, 0);
+            c.doFinal(buf, 4, Smb2EncryptionContext.TAG_LENGTH, out, n);
+            return out;
+        }
+        return c.doFinal(buf, Smb2EncryptionContext.HEADER_LENGTH, len - Smb2EncryptionContext.HEADER_LENGTH);
+    }
+
+
+    private static byte[] toBytes ( String hex ) {
+        byte[] b = new byte[hex.length() / 2];
+        for ( int i = 0; i < b.length; i++ ) {
+            b[ i ] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+}
@@ -26,7 +26,10 @@ import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -36,7 +39,13 @@ import org.junit.runners.Parameterized.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jcifs.CIFSContext;
 import jcifs.CIFSException;
+import jcifs.ResourceFilter;
+import jcifs.ResourceNameFilter;
+import jcifs.SmbResource;
+import jcifs.SmbResourceVisitor;
+import jcifs.config.DelegatingConfiguration;
 import jcifs.smb.DosFileFilter;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
@@ -137,6 +146,112 @@ public class EnumTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testDirEnumMultipleBatches () throws CIFSException, MalformedURLException, UnknownHostException {
+        // small output buffer so that the listing needs several (prefetched) queries
+        CIFSContext ctx = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getListBufferSize () {
+                return 2048;
+            }
+
+
+            @Override
+            public int getListCount () {
+                return 10;
+            }
+        });
+
+        try ( SmbFile f = createTestDirectory() ) {
+            try {
+                int n = 100;
+                for ( int i = 0; i < n; i++ ) {
+                    try ( SmbFile c = new SmbFile(f, String.format("file-%03d", i)) ) {
+                        c.createNewFile();
+                    }
+                }
+
+                try ( SmbFile d = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx)) ) {
+                    String[] names = d.list();
+                    assertNotNull(names);
+                    assertEquals(n, names.length);
+                    Arrays.sort(names);
+                    for ( int i = 0; i < n; i++ ) {
+                        assertEquals(String.format("file-%03d", i), names[ i ]);
+                    }
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testWalk () throws CIFSException, MalformedURLException, UnknownHostException {
+        try ( SmbFile f = createTestDirectory() ) {
+            try {
+                for ( String dir : new String[] {
+                    "a/", "a/b/", "a/b/c/", "d/"
+                } ) {
+                    try ( SmbFile c = new SmbFile(f, dir) ) {
+                        c.mkdir();
+                    }
+                }
+                for ( String file : new String[] {
+                    "x", "a/x", "a/b/x", "a/b/c/x", "d/x"
+                } ) {
+                    try ( SmbFile c = new SmbFile(f, file) ) {
+                        c.createNewFile();
+                    }
+                }
+
+                final String base = f.getLocator().getURLPath();
+                final Set<String> found = Collections.synchronizedSet(new TreeSet<String>());
+                SmbResourceVisitor collect = new SmbResourceVisitor() {
+
+                    @Override
+                    public boolean visit ( SmbResource resource, int depth ) throws CIFSException {
+                        String rel = resource.getLocator().getURLPath().substring(base.length());
+                        assertEquals(rel, depth, rel.replaceAll("/$", "").split("/").length);
+                        found.add(rel);
+                        // prune below d/
+                        return !rel.equals("d/");
+                    }
+
+
+                    @Override
+                    public boolean visitFailed ( SmbResource resource, CIFSException e ) {
+                        return false;
+                    }
+                };
+
+                f.walk(collect);
+                assertEquals(new TreeSet<>(Arrays.asList("a/", "a/b/", "a/b/c/", "a/b/c/x", "a/b/x", "a/x", "d/", "x")), found);
+
+                found.clear();
+                f.walk(collect, 2, (ResourceFilter) null);
+                assertEquals(new TreeSet<>(Arrays.asList("a/", "a/b/", "a/x", "d/", "x")), found);
+
+                found.clear();
+                f.walk(collect, -1, new ResourceNameFilter() {
+
+                    @Override
+                    public boolean accept ( SmbResource parent, String name ) {
+                        return !name.equals("b");
+                    }
+                });
+                assertEquals(new TreeSet<>(Arrays.asList("a/", "a/x", "d/", "x")), found);
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
     @Test
     public void testDirFilenameFilterEnum () throws CIFSException, MalformedURLException, UnknownHostException {
         try ( SmbFile f = createTestDirectory() ) {
@@ -19,10 +19,12 @@ package jcifs.tests;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.Collection;
@@ -36,9 +38,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.SmbConstants;
 import jcifs.SmbResource;
+import jcifs.config.DelegatingConfiguration;
 import jcifs.smb.NtStatus;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
@@ -307,4 +311,49 @@ public class FileAttributesTest extends BaseCIFSTest {
         }
     }
 
+
+    @Test
+    public void testMetadataCache () throws IOException {
+        CIFSContext ctx = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getMetadataCacheSize () {
+                return 64;
+            }
+        });
+
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                for ( int i = 0; i < 2; i++ ) {
+                    try ( SmbFile r = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx)) ) {
+                        assertTrue(r.exists());
+                        assertEquals(0, r.length());
+                    }
+                }
+
+                // modification through the same context must invalidate the cached entry
+                try ( SmbFile w = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx));
+                      OutputStream os = w.getOutputStream() ) {
+                    os.write(new byte[] {
+                        1, 2, 3
+                    });
+                }
+
+                try ( SmbFile r = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx)) ) {
+                    assertEquals(3, r.length());
+                    r.delete();
+                }
+
+                try ( SmbFile r = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx)) ) {
+                    assertFalse(r.exists());
+                }
+            }
+            finally {
+                if ( f.exists() ) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
 }
@@ -19,6 +19,7 @@ package jcifs.tests;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -28,6 +29,7 @@ import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assume;
 import org.junit.Test;
@@ -36,6 +38,7 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import jcifs.CIFSException;
+import jcifs.SmbCopyListener;
 import jcifs.SmbResource;
 import jcifs.SmbTreeHandle;
 import jcifs.smb.SmbFile;
@@ -256,6 +259,74 @@ public class FileOperationsTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testCopyFileLargeContents () throws IOException {
+        int bufSize = 65536;
+        long length = 4096 * 5 * 1024 + 13;
+        try ( SmbFile f = createTestFile();
+              SmbTreeHandle treeHandle = f.getTreeHandle() ) {
+            try {
+                Assume.assumeTrue("Not SMB2", treeHandle.isSMB2());
+                try ( SmbFile d1 = createTestDirectory();
+                      SmbFile t = new SmbFile(d1, makeRandomName()) ) {
+                    try {
+                        try ( OutputStream os = f.openOutputStream() ) {
+                            ReadWriteTest.writeRandom(bufSize, length, os);
+                        }
+
+                        // multiple copychunk batches are in flight at the same time
+                        f.copyTo(t);
+                        assertEquals(length, t.length());
+                        try ( InputStream is = t.openInputStream() ) {
+                            ReadWriteTest.verifyRandom(bufSize, length, is);
+                        }
+                    }
+                    finally {
+                        d1.delete();
+                    }
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testCopyFileCrossShare () throws IOException {
+        int bufSize = 65536;
+        long length = 4096 * 1024 + 13;
+        try ( SmbFile f = createTestFile() ) {
+            try ( SmbFile otherShare = new SmbFile(getTestShareGuestURL(), withTestNTLMCredentials(getContext()));
+                  SmbFile t = new SmbFile(otherShare, makeRandomName()) ) {
+                try {
+                    try ( OutputStream os = f.openOutputStream() ) {
+                        ReadWriteTest.writeRandom(bufSize, length, os);
+                    }
+
+                    // falls back to copying through the client if the server refuses copychunk between shares
+                    f.copyTo(t);
+                    assertTrue(f.exists());
+                    assertEquals(length, t.length());
+                    assertEquals(f.getAttributes(), t.getAttributes());
+                    try ( InputStream is = t.openInputStream() ) {
+                        ReadWriteTest.verifyRandom(bufSize, length, is);
+                    }
+                }
+                finally {
+                    if ( t.exists() ) {
+                        t.delete();
+                    }
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
     @Test
     public void testCopyFileLargeNoAlign () throws IOException {
         long length = 4096 * 16 * 1024 + 13;
@@ -357,6 +428,96 @@ public class FileOperationsTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testCopyDirConcurrent () throws IOException {
+        int bufSize = 65536;
+        long length = 4096 * 4 + 512;
+        try ( SmbFile f = createTestDirectory() ) {
+            try {
+                for ( int i = 0; i < 3; i++ ) {
+                    try ( SmbFile sub = new SmbFile(f, "sub" + i + "/") ) {
+                        sub.mkdir();
+                        for ( int j = 0; j < 4; j++ ) {
+                            try ( SmbFile e = new SmbFile(sub, "test" + j);
+                                  OutputStream os = e.openOutputStream() ) {
+                                ReadWriteTest.writeRandom(bufSize, length, os);
+                            }
+                        }
+                    }
+                }
+
+                final AtomicInteger copied = new AtomicInteger();
+                try ( SmbFile d1 = createTestDirectory();
+                      SmbFile t = new SmbFile(d1, makeRandomName() + "/") ) {
+                    try {
+                        f.copyTo(t, new SmbCopyListener() {
+
+                            @Override
+                            public void fileCopied ( SmbResource src, SmbResource dest, long size ) {
+                                copied.incrementAndGet();
+                            }
+
+
+                            @Override
+                            public boolean copyFailed ( SmbResource src, SmbResource dest, CIFSException e ) {
+                                return false;
+                            }
+                        });
+                        assertEquals(12, copied.get());
+
+                        try ( SmbFile s2 = new SmbFile(f, "sub2/test3");
+                              SmbFile e2 = new SmbFile(t, "sub2/test3") ) {
+                            assertTrue(e2.exists());
+                            assertEquals(s2.lastModified(), e2.lastModified());
+                            try ( InputStream is = e2.openInputStream() ) {
+                                ReadWriteTest.verifyRandom(bufSize, length, is);
+                            }
+                        }
+                    }
+                    finally {
+                        d1.delete();
+                    }
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testDeleteTree () throws IOException {
+        try ( SmbFile f = createTestDirectory() ) {
+            try {
+                for ( int i = 0; i < 3; i++ ) {
+                    try ( SmbFile sub = new SmbFile(f, "sub" + i + "/") ) {
+                        sub.mkdir();
+                        // more than fit into a single batch
+                        for ( int j = 0; j < 40; j++ ) {
+                            try ( SmbFile e = new SmbFile(sub, "test" + j) ) {
+                                e.createNewFile();
+                            }
+                        }
+                    }
+                }
+
+                try ( SmbFile ro = new SmbFile(f, "sub1/test7") ) {
+                    ro.setReadOnly();
+                }
+
+                f.delete();
+                assertFalse(f.exists());
+            }
+            finally {
+                if ( f.exists() ) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+
     @Test
     public void testMkDirs () throws CIFSException, MalformedURLException, UnknownHostException {
         try ( SmbFile r = createTestDirectory();
@@ -0,0 +1,210 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import jcifs.CIFSContext;
+import jcifs.SmbMetrics;
+import jcifs.SmbResource;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+
+
+/**
+ * @author mbechler
+ *
+ */
+@RunWith ( Parameterized.class )
+@SuppressWarnings ( "javadoc" )
+public class MetricsTest extends BaseCIFSTest {
+
+    public MetricsTest ( String name, Map<String, String> properties ) {
+        super(name, properties);
+    }
+
+
+    @Parameters ( name = "{0}" )
+    public static Collection<Object> configs () {
+        return getConfigs("smb2", "smb3", "selector", "encryption");
+    }
+
+    private static final class RecordingMetrics implements SmbMetrics {
+
+        final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+        final Map<String, Set<LongSupplier>> gauges = new ConcurrentHashMap<>();
+
+
+        private static String key ( String name, String command ) {
+            return command != null ? name + "/" + command : name;
+        }
+
+
+        long get ( String name, String command ) {
+            AtomicLong v = this.counts.get(key(name, command));
+            return v != null ? v.get() : 0;
+        }
+
+
+        int getGauges ( String name ) {
+            Set<LongSupplier> g = this.gauges.get(name);
+            return g != null ? g.size() : 0;
+        }
+
+
+        private AtomicLong getCount ( String name, String command ) {
+            String k = key(name, command);
+            AtomicLong v = this.counts.get(k);
+            if ( v == null ) {
+                this.counts.putIfAbsent(k, new AtomicLong());
+                v = this.counts.get(k);
+            }
+            return v;
+        }
+
+
+        @Override
+        public Counter getCounter ( String name, String server, String command ) {
+            final AtomicLong v = getCount(name, command);
+            return new Counter() {
+
+                @Override
+                public void increment ( long delta ) {
+                    v.addAndGet(delta);
+                }
+            };
+        }
+
+
+        @Override
+        public Histogram getHistogram ( String name, String server, String command ) {
+            final AtomicLong v = getCount(name, command);
+            return new Histogram() {
+
+                @Override
+                public void record ( long nanos ) {
+                    v.incrementAndGet();
+                }
+            };
+        }
+
+
+        @Override
+        public void registerGauge ( String name, String server, LongSupplier gauge ) {
+            Set<LongSupplier> g = this.gauges.get(name);
+            if ( g == null ) {
+                this.gauges.putIfAbsent(name, ConcurrentHashMap.<LongSupplier> newKeySet());
+                g = this.gauges.get(name);
+            }
+            g.add(gauge);
+        }
+
+
+        @Override
+        public void unregisterGauge ( String name, String server, LongSupplier gauge ) {
+            Set<LongSupplier> g = this.gauges.get(name);
+            if ( g != null ) {
+                g.remove(gauge);
+            }
+        }
+    }
+
+
+    private CIFSContext makeContext ( SmbMetrics metrics ) throws Exception {
+        Properties props = new Properties();
+        props.putAll(getProperties());
+        return new BaseContext(new PropertyConfiguration(props), metrics);
+    }
+
+
+    @Test
+    public void testRequestMetrics () throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        CIFSContext ctx = makeContext(metrics);
+        byte[] data = new byte[4096];
+        try {
+            try ( SmbResource root = getDefaultShareRoot(ctx);
+                  SmbResource f = root.resolve(makeRandomName()) ) {
+                try ( OutputStream os = f.openOutputStream() ) {
+                    os.write(data);
+                }
+                try {
+                    try ( InputStream is = f.openInputStream() ) {
+                        while ( is.read(data) >= 0 ) {}
+                    }
+                    assertEquals(1, metrics.getGauges(SmbMetrics.CREDITS_AVAILABLE));
+                    assertEquals(1, metrics.getGauges(SmbMetrics.REQUESTS_INFLIGHT));
+                }
+                finally {
+                    f.delete();
+                }
+            }
+
+            assertTrue(metrics.get(SmbMetrics.CONNECTS, null) >= 1);
+            assertTrue(metrics.get(SmbMetrics.BYTES_SENT, null) > data.length);
+            assertTrue(metrics.get(SmbMetrics.BYTES_RECEIVED, null) > data.length);
+            if ( Boolean.parseBoolean(getProperties().get("jcifs.smb.client.enableSMB2")) ) {
+                assertTrue(metrics.get(SmbMetrics.REQUEST_LATENCY, "SMB2_CREATE") > 0);
+                assertTrue(metrics.get(SmbMetrics.REQUEST_LATENCY, "SMB2_WRITE") > 0);
+                assertTrue(metrics.get(SmbMetrics.REQUEST_LATENCY, "SMB2_READ") > 0);
+            }
+        }
+        finally {
+            ctx.close();
+        }
+
+        assertEquals(0, metrics.getGauges(SmbMetrics.CREDITS_AVAILABLE));
+        assertEquals(0, metrics.getGauges(SmbMetrics.REQUESTS_INFLIGHT));
+        assertEquals(metrics.get(SmbMetrics.CONNECTS, null), metrics.get(SmbMetrics.DISCONNECTS, null));
+    }
+
+
+    @Test
+    public void testRequestErrors () throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        CIFSContext ctx = makeContext(metrics);
+        try ( SmbResource root = getDefaultShareRoot(ctx);
+              SmbResource f = root.resolve(makeRandomName()) ) {
+            assertFalse(f.exists());
+            if ( Boolean.parseBoolean(getProperties().get("jcifs.smb.client.enableSMB2")) ) {
+                assertTrue(metrics.get(SmbMetrics.REQUEST_ERRORS, "SMB2_CREATE") > 0);
+            }
+        }
+        finally {
+            ctx.close();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -41,9 +42,14 @@ import org.junit.runners.Parameterized.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jcifs.CIFSContext;
 import jcifs.CIFSException;
+import jcifs.SmbConstants;
+import jcifs.SmbFileHandle;
 import jcifs.SmbPipeHandle;
 import jcifs.SmbPipeResource;
+import jcifs.SmbTreeHandle;
+import jcifs.config.DelegatingConfiguration;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbNamedPipe;
@@ -82,7 +88,8 @@ public class ReadWriteTest extends BaseCIFSTest {
 
     @Parameters ( name = "{0}" )
     public static Collection<Object> configs () {
-        return getConfigs("noLargeReadWrite", "noNTSmbs", "forceSigning", "smb2");
+        return getConfigs("noLargeReadWrite", "noNTSmbs", "forceSigning", "smb2", "selector", "smb3", "multichannel", "compression",
+            "encryption");
     }
 
 
@@ -371,6 +378,230 @@ public class ReadWriteTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testReadAhead () throws IOException {
+        CIFSContext ctx = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getReadAheadCount () {
+                return 4;
+            }
+        });
+
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                int bufSize = 4096;
+                long length = 1024 * 1024 + 1013;
+                try ( OutputStream os = f.getOutputStream() ) {
+                    writeRandom(bufSize, length, os);
+                }
+
+                try ( SmbFile r = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx));
+                      InputStream is = r.getInputStream() ) {
+                    verifyRandom(bufSize, length, is);
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testAsyncHandle () throws Exception {
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                try ( SmbTreeHandle th = f.getTreeHandle() ) {
+                    Assume.assumeTrue("Requires SMB2", th.isSMB2());
+                }
+
+                byte[] data = new byte[65536 + 1013];
+                new Random(SEED).nextBytes(data);
+                try ( SmbFileHandle fh = f.openFileHandle(
+                    SmbConstants.O_RDWR,
+                    SmbConstants.FILE_READ_DATA | SmbConstants.FILE_WRITE_DATA,
+                    SmbConstants.DEFAULT_SHARING) ) {
+                    int written = 0;
+                    while ( written < data.length ) {
+                        written += fh.writeAsync(written, data, written, data.length - written).get();
+                    }
+
+                    byte[] read = new byte[data.length];
+                    int pos = 0;
+                    while ( pos < read.length ) {
+                        int r = fh.readAsync(pos, read, pos, read.length - pos).get();
+                        if ( r < 0 ) {
+                            break;
+                        }
+                        pos += r;
+                    }
+                    assertEquals(data.length, pos);
+                    assertArrayEquals(data, read);
+                    assertEquals(-1, (int) fh.readAsync(data.length, read, 0, 1).get());
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testLeaseCache () throws IOException {
+        CIFSContext ctx = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getLeaseCacheEntries () {
+                return 16;
+            }
+        });
+
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                int bufSize = 4096;
+                long length = 4096 * 4 + 13;
+                try ( OutputStream os = f.getOutputStream() ) {
+                    writeRandom(bufSize, length, os);
+                }
+
+                for ( int i = 0; i < 2; i++ ) {
+                    try ( SmbFile r = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx)) ) {
+                        assertEquals(length, r.length());
+                        try ( InputStream is = r.getInputStream() ) {
+                            verifyRandom(bufSize, length, is);
+                        }
+                    }
+                }
+
+                // modification through the same context must invalidate the cached data
+                byte[] data = new byte[] {
+                    1, 2, 3
+                };
+                try ( SmbFile w = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx));
+                      OutputStream os = w.getOutputStream() ) {
+                    os.write(data);
+                }
+
+                try ( SmbFile r = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx)) ) {
+                    assertEquals(data.length, r.length());
+                    byte[] read = new byte[data.length];
+                    try ( InputStream is = r.getInputStream() ) {
+                        assertEquals(data.length, is.read(read));
+                        assertEquals(-1, is.read());
+                    }
+                    assertArrayEquals(data, read);
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testReadAll () throws IOException {
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                assertEquals(0, f.readAll().length);
+
+                int bufSize = 4096;
+                for ( long length : new long[] {
+                    13, 4096 * 4 + 13, 1024 * 1024 + 13
+                } ) {
+                    try ( OutputStream os = f.getOutputStream() ) {
+                        writeRandom(bufSize, length, os);
+                    }
+
+                    byte[] data = f.readAll();
+                    assertEquals(length, data.length);
+                    verifyRandom(bufSize, length, new ByteArrayInputStream(data));
+
+                    byte[] head = f.readAll(10);
+                    assertEquals(10, head.length);
+                    verifyRandom(bufSize, 10, new ByteArrayInputStream(head));
+
+                    long headLength = Math.min(length, 128 * 1024);
+                    try ( InputStream is = f.openHeadInputStream(128 * 1024) ) {
+                        verifyRandom(bufSize, headLength, is);
+                    }
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testWriteAll () throws IOException {
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                Random r = new Random();
+                for ( int length : new int[] {
+                    0, 13, 4096 * 4 + 13, 1024 * 1024 + 13
+                } ) {
+                    byte[] data = new byte[length];
+                    r.nextBytes(data);
+                    f.writeAll(data);
+                    assertEquals(length, f.length());
+
+                    try ( SmbFile r2 = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(getContext())) ) {
+                        assertArrayEquals(data, r2.readAll());
+                    }
+                }
+
+                long time = ( System.currentTimeMillis() / 1000 - 3600 ) * 1000;
+                byte[] data = new byte[] {
+                    1, 2, 3
+                };
+                f.writeAll(data, 0, data.length, time, time);
+                try ( SmbFile r2 = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(getContext())) ) {
+                    assertEquals(time, r2.lastModified());
+                    assertEquals(time, r2.createTime());
+                    assertArrayEquals(data, r2.readAll());
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testWriteBehind () throws IOException {
+        CIFSContext ctx = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getWriteBehindCount () {
+                return 4;
+            }
+        });
+
+        try ( SmbFile f = createTestFile() ) {
+            try {
+                int bufSize = 4096;
+                long length = 1024 * 1024 + 1013;
+                try ( SmbFile w = new SmbFile(f.getURL().toString(), withTestNTLMCredentials(ctx));
+                      OutputStream os = w.getOutputStream() ) {
+                    writeRandom(bufSize, length, os);
+                }
+
+                try ( InputStream is = f.getInputStream() ) {
+                    verifyRandom(bufSize, length, is);
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
     static void verifyRandom ( int bufSize, long length, InputStream is ) throws IOException {
         verifyRandom(bufSize, length, true, is);
     }
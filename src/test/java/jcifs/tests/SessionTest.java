@@ -21,10 +21,16 @@ package jcifs.tests;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -32,10 +38,15 @@ import org.junit.runners.Parameterized.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jcifs.Address;
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.SmbResource;
 import jcifs.SmbTransport;
+import jcifs.config.DelegatingConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.netbios.UniAddress;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbSessionInternal;
 import jcifs.smb.SmbTransportInternal;
@@ -66,7 +77,7 @@ public class SessionTest extends BaseCIFSTest {
 
     @Parameters ( name = "{0}" )
     public static Collection<Object> configs () {
-        return getConfigs("noSigning", "forceSigning", "legacyAuth", "noUnicode", "forceUnicode", "noNTStatus", "smb2");
+        return getConfigs("noSigning", "forceSigning", "legacyAuth", "noUnicode", "forceUnicode", "noNTStatus", "smb2", "smb3");
     }
 
 
@@ -149,6 +160,129 @@ public class SessionTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void transportStriping () throws CIFSException {
+        // separate pool, so that no connections exist yet
+        CIFSContext base = new BaseContext(new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getTransportsPerServer () {
+                return 2;
+            }
+        });
+        try {
+            CIFSContext ctx = withTestNTLMCredentials(base);
+            String loc = getTestShareURL();
+            try ( SmbResource f1 = ctx.get(loc);
+                  SmbResource f2 = ctx.get(loc);
+                  SmbResource f3 = ctx.get(loc) ) {
+                f1.exists();
+                f2.exists();
+                f3.exists();
+                Set<SmbTransport> transports = new HashSet<>();
+                for ( SmbResource f : new SmbResource[] {
+                    f1, f2, f3
+                } ) {
+                    try ( SmbTreeHandleInternal th = (SmbTreeHandleInternal) ( (SmbFile) f ).getTreeHandle();
+                          SmbSessionInternal sess = th.getSession().unwrap(SmbSessionInternal.class);
+                          SmbTransport t = sess.getTransport() ) {
+                        transports.add(t);
+                    }
+                }
+                Assert.assertEquals(2, transports.size());
+            }
+        }
+        finally {
+            base.close();
+        }
+    }
+
+
+    @Test
+    public void transportPoolLookup () throws IOException {
+        // separate pool, so that no connections exist yet
+        CIFSContext ctx = new BaseContext(getContext().getConfig());
+        try {
+            Address addr = ctx.getNameServiceClient().getByName(getTestServer());
+            // distinct, but equal address instance
+            Address same = new UniAddress(InetAddress.getByAddress(addr.toInetAddress().getAddress()));
+            try ( SmbTransportInternal t1 = ctx.getTransportPool().getSmbTransport(ctx, addr, 0, false)
+                    .unwrap(SmbTransportInternal.class) ) {
+                t1.ensureConnected();
+                try ( SmbTransport t2 = ctx.getTransportPool().getSmbTransport(ctx, same, 0, false);
+                      SmbTransport t3 = ctx.getTransportPool().getSmbTransport(ctx, same, 445, false) ) {
+                    Assert.assertTrue("Same transport for equal address", t1 == t2);
+                    Assert.assertTrue("Same transport for default port", t1 == t3);
+                }
+            }
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+
+    @Test
+    public void testMultiChannel () throws IOException, InterruptedException {
+        // use a separate context as the channels stick to the session
+        CIFSContext ctx = withTestNTLMCredentials(getNewContext());
+        ctx = withConfig(ctx, new DelegatingConfiguration(ctx.getConfig()) {
+
+            @Override
+            public boolean isEnableSMB2 () {
+                return true;
+            }
+
+
+            @Override
+            public boolean isEnableSMB3 () {
+                return true;
+            }
+
+
+            @Override
+            public int getMaxChannels () {
+                return 4;
+            }
+        });
+
+        try ( SmbFile r = new SmbFile(getTestShareURL(), ctx);
+              SmbFile f = new SmbFile(r, makeRandomName()) ) {
+            f.createNewFile();
+            try {
+                try ( SmbTreeHandleInternal th = (SmbTreeHandleInternal) f.getTreeHandle();
+                      SmbSessionInternal session = th.getSession().unwrap(SmbSessionInternal.class);
+                      SmbTransportInternal trans = session.getTransport().unwrap(SmbTransportInternal.class) ) {
+                    Assume.assumeTrue(
+                        "Multichannel not supported",
+                        th.isSMB2() && trans.hasCapability(Smb2Constants.SMB2_GLOBAL_CAP_MULTI_CHANNEL));
+
+                    // channels are bound in the background after the first tree connect, on loopback the server
+                    // reports multiple local addresses (e.g. 127.0.0.1 and 127.0.0.2) or the same one repeatedly
+                    long deadline = System.currentTimeMillis() + 10000;
+                    while ( session.getChannelCount() == 0 && System.currentTimeMillis() < deadline ) {
+                        Thread.sleep(100);
+                    }
+                    Assert.assertTrue("No channel was bound", session.getChannelCount() > 0);
+                }
+
+                // reads and writes are spread across the channels, which are always signed
+                int bufSize = 65536;
+                long length = 4096 * 4 * 1024;
+                try ( OutputStream os = f.openOutputStream() ) {
+                    ReadWriteTest.writeRandom(bufSize, length, os);
+                }
+                try ( InputStream is = f.openInputStream() ) {
+                    ReadWriteTest.verifyRandom(bufSize, length, is);
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
     /**
      * @param f1
      * @param f2
@@ -0,0 +1,173 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jcifs.internal.smb2.ServerMessageBlock2;
+import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.Smb2SigningDigest;
+import jcifs.internal.smb2.Smb3KeyDerivation;
+import jcifs.internal.smb2.nego.SigningNegotiateContext;
+import jcifs.internal.util.SMBUtil;
+import jcifs.util.Crypto;
+import jcifs.util.Hexdump;
+
+
+/**
+ * @author mbechler
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class SigningTest {
+
+    private static final byte[] SESSION_KEY = toBytes("7CD451825D0450D235424E44BA6E78CC");
+
+
+    @Test
+    public void testKeyDerivation300 () throws GeneralSecurityException {
+        Assert.assertEquals(
+            "0B7E9C5CAC36C0F6EA9AB275298CEDCE",
+            Hexdump.toHexString(Smb3KeyDerivation.deriveSigningKey(Smb2Constants.SMB2_DIALECT_0300, SESSION_KEY)));
+    }
+
+
+    @Test
+    public void testAESCMAC () {
+        // RFC 4493 examples 1 and 2
+        Mac m = Crypto.getAESCMAC(toBytes("2B7E151628AED2A6ABF7158809CF4F3C"));
+        Assert.assertEquals("BB1D6929E95937287FA37D129B756746", Hexdump.toHexString(m.doFinal()));
+        Assert.assertEquals(
+            "070A16B46B4D4144F79BDD9DD04A287C",
+            Hexdump.toHexString(m.doFinal(toBytes("6BC1BEE22E409F96E93D7E117393172A"))));
+    }
+
+
+    @Test
+    public void testAESGMAC () throws GeneralSecurityException {
+        // NIST GCM test vectors, empty plaintext
+        Mac m = Crypto.getAESGMAC();
+        m.init(new SecretKeySpec(new byte[16], "AES"), new IvParameterSpec(new byte[12]));
+        Assert.assertEquals("58E2FCCEFA7E3061367F1D57A4E7455A", Hexdump.toHexString(m.doFinal()));
+        m.init(
+            new SecretKeySpec(toBytes("77BE63708971C4E240D1CB79E8D77FEB"), "AES"),
+            new IvParameterSpec(toBytes("E0E00F19FED7BA0136A797F3")));
+        Assert.assertEquals(
+            "209FCC8D3675ED938E9C7166709DD946",
+            Hexdump.toHexString(m.doFinal(toBytes("7A43EC1D9C0A5A78A0B16533A6213CAB"))));
+    }
+
+
+    @Test
+    public void testSignAESCMAC300 () throws GeneralSecurityException {
+        testSigning(Smb2Constants.SMB2_DIALECT_0300, null, SigningNegotiateContext.SIGNING_AES_CMAC);
+    }
+
+
+    @Test
+    public void testSignAESCMAC311 () throws GeneralSecurityException {
+        testSigning(Smb2Constants.SMB2_DIALECT_0311, new byte[64], SigningNegotiateContext.SIGNING_AES_CMAC);
+    }
+
+
+    @Test
+    public void testSignAESGMAC311 () throws GeneralSecurityException {
+        testSigning(Smb2Constants.SMB2_DIALECT_0311, new byte[64], SigningNegotiateContext.SIGNING_AES_GMAC);
+    }
+
+
+    private static void testSigning ( int dialect, byte[] preauth, int algorithm ) throws GeneralSecurityException {
+        Smb2SigningDigest dgst = new Smb2SigningDigest(SESSION_KEY, dialect, preauth, algorithm);
+        Assert.assertEquals(algorithm, dgst.getAlgorithm());
+        byte[] key = Smb3KeyDerivation.deriveSigningKey(dialect, SESSION_KEY, preauth);
+
+        byte[] msg = makeMessage(algorithm, 0x1234L, 0);
+        dgst.sign(msg, 0, msg.length, null, null);
+        Assert.assertTrue(( SMBUtil.readInt4(msg, 16) & ServerMessageBlock2.SMB2_FLAGS_SIGNED ) != 0);
+        byte[] sig = Arrays.copyOfRange(msg, 48, 64);
+        Assert.assertArrayEquals(serverSign(algorithm, key, msg), sig);
+
+        // signing the same message again, which reuses the GMAC nonce
+        dgst.sign(msg, 0, msg.length, null, null);
+        Assert.assertArrayEquals(sig, Arrays.copyOfRange(msg, 48, 64));
+
+        // response to it signed by the server
+        int respFlags = ServerMessageBlock2.SMB2_FLAGS_SERVER_TO_REDIR | ServerMessageBlock2.SMB2_FLAGS_SIGNED;
+        byte[] resp = makeMessage(algorithm, 0x1234L, respFlags);
+        System.arraycopy(serverSign(algorithm, key, resp), 0, resp, 48, 16);
+        Assert.assertFalse("Valid signature rejected", dgst.verify(Arrays.copyOf(resp, resp.length), 0, resp.length, null));
+
+        // modified message
+        resp[ 70 ] ^= 1;
+        Assert.assertTrue("Invalid signature accepted", dgst.verify(resp, 0, resp.length, null));
+    }
+
+
+    private static byte[] makeMessage ( int seed, long mid, int flags ) {
+        byte[] msg = new byte[64 + 100];
+        new Random(seed).nextBytes(msg);
+        System.arraycopy(new byte[] {
+            (byte) 0xFE, 'S', 'M', 'B'
+        }, 0, msg, 0, 4);
+        SMBUtil.writeInt2(64, msg, 4);
+        SMBUtil.writeInt2(0x08, msg, 12); // READ
+        SMBUtil.writeInt4(flags, msg, 16);
+        SMBUtil.writeInt8(mid, msg, 24);
+        return msg;
+    }
+
+
+    /**
+     * Signature computed as specified in MS-SMB2 3.1.4.1
+     */
+    private static byte[] serverSign ( int algorithm, byte[] key, byte[] msg ) throws GeneralSecurityException {
+        byte[] data = Arrays.copyOf(msg, msg.length);
+        Arrays.fill(data, 48, 64, (byte) 0);
+        Mac m;
+        if ( algorithm == SigningNegotiateContext.SIGNING_AES_GMAC ) {
+            byte[] nonce = new byte[12];
+            System.arraycopy(data, 24, nonce, 0, 8);
+            nonce[ 8 ] = (byte) ( ( SMBUtil.readInt4(data, 16) & ServerMessageBlock2.SMB2_FLAGS_SERVER_TO_REDIR ) != 0 ? 1 : 0 );
+            m = Crypto.getAESGMAC();
+            m.init(new SecretKeySpec(key, "AES"), new IvParameterSpec(nonce));
+        }
+        else {
+            m = Crypto.getAESCMAC(key);
+        }
+        return Arrays.copyOf(m.doFinal(data), 16);
+    }
+
+
+    private static byte[] toBytes ( String hex ) {
+        byte[] b = new byte[hex.length() / 2];
+        for ( int i = 0; i < b.length; i++ ) {
+            b[ i ] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * © 2017 AgNO3 Gmbh & Co. KG
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import jcifs.CIFSContext;
+import jcifs.SmbResource;
+import jcifs.SmbTracer;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.context.NoopMetrics;
+
+
+/**
+ * @author mbechler
+ *
+ */
+@RunWith ( Parameterized.class )
+@SuppressWarnings ( "javadoc" )
+public class TracingTest extends BaseCIFSTest {
+
+    public TracingTest ( String name, Map<String, String> properties ) {
+        super(name, properties);
+    }
+
+
+    @Parameters ( name = "{0}" )
+    public static Collection<Object> configs () {
+        return getConfigs("smb2", "smb3");
+    }
+
+    private static final class RecordedSpan implements SmbTracer.Span {
+
+        final String name;
+        final RecordedSpan parent;
+        final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        final Deque<RecordedSpan> stack;
+        Throwable exception;
+        boolean ended;
+
+
+        RecordedSpan ( String name, RecordedSpan parent, Deque<RecordedSpan> stack ) {
+            this.name = name;
+            this.parent = parent;
+            this.stack = stack;
+        }
+
+
+        boolean hasAncestor ( String n ) {
+            for ( RecordedSpan p = this.parent; p != null; p = p.parent ) {
+                if ( p.name.equals(n) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+
+        @Override
+        public boolean isRecording () {
+            return true;
+        }
+
+
+        @Override
+        public SmbTracer.Span setAttribute ( String key, String value ) {
+            this.attributes.put(key, value);
+            return this;
+        }
+
+
+        @Override
+        public SmbTracer.Span setAttribute ( String key, long value ) {
+            this.attributes.put(key, value);
+            return this;
+        }
+
+
+        @Override
+        public void recordException ( Throwable t ) {
+            this.exception = t;
+        }
+
+
+        @Override
+        public void end () {
+            assertFalse("Span ended twice " + this.name, this.ended);
+            assertTrue("Span not ended in order " + this.name, this.stack.peek() == this);
+            this.ended = true;
+            this.stack.pop();
+        }
+    }
+
+    private static final class RecordingTracer implements SmbTracer {
+
+        final List<RecordedSpan> spans = Collections.synchronizedList(new ArrayList<RecordedSpan>());
+        private final ThreadLocal<Deque<RecordedSpan>> current = new ThreadLocal<Deque<RecordedSpan>>() {
+
+            @Override
+            protected Deque<RecordedSpan> initialValue () {
+                return new ArrayDeque<>();
+            }
+        };
+
+
+        @Override
+        public Span startSpan ( String name ) {
+            Deque<RecordedSpan> stack = this.current.get();
+            RecordedSpan span = new RecordedSpan(name, stack.peek(), stack);
+            stack.push(span);
+            this.spans.add(span);
+            return span;
+        }
+
+
+        List<RecordedSpan> get ( String name ) {
+            List<RecordedSpan> r = new ArrayList<>();
+            synchronized ( this.spans ) {
+                for ( RecordedSpan s : this.spans ) {
+                    if ( s.name.equals(name) ) {
+                        r.add(s);
+                    }
+                }
+            }
+            return r;
+        }
+    }
+
+
+    private CIFSContext makeContext ( SmbTracer tracer ) throws Exception {
+        Properties props = new Properties();
+        props.putAll(getProperties());
+        return new BaseContext(new PropertyConfiguration(props), NoopMetrics.INSTANCE, tracer);
+    }
+
+
+    @Test
+    public void testExistsSpans () throws Exception {
+        RecordingTracer tracer = new RecordingTracer();
+        CIFSContext ctx = makeContext(tracer);
+        try ( SmbResource root = getDefaultShareRoot(ctx);
+              SmbResource f = root.resolve(makeRandomName()) ) {
+            assertFalse(f.exists());
+        }
+        finally {
+            ctx.close();
+        }
+
+        synchronized ( tracer.spans ) {
+            for ( RecordedSpan s : tracer.spans ) {
+                assertTrue("Span not ended " + s.name, s.ended);
+            }
+        }
+
+        List<RecordedSpan> exists = tracer.get("SmbFile.exists");
+        assertEquals(1, exists.size());
+        assertNotNull(exists.get(0).attributes.get(SmbTracer.ATTR_PATH));
+
+        List<RecordedSpan> connect = tracer.get("smb.connect");
+        assertFalse(connect.isEmpty());
+        assertTrue(connect.get(0).hasAncestor("SmbFile.exists"));
+
+        for ( String phase : new String[] {
+            "smb.transport.connect", "smb.session.setup", "smb.tree.connect"
+        } ) {
+            List<RecordedSpan> s = tracer.get(phase);
+            assertFalse("Missing " + phase, s.isEmpty());
+            assertTrue(phase + " outside of connect", s.get(0).hasAncestor("smb.connect"));
+        }
+
+        if ( Boolean.parseBoolean(getProperties().get("jcifs.smb.client.enableSMB2")) ) {
+            List<RecordedSpan> creates = tracer.get("SMB2_CREATE");
+            assertFalse(creates.isEmpty());
+            RecordedSpan create = creates.get(creates.size() - 1);
+            assertTrue(create.hasAncestor("SmbFile.exists"));
+            assertNotEquals(0L, create.attributes.get(SmbTracer.ATTR_STATUS));
+            assertNotNull(create.attributes.get(SmbTracer.ATTR_MESSAGE_ID));
+            assertTrue((Long) create.attributes.get(SmbTracer.ATTR_BYTES_SENT) > 0);
+            assertTrue((Long) create.attributes.get(SmbTracer.ATTR_SERVER_TIME) > 0);
+        }
+    }
+}